@@ -0,0 +1,8 @@
+package android;
+
+public final class R {
+    public static final class drawable {
+        public static final int ic_menu_info_details = 0x01080040;
+        public static final int ic_menu_mylocation = 0x0108004c;
+    }
+}
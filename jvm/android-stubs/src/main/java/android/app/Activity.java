@@ -0,0 +1,23 @@
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+public class Activity extends Context {
+    private Intent intent = new Intent();
+
+    /**
+     * There is no UI thread on the JVM, the action runs on the calling thread.
+     */
+    public void runOnUiThread(Runnable action) {
+        action.run();
+    }
+
+    public Intent getIntent() {
+        return intent;
+    }
+
+    public void setIntent(Intent intent) {
+        this.intent = intent;
+    }
+}
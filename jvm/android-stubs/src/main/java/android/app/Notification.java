@@ -0,0 +1,23 @@
+package android.app;
+
+import android.graphics.Bitmap;
+
+public class Notification {
+    public int icon;
+    public Bitmap largeIcon;
+    public int color;
+    public long[] vibrate;
+    public PendingIntent contentIntent;
+    public int flags;
+
+    // Not part of the Android API, where they are kept in the extras bundle
+    public CharSequence title;
+    public CharSequence text;
+    public String channelId;
+
+    public static final int FLAG_AUTO_CANCEL = 0x10;
+
+    public String getChannelId() {
+        return channelId;
+    }
+}
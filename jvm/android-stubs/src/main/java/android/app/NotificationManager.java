@@ -0,0 +1,42 @@
+package android.app;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the posted notifications by id instead of displaying them.
+ */
+public class NotificationManager {
+    public static final int IMPORTANCE_DEFAULT = 3;
+    public static final int IMPORTANCE_HIGH = 4;
+
+    private final Map<String, NotificationChannel> channels = new ConcurrentHashMap<String, NotificationChannel>();
+    private final Map<Integer, Notification> active = new ConcurrentHashMap<Integer, Notification>();
+
+    public void createNotificationChannel(NotificationChannel channel) {
+        channels.put(channel.getId(), channel);
+    }
+
+    public NotificationChannel getNotificationChannel(String id) {
+        return channels.get(id);
+    }
+
+    public void notify(int id, Notification notification) {
+        active.put(id, notification);
+    }
+
+    public void cancel(int id) {
+        active.remove(id);
+    }
+
+    public void cancelAll() {
+        active.clear();
+    }
+
+    /**
+     * Not part of the Android API, the posted notifications keyed by id.
+     */
+    public Map<Integer, Notification> getPostedNotifications() {
+        return active;
+    }
+}
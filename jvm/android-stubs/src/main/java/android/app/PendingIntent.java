@@ -0,0 +1,44 @@
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+public class PendingIntent {
+    public static final int FLAG_UPDATE_CURRENT = 1 << 27;
+    public static final int FLAG_IMMUTABLE = 1 << 26;
+    public static final int FLAG_MUTABLE = 1 << 25;
+
+    private final Context context;
+    private final Intent intent;
+    private final boolean broadcast;
+
+    private PendingIntent(Context context, Intent intent, boolean broadcast) {
+        this.context = context;
+        this.intent = intent;
+        this.broadcast = broadcast;
+    }
+
+    public static PendingIntent getBroadcast(Context context, int requestCode, Intent intent, int flags) {
+        return new PendingIntent(context, intent, true);
+    }
+
+    public static PendingIntent getActivity(Context context, int requestCode, Intent intent, int flags) {
+        return new PendingIntent(context, intent, false);
+    }
+
+    /**
+     * Delivers the intent, broadcasts go to the receivers registered with the context.
+     */
+    public void send() {
+        if (broadcast) {
+            context.sendBroadcast(intent);
+        }
+    }
+
+    /**
+     * Not part of the Android API, the wrapped intent.
+     */
+    public Intent getIntent() {
+        return intent;
+    }
+}
@@ -0,0 +1,161 @@
+package android.app.job;
+
+import android.content.ComponentName;
+import android.os.PersistableBundle;
+
+public class JobInfo {
+    public static final int NETWORK_TYPE_NONE = 0;
+    public static final int NETWORK_TYPE_ANY = 1;
+    public static final int BACKOFF_POLICY_LINEAR = 0;
+    public static final int BACKOFF_POLICY_EXPONENTIAL = 1;
+
+    private final int id;
+    private final ComponentName service;
+    private final PersistableBundle extras;
+    private final int networkType;
+    private final long minLatencyMillis;
+    private final long maxExecutionDelayMillis;
+    private final long intervalMillis;
+    private final long initialBackoffMillis;
+    private final int backoffPolicy;
+    private final boolean persisted;
+    private final boolean requireDeviceIdle;
+    private final boolean requireCharging;
+
+    private JobInfo(Builder builder) {
+        id = builder.id;
+        service = builder.service;
+        extras = builder.extras;
+        networkType = builder.networkType;
+        minLatencyMillis = builder.minLatencyMillis;
+        maxExecutionDelayMillis = builder.maxExecutionDelayMillis;
+        intervalMillis = builder.intervalMillis;
+        initialBackoffMillis = builder.initialBackoffMillis;
+        backoffPolicy = builder.backoffPolicy;
+        persisted = builder.persisted;
+        requireDeviceIdle = builder.requireDeviceIdle;
+        requireCharging = builder.requireCharging;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public ComponentName getService() {
+        return service;
+    }
+
+    public PersistableBundle getExtras() {
+        return extras;
+    }
+
+    public int getNetworkType() {
+        return networkType;
+    }
+
+    public long getMinLatencyMillis() {
+        return minLatencyMillis;
+    }
+
+    public long getMaxExecutionDelayMillis() {
+        return maxExecutionDelayMillis;
+    }
+
+    public boolean isPeriodic() {
+        return intervalMillis > 0;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public int getBackoffPolicy() {
+        return backoffPolicy;
+    }
+
+    public boolean isPersisted() {
+        return persisted;
+    }
+
+    public boolean isRequireDeviceIdle() {
+        return requireDeviceIdle;
+    }
+
+    public boolean isRequireCharging() {
+        return requireCharging;
+    }
+
+    public static final class Builder {
+        private final int id;
+        private final ComponentName service;
+        private PersistableBundle extras = new PersistableBundle();
+        private int networkType = NETWORK_TYPE_NONE;
+        private long minLatencyMillis;
+        private long maxExecutionDelayMillis;
+        private long intervalMillis;
+        private long initialBackoffMillis = 30000;
+        private int backoffPolicy = BACKOFF_POLICY_EXPONENTIAL;
+        private boolean persisted;
+        private boolean requireDeviceIdle;
+        private boolean requireCharging;
+
+        public Builder(int jobId, ComponentName jobService) {
+            this.id = jobId;
+            this.service = jobService;
+        }
+
+        public Builder setRequiredNetworkType(int networkType) {
+            this.networkType = networkType;
+            return this;
+        }
+
+        public Builder setExtras(PersistableBundle extras) {
+            this.extras = extras;
+            return this;
+        }
+
+        public Builder setMinimumLatency(long minLatencyMillis) {
+            this.minLatencyMillis = minLatencyMillis;
+            return this;
+        }
+
+        public Builder setOverrideDeadline(long maxExecutionDelayMillis) {
+            this.maxExecutionDelayMillis = maxExecutionDelayMillis;
+            return this;
+        }
+
+        public Builder setBackoffCriteria(long initialBackoffMillis, int backoffPolicy) {
+            this.initialBackoffMillis = initialBackoffMillis;
+            this.backoffPolicy = backoffPolicy;
+            return this;
+        }
+
+        public Builder setPeriodic(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+            return this;
+        }
+
+        public Builder setPersisted(boolean persisted) {
+            this.persisted = persisted;
+            return this;
+        }
+
+        public Builder setRequiresDeviceIdle(boolean requiresDeviceIdle) {
+            this.requireDeviceIdle = requiresDeviceIdle;
+            return this;
+        }
+
+        public Builder setRequiresCharging(boolean requiresCharging) {
+            this.requireCharging = requiresCharging;
+            return this;
+        }
+
+        public JobInfo build() {
+            return new JobInfo(this);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package android.app.job;
+
+import android.os.PersistableBundle;
+
+public class JobParameters {
+    private final int jobId;
+    private final PersistableBundle extras;
+
+    /**
+     * Not public on Android, where the system creates the parameters.
+     */
+    public JobParameters(int jobId, PersistableBundle extras) {
+        this.jobId = jobId;
+        this.extras = extras;
+    }
+
+    public int getJobId() {
+        return jobId;
+    }
+
+    public PersistableBundle getExtras() {
+        return extras;
+    }
+}
@@ -0,0 +1,38 @@
+package android.app.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps the scheduled jobs pending instead of running them, scheduling a job with the id of a
+ * pending one replaces it like on Android. Subclass it to run jobs.
+ */
+public class JobScheduler {
+    public static final int RESULT_FAILURE = 0;
+    public static final int RESULT_SUCCESS = 1;
+
+    private final Map<Integer, JobInfo> pending = new ConcurrentSkipListMap<Integer, JobInfo>();
+
+    public int schedule(JobInfo job) {
+        pending.put(job.getId(), job);
+        return RESULT_SUCCESS;
+    }
+
+    public void cancel(int jobId) {
+        pending.remove(jobId);
+    }
+
+    public void cancelAll() {
+        pending.clear();
+    }
+
+    public JobInfo getPendingJob(int jobId) {
+        return pending.get(jobId);
+    }
+
+    public List<JobInfo> getAllPendingJobs() {
+        return new ArrayList<JobInfo>(pending.values());
+    }
+}
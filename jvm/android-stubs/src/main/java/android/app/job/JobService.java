@@ -0,0 +1,29 @@
+package android.app.job;
+
+import android.content.Context;
+
+public abstract class JobService extends Context {
+    /**
+     * Not part of the Android API, lets whoever runs jobs on the JVM learn when they finish.
+     */
+    public interface FinishListener {
+        void onJobFinished(JobService service, JobParameters params, boolean wantsReschedule);
+    }
+
+    private static volatile FinishListener finishListener;
+
+    public static void setFinishListener(FinishListener listener) {
+        finishListener = listener;
+    }
+
+    public abstract boolean onStartJob(JobParameters params);
+
+    public abstract boolean onStopJob(JobParameters params);
+
+    public final void jobFinished(JobParameters params, boolean wantsReschedule) {
+        FinishListener listener = finishListener;
+        if (listener != null) {
+            listener.onJobFinished(this, params, wantsReschedule);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package android.content;
+
+public abstract class BroadcastReceiver {
+    public abstract void onReceive(Context context, Intent intent);
+
+    public final PendingResult goAsync() {
+        return new PendingResult();
+    }
+
+    public static class PendingResult {
+        private volatile boolean finished;
+
+        public final void finish() {
+            finished = true;
+        }
+
+        /**
+         * Not part of the Android API.
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package android.content;
+
+public class ComponentName {
+    private final String packageName;
+    private final String className;
+
+    public ComponentName(Context context, Class<?> cls) {
+        this(context.getPackageName(), cls.getName());
+    }
+
+    public ComponentName(String packageName, String className) {
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ComponentName)) {
+            return false;
+        }
+        ComponentName other = (ComponentName) o;
+        return className.equals(other.className)
+                && (packageName == null ? other.packageName == null : packageName.equals(other.packageName));
+    }
+
+    @Override
+    public int hashCode() {
+        return className.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentInfo{" + packageName + "/" + className + "}";
+    }
+}
@@ -0,0 +1,20 @@
+package android.content;
+
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+/**
+ * Only resolves file URIs.
+ */
+public class ContentResolver {
+    public InputStream openInputStream(Uri uri) throws FileNotFoundException {
+        if (!"file".equals(uri.getScheme())) {
+            throw new FileNotFoundException("No content provider: " + uri);
+        }
+        return new FileInputStream(new File(uri.getPath()));
+    }
+}
@@ -0,0 +1,174 @@
+package android.content;
+
+import android.app.NotificationManager;
+import android.app.job.JobScheduler;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.location.LocationManager;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * All contexts share the state of a single app process: the data directory, the system
+ * services and the registered receivers. The data directory defaults to a new temporary
+ * directory, {@link #reset(File)} starts over with a fresh process state.
+ */
+public class Context {
+    public static final String NOTIFICATION_SERVICE = "notification";
+    public static final String JOB_SCHEDULER_SERVICE = "jobscheduler";
+    public static final String POWER_SERVICE = "power";
+    public static final String BATTERY_SERVICE = "batterymanager";
+    public static final String LOCATION_SERVICE = "location";
+    public static final int MODE_PRIVATE = 0;
+
+    private static final String PACKAGE_NAME = "com.cowbell.cordova.geofence.jvm";
+
+    private static final class Registration {
+        final BroadcastReceiver receiver;
+        final IntentFilter filter;
+
+        Registration(BroadcastReceiver receiver, IntentFilter filter) {
+            this.receiver = receiver;
+            this.filter = filter;
+        }
+    }
+
+    private static volatile File dataDir;
+    private static final Map<String, Object> services = new ConcurrentHashMap<String, Object>();
+    private static final List<Registration> receivers = new CopyOnWriteArrayList<Registration>();
+    private static final List<Intent> stickyIntents = new CopyOnWriteArrayList<Intent>();
+
+    static {
+        reset(null);
+    }
+
+    /**
+     * Not part of the Android API. Drops the services, receivers and sticky broadcasts.
+     *
+     * @param dir the new data directory, null for a new temporary directory
+     */
+    public static synchronized void reset(File dir) {
+        if (dir == null) {
+            try {
+                dir = File.createTempFile("geofence-jvm", "");
+            } catch (java.io.IOException e) {
+                throw new IllegalStateException(e);
+            }
+            dir.delete();
+        }
+        dir.mkdirs();
+        dataDir = dir;
+        services.clear();
+        services.put(NOTIFICATION_SERVICE, new NotificationManager());
+        services.put(JOB_SCHEDULER_SERVICE, new JobScheduler());
+        services.put(POWER_SERVICE, new PowerManager());
+        services.put(BATTERY_SERVICE, new BatteryManager());
+        services.put(LOCATION_SERVICE, new LocationManager());
+        receivers.clear();
+        stickyIntents.clear();
+    }
+
+    /**
+     * Not part of the Android API, replaces a system service.
+     */
+    public static void setSystemService(String name, Object service) {
+        services.put(name, service);
+    }
+
+    public Object getSystemService(String name) {
+        return services.get(name);
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public String getPackageName() {
+        return PACKAGE_NAME;
+    }
+
+    public PackageManager getPackageManager() {
+        return new PackageManager();
+    }
+
+    public File getFilesDir() {
+        File dir = new File(dataDir, "files");
+        dir.mkdirs();
+        return dir;
+    }
+
+    public File getExternalCacheDir() {
+        File dir = new File(dataDir, "cache");
+        dir.mkdirs();
+        return dir;
+    }
+
+    public File getDatabasePath(String name) {
+        File dir = new File(dataDir, "databases");
+        dir.mkdirs();
+        return new File(dir, name);
+    }
+
+    public AssetManager getAssets() {
+        return new AssetManager();
+    }
+
+    public Resources getResources() {
+        return new Resources();
+    }
+
+    public ContentResolver getContentResolver() {
+        return new ContentResolver();
+    }
+
+    /**
+     * Delivers the intent synchronously to the registered receivers with a matching action.
+     */
+    public void sendBroadcast(Intent intent) {
+        for (Registration registration : receivers) {
+            if (registration.filter.hasAction(intent.getAction())) {
+                registration.receiver.onReceive(this, intent);
+            }
+        }
+    }
+
+    /**
+     * Not part of the Android API, sets the sticky intent returned when registering for its
+     * action (e.g. {@link Intent#ACTION_BATTERY_CHANGED}).
+     */
+    public static void setStickyIntent(Intent intent) {
+        for (Intent sticky : stickyIntents) {
+            if (sticky.getAction().equals(intent.getAction())) {
+                stickyIntents.remove(sticky);
+            }
+        }
+        stickyIntents.add(intent);
+    }
+
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        if (receiver != null) {
+            receivers.add(new Registration(receiver, filter));
+        }
+        for (Intent sticky : stickyIntents) {
+            if (filter.hasAction(sticky.getAction())) {
+                return sticky;
+            }
+        }
+        return null;
+    }
+
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+        for (Registration registration : receivers) {
+            if (registration.receiver == receiver) {
+                receivers.remove(registration);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package android.content.res;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens assets from the class path, under assets/.
+ */
+public class AssetManager {
+    public InputStream open(String fileName) throws IOException {
+        InputStream in = AssetManager.class.getClassLoader().getResourceAsStream("assets/" + fileName);
+        if (in == null) {
+            throw new FileNotFoundException(fileName);
+        }
+        return in;
+    }
+}
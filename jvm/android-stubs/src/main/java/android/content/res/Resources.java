@@ -0,0 +1,19 @@
+package android.content.res;
+
+import java.io.InputStream;
+
+public class Resources {
+    public static class NotFoundException extends RuntimeException {
+        public NotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    public InputStream openRawResource(int id) {
+        throw new NotFoundException("Resource ID #0x" + Integer.toHexString(id));
+    }
+
+    public int getIdentifier(String name, String defType, String defPackage) {
+        return 0;
+    }
+}
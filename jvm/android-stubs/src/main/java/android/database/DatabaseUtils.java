@@ -0,0 +1,18 @@
+package android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+public class DatabaseUtils {
+    public static long longForQuery(SQLiteDatabase db, String query, String[] selectionArgs) {
+        Cursor cursor = db.rawQuery(query, selectionArgs);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public static long queryNumEntries(SQLiteDatabase db, String table) {
+        return longForQuery(db, "SELECT COUNT(*) FROM " + table, null);
+    }
+}
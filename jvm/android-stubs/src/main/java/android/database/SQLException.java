@@ -0,0 +1,11 @@
+package android.database;
+
+public class SQLException extends RuntimeException {
+    public SQLException(String message) {
+        super(message);
+    }
+
+    public SQLException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
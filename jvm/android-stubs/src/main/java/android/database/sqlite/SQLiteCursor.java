@@ -0,0 +1,158 @@
+package android.database.sqlite;
+
+import android.database.Cursor;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cursor over the rows of a JDBC result set, read completely when the cursor is created.
+ */
+public class SQLiteCursor implements Cursor {
+    private final String[] columns;
+    private final List<Object[]> rows = new ArrayList<Object[]>();
+    private int position = -1;
+    private boolean closed;
+
+    /**
+     * Cursor without columns and rows.
+     */
+    SQLiteCursor() {
+        columns = new String[0];
+    }
+
+    SQLiteCursor(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        columns = new String[metaData.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = metaData.getColumnLabel(i + 1);
+        }
+        while (resultSet.next()) {
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                row[i] = resultSet.getObject(i + 1);
+            }
+            rows.add(row);
+        }
+    }
+
+    public int getCount() {
+        return rows.size();
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean moveToPosition(int position) {
+        if (position < -1) {
+            position = -1;
+        } else if (position > rows.size()) {
+            position = rows.size();
+        }
+        this.position = position;
+        return position >= 0 && position < rows.size();
+    }
+
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    public boolean moveToNext() {
+        return moveToPosition(position + 1);
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        }
+        return index;
+    }
+
+    public String[] getColumnNames() {
+        return columns.clone();
+    }
+
+    public int getType(int columnIndex) {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        }
+        if (value instanceof Integer || value instanceof Long) {
+            return FIELD_TYPE_INTEGER;
+        }
+        if (value instanceof Number) {
+            return FIELD_TYPE_FLOAT;
+        }
+        if (value instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        }
+        return FIELD_TYPE_STRING;
+    }
+
+    public boolean isNull(int columnIndex) {
+        return value(columnIndex) == null;
+    }
+
+    public String getString(int columnIndex) {
+        Object value = value(columnIndex);
+        return value == null ? null : value.toString();
+    }
+
+    public long getLong(int columnIndex) {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return 0;
+        }
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+    }
+
+    public int getInt(int columnIndex) {
+        return (int) getLong(columnIndex);
+    }
+
+    public double getDouble(int columnIndex) {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return 0;
+        }
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+    }
+
+    public byte[] getBlob(int columnIndex) {
+        Object value = value(columnIndex);
+        return value instanceof byte[] ? (byte[]) value : value == null ? null : value.toString().getBytes();
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private Object value(int columnIndex) {
+        if (position < 0 || position >= rows.size()) {
+            throw new IllegalStateException("Cursor is at position " + position + " of " + rows.size());
+        }
+        return rows.get(position)[columnIndex];
+    }
+}
@@ -0,0 +1,317 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SQLiteDatabase on top of a sqlite-jdbc connection.
+ *
+ * Like a connection of Android's pool, the database is used by one thread at a time: a thread
+ * keeps it from beginTransaction() to the matching endTransaction(). Arguments are bound as
+ * strings, as Android does.
+ */
+public class SQLiteDatabase implements Closeable {
+    public static final int CONFLICT_NONE = 0;
+    public static final int CONFLICT_ROLLBACK = 1;
+    public static final int CONFLICT_ABORT = 2;
+    public static final int CONFLICT_FAIL = 3;
+    public static final int CONFLICT_IGNORE = 4;
+    public static final int CONFLICT_REPLACE = 5;
+
+    private static final String[] CONFLICT_VALUES = {
+            "", " OR ROLLBACK", " OR ABORT", " OR FAIL", " OR IGNORE", " OR REPLACE"
+    };
+
+    private final Connection connection;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final boolean walEnabled;
+    private int transactionDepth;
+    private boolean transactionSuccessful;
+    private boolean transactionFailed;
+
+    SQLiteDatabase(Connection connection, boolean walEnabled) {
+        this.connection = connection;
+        this.walEnabled = walEnabled;
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy) {
+        return query(table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy, String limit) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (columns == null || columns.length == 0) {
+            sql.append('*');
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns[i]);
+            }
+        }
+        sql.append(" FROM ").append(table);
+        appendClause(sql, " WHERE ", selection);
+        appendClause(sql, " GROUP BY ", groupBy);
+        appendClause(sql, " HAVING ", having);
+        appendClause(sql, " ORDER BY ", orderBy);
+        appendClause(sql, " LIMIT ", limit);
+        return rawQuery(sql.toString(), selectionArgs);
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        lock.lock();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (!hasColumns(statement) && (selectionArgs == null || selectionArgs.length == 0)) {
+                // sqlite-jdbc refuses to query statements without result columns (PRAGMA
+                // incremental_vacuum), step them to the end like Android fills a cursor window
+                try (Statement exec = connection.createStatement()) {
+                    exec.executeUpdate(sql);
+                }
+                return new SQLiteCursor();
+            }
+            bind(statement, selectionArgs);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return new SQLiteCursor(resultSet);
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + ", while compiling: " + sql, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        try {
+            return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_NONE);
+        } catch (SQLiteException e) {
+            return -1;
+        }
+    }
+
+    public long replace(String table, String nullColumnHack, ContentValues values) {
+        try {
+            return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_REPLACE);
+        } catch (SQLiteException e) {
+            return -1;
+        }
+    }
+
+    public long insertWithOnConflict(String table, String nullColumnHack, ContentValues values,
+                                     int conflictAlgorithm) {
+        StringBuilder sql = new StringBuilder("INSERT").append(CONFLICT_VALUES[conflictAlgorithm])
+                .append(" INTO ").append(table).append(" (");
+        StringBuilder placeholders = new StringBuilder();
+        Object[] args = new Object[values.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> value : values.valueSet()) {
+            sql.append(i == 0 ? "" : ", ").append(value.getKey());
+            placeholders.append(i == 0 ? "?" : ", ?");
+            args[i++] = value.getValue();
+        }
+        if (i == 0) {
+            sql.append(nullColumnHack);
+            placeholders.append("NULL");
+        }
+        sql.append(") VALUES (").append(placeholders).append(')');
+        lock.lock();
+        try {
+            executeUpdate(sql.toString(), args);
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT last_insert_rowid()")) {
+                return resultSet.next() ? resultSet.getLong(1) : -1;
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        int argCount = values.size() + (whereArgs == null ? 0 : whereArgs.length);
+        Object[] args = new Object[argCount];
+        int i = 0;
+        for (Map.Entry<String, Object> value : values.valueSet()) {
+            sql.append(i == 0 ? "" : ", ").append(value.getKey()).append(" = ?");
+            args[i++] = value.getValue();
+        }
+        if (whereArgs != null) {
+            System.arraycopy(whereArgs, 0, args, i, whereArgs.length);
+        }
+        appendClause(sql, " WHERE ", whereClause);
+        return execute(sql.toString(), args);
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(table);
+        appendClause(sql, " WHERE ", whereClause);
+        return execute(sql.toString(), whereArgs);
+    }
+
+    public void execSQL(String sql) {
+        execute(sql, null);
+    }
+
+    public void execSQL(String sql, Object[] bindArgs) {
+        execute(sql, bindArgs);
+    }
+
+    public SQLiteStatement compileStatement(String sql) {
+        lock.lock();
+        try {
+            return new SQLiteStatement(this, connection.prepareStatement(sql));
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + ", while compiling: " + sql, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void beginTransaction() {
+        lock.lock();
+        try {
+            if (transactionDepth == 0) {
+                connection.setAutoCommit(false);
+                transactionFailed = false;
+            }
+            transactionDepth++;
+            transactionSuccessful = false;
+        } catch (SQLException e) {
+            lock.unlock();
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public void beginTransactionNonExclusive() {
+        beginTransaction();
+    }
+
+    public void setTransactionSuccessful() {
+        if (!lock.isHeldByCurrentThread() || transactionDepth == 0) {
+            throw new IllegalStateException("no transaction pending");
+        }
+        transactionSuccessful = true;
+    }
+
+    public void endTransaction() {
+        if (!lock.isHeldByCurrentThread() || transactionDepth == 0) {
+            throw new IllegalStateException("no transaction pending");
+        }
+        try {
+            if (!transactionSuccessful) {
+                transactionFailed = true;
+            }
+            transactionSuccessful = false;
+            transactionDepth--;
+            if (transactionDepth == 0) {
+                if (transactionFailed) {
+                    connection.rollback();
+                } else {
+                    connection.commit();
+                }
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean inTransaction() {
+        return lock.isHeldByCurrentThread() && transactionDepth > 0;
+    }
+
+    public boolean enableWriteAheadLogging() {
+        return walEnabled;
+    }
+
+    public boolean isWriteAheadLoggingEnabled() {
+        return walEnabled;
+    }
+
+    public long getPageSize() {
+        Cursor cursor = rawQuery("PRAGMA page_size", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int execute(String sql, Object[] args) {
+        lock.lock();
+        try {
+            return executeUpdate(sql, args);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + ", while executing: " + sql, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void acquire() {
+        lock.lock();
+    }
+
+    void release() {
+        lock.unlock();
+    }
+
+    private int executeUpdate(String sql, Object[] args) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, args);
+            statement.execute();
+            return statement.getUpdateCount();
+        }
+    }
+
+    private static boolean hasColumns(PreparedStatement statement) {
+        try {
+            return statement.getMetaData().getColumnCount() > 0;
+        } catch (SQLException e) {
+            // sqlite-jdbc reports a zero column statement as "column 1 out of bounds"
+            return false;
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Object[] args) throws SQLException {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg instanceof Boolean) {
+                arg = (Boolean) arg ? 1 : 0;
+            }
+            statement.setObject(i + 1, arg);
+        }
+    }
+
+    private static void appendClause(StringBuilder sql, String name, String clause) {
+        if (clause != null && !clause.isEmpty()) {
+            sql.append(name).append(clause);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Opens the database file below {@link Context#getDatabasePath} with sqlite-jdbc.
+ *
+ * With write-ahead logging enabled, readable databases use a second connection so reads see
+ * the last committed snapshot while the writable connection is inside a transaction, the
+ * same isolation Android's connection pool gives.
+ */
+public abstract class SQLiteOpenHelper {
+    private final Context context;
+    private final String name;
+    private final int version;
+    private boolean walEnabled;
+    private SQLiteDatabase writable;
+    private SQLiteDatabase readable;
+
+    public SQLiteOpenHelper(Context context, String name, Object factory, int version) {
+        this.context = context;
+        this.name = name;
+        this.version = version;
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public void onConfigure(SQLiteDatabase db) {
+    }
+
+    public void onOpen(SQLiteDatabase db) {
+    }
+
+    public String getDatabaseName() {
+        return name;
+    }
+
+    public synchronized void setWriteAheadLoggingEnabled(boolean enabled) {
+        walEnabled = enabled;
+    }
+
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        if (writable == null) {
+            writable = open();
+            onConfigure(writable);
+            int current = (int) writable.compileStatement("PRAGMA user_version").simpleQueryForLong();
+            if (current != version) {
+                writable.beginTransaction();
+                try {
+                    if (current == 0) {
+                        onCreate(writable);
+                    } else {
+                        onUpgrade(writable, current, version);
+                    }
+                    writable.execSQL("PRAGMA user_version = " + version);
+                    writable.setTransactionSuccessful();
+                } finally {
+                    writable.endTransaction();
+                }
+            }
+            onOpen(writable);
+        }
+        return writable;
+    }
+
+    public synchronized SQLiteDatabase getReadableDatabase() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (!walEnabled) {
+            return db;
+        }
+        if (readable == null) {
+            readable = open();
+        }
+        return readable;
+    }
+
+    public synchronized void close() {
+        if (readable != null) {
+            readable.close();
+            readable = null;
+        }
+        if (writable != null) {
+            writable.close();
+            writable = null;
+        }
+    }
+
+    private SQLiteDatabase open() {
+        File file = context.getDatabasePath(name);
+        try {
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+            SQLiteDatabase db = new SQLiteDatabase(connection, walEnabled);
+            if (walEnabled) {
+                db.execSQL("PRAGMA journal_mode = WAL");
+            }
+            // Android's default for WAL databases
+            db.execSQL("PRAGMA synchronous = NORMAL");
+            return db;
+        } catch (SQLException e) {
+            throw new SQLiteException("Could not open " + file, e);
+        }
+    }
+}
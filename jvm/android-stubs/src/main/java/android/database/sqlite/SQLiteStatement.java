@@ -0,0 +1,119 @@
+package android.database.sqlite;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public final class SQLiteStatement {
+    private final SQLiteDatabase database;
+    private final PreparedStatement statement;
+
+    SQLiteStatement(SQLiteDatabase database, PreparedStatement statement) {
+        this.database = database;
+        this.statement = statement;
+    }
+
+    public void bindString(int index, String value) {
+        bind(index, value);
+    }
+
+    public void bindLong(int index, long value) {
+        bind(index, value);
+    }
+
+    public void bindDouble(int index, double value) {
+        bind(index, value);
+    }
+
+    public void bindNull(int index) {
+        bind(index, null);
+    }
+
+    public void clearBindings() {
+        try {
+            statement.clearParameters();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public void execute() {
+        run();
+    }
+
+    public int executeUpdateDelete() {
+        return run();
+    }
+
+    public long executeInsert() {
+        database.acquire();
+        try {
+            statement.execute();
+            try (Statement rowId = statement.getConnection().createStatement();
+                 ResultSet resultSet = rowId.executeQuery("SELECT last_insert_rowid()")) {
+                return resultSet.next() ? resultSet.getLong(1) : -1;
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        } finally {
+            database.release();
+        }
+    }
+
+    public long simpleQueryForLong() {
+        database.acquire();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLiteException("query returned no rows");
+            }
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        } finally {
+            database.release();
+        }
+    }
+
+    public String simpleQueryForString() {
+        database.acquire();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLiteException("query returned no rows");
+            }
+            return resultSet.getString(1);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        } finally {
+            database.release();
+        }
+    }
+
+    public void close() {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    private void bind(int index, Object value) {
+        try {
+            statement.setObject(index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    private int run() {
+        database.acquire();
+        try {
+            statement.execute();
+            return statement.getUpdateCount();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        } finally {
+            database.release();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package android.location;
+
+import android.os.Parcelable;
+
+public class Location implements Parcelable {
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    private final String provider;
+    private double latitude;
+    private double longitude;
+    private float accuracy;
+    private long time;
+
+    public Location(String provider) {
+        this.provider = provider;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public void setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public float distanceTo(Location dest) {
+        float[] results = new float[1];
+        distanceBetween(latitude, longitude, dest.latitude, dest.longitude, results);
+        return results[0];
+    }
+
+    /**
+     * Great circle distance on a spherical earth. Android uses the WGS84 ellipsoid, the results
+     * differ by up to about 0.5%.
+     */
+    public static void distanceBetween(double startLatitude, double startLongitude,
+                                       double endLatitude, double endLongitude, float[] results) {
+        double lat1 = Math.toRadians(startLatitude);
+        double lat2 = Math.toRadians(endLatitude);
+        double dLat = lat2 - lat1;
+        double dLng = Math.toRadians(endLongitude - startLongitude);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        results[0] = (float) (2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a))));
+    }
+
+    @Override
+    public String toString() {
+        return "Location[" + provider + " " + latitude + "," + longitude + " acc=" + accuracy + "]";
+    }
+}
@@ -0,0 +1,25 @@
+package android.location;
+
+public class LocationManager {
+    public static final String PROVIDERS_CHANGED_ACTION = "android.location.PROVIDERS_CHANGED";
+    public static final String MODE_CHANGED_ACTION = "android.location.MODE_CHANGED";
+    public static final String GPS_PROVIDER = "gps";
+    public static final String NETWORK_PROVIDER = "network";
+
+    private volatile boolean locationEnabled = true;
+
+    public boolean isProviderEnabled(String provider) {
+        return locationEnabled;
+    }
+
+    public boolean isLocationEnabled() {
+        return locationEnabled;
+    }
+
+    /**
+     * Not part of the Android API.
+     */
+    public void setLocationEnabled(boolean enabled) {
+        locationEnabled = enabled;
+    }
+}
@@ -0,0 +1,11 @@
+package android.media;
+
+import android.net.Uri;
+
+public class RingtoneManager {
+    public static final int TYPE_NOTIFICATION = 2;
+
+    public static Uri getDefaultUri(int type) {
+        return Uri.parse("content://settings/system/notification_sound");
+    }
+}
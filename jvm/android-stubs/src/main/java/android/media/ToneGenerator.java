@@ -0,0 +1,20 @@
+package android.media;
+
+/**
+ * Plays nothing.
+ */
+public class ToneGenerator {
+    public static final int TONE_PROP_BEEP = 24;
+    public static final int TONE_CDMA_CONFIRM = 41;
+    public static final int TONE_CDMA_ABBR_ALERT = 97;
+    public static final int TONE_CDMA_ALERT_NETWORK_LITE = 33;
+    public static final int TONE_CDMA_ALERT_CALL_GUARD = 93;
+    public static final int TONE_SUP_RINGTONE = 23;
+
+    public ToneGenerator(int streamType, int volume) {
+    }
+
+    public boolean startTone(int toneType, int durationMs) {
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package android.net;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+public class Uri {
+    public static final Uri EMPTY = new Uri("");
+
+    private final String uriString;
+
+    private Uri(String uriString) {
+        this.uriString = uriString;
+    }
+
+    public static Uri parse(String uriString) {
+        return new Uri(uriString);
+    }
+
+    public static Uri fromFile(File file) {
+        return new Uri(file.toURI().toString());
+    }
+
+    public String getScheme() {
+        int colon = uriString.indexOf(':');
+        return colon < 0 ? null : uriString.substring(0, colon);
+    }
+
+    public String getPath() {
+        try {
+            return new URI(uriString).getPath();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Uri && uriString.equals(((Uri) o).uriString);
+    }
+
+    @Override
+    public int hashCode() {
+        return uriString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return uriString;
+    }
+}
@@ -0,0 +1,30 @@
+package android.os;
+
+public class BatteryManager {
+    public static final String EXTRA_STATUS = "status";
+    public static final String EXTRA_LEVEL = "level";
+    public static final String EXTRA_SCALE = "scale";
+    public static final String EXTRA_PLUGGED = "plugged";
+    public static final int BATTERY_STATUS_CHARGING = 2;
+    public static final int BATTERY_STATUS_FULL = 5;
+    public static final int BATTERY_PROPERTY_CAPACITY = 4;
+
+    private volatile boolean charging;
+    private volatile int capacity = 100;
+
+    public boolean isCharging() {
+        return charging;
+    }
+
+    public int getIntProperty(int id) {
+        return id == BATTERY_PROPERTY_CAPACITY ? capacity : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Not part of the Android API.
+     */
+    public void setState(boolean charging, int capacity) {
+        this.charging = charging;
+        this.capacity = capacity;
+    }
+}
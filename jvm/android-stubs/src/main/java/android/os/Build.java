@@ -0,0 +1,19 @@
+package android.os;
+
+public class Build {
+    public static class VERSION {
+        // Behaves as Android 11
+        public static final int SDK_INT = VERSION_CODES.R;
+    }
+
+    public static class VERSION_CODES {
+        public static final int LOLLIPOP = 21;
+        public static final int M = 23;
+        public static final int N = 24;
+        public static final int O = 26;
+        public static final int P = 28;
+        public static final int Q = 29;
+        public static final int R = 30;
+        public static final int S = 31;
+    }
+}
@@ -0,0 +1,18 @@
+package android.os;
+
+public class PowerManager {
+    public static final String ACTION_POWER_SAVE_MODE_CHANGED = "android.os.action.POWER_SAVE_MODE_CHANGED";
+
+    private volatile boolean powerSaveMode;
+
+    public boolean isPowerSaveMode() {
+        return powerSaveMode;
+    }
+
+    /**
+     * Not part of the Android API.
+     */
+    public void setPowerSaveMode(boolean powerSaveMode) {
+        this.powerSaveMode = powerSaveMode;
+    }
+}
@@ -0,0 +1,18 @@
+package android.os;
+
+public final class StrictMode {
+    public static void setThreadPolicy(ThreadPolicy policy) {
+    }
+
+    public static final class ThreadPolicy {
+        public static final class Builder {
+            public Builder permitAll() {
+                return this;
+            }
+
+            public ThreadPolicy build() {
+                return new ThreadPolicy();
+            }
+        }
+    }
+}
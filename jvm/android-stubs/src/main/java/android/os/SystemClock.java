@@ -0,0 +1,28 @@
+package android.os;
+
+/**
+ * Clocks start when the class is loaded, like the device booting with the process.
+ */
+public final class SystemClock {
+    private static final long BOOT_NANOS = System.nanoTime();
+
+    public static long elapsedRealtime() {
+        return elapsedRealtimeNanos() / 1000000;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime() - BOOT_NANOS;
+    }
+
+    public static long uptimeMillis() {
+        return elapsedRealtime();
+    }
+
+    public static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Writes to standard error the messages at or above the level given by the system property
+ * android.log.level (VERBOSE, DEBUG, INFO, WARN, ERROR, ASSERT), nothing by default.
+ */
+public final class Log {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    private static final String LEVELS = "??VDIWEA";
+    private static final int LEVEL = level(System.getProperty("android.log.level"));
+
+    private static int level(String name) {
+        String[] names = { "VERBOSE", "DEBUG", "INFO", "WARN", "ERROR", "ASSERT" };
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return VERBOSE + i;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return level >= LEVEL;
+    }
+
+    public static int println(int priority, String tag, String msg) {
+        if (priority >= LEVEL) {
+            System.err.println(LEVELS.charAt(priority) + "/" + tag + ": " + msg);
+        }
+        return 0;
+    }
+
+    public static int v(String tag, String msg) {
+        return println(VERBOSE, tag, msg);
+    }
+
+    public static int d(String tag, String msg) {
+        return println(DEBUG, tag, msg);
+    }
+
+    public static int i(String tag, String msg) {
+        return println(INFO, tag, msg);
+    }
+
+    public static int w(String tag, String msg) {
+        return println(WARN, tag, msg);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return WARN >= LEVEL ? println(WARN, tag, msg + '\n' + getStackTraceString(tr)) : 0;
+    }
+
+    public static int e(String tag, String msg) {
+        return println(ERROR, tag, msg);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return ERROR >= LEVEL ? println(ERROR, tag, msg + '\n' + getStackTraceString(tr)) : 0;
+    }
+
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        StringWriter writer = new StringWriter();
+        tr.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,6 @@
+package androidx.core.app;
+
+import androidx.core.content.ContextCompat;
+
+public class ActivityCompat extends ContextCompat {
+}
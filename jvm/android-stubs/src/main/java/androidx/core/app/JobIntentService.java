@@ -0,0 +1,40 @@
+package androidx.core.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Work is handled one item at a time on a single background thread, by a new instance of the
+ * service per item.
+ */
+public abstract class JobIntentService extends Context {
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "JobIntentService");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public void onCreate() {
+    }
+
+    public void onDestroy() {
+    }
+
+    protected abstract void onHandleWork(Intent intent);
+
+    public static void enqueueWork(Context context, Class<?> cls, int jobId, Intent work) {
+        worker.execute(() -> {
+            try {
+                JobIntentService service = (JobIntentService) cls.getDeclaredConstructor().newInstance();
+                service.onCreate();
+                service.onHandleWork(work);
+                service.onDestroy();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create " + cls.getName(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package androidx.core.app;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.graphics.Bitmap;
+
+public class NotificationCompat {
+    public static final int COLOR_DEFAULT = 0;
+
+    public static class Builder {
+        private final Notification notification = new Notification();
+
+        public Builder(Context context) {
+        }
+
+        public Builder(Context context, String channelId) {
+            notification.channelId = channelId;
+        }
+
+        public Builder setVibrate(long[] pattern) {
+            notification.vibrate = pattern;
+            return this;
+        }
+
+        public Builder setColor(int argb) {
+            notification.color = argb;
+            return this;
+        }
+
+        public Builder setSmallIcon(int icon) {
+            notification.icon = icon;
+            return this;
+        }
+
+        public Builder setLargeIcon(Bitmap icon) {
+            notification.largeIcon = icon;
+            return this;
+        }
+
+        public Builder setAutoCancel(boolean autoCancel) {
+            if (autoCancel) {
+                notification.flags |= Notification.FLAG_AUTO_CANCEL;
+            } else {
+                notification.flags &= ~Notification.FLAG_AUTO_CANCEL;
+            }
+            return this;
+        }
+
+        public Builder setContentTitle(CharSequence title) {
+            notification.title = title;
+            return this;
+        }
+
+        public Builder setContentText(CharSequence text) {
+            notification.text = text;
+            return this;
+        }
+
+        public Builder setContentIntent(PendingIntent intent) {
+            notification.contentIntent = intent;
+            return this;
+        }
+
+        public Notification build() {
+            return notification;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.google.android.gms.common;
+
+public class ConnectionResult {
+    public static final int SUCCESS = 0;
+    public static final int SERVICE_MISSING = 1;
+}
@@ -0,0 +1,62 @@
+package com.google.android.gms.location;
+
+final class CircularGeofence implements Geofence {
+    private final String requestId;
+    private final double latitude;
+    private final double longitude;
+    private final float radius;
+    private final int transitionTypes;
+    private final int loiteringDelay;
+    private final int notificationResponsiveness;
+    private final long expirationTime;
+
+    CircularGeofence(String requestId, double latitude, double longitude, float radius,
+                     int transitionTypes, int loiteringDelay, int notificationResponsiveness,
+                     long expirationTime) {
+        this.requestId = requestId;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.transitionTypes = transitionTypes;
+        this.loiteringDelay = loiteringDelay;
+        this.notificationResponsiveness = notificationResponsiveness;
+        this.expirationTime = expirationTime;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    public int getTransitionTypes() {
+        return transitionTypes;
+    }
+
+    public int getLoiteringDelay() {
+        return loiteringDelay;
+    }
+
+    public int getNotificationResponsiveness() {
+        return notificationResponsiveness;
+    }
+
+    public long getExpirationTime() {
+        return expirationTime;
+    }
+
+    @Override
+    public String toString() {
+        return "Geofence[" + requestId + " " + latitude + ", " + longitude + " " + radius + "m]";
+    }
+}
@@ -0,0 +1,90 @@
+package com.google.android.gms.location;
+
+/**
+ * Unlike the Play Services interface, the stand-in exposes the region so the simulated
+ * {@link GeofencingClient} and tests can evaluate it.
+ */
+public interface Geofence {
+    int GEOFENCE_TRANSITION_ENTER = 1;
+    int GEOFENCE_TRANSITION_EXIT = 2;
+    int GEOFENCE_TRANSITION_DWELL = 4;
+    long NEVER_EXPIRE = -1L;
+
+    String getRequestId();
+
+    double getLatitude();
+
+    double getLongitude();
+
+    float getRadius();
+
+    int getTransitionTypes();
+
+    int getLoiteringDelay();
+
+    int getNotificationResponsiveness();
+
+    /**
+     * @return elapsed realtime the fence expires at, or {@link #NEVER_EXPIRE}
+     */
+    long getExpirationTime();
+
+    final class Builder {
+        private String requestId;
+        private int transitionTypes;
+        private int loiteringDelay;
+        private int notificationResponsiveness;
+        private double latitude;
+        private double longitude;
+        private float radius;
+        private long expirationDuration = NEVER_EXPIRE;
+
+        public Builder setRequestId(String requestId) {
+            this.requestId = requestId;
+            return this;
+        }
+
+        public Builder setTransitionTypes(int transitionTypes) {
+            this.transitionTypes = transitionTypes;
+            return this;
+        }
+
+        public Builder setLoiteringDelay(int loiteringDelay) {
+            this.loiteringDelay = loiteringDelay;
+            return this;
+        }
+
+        public Builder setNotificationResponsiveness(int notificationResponsiveness) {
+            this.notificationResponsiveness = notificationResponsiveness;
+            return this;
+        }
+
+        public Builder setCircularRegion(double latitude, double longitude, float radius) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radius = radius;
+            return this;
+        }
+
+        public Builder setExpirationDuration(long expirationDuration) {
+            this.expirationDuration = expirationDuration;
+            return this;
+        }
+
+        public Geofence build() {
+            if (requestId == null) {
+                throw new IllegalArgumentException("Request ID not set.");
+            }
+            if (transitionTypes == 0) {
+                throw new IllegalArgumentException("Transitions types not set.");
+            }
+            if (radius <= 0) {
+                throw new IllegalArgumentException("Geofence region not set.");
+            }
+            long expirationTime = expirationDuration < 0 ? NEVER_EXPIRE
+                    : android.os.SystemClock.elapsedRealtime() + expirationDuration;
+            return new CircularGeofence(requestId, latitude, longitude, radius, transitionTypes,
+                    loiteringDelay, notificationResponsiveness, expirationTime);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.google.android.gms.location;
+
+public class GeofenceStatusCodes {
+    public static final int GEOFENCE_NOT_AVAILABLE = 1000;
+    public static final int GEOFENCE_TOO_MANY_GEOFENCES = 1001;
+    public static final int GEOFENCE_TOO_MANY_PENDING_INTENTS = 1002;
+}
@@ -0,0 +1,91 @@
+package com.google.android.gms.location;
+
+import android.app.PendingIntent;
+
+import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the registered fences in memory. Like Play Services, at most 100 fences are accepted
+ * unless {@link #setMaxGeofences} raises the limit, and {@link #setFailure} makes the next calls
+ * fail with the given status code.
+ */
+public class GeofencingClient {
+    private final Map<String, Geofence> geofences = new LinkedHashMap<String, Geofence>();
+    private PendingIntent pendingIntent;
+    private int maxGeofences = 100;
+    private int failure;
+
+    public synchronized Task<Void> addGeofences(GeofencingRequest request, PendingIntent intent) {
+        if (failure != 0) {
+            return Tasks.forException(new ApiException(failure));
+        }
+        int added = 0;
+        for (Geofence geofence : request.getGeofences()) {
+            if (!geofences.containsKey(geofence.getRequestId())) {
+                added++;
+            }
+        }
+        if (geofences.size() + added > maxGeofences) {
+            return Tasks.forException(new ApiException(GeofenceStatusCodes.GEOFENCE_TOO_MANY_GEOFENCES));
+        }
+        for (Geofence geofence : request.getGeofences()) {
+            geofences.put(geofence.getRequestId(), geofence);
+        }
+        pendingIntent = intent;
+        return Tasks.forResult(null);
+    }
+
+    public synchronized Task<Void> removeGeofences(List<String> ids) {
+        if (failure != 0) {
+            return Tasks.forException(new ApiException(failure));
+        }
+        for (String id : ids) {
+            geofences.remove(id);
+        }
+        return Tasks.forResult(null);
+    }
+
+    public synchronized Task<Void> removeGeofences(PendingIntent intent) {
+        if (failure != 0) {
+            return Tasks.forException(new ApiException(failure));
+        }
+        geofences.clear();
+        return Tasks.forResult(null);
+    }
+
+    public synchronized List<Geofence> getGeofences() {
+        return new ArrayList<Geofence>(geofences.values());
+    }
+
+    /**
+     * @return the intent of the last addGeofences call, which transitions are delivered to
+     */
+    public synchronized PendingIntent getPendingIntent() {
+        return pendingIntent;
+    }
+
+    public synchronized void setMaxGeofences(int maxGeofences) {
+        this.maxGeofences = maxGeofences;
+    }
+
+    /**
+     * @param statusCode a {@link GeofenceStatusCodes} value, 0 to succeed again
+     */
+    public synchronized void setFailure(int statusCode) {
+        failure = statusCode;
+    }
+
+    public synchronized void reset() {
+        geofences.clear();
+        pendingIntent = null;
+        failure = 0;
+        maxGeofences = 100;
+    }
+}
@@ -0,0 +1,58 @@
+package com.google.android.gms.location;
+
+import android.content.Intent;
+import android.location.Location;
+import android.os.Parcelable;
+
+import java.util.List;
+
+/**
+ * Put an event on an intent with {@link #putInto} to simulate what Play Services deliver.
+ */
+public class GeofencingEvent implements Parcelable {
+    public static final String EXTRA_EVENT = "com.google.android.location.intent.extra.geofencing_event";
+
+    private final int errorCode;
+    private final int transition;
+    private final List<Geofence> triggeringGeofences;
+    private final Location triggeringLocation;
+
+    public GeofencingEvent(int errorCode, int transition, List<Geofence> triggeringGeofences,
+                           Location triggeringLocation) {
+        this.errorCode = errorCode;
+        this.transition = transition;
+        this.triggeringGeofences = triggeringGeofences;
+        this.triggeringLocation = triggeringLocation;
+    }
+
+    public static GeofencingEvent fromIntent(Intent intent) {
+        return intent.getParcelableExtra(EXTRA_EVENT);
+    }
+
+    public Intent putInto(Intent intent) {
+        return intent.putExtra(EXTRA_EVENT, this);
+    }
+
+    public boolean hasError() {
+        return errorCode != -1;
+    }
+
+    /**
+     * @return the status code, -1 when the event has no error
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public int getGeofenceTransition() {
+        return transition;
+    }
+
+    public List<Geofence> getTriggeringGeofences() {
+        return triggeringGeofences;
+    }
+
+    public Location getTriggeringLocation() {
+        return triggeringLocation;
+    }
+}
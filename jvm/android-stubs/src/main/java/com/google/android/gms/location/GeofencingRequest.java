@@ -0,0 +1,54 @@
+package com.google.android.gms.location;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class GeofencingRequest {
+    public static final int INITIAL_TRIGGER_ENTER = 1;
+    public static final int INITIAL_TRIGGER_EXIT = 2;
+    public static final int INITIAL_TRIGGER_DWELL = 4;
+
+    private final List<Geofence> geofences;
+    private final int initialTrigger;
+
+    private GeofencingRequest(List<Geofence> geofences, int initialTrigger) {
+        this.geofences = Collections.unmodifiableList(geofences);
+        this.initialTrigger = initialTrigger;
+    }
+
+    public List<Geofence> getGeofences() {
+        return geofences;
+    }
+
+    public int getInitialTrigger() {
+        return initialTrigger;
+    }
+
+    public static final class Builder {
+        private final List<Geofence> geofences = new ArrayList<Geofence>();
+        private int initialTrigger = INITIAL_TRIGGER_ENTER | INITIAL_TRIGGER_DWELL;
+
+        public Builder setInitialTrigger(int initialTrigger) {
+            this.initialTrigger = initialTrigger;
+            return this;
+        }
+
+        public Builder addGeofences(List<Geofence> geofences) {
+            this.geofences.addAll(geofences);
+            return this;
+        }
+
+        public Builder addGeofence(Geofence geofence) {
+            geofences.add(geofence);
+            return this;
+        }
+
+        public GeofencingRequest build() {
+            if (geofences.isEmpty()) {
+                throw new IllegalArgumentException("No geofence has been added to this request.");
+            }
+            return new GeofencingRequest(new ArrayList<Geofence>(geofences), initialTrigger);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.google.android.gms.location;
+
+import android.content.Context;
+
+public class LocationServices {
+    private static final GeofencingClient client = new GeofencingClient();
+
+    /**
+     * @return the process wide client, like Play Services all contexts share the registrations
+     */
+    public static GeofencingClient getGeofencingClient(Context context) {
+        return client;
+    }
+}
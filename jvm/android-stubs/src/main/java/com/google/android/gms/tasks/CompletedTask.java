@@ -0,0 +1,59 @@
+package com.google.android.gms.tasks;
+
+/**
+ * The stand-in client completes every task synchronously, listeners run on the calling thread.
+ */
+final class CompletedTask<TResult> extends Task<TResult> {
+    private final TResult result;
+    private final Exception exception;
+
+    CompletedTask(TResult result, Exception exception) {
+        this.result = result;
+        this.exception = exception;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return true;
+    }
+
+    @Override
+    public boolean isSuccessful() {
+        return exception == null;
+    }
+
+    @Override
+    public Exception getException() {
+        return exception;
+    }
+
+    @Override
+    public TResult getResult() {
+        if (exception != null) {
+            throw new IllegalStateException(exception);
+        }
+        return result;
+    }
+
+    @Override
+    public Task<TResult> addOnCompleteListener(OnCompleteListener<TResult> listener) {
+        listener.onComplete(this);
+        return this;
+    }
+
+    @Override
+    public Task<TResult> addOnSuccessListener(OnSuccessListener<? super TResult> listener) {
+        if (exception == null) {
+            listener.onSuccess(result);
+        }
+        return this;
+    }
+
+    @Override
+    public Task<TResult> addOnFailureListener(OnFailureListener listener) {
+        if (exception != null) {
+            listener.onFailure(exception);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,17 @@
+package com.google.android.gms.tasks;
+
+public abstract class Task<TResult> {
+    public abstract boolean isComplete();
+
+    public abstract boolean isSuccessful();
+
+    public abstract Exception getException();
+
+    public abstract TResult getResult();
+
+    public abstract Task<TResult> addOnCompleteListener(OnCompleteListener<TResult> listener);
+
+    public abstract Task<TResult> addOnSuccessListener(OnSuccessListener<? super TResult> listener);
+
+    public abstract Task<TResult> addOnFailureListener(OnFailureListener listener);
+}
@@ -0,0 +1,39 @@
+package com.google.android.gms.tasks;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public final class Tasks {
+    private Tasks() {
+    }
+
+    public static <TResult> Task<TResult> forResult(TResult result) {
+        return new CompletedTask<TResult>(result, null);
+    }
+
+    public static <TResult> Task<TResult> forException(Exception e) {
+        return new CompletedTask<TResult>(null, e);
+    }
+
+    public static <TResult> TResult await(Task<TResult> task) throws ExecutionException, InterruptedException {
+        if (!task.isSuccessful()) {
+            throw new ExecutionException(task.getException());
+        }
+        return task.getResult();
+    }
+
+    public static <TResult> TResult await(Task<TResult> task, long timeout, TimeUnit unit)
+            throws ExecutionException, InterruptedException {
+        return await(task);
+    }
+
+    public static Task<Void> whenAll(Collection<? extends Task<?>> tasks) {
+        for (Task<?> task : tasks) {
+            if (!task.isSuccessful()) {
+                return forException(task.getException());
+            }
+        }
+        return forResult(null);
+    }
+}
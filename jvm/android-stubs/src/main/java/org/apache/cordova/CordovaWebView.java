@@ -0,0 +1,11 @@
+package org.apache.cordova;
+
+import android.content.Context;
+
+public interface CordovaWebView {
+    Context getContext();
+
+    void loadUrl(String url);
+
+    void sendPluginResult(PluginResult pluginResult, String callbackId);
+}
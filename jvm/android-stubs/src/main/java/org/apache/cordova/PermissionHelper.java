@@ -0,0 +1,26 @@
+package org.apache.cordova;
+
+import android.content.pm.PackageManager;
+
+import org.json.JSONException;
+
+/**
+ * Grants every request straight away.
+ */
+public class PermissionHelper {
+    public static void requestPermissions(CordovaPlugin plugin, int requestCode, String[] permissions) {
+        int[] results = new int[permissions.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = PackageManager.PERMISSION_GRANTED;
+        }
+        try {
+            plugin.onRequestPermissionResult(requestCode, permissions, results);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static boolean hasPermission(CordovaPlugin plugin, String permission) {
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class PluginResult {
+    public enum Status {
+        NO_RESULT,
+        OK,
+        CLASS_NOT_FOUND_EXCEPTION,
+        ILLEGAL_ACCESS_EXCEPTION,
+        INSTANTIATION_EXCEPTION,
+        MALFORMED_URL_EXCEPTION,
+        IO_EXCEPTION,
+        INVALID_ACTION,
+        JSON_EXCEPTION,
+        ERROR
+    }
+
+    private final Status status;
+    private final String message;
+    private boolean keepCallback;
+
+    public PluginResult(Status status) {
+        this(status, (String) null);
+    }
+
+    public PluginResult(Status status, String message) {
+        this.status = status;
+        this.message = message;
+    }
+
+    public PluginResult(Status status, JSONObject message) {
+        this(status, message.toString());
+    }
+
+    public PluginResult(Status status, JSONArray message) {
+        this(status, message.toString());
+    }
+
+    public PluginResult(Status status, int message) {
+        this(status, String.valueOf(message));
+    }
+
+    public PluginResult(Status status, boolean message) {
+        this(status, String.valueOf(message));
+    }
+
+    public int getStatus() {
+        return status.ordinal();
+    }
+
+    /**
+     * @return the message as the JS side receives it, strings are not quoted
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean getKeepCallback() {
+        return keepCallback;
+    }
+
+    public void setKeepCallback(boolean keepCallback) {
+        this.keepCallback = keepCallback;
+    }
+}
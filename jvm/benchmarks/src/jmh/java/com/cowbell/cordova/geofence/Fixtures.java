@@ -0,0 +1,75 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fences shaped like the ones apps send to addOrUpdate.
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static String geoNotificationJson(int i) {
+        double latitude = 50.0 + (i % 1000) * 0.001;
+        double longitude = 19.0 + (i / 1000) * 0.001;
+        return "{\"id\":\"fence-" + i + "\""
+                + ",\"user_id\":\"user-" + (i % 7) + "\""
+                + ",\"latitude\":" + latitude
+                + ",\"longitude\":" + longitude
+                + ",\"radius\":" + (100 + i % 400)
+                + ",\"transitionType\":1"
+                + ",\"startTime\":\"2020-01-01T00:00:00.000Z\""
+                + ",\"endTime\":\"2099-12-31T23:59:59.000Z\""
+                + ",\"url\":\"https://example.com/transitions\""
+                + ",\"authorization\":\"Bearer token\""
+                + ",\"priority\":" + (i % 3)
+                + ",\"notification\":{\"id\":" + i
+                + ",\"title\":\"Welcome to fence " + i + "\""
+                + ",\"text\":\"You just arrived, have a look around\""
+                + ",\"vibrate\":[1000,500,1000]"
+                + ",\"color\":\"#FF8800\""
+                + ",\"openAppOnClick\":true"
+                + ",\"data\":{\"store\":" + i + ",\"tags\":[\"coffee\",\"food\"]}}}";
+    }
+
+    static GeoNotification geoNotification(int i) {
+        return GeoNotification.fromJson(geoNotificationJson(i));
+    }
+
+    static List<GeoNotification> geoNotifications(int from, int count) {
+        List<GeoNotification> result = new ArrayList<GeoNotification>(count);
+        for (int i = from; i < from + count; i++) {
+            result.add(geoNotification(i));
+        }
+        return result;
+    }
+
+    static String geoNotificationsJson(int count) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(geoNotificationJson(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Starts from a fresh data directory and an empty store holding the given number of fences,
+     * written in batches like an import.
+     */
+    static GeoNotificationStore store(int count) {
+        Context.reset(null);
+        Context context = new Context();
+        GeoNotificationStore store = new GeoNotificationStore(context);
+        store.clear();
+        for (int from = 0; from < count; from += 1000) {
+            store.setGeoNotifications(geoNotifications(from, Math.min(1000, count - from)));
+        }
+        return store;
+    }
+}
@@ -0,0 +1,49 @@
+package com.cowbell.cordova.geofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gson encoding and decoding of a single fence, as done by the store and the JS events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeoNotificationJsonBenchmark {
+    private String json;
+    private GeoNotification geoNotification;
+
+    @Setup
+    public void setUp() {
+        json = Fixtures.geoNotificationJson(42);
+        geoNotification = GeoNotification.fromJson(json);
+    }
+
+    @Benchmark
+    public String encode() {
+        geoNotification.invalidateJson();
+        return geoNotification.toJson();
+    }
+
+    @Benchmark
+    public GeoNotification decode() {
+        return GeoNotification.fromJson(json);
+    }
+
+    @Benchmark
+    public GeoNotificationDescriptor decodeDescriptor() {
+        return GeoNotificationDescriptor.fromJson(json);
+    }
+
+    @Benchmark
+    public GeoNotification readOne() throws Exception {
+        return GeoNotificationReader.readOne(json, "Geofence 0");
+    }
+}
@@ -0,0 +1,51 @@
+package com.cowbell.cordova.geofence;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the addOrUpdate arguments: Cordova's JSONArray turned back into strings for Gson,
+ * as done before the raw arguments were read by {@link GeoNotificationReader}, against the
+ * reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IngestBenchmark {
+    @Param({"10000"})
+    public int fences;
+
+    private String rawArgs;
+
+    @Setup
+    public void setUp() {
+        rawArgs = Fixtures.geoNotificationsJson(fences);
+    }
+
+    @Benchmark
+    public List<GeoNotification> jsonArrayThenGson() throws JSONException {
+        JSONArray args = new JSONArray(rawArgs);
+        List<GeoNotification> result = new ArrayList<GeoNotification>(args.length());
+        for (int i = 0; i < args.length(); i++) {
+            result.add(GeoNotification.fromJson(args.getJSONObject(i).toString()));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<GeoNotification> streamingReader() throws JSONException {
+        return GeoNotificationReader.readAll(rawArgs).geoNotifications;
+    }
+}
@@ -0,0 +1,59 @@
+package com.cowbell.cordova.geofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notification checks and color parsing, run when a notification is built.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NotificationBenchmark {
+    private Notification hexColor;
+    private Notification namedColor;
+    private Notification noColor;
+
+    @Setup
+    public void setUp() {
+        hexColor = Fixtures.geoNotification(1).notification;
+        namedColor = Fixtures.geoNotification(2).notification;
+        namedColor.color = "red";
+        noColor = Fixtures.geoNotification(3).notification;
+        noColor.color = null;
+        noColor.frequency = 3600;
+        noColor.setLastTriggered();
+    }
+
+    @Benchmark
+    public int getColorHex() {
+        return hexColor.getColor();
+    }
+
+    @Benchmark
+    public int getColorNamed() {
+        return namedColor.getColor();
+    }
+
+    @Benchmark
+    public int getColorDefault() {
+        return noColor.getColor();
+    }
+
+    @Benchmark
+    public boolean canBeTriggered() {
+        return hexColor.canBeTriggered();
+    }
+
+    @Benchmark
+    public boolean canBeTriggeredThrottled() {
+        return noColor.canBeTriggered();
+    }
+}
@@ -0,0 +1,74 @@
+package com.cowbell.cordova.geofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fence store on sqlite-jdbc, with WAL and the group committing writer like on a device.
+ * Absolute numbers differ from a phone's flash, relative ones across commits are what matters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StoreBenchmark {
+    @Param({"100", "10000"})
+    public int fences;
+
+    private GeoNotificationStore store;
+    private List<GeoNotification> batch;
+    private GeoNotification single;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = Fixtures.store(fences);
+        batch = Fixtures.geoNotifications(0, 100);
+        single = Fixtures.geoNotification(fences / 2);
+    }
+
+    @Benchmark
+    public void upsert() {
+        single.notification.id = next++;
+        single.invalidateJson();
+        store.setGeoNotification(single);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void upsertBatchOf100() {
+        store.setGeoNotifications(batch);
+    }
+
+    @Benchmark
+    public GeoNotification get() {
+        return store.getGeoNotification("fence-" + (next++ % fences));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<GeoNotification> getAll() {
+        return store.getAll();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<GeoNotificationDescriptor> getAllDescriptors() {
+        return store.getAllDescriptors();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String getAllJson() {
+        return store.getAllJson();
+    }
+}
@@ -0,0 +1,52 @@
+package com.cowbell.cordova.geofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time window checks run for every triggered fence. parseDate is private, getStartTime is the
+ * cheapest way in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeRangeBenchmark {
+    private GeoNotificationDescriptor bounded;
+    private GeoNotificationDescriptor unbounded;
+
+    @Setup
+    public void setUp() {
+        bounded = Fixtures.geoNotification(1);
+        unbounded = Fixtures.geoNotification(2);
+        unbounded.startTime = null;
+        unbounded.endTime = null;
+    }
+
+    @Benchmark
+    public Date parseDate() {
+        return bounded.getStartTime();
+    }
+
+    @Benchmark
+    public boolean isWithinTimeRange() {
+        return bounded.isWithinTimeRange();
+    }
+
+    @Benchmark
+    public boolean isWithinTimeRangeUnbounded() {
+        return unbounded.isWithinTimeRange();
+    }
+
+    @Benchmark
+    public boolean isExpired() {
+        return bounded.isExpired();
+    }
+}
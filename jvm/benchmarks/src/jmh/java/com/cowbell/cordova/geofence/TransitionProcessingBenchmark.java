@@ -0,0 +1,76 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One enter transition of three fences through {@link GeofenceTransitionProcessor}, on the job
+ * path with the rate budgets disabled, against stores of growing size. Work that scales with
+ * the number of stored fences (rather than with the triggered ones) shows up as a slope here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransitionProcessingBenchmark {
+    private static final int TRIGGERED = 3;
+
+    @Param({"100", "10000", "100000"})
+    public int fences;
+
+    private GeofenceTransitionProcessor processor;
+    private Intent[] intents;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GeoNotificationStore store = Fixtures.store(fences);
+        GeofenceConfig config = new GeofenceConfig();
+        config.notificationsPerMinute = 0;
+        config.uploadsPerMinute = 0;
+        config.jsEventsPerMinute = 0;
+        config.transitionBroadcast = true;
+        store.setConfig(config);
+        processor = new GeofenceTransitionProcessor(new Context());
+
+        Location location = new Location("fused");
+        location.setLatitude(50.0);
+        location.setLongitude(19.0);
+        intents = new Intent[16];
+        for (int i = 0; i < intents.length; i++) {
+            List<Geofence> triggered = new ArrayList<Geofence>();
+            for (int j = 0; j < TRIGGERED; j++) {
+                GeoNotification geo = Fixtures.geoNotification((i * 7919 + j * 104729) % fences);
+                triggered.add(new Geofence.Builder()
+                        .setRequestId(geo.id)
+                        .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER)
+                        .setCircularRegion(geo.latitude, geo.longitude, geo.radius)
+                        .build());
+            }
+            intents[i] = new GeofencingEvent(-1, Geofence.GEOFENCE_TRANSITION_ENTER, triggered, location)
+                    .putInto(new Intent());
+        }
+    }
+
+    @Benchmark
+    public void processEnter() {
+        processor.process(intents[next++ & (intents.length - 1)], GeofenceTransitionProcessor.PATH_JOB);
+    }
+}
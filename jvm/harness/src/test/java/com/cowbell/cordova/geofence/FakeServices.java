@@ -0,0 +1,113 @@
+package com.cowbell.cordova.geofence;
+
+import android.app.NotificationManager;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.Context;
+import android.content.Intent;
+
+import com.google.android.gms.location.GeofencingClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory Play Services client, job scheduler, notification manager and JavaScript bridge.
+ * Transitions are handed to the pipeline through intents created by {@link #intentFor}.
+ */
+class FakeServices extends GeofenceServices.Provider {
+    private static final String EXTRA_TRANSITION = "harness.transition";
+
+    final GeofencingClient geofencingClient = new GeofencingClient();
+    final RecordingJobScheduler jobScheduler = new RecordingJobScheduler();
+    final NotificationManager notificationManager = new NotificationManager();
+    final List<String> javascript = Collections.synchronizedList(new ArrayList<String>());
+    private final List<GeofenceTransition> transitions = Collections.synchronizedList(new ArrayList<GeofenceTransition>());
+
+    /**
+     * Every scheduled job, unlike the pending ones of the scheduler which are replaced when
+     * random job ids collide.
+     */
+    static class RecordingJobScheduler extends JobScheduler {
+        final List<JobInfo> scheduled = Collections.synchronizedList(new ArrayList<JobInfo>());
+
+        @Override
+        public int schedule(JobInfo job) {
+            scheduled.add(job);
+            return super.schedule(job);
+        }
+
+        List<JobInfo> scheduled(Class<? extends JobService> service) {
+            List<JobInfo> result = new ArrayList<JobInfo>();
+            synchronized (scheduled) {
+                for (JobInfo job : scheduled) {
+                    if (job.getService().getClassName().equals(service.getName())) {
+                        result.add(job);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    Intent intentFor(GeofenceTransition transition) {
+        synchronized (transitions) {
+            transitions.add(transition);
+            return new Intent().putExtra(EXTRA_TRANSITION, transitions.size() - 1);
+        }
+    }
+
+    /**
+     * Runs the given jobs like JobScheduler would once their constraints are met, waiting for
+     * each of them to finish.
+     */
+    void run(List<JobInfo> jobs) throws Exception {
+        for (final JobInfo job : jobs) {
+            final CountDownLatch finished = new CountDownLatch(1);
+            JobService.setFinishListener(new JobService.FinishListener() {
+                public void onJobFinished(JobService service, JobParameters params, boolean wantsReschedule) {
+                    finished.countDown();
+                }
+            });
+            JobService service = (JobService) Class.forName(job.getService().getClassName())
+                    .getDeclaredConstructor().newInstance();
+            if (service.onStartJob(new JobParameters(job.getId(), job.getExtras()))
+                    && !finished.await(10, TimeUnit.SECONDS)) {
+                throw new AssertionError("Job " + job.getId() + " did not finish");
+            }
+            jobScheduler.cancel(job.getId());
+        }
+        JobService.setFinishListener(null);
+    }
+
+    @Override
+    public GeofencingClient getGeofencingClient(Context context) {
+        return geofencingClient;
+    }
+
+    @Override
+    public GeofenceTransition getTransition(Intent intent) {
+        int index = intent.getIntExtra(EXTRA_TRANSITION, -1);
+        return index < 0 ? super.getTransition(intent) : transitions.get(index);
+    }
+
+    @Override
+    public JobScheduler getJobScheduler(Context context) {
+        return jobScheduler;
+    }
+
+    @Override
+    public NotificationManager getNotificationManager(Context context) {
+        return notificationManager;
+    }
+
+    @Override
+    public void sendJavascript(String js) {
+        javascript.add(js);
+    }
+}
@@ -0,0 +1,100 @@
+package com.cowbell.cordova.geofence;
+
+import android.location.Location;
+
+import com.google.android.gms.location.Geofence;
+
+import org.json.JSONException;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.function.Consumer;
+
+/**
+ * Fences shaped like the ones apps send to addOrUpdate, and the transitions Play Services
+ * reports for them.
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static String fenceJson(int i) {
+        return "{\"id\":\"fence-" + i + "\",\"latitude\":" + (50.0 + i * 0.001) + ",\"longitude\":19.0"
+                + ",\"radius\":150,\"transitionType\":3,\"url\":\"https://example.com/transitions\""
+                + ",\"notification\":{\"id\":" + i + ",\"title\":\"Welcome to fence " + i + "\""
+                + ",\"text\":\"You just arrived\",\"openAppOnClick\":true}}";
+    }
+
+    static GeoNotification fence(int i) throws JSONException {
+        return GeoNotificationReader.readOne(fenceJson(i), "Geofence " + i);
+    }
+
+    /**
+     * A variant of {@link #fence(int)}, serialized again after the given change.
+     */
+    static GeoNotification fence(int i, Consumer<GeoNotification> change) throws JSONException {
+        GeoNotification geoNotification = fence(i);
+        change.accept(geoNotification);
+        geoNotification.invalidateJson();
+        return geoNotification;
+    }
+
+    static List<GeoNotification> fences(int from, int to) throws JSONException {
+        List<GeoNotification> result = new ArrayList<GeoNotification>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(fence(i));
+        }
+        return result;
+    }
+
+    static List<String> ids(int from, int to) {
+        List<String> result = new ArrayList<String>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add("fence-" + i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the given time in the format of startTime and endTime
+     */
+    static String isoDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    static GeofenceTransition enter(String... ids) {
+        return transition(Geofence.GEOFENCE_TRANSITION_ENTER, ids);
+    }
+
+    static GeofenceTransition transition(int type, String... ids) {
+        Location location = new Location("fused");
+        location.setLatitude(50.0);
+        location.setLongitude(19.0);
+        return new GeofenceTransition(GeofenceTransition.NO_ERROR, type, Arrays.asList(ids), location);
+    }
+
+    /**
+     * Enters and exits of one to three neighbouring fences out of the given number.
+     */
+    static List<GeofenceTransition> randomTransitions(Random random, int count, int fences) {
+        List<GeofenceTransition> result = new ArrayList<GeofenceTransition>(count);
+        for (int i = 0; i < count; i++) {
+            int type = random.nextBoolean() ? Geofence.GEOFENCE_TRANSITION_ENTER : Geofence.GEOFENCE_TRANSITION_EXIT;
+            int first = random.nextInt(fences - 3);
+            String[] ids = new String[1 + random.nextInt(3)];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = "fence-" + (first + j);
+            }
+            result.add(transition(type, ids));
+        }
+        return result;
+    }
+}
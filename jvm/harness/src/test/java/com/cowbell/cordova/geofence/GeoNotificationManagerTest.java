@@ -0,0 +1,131 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Context;
+import android.os.PowerManager;
+
+import com.google.android.gms.location.Geofence;
+
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.cowbell.cordova.geofence.Fixtures.enter;
+import static com.cowbell.cordova.geofence.Fixtures.fence;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeoNotificationManagerTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    @Test
+    public void activateUserOnlySwitchesTheUserPartitions() throws Exception {
+        GeoNotificationManager manager = new GeoNotificationManager(harness.context);
+        manager.addGeoNotifications(Arrays.asList(
+                fence(0), fence(1, f -> f.user_id = "a"), fence(2, f -> f.user_id = "a"), fence(3, f -> f.user_id = "b")));
+        assertEquals(Arrays.asList("fence-0", "fence-1", "fence-2", "fence-3"), harness.registeredIds());
+
+        GeoNotificationManager.ActivationResult result = manager.activateUser("a");
+        assertEquals(1, result.unregistered);
+        assertEquals(0, result.registration.registered);
+        assertEquals(Arrays.asList("fence-0", "fence-1", "fence-2"), harness.registeredIds());
+
+        result = manager.activateUser("b");
+        assertEquals("a", result.previousUserId);
+        assertEquals(2, result.unregistered);
+        assertEquals(1, result.registration.registered);
+        assertEquals(Arrays.asList("fence-0", "fence-3"), harness.registeredIds());
+
+        // Stored, not registered, and late events of the inactive partition are dropped
+        manager.addGeoNotifications(Arrays.asList(fence(4, f -> f.user_id = "a")));
+        assertEquals(Arrays.asList("fence-0", "fence-3"), harness.registeredIds());
+        assertEquals(5, harness.store.getAll().size());
+        harness.process(enter("fence-1"));
+        assertTrue(harness.services.jobScheduler.scheduled(NotificationDeliveryJob.class).isEmpty());
+
+        result = manager.activateUser(null);
+        assertEquals(1, result.unregistered);
+        assertEquals(Arrays.asList("fence-0"), harness.registeredIds());
+        assertEquals(1, harness.store.getRegistrableDescriptors().size());
+    }
+
+    @Test
+    public void addedFencesKeepTheRegisteredTier() throws Exception {
+        GeofenceConfig config = new GeofenceConfig();
+        config.responsivenessMode = GeofenceResponsiveness.MODE_ADAPTIVE;
+        harness.setConfig(config);
+        GeoNotificationManager manager = new GeoNotificationManager(harness.context);
+        manager.registerGeofences(Arrays.asList(fence(0)), 0);
+        assertEquals(GeofenceResponsiveness.TIER_NORMAL, harness.store.getState(GeofenceResponsiveness.STATE_KEY));
+
+        ((PowerManager) harness.context.getSystemService(Context.POWER_SERVICE)).setPowerSaveMode(true);
+        manager.registerGeofences(Arrays.asList(fence(1)), 0);
+        assertEquals(Arrays.asList(0, 0), responsiveness());
+        assertEquals(GeofenceResponsiveness.TIER_NORMAL, harness.store.getState(GeofenceResponsiveness.STATE_KEY));
+
+        // The restore registers every fence again and saves the tier itself
+        GeoNotificationManager restore = new GeoNotificationManager(harness.context);
+        assertEquals(GeofenceResponsiveness.TIER_RELAXED, restore.useCurrentTier());
+        restore.registerGeofences(Arrays.asList(fence(0), fence(1)), 0);
+        assertEquals(Arrays.asList(300000, 300000), responsiveness());
+        assertEquals(GeofenceResponsiveness.TIER_NORMAL, harness.store.getState(GeofenceResponsiveness.STATE_KEY));
+    }
+
+    @Test
+    public void groupOperationsSwitchTheWholeGroup() throws Exception {
+        GeoNotificationManager manager = new GeoNotificationManager(harness.context);
+        manager.addGeoNotifications(Arrays.asList(
+                grouped(0, "g", "x"), grouped(1, "g", "x", "y"), grouped(2, "h", "x"), fence(3)));
+        GeoNotificationFilter filter = new GeoNotificationFilter();
+        filter.group = "g";
+        filter.tag = "x";
+        assertEquals(2, harness.store.getPage(null, 10, filter).count);
+
+        assertEquals(2, manager.disableGroup("g").fences);
+        assertEquals(Arrays.asList("fence-2", "fence-3"), harness.registeredIds());
+        // Added to the disabled group: stored, not registered
+        manager.addGeoNotifications(Arrays.asList(grouped(4, "g", "z")));
+        assertEquals(Arrays.asList("fence-2", "fence-3"), harness.registeredIds());
+        assertEquals(2, harness.store.getRegistrableDescriptors().size());
+
+        assertEquals(3, manager.enableGroup("g").fences);
+        assertEquals(Arrays.asList("fence-0", "fence-1", "fence-2", "fence-3", "fence-4"), harness.registeredIds());
+
+        assertEquals(3, manager.removeGroup("g").fences);
+        assertEquals(Arrays.asList("fence-2", "fence-3"), harness.registeredIds());
+        assertEquals(2, harness.store.getAll().size());
+        filter.group = null;
+        // The tags of the removed fences are gone with them
+        assertEquals(1, harness.store.getPage(null, 10, filter).count);
+    }
+
+    @Test
+    public void removedGroupsForgetTheirDisabledState() throws Exception {
+        GeoNotificationManager manager = new GeoNotificationManager(harness.context);
+        manager.addGeoNotifications(Arrays.asList(grouped(0, "g", "x"), fence(1)));
+        manager.disableGroup("g");
+        manager.removeGroup("g");
+        // Added to a group of the same name: registered like any other fence
+        manager.addGeoNotifications(Arrays.asList(grouped(2, "g", "x")));
+        assertEquals(Arrays.asList("fence-1", "fence-2"), harness.registeredIds());
+    }
+
+    private static GeoNotification grouped(int i, String group, String... tags) throws JSONException {
+        return fence(i, f -> {
+            f.group = group;
+            f.tags = Arrays.asList(tags);
+        });
+    }
+
+    private List<Integer> responsiveness() {
+        List<Integer> result = new ArrayList<Integer>();
+        for (Geofence geofence : harness.services.geofencingClient.getGeofences()) {
+            result.add(geofence.getNotificationResponsiveness());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+package com.cowbell.cordova.geofence;
+
+import com.google.gson.stream.JsonReader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static com.cowbell.cordova.geofence.Fixtures.fence;
+import static com.cowbell.cordova.geofence.Fixtures.fenceJson;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GeoNotificationReaderTest {
+    @Test
+    public void readsEveryElementOfTheArguments() throws JSONException {
+        GeoNotificationReader.Result result = GeoNotificationReader.readAll(
+                " [ " + fenceJson(0) + " ,\n" + fenceJson(1) + " ] ");
+
+        assertEquals(2, result.geoNotifications.size());
+        GeoNotification geoNotification = result.geoNotifications.get(1);
+        assertEquals("fence-1", geoNotification.id);
+        assertEquals(50.001, geoNotification.latitude, 0);
+        assertEquals(150, geoNotification.radius);
+        assertEquals("Welcome to fence 1", geoNotification.notification.title);
+        assertTrue(geoNotification.notification.openAppOnClick);
+    }
+
+    @Test
+    public void keepsTheSerializedFormAsIs() throws JSONException {
+        String serialized = fence(0).toJson();
+
+        GeoNotificationReader.Result result = GeoNotificationReader.readAll("[" + serialized + "]");
+
+        assertEquals(0, result.normalized);
+        assertEquals(serialized, result.geoNotifications.get(0).toJson());
+    }
+
+    @Test
+    public void addsTheDefaultsOfSparseFences() throws JSONException {
+        GeoNotificationReader.Result result = GeoNotificationReader.readAll("[" + fenceJson(0) + "]");
+
+        assertEquals(1, result.normalized);
+        JSONObject notification = new JSONObject(result.geoNotifications.get(0).toJson()).getJSONObject("notification");
+        assertEquals(1000, notification.getJSONArray("vibrate").getLong(0));
+        assertEquals(0, notification.getInt("frequency"));
+    }
+
+    @Test
+    public void readsAnEmptyArray() throws JSONException {
+        assertTrue(GeoNotificationReader.readAll("[ ]").geoNotifications.isEmpty());
+    }
+
+    @Test
+    public void splitsElementsOnlyOutsideOfStrings() throws JSONException {
+        String tricky = "{\"id\":\"a}\\\"[\",\"name\":\"{,}\"}";
+
+        assertEquals(Arrays.asList(tricky, "{}"), GeoNotificationReader.splitArray("[" + tricky + ",{}]"));
+    }
+
+    @Test
+    public void dropsUnknownFieldsAndNormalizes() throws JSONException {
+        GeoNotificationReader.Result result = GeoNotificationReader.readAll(
+                "[" + fenceJson(0).replace("{\"id\"", "{\"color\":\"red\",\"id\"") + "]");
+
+        assertEquals(1, result.normalized);
+        JSONObject stored = new JSONObject(result.geoNotifications.get(0).toJson());
+        assertFalse(stored.has("color"));
+        assertEquals("fence-0", stored.getString("id"));
+    }
+
+    @Test
+    public void dropsUnknownFieldsOfTheNotification() throws JSONException {
+        String serialized = fence(0).toJson().replace("\"notification\":{", "\"notification\":{\"sound\":\"bell\",");
+
+        GeoNotificationReader.Result result = GeoNotificationReader.readAll("[" + serialized + "]");
+
+        assertEquals(1, result.normalized);
+        assertFalse(new JSONObject(result.geoNotifications.get(0).toJson()).getJSONObject("notification").has("sound"));
+    }
+
+    @Test
+    public void storesNumericStringsAsNumbers() throws JSONException {
+        GeoNotificationReader.Result result = GeoNotificationReader.readAll(
+                "[" + fenceJson(0).replace("\"radius\":150", "\"radius\":\"150\"") + "]");
+
+        assertEquals(1, result.normalized);
+        assertEquals(150, new JSONObject(result.geoNotifications.get(0).toJson()).get("radius"));
+    }
+
+    @Test
+    public void namesTheInvalidGeofence() {
+        assertInvalid("[" + fenceJson(0) + "," + fenceJson(1).replace("\"radius\":150", "\"radius\":0") + "]",
+                "Geofence 1: radius must be positive");
+        assertInvalid("[" + fenceJson(0).replace("\"id\":\"fence-0\",", "") + "]", "Geofence 0: id is not provided");
+        assertInvalid("[" + fenceJson(0).replace("\"latitude\":50.0", "\"latitude\":91") + "]",
+                "Geofence 0: latitude is missing or out of range");
+        assertInvalid("[" + fenceJson(0).replace("\"radius\":150", "\"radius\":true") + "]",
+                "Geofence 0: radius must be a number");
+    }
+
+    @Test
+    public void rejectsMalformedArguments() {
+        assertInvalid("{}", "Expected a JSON array of geofences");
+        assertInvalid("[1]", "Geofence 0 is not an object");
+        assertInvalid("[" + fenceJson(0), "Unterminated JSON array of geofences");
+        assertInvalid("[{\"id\":}]", "Geofence 0 is malformed");
+        assertInvalid("[" + fenceJson(0).replace("\"notification\":{", "\"notification\":[1],\"other\":{") + "]",
+                "Geofence 0: notification is malformed");
+    }
+
+    @Test
+    public void readsFencesOfAStream() throws Exception {
+        JsonReader reader = new JsonReader(new StringReader("[" + fenceJson(0) + "," + fenceJson(1) + "]"));
+        reader.beginArray();
+
+        assertEquals("fence-0", GeoNotificationReader.readNext(reader, "Fence 0").id);
+        assertEquals("fence-1", GeoNotificationReader.readNext(reader, "Fence 1").id);
+        assertFalse(reader.hasNext());
+    }
+
+    private static void assertInvalid(String rawArgs, String message) {
+        try {
+            GeoNotificationReader.readAll(rawArgs);
+            fail("Accepted " + rawArgs);
+        } catch (JSONException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.cowbell.cordova.geofence;
+
+import org.json.JSONArray;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.cowbell.cordova.geofence.Fixtures.fence;
+import static com.cowbell.cordova.geofence.Fixtures.fences;
+import static com.cowbell.cordova.geofence.Fixtures.ids;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeoNotificationStoreTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    @Test
+    public void pagesThroughAllFencesInIdOrder() throws Exception {
+        harness.store.setGeoNotifications(fences(0, 25));
+
+        List<String> listed = new ArrayList<String>();
+        String cursor = null;
+        int pages = 0;
+        GeoNotificationStore.Page page;
+        do {
+            page = harness.store.getPage(cursor, 10, new GeoNotificationFilter());
+            JSONArray fences = new JSONArray(page.json);
+            assertEquals(page.count, fences.length());
+            for (int i = 0; i < fences.length(); i++) {
+                listed.add(fences.getJSONObject(i).getString("id"));
+            }
+            cursor = page.cursor;
+            pages++;
+        } while (!page.done);
+
+        List<String> expected = ids(0, 25);
+        Collections.sort(expected);
+        assertEquals(expected, listed);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    public void pagesOnlyTheMatchingFences() throws Exception {
+        harness.store.setGeoNotifications(Arrays.asList(
+                fence(0, f -> f.group = "g"), fence(1), fence(2, f -> f.group = "g"),
+                fence(3, f -> f.latitude = 10), fence(4, f -> f.endTime = Fixtures.isoDate(0))));
+
+        GeoNotificationFilter group = new GeoNotificationFilter();
+        group.group = "g";
+        GeoNotificationStore.Page page = harness.store.getPage(null, 1, group);
+        assertEquals(1, page.count);
+        assertFalse(page.done);
+        page = harness.store.getPage(page.cursor, 1, group);
+        assertEquals("fence-2", new JSONArray(page.json).getJSONObject(0).getString("id"));
+
+        GeoNotificationFilter box = new GeoNotificationFilter();
+        box.hasBoundingBox = true;
+        box.minLatitude = 0;
+        box.maxLatitude = 20;
+        box.minLongitude = -180;
+        box.maxLongitude = 180;
+        page = harness.store.getPage(null, 10, box);
+        assertEquals(1, page.count);
+        assertTrue(page.done);
+
+        GeoNotificationFilter active = new GeoNotificationFilter();
+        active.activeOnly = true;
+        assertEquals(4, harness.store.getPage(null, 10, active).count);
+    }
+
+    @Test
+    public void movesTheLastFlag() throws Exception {
+        harness.store.setGeoNotifications(fences(0, 3));
+
+        harness.store.setIsLast(fence(1));
+        harness.store.setIsLast(fence(2));
+
+        assertFalse(harness.store.getGeoNotification("fence-1").isLast);
+        assertTrue(harness.store.getGeoNotification("fence-2").isLast);
+        harness.store.clearIsLast();
+        for (GeoNotification geoNotification : harness.store.getAll()) {
+            assertFalse(geoNotification.id, geoNotification.isLast);
+        }
+    }
+}
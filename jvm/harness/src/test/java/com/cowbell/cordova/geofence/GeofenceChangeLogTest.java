@@ -0,0 +1,51 @@
+package com.cowbell.cordova.geofence;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.cowbell.cordova.geofence.Fixtures.enter;
+import static com.cowbell.cordova.geofence.Fixtures.fence;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceChangeLogTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    @Test
+    public void changeFeedReturnsOnlyTheChangesSinceAVersion() throws Exception {
+        GeofenceChangeLog changeLog = new GeofenceChangeLog(harness.context);
+        long start = changeLog.getVersion();
+        harness.store.setGeoNotifications(Arrays.asList(fence(0), fence(1)));
+
+        JSONObject changes = new JSONObject(changeLog.getChangesSince(start, 100));
+        assertEquals(2, changes.getJSONArray("upserts").length());
+        assertFalse(changes.getBoolean("more"));
+        long version = changes.getLong("version");
+        assertEquals(0, new JSONObject(changeLog.getChangesSince(version, 100)).getJSONArray("upserts").length());
+
+        harness.process(enter("fence-0"));
+        new GeoNotificationManager(harness.context).removeGeoNotifications(Arrays.asList("fence-1"));
+
+        changes = new JSONObject(changeLog.getChangesSince(version, 100));
+        assertEquals(1, changes.getJSONArray("upserts").length());
+        assertTrue(changes.getJSONArray("upserts").getJSONObject(0).getBoolean("isLast"));
+        assertEquals("fence-1", changes.getJSONArray("deletes").getString(0));
+        assertEquals(0, changes.getJSONArray("triggered").getJSONObject(0).getInt("notificationId"));
+        JSONObject first = new JSONObject(changeLog.getChangesSince(version, 1));
+        assertTrue(first.getBoolean("more"));
+        JSONObject rest = new JSONObject(changeLog.getChangesSince(first.getLong("version"), 100));
+        assertFalse(rest.getBoolean("more"));
+        assertEquals(changes.getLong("version"), rest.getLong("version"));
+
+        // Callers behind compacted tombstones have to list everything again
+        assertTrue(changeLog.compact(0) >= 1);
+        changes = new JSONObject(changeLog.getChangesSince(version, 100));
+        assertTrue(changes.getBoolean("reset"));
+        assertFalse(new JSONObject(changeLog.getChangesSince(changes.getLong("version"), 100)).getBoolean("reset"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.cowbell.cordova.geofence;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.cowbell.cordova.geofence.Fixtures.fences;
+import static com.cowbell.cordova.geofence.Fixtures.ids;
+import static org.junit.Assert.assertEquals;
+
+public class GeofenceHealthMonitorTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    @Test
+    public void reconcileRegistersOnlyTheFencesNotArmed() throws Exception {
+        harness.store.setGeoNotifications(fences(0, 3));
+        GeofenceHealthMonitor monitor = new GeofenceHealthMonitor(harness.context);
+        monitor.markAllDropped();
+        monitor.markArmed(ids(0, 2));
+        monitor.markArmed(Arrays.asList("fence-removed"));
+        monitor.markDisarmed(ids(1, 2));
+
+        JSONObject health = monitor.getHealth();
+        assertEquals(3, health.getInt("expected"));
+        assertEquals(1, health.getInt("armed"));
+        assertEquals(2, health.getInt("missing"));
+
+        GeoNotificationManager.RegistrationResult result =
+                monitor.reconcile(new GeoNotificationManager(harness.context));
+
+        assertEquals(ids(1, 3), result.registeredIds);
+        assertEquals(ids(1, 3), harness.registeredIds());
+        health = monitor.getHealth();
+        assertEquals(3, health.getInt("armed"));
+        assertEquals(0, health.getInt("missing"));
+        assertEquals(2, health.getInt("lastReconcileRegistered"));
+    }
+}
@@ -0,0 +1,201 @@
+package com.cowbell.cordova.geofence;
+
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.cowbell.cordova.geofence.Fixtures.fenceJson;
+import static com.cowbell.cordova.geofence.Fixtures.ids;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GeofenceImporterTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    private final List<String> phases = new ArrayList<String>();
+    private int storedChunks;
+    private final GeofenceImporter.Listener listener = new GeofenceImporter.Listener() {
+        public void onProgress(GeofenceImporter.Result progress) {
+            phases.add(progress.phase);
+            storedChunks = progress.storedChunks;
+        }
+    };
+
+    @Test
+    public void importsNdjsonInChunks() throws Exception {
+        int count = GeofenceImporter.CHUNK_SIZE + 10;
+        harness.services.geofencingClient.setMaxGeofences(count);
+        File file = ndjson(0, count);
+
+        GeofenceImporter.Result result = new GeofenceImporter(harness.context).importFile(
+                "file://" + file.getPath(), GeofenceImporter.FORMAT_NDJSON, listener);
+
+        assertEquals(count, result.read);
+        assertEquals(count, result.changed);
+        assertEquals(count, result.registered);
+        assertEquals(count, harness.store.getAllIds().size());
+        assertEquals(Arrays.asList(GeofenceImporter.PHASE_STORING, GeofenceImporter.PHASE_REGISTERING,
+                GeofenceImporter.PHASE_STORING, GeofenceImporter.PHASE_REGISTERING), phases);
+    }
+
+    @Test
+    public void skipsUnchangedFences() throws Exception {
+        GeofenceImporter importer = new GeofenceImporter(harness.context);
+        importer.importFile(ndjson(0, 3).getPath(), null, listener);
+
+        File file = ndjson(0, 4);
+        GeofenceImporter.Result result = importer.importFile(file.getPath(), null, listener);
+
+        assertEquals(4, result.read);
+        assertEquals(1, result.changed);
+        assertEquals(3, result.unchanged);
+        assertEquals(1, result.registered);
+    }
+
+    @Test
+    public void importsTheBinaryFormat() throws Exception {
+        File file = Files.createTempFile("geofences", ".bin").toFile();
+        file.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.write(new byte[] { 'G', 'F', 'B', '1' });
+            for (int i = 0; i < 2; i++) {
+                out.write(1);
+                out.writeUTF("fence-" + i);
+                out.writeDouble(50.0 + i);
+                out.writeDouble(19.0);
+                out.writeInt(200);
+                out.writeInt(1);
+                byte[] payload = i == 0
+                        ? "{\"notification\":{\"id\":0,\"title\":\"Binary\"}}".getBytes(StandardCharsets.UTF_8)
+                        : new byte[0];
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+        }
+
+        GeofenceImporter.Result result = new GeofenceImporter(harness.context).importFile(
+                file.getPath(), GeofenceImporter.FORMAT_BINARY, listener);
+
+        assertEquals(2, result.changed);
+        GeoNotification first = harness.store.getGeoNotification("fence-0");
+        assertEquals(200, first.radius);
+        assertEquals("Binary", first.notification.title);
+        assertEquals(51.0, harness.store.getGeoNotification("fence-1").latitude, 0);
+        assertEquals(ids(0, 2), harness.registeredIds());
+    }
+
+    @Test
+    public void rejectsCorruptPayloadLengths() throws Exception {
+        GeofenceImporter importer = new GeofenceImporter(harness.context);
+        assertImportFails(importer, binaryWithPayloadLength(Integer.MAX_VALUE).getPath(), GeofenceImporter.FORMAT_BINARY,
+                "Corrupt record 0: payload of " + Integer.MAX_VALUE + " bytes");
+        assertImportFails(importer, binaryWithPayloadLength(-1).getPath(), GeofenceImporter.FORMAT_BINARY,
+                "Corrupt record 0: payload of -1 bytes");
+        assertImportFails(importer, binaryWithPayloadLength(100).getPath(), GeofenceImporter.FORMAT_BINARY,
+                "Truncated record 0");
+        assertTrue(harness.store.getAllIds().isEmpty());
+    }
+
+    @Test
+    public void reportsTheLineOfAnInvalidFence() throws Exception {
+        File file = ndjson(0, 3);
+        Files.write(file.toPath(), "\n{\"id\":\"broken\"}\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try {
+            new GeofenceImporter(harness.context).importFile(file.getPath(), null, listener);
+            fail("Imported an invalid fence");
+        } catch (JSONException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 5: "));
+        }
+        assertTrue(harness.registeredIds().isEmpty());
+    }
+
+    @Test
+    public void resumesAfterTheChunksStoredBeforeAnInvalidFence() throws Exception {
+        int count = GeofenceImporter.CHUNK_SIZE + 10;
+        harness.services.geofencingClient.setMaxGeofences(count);
+        File file = ndjson(0, count);
+        String lines = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        String broken = lines.replace(fenceJson(count - 1), "{\"id\":\"broken\"}");
+        Files.write(file.toPath(), broken.getBytes(StandardCharsets.UTF_8));
+        GeofenceImporter importer = new GeofenceImporter(harness.context);
+
+        try {
+            importer.importFile(file.getPath(), null, listener);
+            fail("Imported an invalid fence");
+        } catch (JSONException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line " + count + ": "));
+        }
+        assertEquals(1, storedChunks);
+        assertEquals(GeofenceImporter.CHUNK_SIZE, harness.registeredIds().size());
+
+        Files.write(file.toPath(), lines.getBytes(StandardCharsets.UTF_8));
+        GeofenceImporter.Result result = importer.importFile(file.getPath(), null, listener);
+
+        assertEquals(GeofenceImporter.CHUNK_SIZE, result.unchanged);
+        assertEquals(10, result.registered);
+        assertEquals(count, harness.registeredIds().size());
+    }
+
+    @Test
+    public void rejectsUnknownFilesAndFormats() throws Exception {
+        GeofenceImporter importer = new GeofenceImporter(harness.context);
+        assertImportFails(importer, "/does/not/exist.ndjson", null, "File not found");
+        assertImportFails(importer, ndjson(0, 1).getPath(), "xml", "Unknown import format xml");
+        assertImportFails(importer, ndjson(0, 1).getPath(), GeofenceImporter.FORMAT_BINARY, "Not a binary geofence file");
+    }
+
+    private void assertImportFails(GeofenceImporter importer, String path, String format, String message)
+            throws JSONException {
+        try {
+            importer.importFile(path, format, listener);
+            fail("Imported " + path);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    /**
+     * One record announcing a payload of the given length, followed by no payload at all.
+     */
+    private static File binaryWithPayloadLength(int length) throws IOException {
+        File file = Files.createTempFile("geofences", ".bin").toFile();
+        file.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.write(new byte[] { 'G', 'F', 'B', '1' });
+            out.write(1);
+            out.writeUTF("fence-0");
+            out.writeDouble(50.0);
+            out.writeDouble(19.0);
+            out.writeInt(200);
+            out.writeInt(1);
+            out.writeInt(length);
+        }
+        return file;
+    }
+
+    private static File ndjson(int from, int to) throws IOException {
+        File file = Files.createTempFile("geofences", ".ndjson").toFile();
+        file.deleteOnExit();
+        StringBuilder lines = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            lines.append(fenceJson(i)).append('\n');
+        }
+        Files.write(file.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,65 @@
+package com.cowbell.cordova.geofence;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceLogBufferTest {
+    @Test
+    public void returnsTheLastEventsOldestFirst() throws Exception {
+        GeofenceLogBuffer buffer = GeofenceLogBuffer.inMemory(4);
+        for (int i = 0; i < 6; i++) {
+            buffer.append(1000 + i, 4, "event " + i);
+        }
+
+        JSONArray events = new JSONArray(buffer.toJson(10));
+        assertEquals(4, events.length());
+        JSONObject first = events.getJSONObject(0);
+        assertEquals(2, first.getLong("seq"));
+        assertEquals(1002, first.getLong("time"));
+        assertEquals("I", first.getString("level"));
+        assertEquals("event 2", first.getString("message"));
+        assertEquals("event 5", events.getJSONObject(3).getString("message"));
+
+        events = new JSONArray(buffer.toJson(2));
+        assertEquals(2, events.length());
+        assertEquals("event 4", events.getJSONObject(0).getString("message"));
+    }
+
+    @Test
+    public void truncatesLongMessagesOnCharacterBoundaries() throws Exception {
+        GeofenceLogBuffer buffer = GeofenceLogBuffer.inMemory(2);
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < GeofenceLogBuffer.SLOT_SIZE; i++) {
+            message.append('é');
+        }
+        buffer.append(0, 6, message);
+
+        String kept = new JSONArray(buffer.toJson(1)).getJSONObject(0).getString("message");
+        assertTrue(kept.length() > 0 && kept.length() < message.length());
+        assertEquals(message.substring(0, kept.length()), kept);
+        assertEquals("E", new JSONArray(buffer.toJson(1)).getJSONObject(0).getString("level"));
+    }
+
+    @Test
+    public void keepsTheEventsOfAMappedFile() throws Exception {
+        File file = File.createTempFile("geofence-log", ".bin");
+        file.deleteOnExit();
+        GeofenceLogBuffer.mapped(file, 8).append(1, 3, "before the restart");
+
+        GeofenceLogBuffer reopened = GeofenceLogBuffer.mapped(file, 8);
+        reopened.append(2, 3, "after the restart");
+        JSONArray events = new JSONArray(reopened.toJson(8));
+        assertEquals(2, events.length());
+        assertEquals("before the restart", events.getJSONObject(0).getString("message"));
+        assertEquals(1, events.getJSONObject(1).getLong("seq"));
+
+        // Another slot count starts over
+        assertEquals(0, new JSONArray(GeofenceLogBuffer.mapped(file, 4).toJson(8)).length());
+    }
+}
@@ -0,0 +1,114 @@
+package com.cowbell.cordova.geofence;
+
+import android.app.job.JobInfo;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.android.gms.location.Geofence;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.cowbell.cordova.geofence.Fixtures.fence;
+import static com.cowbell.cordova.geofence.Fixtures.fences;
+import static com.cowbell.cordova.geofence.Fixtures.ids;
+import static com.cowbell.cordova.geofence.Fixtures.isoDate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceMaintenanceTest {
+    private static final long DAY_MILLIS = 24 * 3600000L;
+
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    @Test
+    public void fencesRegisterUntilTheirEndTime() throws Exception {
+        new GeoNotificationManager(harness.context).addGeoNotifications(Arrays.asList(
+                fence(0, f -> f.endTime = isoDate(System.currentTimeMillis() + 3600000)), fence(1)));
+
+        List<Geofence> geofences = harness.services.geofencingClient.getGeofences();
+        assertTrue(geofences.get(0).getExpirationTime() > 0);
+        assertEquals(Geofence.NEVER_EXPIRE, geofences.get(1).getExpirationTime());
+    }
+
+    @Test
+    public void purgesExpiredFences() throws Exception {
+        new GeoNotificationManager(harness.context).addGeoNotifications(Arrays.asList(
+                fence(0, f -> f.endTime = isoDate(System.currentTimeMillis() - 60000)),
+                fence(1, f -> f.endTime = isoDate(System.currentTimeMillis() + 3600000)),
+                fence(2)));
+
+        GeofenceMaintenance.Result result = new GeofenceMaintenance(harness.context).run();
+
+        assertTrue(result.error, result.success);
+        assertEquals(1, result.expiredFences);
+        assertEquals(Arrays.asList("fence-1", "fence-2"), harness.registeredIds());
+        assertEquals(2, harness.store.getAll().size());
+    }
+
+    @Test
+    public void trimsOldTriggerTimes() throws Exception {
+        harness.store.setGeoNotifications(Arrays.asList(
+                fence(6), fence(7, f -> f.notification.frequency = (int) (60 * DAY_MILLIS / 1000)), fence(8)));
+        harness.store.setLastTriggered(6, System.currentTimeMillis() - 40 * DAY_MILLIS);
+        // Cannot be triggered again for another 20 days
+        harness.store.setLastTriggered(7, System.currentTimeMillis() - 40 * DAY_MILLIS);
+        harness.store.setLastTriggered(8, System.currentTimeMillis());
+        // Its fence is gone
+        harness.store.setLastTriggered(9, System.currentTimeMillis() - 40 * DAY_MILLIS);
+
+        GeofenceMaintenance.Result result = new GeofenceMaintenance(harness.context).run();
+
+        assertEquals(2, result.triggersTrimmed);
+        assertEquals(Arrays.asList(7, 8), triggeredNotificationIds(6, 7, 8, 9));
+        // Not answered from the cache either
+        assertEquals(0, new FrequencyControlStorage(harness.context).getLastTriggered(6));
+    }
+
+    @Test
+    public void vacuumsOnceFreePagesPileUp() throws Exception {
+        // Both runs leave free pages behind, the first vacuum switches to incremental auto vacuum
+        for (int run = 0; run < 2; run++) {
+            harness.store.setGeoNotifications(fences(100, 2100));
+            harness.store.remove(ids(100, 2100));
+
+            GeofenceMaintenance.Result result = new GeofenceMaintenance(harness.context).run();
+            assertTrue(result.error, result.vacuumed);
+            assertTrue(result.bytesReclaimed > 0);
+        }
+        // Nothing left to reclaim
+        assertFalse(new GeofenceMaintenance(harness.context).run().vacuumed);
+    }
+
+    @Test
+    public void schedulesOneIdleJob() {
+        GeofenceMaintenanceJob.schedule(harness.context);
+        GeofenceMaintenanceJob.schedule(harness.context);
+
+        List<JobInfo> jobs = harness.services.jobScheduler.scheduled(GeofenceMaintenanceJob.class);
+        assertEquals(1, jobs.size());
+        assertTrue(jobs.get(0).isRequireDeviceIdle());
+        assertTrue(jobs.get(0).isPersisted());
+    }
+
+    private List<Integer> triggeredNotificationIds(int... ids) {
+        List<Integer> result = new ArrayList<Integer>();
+        SQLiteDatabase db = LocalStorageDBHelper.getInstance(harness.context).getReadableDatabase();
+        for (int id : ids) {
+            Cursor cursor = db.query(LocalStorageDBHelper.TRIGGERS_TABLE_NAME, null,
+                    LocalStorageDBHelper.TRIGGERS_NOTIFICATION_ID + " = ?", new String[] { Integer.toString(id) },
+                    null, null, null);
+            if (cursor.moveToFirst()) {
+                result.add(id);
+            }
+            cursor.close();
+        }
+        return result;
+    }
+}
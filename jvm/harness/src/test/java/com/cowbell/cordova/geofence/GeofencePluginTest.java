@@ -0,0 +1,126 @@
+package com.cowbell.cordova.geofence;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.cowbell.cordova.geofence.Fixtures.fenceJson;
+import static com.cowbell.cordova.geofence.Fixtures.fences;
+import static com.cowbell.cordova.geofence.Fixtures.ids;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Actions called through the bridge of {@link HarnessWebView}.
+ */
+public class GeofencePluginTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    private HarnessWebView webView;
+    private GeofencePlugin plugin;
+
+    @Before
+    public void initialize() {
+        webView = new HarnessWebView();
+        plugin = new GeofencePlugin();
+        plugin.privateInitialize(webView, webView);
+    }
+
+    @After
+    public void destroy() {
+        plugin.onDestroy();
+        webView.shutdown();
+    }
+
+    @Test
+    public void getWatchedPagedAnswersOnePagePerCall() throws Exception {
+        harness.store.setGeoNotifications(fences(0, 5));
+
+        List<String> ids = new ArrayList<String>();
+        String cursor = null;
+        JSONObject page;
+        do {
+            CallbackContext callback = webView.newCallback();
+            JSONObject options = new JSONObject().put("pageSize", 2).put("cursor", cursor);
+            plugin.execute("getWatchedPaged", "[" + options + "]", callback);
+
+            PluginResult result = webView.awaitResult(callback);
+            assertFalse(result.getKeepCallback());
+            page = new JSONObject(result.getMessage());
+            JSONArray fences = page.getJSONArray("fences");
+            for (int i = 0; i < fences.length(); i++) {
+                ids.add(fences.getJSONObject(i).getString("id"));
+            }
+            cursor = page.isNull("cursor") ? null : page.getString("cursor");
+        } while (!page.getBoolean("done"));
+        assertEquals(ids(0, 5), ids);
+    }
+
+    @Test
+    public void getWatchedPagedFilters() throws Exception {
+        harness.store.setGeoNotifications(fences(0, 5));
+
+        CallbackContext callback = webView.newCallback();
+        plugin.execute("getWatchedPaged", "[{\"filter\":{\"boundingBox\":{\"minLatitude\":50.0025}}}]", callback);
+
+        JSONObject page = new JSONObject(webView.awaitResult(callback).getMessage());
+        assertEquals(2, page.getJSONArray("fences").length());
+        assertTrue(page.getBoolean("done"));
+    }
+
+    @Test
+    public void syncDoesNotHoldUpMutations() throws Exception {
+        final CountDownLatch answer = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fences", exchange -> {
+            try {
+                answer.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            GeofenceConfig config = new GeofenceConfig();
+            config.syncUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/fences";
+            harness.setConfig(config);
+
+            CallbackContext sync = webView.newCallback();
+            plugin.execute("sync", new JSONArray(), sync);
+            // Answered while the manifest request is still waiting
+            CallbackContext add = webView.newCallback();
+            plugin.execute("addOrUpdate", "[" + fenceJson(0) + "]", add);
+            assertEquals(PluginResult.Status.OK.ordinal(), webView.awaitResult(add).getStatus());
+            assertEquals(ids(0, 1), harness.registeredIds());
+
+            answer.countDown();
+            assertEquals(PluginResult.Status.OK.ordinal(), webView.awaitResult(sync).getStatus());
+        } finally {
+            answer.countDown();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.cowbell.cordova.geofence;
+
+import android.app.job.JobInfo;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.cowbell.cordova.geofence.Fixtures.fences;
+import static com.cowbell.cordova.geofence.Fixtures.ids;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GeofenceRestoreJobTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    @Test
+    public void appStartLeavesAPendingRestoreAlone() throws Exception {
+        new GeoNotificationManager(harness.context).addGeoNotifications(fences(0, 3));
+        // Rebooted: Play Services forgot every fence
+        harness.services.geofencingClient.reset();
+        GeofenceRestoreJob.schedule(harness.context, GeofenceRestoreJob.TRIGGER_BOOT);
+        GeofenceRestoreJob.schedule(harness.context, GeofenceRestoreJob.TRIGGER_APP_START);
+
+        List<JobInfo> pending = harness.services.jobScheduler.getAllPendingJobs();
+        assertEquals(1, pending.size());
+        assertEquals(GeofenceRestoreJob.TRIGGER_BOOT, pending.get(0).getExtras().getString("trigger"));
+        harness.services.run(pending);
+        assertEquals(ids(0, 3), harness.registeredIds());
+        assertNull(harness.store.getState(GeofenceRestoreJob.FULL_RESTORE_KEY));
+    }
+
+    @Test
+    public void fullRestoreSurvivesAReplacedJob() throws Exception {
+        new GeoNotificationManager(harness.context).addGeoNotifications(fences(0, 3));
+        harness.services.geofencingClient.reset();
+        GeofenceRestoreJob.schedule(harness.context, GeofenceRestoreJob.TRIGGER_BOOT);
+        // Replaces the boot job before it ran
+        GeofenceRestoreJob.schedule(harness.context, GeofenceRestoreJob.TRIGGER_PROVIDERS_CHANGED);
+
+        harness.services.run(harness.services.jobScheduler.getAllPendingJobs());
+        assertEquals(ids(0, 3), harness.registeredIds());
+        assertNull(harness.store.getState(GeofenceRestoreJob.FULL_RESTORE_KEY));
+    }
+}
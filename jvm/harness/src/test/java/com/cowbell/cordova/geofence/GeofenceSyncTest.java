@@ -0,0 +1,154 @@
+package com.cowbell.cordova.geofence;
+
+import android.app.job.JobInfo;
+
+import com.google.android.gms.location.GeofenceStatusCodes;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.cowbell.cordova.geofence.Fixtures.fence;
+import static com.cowbell.cordova.geofence.Fixtures.fenceJson;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceSyncTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    @Test
+    public void syncAppliesOnlyTheChangesOfTheManifest() throws Exception {
+        final AtomicReference<String> manifest = new AtomicReference<String>(
+                "{\"fences\":[" + fenceJson(0) + "," + fenceJson(1) + "," + fenceJson(2) + "]}");
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServer server = serve(manifest, requests);
+        try {
+            GeofenceConfig config = configure(server);
+            // Added by the app, not part of any manifest
+            new GeoNotificationManager(harness.context).addGeoNotifications(Arrays.asList(fence(9)));
+
+            GeofenceSync.Result result = new GeofenceSync(harness.context).sync();
+            assertTrue(result.error, result.success);
+            assertEquals(3, result.inserted);
+            assertEquals(3, result.registered);
+            assertEquals(Arrays.asList("fence-0", "fence-1", "fence-2", "fence-9"), harness.registeredIds());
+
+            // Unchanged: answered with 304 through the scheduled job
+            GeofenceSyncJob.schedule(harness.context, config);
+            List<JobInfo> jobs = harness.services.jobScheduler.scheduled(GeofenceSyncJob.class);
+            assertEquals(1, jobs.size());
+            assertTrue(jobs.get(0).isPeriodic());
+            harness.services.run(jobs);
+            assertEquals(2, requests.get());
+            assertTrue(new JSONObject(harness.store.getState(GeofenceSync.STATE_KEY)).getBoolean("notModified"));
+
+            manifest.set("[" + fenceJson(0).replace("\"radius\":150", "\"radius\":300") + ","
+                    + fenceJson(2) + "," + fenceJson(3) + "]");
+            result = new GeofenceSync(harness.context).sync();
+            assertEquals(1, result.inserted);
+            assertEquals(1, result.updated);
+            assertEquals(1, result.deleted);
+            assertEquals(1, result.unchanged);
+            assertEquals(2, result.registered);
+            assertEquals(Arrays.asList("fence-0", "fence-2", "fence-3", "fence-9"), harness.registeredIds());
+            assertEquals(300, harness.store.getGeoNotification("fence-0").radius);
+            assertEquals(4, harness.store.getAll().size());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void fencesWhoseRegistrationFailedAreAppliedAgain() throws Exception {
+        final AtomicReference<String> manifest = new AtomicReference<String>(
+                "[" + fenceJson(0) + "," + fenceJson(1) + "]");
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServer server = serve(manifest, requests);
+        try {
+            configure(server);
+            harness.services.geofencingClient.setFailure(GeofenceStatusCodes.GEOFENCE_NOT_AVAILABLE);
+            GeofenceSync.Result result = new GeofenceSync(harness.context).sync();
+            assertEquals(2, result.inserted);
+            assertEquals(0, result.registered);
+            assertEquals(2, harness.store.getAll().size());
+            assertNull(harness.store.getState(GeofenceSync.ETAG_KEY));
+
+            // Not answered with 304, the stored fences count as changed until registered
+            harness.services.geofencingClient.setFailure(0);
+            result = new GeofenceSync(harness.context).sync();
+            assertFalse(result.notModified);
+            assertEquals(2, result.inserted);
+            assertEquals(2, result.registered);
+            assertEquals(Arrays.asList("fence-0", "fence-1"), harness.registeredIds());
+            assertNotNull(harness.store.getState(GeofenceSync.ETAG_KEY));
+            assertTrue(new GeofenceSync(harness.context).sync().notModified);
+            assertEquals(3, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void manifestsListingAnIdTwiceAreRejected() throws Exception {
+        final AtomicReference<String> manifest = new AtomicReference<String>(
+                "[" + fenceJson(0) + "," + fenceJson(1) + "," + fenceJson(0) + "]");
+        HttpServer server = serve(manifest, new AtomicInteger());
+        try {
+            configure(server);
+            GeofenceSync.Result result = new GeofenceSync(harness.context).sync();
+            assertFalse(result.success);
+            assertFalse(result.retry);
+            assertTrue(result.error, result.error.contains("fence-0 is listed twice"));
+            assertEquals(0, harness.store.getAll().size());
+            assertEquals(0, harness.registeredIds().size());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Serves the current manifest with its hash as ETag, answering 304 when it is unchanged.
+     */
+    private static HttpServer serve(final AtomicReference<String> manifest, final AtomicInteger requests)
+            throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fences", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = manifest.get().getBytes(StandardCharsets.UTF_8);
+            String etag = "\"" + GeofenceSync.hash(manifest.get()) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+    private GeofenceConfig configure(HttpServer server) {
+        GeofenceConfig config = new GeofenceConfig();
+        config.syncUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/fences";
+        harness.setConfig(config);
+        return config;
+    }
+}
@@ -0,0 +1,42 @@
+package com.cowbell.cordova.geofence;
+
+import android.os.PersistableBundle;
+import android.os.SystemClock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class GeofenceTraceTest {
+    @Test
+    public void recordsTheLatencyOfJobExtrasOfThisBoot() {
+        PersistableBundle extras = new PersistableBundle();
+        GeofenceTrace.start().putInto(extras);
+
+        assertEquals(0, dropped(GeofenceTrace.fromBundle(extras)));
+    }
+
+    @Test
+    public void dropsTheLatencyOfJobExtrasOfAnotherBoot() {
+        PersistableBundle extras = new PersistableBundle();
+        GeofenceTrace trace = GeofenceTrace.start();
+        trace.putInto(extras);
+
+        // Received later than now, elapsed realtime restarted
+        extras.putLong("receivedAt", SystemClock.elapsedRealtime() + 60000);
+        assertEquals(1, dropped(GeofenceTrace.fromBundle(extras)));
+
+        // Received earlier than now, but the device booted an hour later
+        extras.putLong("receivedAt", 0);
+        extras.putLong("bootTime", extras.getLong("bootTime") - 3600 * 1000);
+        GeofenceTrace previousBoot = GeofenceTrace.fromBundle(extras);
+        assertEquals(trace.id, previousBoot.id);
+        assertEquals(1, dropped(previousBoot));
+    }
+
+    private static long dropped(GeofenceTrace trace) {
+        long before = GeofenceMetrics.get("latency.dropped");
+        trace.record("test");
+        return GeofenceMetrics.get("latency.dropped") - before;
+    }
+}
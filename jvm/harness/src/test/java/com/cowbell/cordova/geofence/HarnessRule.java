@@ -0,0 +1,75 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Context;
+
+import com.google.android.gms.location.Geofence;
+
+import org.junit.rules.ExternalResource;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Starts every test with the fakes of {@link FakeServices} installed, no stored fences, no
+ * plugin state and a config without budgets.
+ */
+class HarnessRule extends ExternalResource {
+    // The database helper is a process wide singleton, all tests share the database
+    private static File dataDir;
+
+    FakeServices services;
+    Context context;
+    GeoNotificationStore store;
+
+    @Override
+    protected void before() throws Throwable {
+        synchronized (HarnessRule.class) {
+            if (dataDir == null) {
+                dataDir = Files.createTempDirectory("geofence-harness").toFile();
+            }
+        }
+        Context.reset(dataDir);
+        services = new FakeServices();
+        GeofenceServices.setProvider(services);
+        context = new Context();
+        store = new GeoNotificationStore(context);
+        store.clear();
+        new LocalStorage(context, LocalStorageDBHelper.STATE_TABLE_NAME).clear();
+        setConfig(new GeofenceConfig());
+    }
+
+    @Override
+    protected void after() {
+        GeofenceServices.setProvider(null);
+    }
+
+    void setConfig(GeofenceConfig config) {
+        config.notificationsPerMinute = 0;
+        config.uploadsPerMinute = 0;
+        config.jsEventsPerMinute = 0;
+        store.setConfig(config);
+    }
+
+    /**
+     * Runs the transition through the processor like the transition job does.
+     */
+    void process(GeofenceTransition transition) {
+        new GeofenceTransitionProcessor(context)
+                .process(services.intentFor(transition), GeofenceTransitionProcessor.PATH_JOB);
+    }
+
+    /**
+     * @return the ids registered with the fake geofencing client, sorted
+     */
+    List<String> registeredIds() {
+        List<String> ids = new ArrayList<String>();
+        for (Geofence geofence : services.geofencingClient.getGeofences()) {
+            ids.add(geofence.getRequestId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,96 @@
+package com.cowbell.cordova.geofence;
+
+import android.app.Activity;
+import android.content.Context;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cordova side of the bridge: the activity, the plugin thread pool and the plugin results sent
+ * back to JavaScript, by callback id.
+ */
+class HarnessWebView implements CordovaWebView, CordovaInterface {
+    private final Activity activity = new Activity();
+    private final ExecutorService threadPool = Executors.newCachedThreadPool();
+    private final Map<String, List<PluginResult>> results = new HashMap<String, List<PluginResult>>();
+    private int nextCallbackId;
+
+    CallbackContext newCallback() {
+        synchronized (results) {
+            return new CallbackContext("Geofence" + nextCallbackId++, this);
+        }
+    }
+
+    /**
+     * @return the first result sent to the callback, waiting for it up to 10 seconds
+     */
+    PluginResult awaitResult(CallbackContext callback) throws InterruptedException {
+        return awaitResult(callback, 0);
+    }
+
+    /**
+     * @return the result sent to the callback at the given position, for kept callbacks
+     */
+    PluginResult awaitResult(CallbackContext callback, int index) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        synchronized (results) {
+            List<PluginResult> sent;
+            while ((sent = results.get(callback.getCallbackId())) == null || sent.size() <= index) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    throw new AssertionError("No result for " + callback.getCallbackId());
+                }
+                results.wait(left);
+            }
+            return sent.get(index);
+        }
+    }
+
+    void shutdown() {
+        threadPool.shutdownNow();
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult, String callbackId) {
+        synchronized (results) {
+            List<PluginResult> sent = results.get(callbackId);
+            if (sent == null) {
+                sent = new ArrayList<PluginResult>();
+                results.put(callbackId, sent);
+            }
+            sent.add(pluginResult);
+            results.notifyAll();
+        }
+    }
+
+    @Override
+    public Context getContext() {
+        return activity;
+    }
+
+    @Override
+    public void loadUrl(String url) {
+        throw new UnsupportedOperationException("JavaScript goes through GeofenceServices");
+    }
+
+    @Override
+    public Activity getActivity() {
+        return activity;
+    }
+
+    @Override
+    public ExecutorService getThreadPool() {
+        return threadPool;
+    }
+}
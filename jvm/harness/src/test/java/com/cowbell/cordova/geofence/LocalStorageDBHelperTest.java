@@ -0,0 +1,133 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.cowbell.cordova.geofence.Fixtures.fence;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Upgrades databases written by previous versions of the plugin.
+ */
+public class LocalStorageDBHelperTest {
+    private static final String NAME = "geonotifications-upgrade.db";
+
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    private final List<SQLiteOpenHelper> helpers = new ArrayList<SQLiteOpenHelper>();
+
+    @After
+    public void close() {
+        for (SQLiteOpenHelper helper : helpers) {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void upgradesFromVersion4() throws Exception {
+        SQLiteDatabase old = open(new SQLiteOpenHelper(harness.context, NAME, null, 4) {
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE geonotifications (_id TEXT PRIMARY KEY, value TEXT NOT NULL);");
+                db.execSQL("CREATE TABLE notification_triggers (notification_id INTEGER PRIMARY KEY, last_triggered INTEGER NOT NULL);");
+                db.execSQL("CREATE TABLE geofence_state (_id TEXT PRIMARY KEY, value TEXT NOT NULL);");
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            }
+        });
+        insert(old, "geonotifications", "_id", "fence-0", "value", fence(0, f -> {
+            f.user_id = "a";
+            f.group = "g";
+            f.isLast = true;
+        }).toJson());
+        insert(old, "geonotifications", "_id", "fence-1", "value", fence(1).toJson());
+        insert(old, "geonotifications", "_id", GeoNotificationStore.CONFIG_KEY, "value", "{\"delay\":10}");
+        insert(old, "notification_triggers", "notification_id", "0", "last_triggered", "1000");
+        CRC32 checksum = new CRC32();
+        checksum.update("fence-0\nfence-1\n".getBytes(StandardCharsets.UTF_8));
+        insert(old, "geofence_state", "_id", GeofenceHealthMonitor.STATE_KEY, "value",
+                "{\"ids\":[\"fence-1\",\"fence-0\"],\"checksum\":" + checksum.getValue()
+                        + ",\"lastReconcileRegistered\":2}");
+        helpers.get(0).close();
+
+        SQLiteDatabase db = open(new LocalStorageDBHelper(harness.context, NAME));
+
+        // 5: the user_id of the fences is indexed
+        assertEquals(Arrays.asList("fence-0"), ids(db, "user_id = 'a'"));
+        // 6: groups were not stored before, the fences have none
+        assertEquals(Arrays.asList(), ids(db, "group_id IS NOT NULL"));
+        assertEquals(0, count(db, LocalStorageDBHelper.TAGS_TABLE_NAME));
+        assertEquals(0, count(db, LocalStorageDBHelper.DISABLED_GROUPS_TABLE_NAME));
+        // 7: the stored fences and trigger times are the first changes, the config is not one
+        assertEquals(3, count(db, LocalStorageDBHelper.CHANGES_TABLE_NAME));
+        // 8: nothing was synced yet
+        assertEquals(0, count(db, LocalStorageDBHelper.SYNC_TABLE_NAME));
+        // 9: the isLast flag is indexed
+        assertEquals(Arrays.asList("fence-0"), ids(db, "is_last = 1"));
+        // 10: the armed ids moved from the state to their table
+        assertEquals(2, count(db, LocalStorageDBHelper.ARMED_TABLE_NAME));
+        Cursor state = db.query(LocalStorageDBHelper.STATE_TABLE_NAME, new String[] { "value" },
+                "_id = ?", new String[] { GeofenceHealthMonitor.STATE_KEY }, null, null, null);
+        state.moveToFirst();
+        assertEquals("{\"lastReconcileRegistered\":2}", state.getString(0));
+        state.close();
+
+        // The triggers of the new tables work on the upgraded database
+        db.delete(LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME, "_id = 'fence-0'", null);
+        Cursor cursor = db.query(LocalStorageDBHelper.CHANGES_TABLE_NAME, new String[] { "deleted" },
+                "change_key = 'fence-0'", null, null, null, null);
+        cursor.moveToFirst();
+        assertEquals(1, cursor.getInt(0));
+        cursor.close();
+    }
+
+    private SQLiteDatabase open(SQLiteOpenHelper helper) {
+        if (helpers.isEmpty()) {
+            harness.context.getDatabasePath(NAME).delete();
+        }
+        helpers.add(helper);
+        return helper.getWritableDatabase();
+    }
+
+    private static void insert(SQLiteDatabase db, String table, String key, String keyValue,
+                               String column, String value) {
+        ContentValues row = new ContentValues();
+        row.put(key, keyValue);
+        row.put(column, value);
+        db.insert(table, null, row);
+    }
+
+    private static List<String> ids(SQLiteDatabase db, String selection) {
+        List<String> ids = new ArrayList<String>();
+        Cursor cursor = db.query(LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME, new String[] { "_id" },
+                selection, null, null, null, "_id");
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getString(0));
+        }
+        cursor.close();
+        return ids;
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table, null);
+        cursor.moveToFirst();
+        int count = cursor.getInt(0);
+        cursor.close();
+        return count;
+    }
+}
@@ -0,0 +1,41 @@
+package com.cowbell.cordova.geofence;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.cowbell.cordova.geofence.Fixtures.enter;
+import static com.cowbell.cordova.geofence.Fixtures.fence;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoggerTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    @After
+    public void resetLevel() {
+        Logger.setLevel("info");
+    }
+
+    @Test
+    public void transitionsKeepTheConfiguredLevel() throws Exception {
+        GeofenceConfig config = new GeofenceConfig();
+        config.logLevel = "warn";
+        Logger.configure(harness.context, config);
+        assertTrue(Logger.isConfigured());
+
+        // Stored without configuring the logger, only a config change does
+        config.logLevel = "debug";
+        harness.setConfig(config);
+        harness.store.setGeoNotifications(Arrays.asList(fence(0)));
+        harness.process(enter("fence-0"));
+
+        assertFalse(Logger.isLoggable(Log.INFO));
+        assertTrue(Logger.isLoggable(Log.WARN));
+    }
+}
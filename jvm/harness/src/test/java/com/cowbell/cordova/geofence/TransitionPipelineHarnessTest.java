@@ -0,0 +1,210 @@
+package com.cowbell.cordova.geofence;
+
+import android.app.Notification;
+import android.app.job.JobInfo;
+
+import com.google.android.gms.location.Geofence;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.cowbell.cordova.geofence.Fixtures.enter;
+import static com.cowbell.cordova.geofence.Fixtures.fence;
+import static com.cowbell.cordova.geofence.Fixtures.fenceJson;
+import static com.cowbell.cordova.geofence.Fixtures.fences;
+import static com.cowbell.cordova.geofence.Fixtures.randomTransitions;
+import static com.cowbell.cordova.geofence.Fixtures.transition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs synthetic transitions through the real plugin code with the fakes of
+ * {@link FakeServices}, asserting on what reaches the job scheduler, the store, the
+ * notification manager and the JavaScript bridge. The throughput test reports transitions per
+ * second and allocation with -Dharness.report=true.
+ */
+public class TransitionPipelineHarnessTest {
+    @Rule
+    public final HarnessRule harness = new HarnessRule();
+
+    @Test
+    public void addOrUpdateRegistersFencesAndAnswersOverTheBridge() throws Exception {
+        HarnessWebView webView = new HarnessWebView();
+        GeofencePlugin plugin = new GeofencePlugin();
+        plugin.privateInitialize(webView, webView);
+        try {
+            CallbackContext callback = webView.newCallback();
+            plugin.execute("addOrUpdate", "[" + fenceJson(0) + "," + fenceJson(1) + "]", callback);
+
+            PluginResult result = webView.awaitResult(callback);
+            assertEquals(PluginResult.Status.OK.ordinal(), result.getStatus());
+            assertEquals(Arrays.asList("fence-0", "fence-1"), harness.registeredIds());
+            assertEquals(2, harness.store.getAll().size());
+        } finally {
+            plugin.onDestroy();
+            webView.shutdown();
+        }
+    }
+
+    @Test
+    public void enterSchedulesDeliveryAndUploadThenNotifies() throws Exception {
+        harness.store.setGeoNotifications(Arrays.asList(fence(0), fence(1)));
+
+        harness.process(enter("fence-0"));
+
+        List<JobInfo> deliveries = harness.services.jobScheduler.scheduled(NotificationDeliveryJob.class);
+        assertEquals(1, deliveries.size());
+        assertEquals("fence-0", deliveries.get(0).getExtras().getString("id"));
+        assertEquals("ENTER", deliveries.get(0).getExtras().getString("transition"));
+        assertEquals(10000, deliveries.get(0).getMinLatencyMillis());
+        List<JobInfo> uploads = harness.services.jobScheduler.scheduled(TransitionJobService.class);
+        assertEquals(1, uploads.size());
+        assertEquals("https://example.com/transitions", uploads.get(0).getExtras().getString("url"));
+        assertTrue(harness.store.getGeoNotification("fence-0").isLast);
+        assertTrue(harness.services.notificationManager.getPostedNotifications().isEmpty());
+
+        harness.services.run(deliveries);
+
+        Notification notification = harness.services.notificationManager.getPostedNotifications().get(0);
+        assertEquals("Welcome to fence 0", notification.title);
+        assertEquals(1, harness.services.javascript.size());
+        assertTrue(harness.services.javascript.get(0).contains("geofence.onTransitionReceived("));
+        assertTrue(harness.services.javascript.get(0).contains("\"id\":\"fence-0\""));
+        assertFalse(harness.store.getGeoNotification("fence-0").isLast);
+    }
+
+    @Test
+    public void fastPathDisplaysInlineThroughTheReceiver() throws Exception {
+        GeofenceConfig config = new GeofenceConfig();
+        config.fastPath = true;
+        config.delay = 0;
+        harness.setConfig(config);
+        harness.store.setGeoNotifications(Arrays.asList(fence(0), fence(1)));
+
+        new GeofenceBroadcastReceiver().onReceive(harness.context, harness.services.intentFor(enter("fence-1")));
+
+        // Scheduling the upload is the last step of the processing
+        long deadline = System.currentTimeMillis() + 10000;
+        while (harness.services.jobScheduler.scheduled(TransitionJobService.class).isEmpty()) {
+            assertTrue("Transition not processed", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        assertEquals("Welcome to fence 1", harness.services.notificationManager.getPostedNotifications().get(1).title);
+        assertTrue(harness.services.jobScheduler.scheduled(NotificationDeliveryJob.class).isEmpty());
+        assertEquals(1, harness.services.javascript.size());
+    }
+
+    @Test
+    public void receiverQueuesWithoutTheFastPath() throws Exception {
+        harness.store.setGeoNotifications(Arrays.asList(fence(0), fence(1)));
+        long fastPath = GeofenceMetrics.get("transitions.fastPath");
+
+        new GeofenceBroadcastReceiver().onReceive(harness.context, harness.services.intentFor(enter("fence-1")));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (harness.services.jobScheduler.scheduled(TransitionJobService.class).isEmpty()) {
+            assertTrue("Transition not processed", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        assertEquals(fastPath, GeofenceMetrics.get("transitions.fastPath"));
+        assertEquals(1, harness.services.jobScheduler.scheduled(NotificationDeliveryJob.class).size());
+    }
+
+    @Test
+    public void dwellIsSentToJavascript() throws Exception {
+        harness.store.setGeoNotifications(Arrays.asList(fence(0), fence(1), fence(2)));
+
+        harness.process(transition(Geofence.GEOFENCE_TRANSITION_DWELL, "fence-0", "fence-2"));
+
+        assertEquals(1, harness.services.javascript.size());
+        String js = harness.services.javascript.get(0);
+        assertTrue(js.contains("\"id\":\"fence-0\"") && js.contains("\"id\":\"fence-2\""));
+        assertTrue(harness.services.jobScheduler.scheduled(NotificationDeliveryJob.class).isEmpty());
+        assertEquals(2, harness.services.jobScheduler.scheduled(TransitionJobService.class).size());
+    }
+
+    @Test
+    public void javascriptEventPassesTheStoredJsonAsCode() throws Exception {
+        String title = "It's 100%41 \u2028 here";
+        harness.store.setGeoNotifications(Arrays.asList(
+                GeoNotificationReader.readOne(fence(0).toJson().replace("Welcome to fence 0", title), "Geofence 0")));
+
+        harness.process(transition(Geofence.GEOFENCE_TRANSITION_DWELL, "fence-0"));
+
+        String js = harness.services.javascript.get(0);
+        assertTrue(js, js.startsWith("setTimeout(function () { geofence.onTransitionReceived(["));
+        assertTrue(js, js.contains("100\\u002541 \\u2028 here"));
+        assertFalse(js, js.contains("%") || js.contains("\u2028"));
+    }
+
+    @Test
+    public void throughput() throws Exception {
+        int fences = 1000;
+        int transitions = Integer.getInteger("harness.transitions", 2000);
+        for (int from = 0; from < fences; from += 500) {
+            harness.store.setGeoNotifications(fences(from, from + 500));
+        }
+        Random random = new Random(42);
+        List<GeofenceTransition> warmup = randomTransitions(random, transitions / 10, fences);
+        List<GeofenceTransition> measured = randomTransitions(random, transitions, fences);
+        for (GeofenceTransition transition : warmup) {
+            harness.process(transition);
+        }
+        harness.services.jobScheduler.scheduled.clear();
+        int triggered = 0;
+        for (GeofenceTransition transition : measured) {
+            triggered += transition.fenceIds.size();
+        }
+
+        long writesBefore = storageWrites();
+        long allocatedBefore = allocatedBytes();
+        long startedAt = System.nanoTime();
+        for (GeofenceTransition transition : measured) {
+            harness.process(transition);
+        }
+        long elapsedNanos = System.nanoTime() - startedAt;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long writes = storageWrites() - writesBefore;
+
+        // Every triggered fence has a notification and an url, budgets are off
+        assertEquals(triggered, harness.services.jobScheduler.scheduled(NotificationDeliveryJob.class).size());
+        assertEquals(triggered, harness.services.jobScheduler.scheduled(TransitionJobService.class).size());
+        // At least the isLast flag and the trigger time of every fence
+        assertTrue(writes >= 2L * triggered);
+
+        if (Boolean.getBoolean("harness.report")) {
+            System.out.printf("harness: %d transitions (%d fences triggered) against %d stored fences in %d ms,"
+                            + " %.0f transitions/s, %d bytes allocated and %.1f store writes per transition%n",
+                    transitions, triggered, fences, elapsedNanos / 1000000,
+                    transitions * 1e9 / elapsedNanos, allocated / transitions, (double) writes / transitions);
+        }
+    }
+
+    private static long storageWrites() throws JSONException {
+        return GeofenceMetrics.toJson().getJSONObject("timers").getJSONObject("storage.write").getLong("count");
+    }
+
+    /**
+     * Allocated by all threads, the store writer included.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
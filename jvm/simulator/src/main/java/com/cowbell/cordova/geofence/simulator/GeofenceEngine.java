@@ -0,0 +1,194 @@
+package com.cowbell.cordova.geofence.simulator;
+
+import android.location.Location;
+
+import com.cowbell.cordova.geofence.GeofenceTransition;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Emulates how the OS turns location fixes into geofence transitions, like Play Services does
+ * for the fences the plugin registers:
+ * <ul>
+ *     <li>a fix is inside a fence when its distance to the center is at most the radius;</li>
+ *     <li>the first fix is the registration: fences the device is inside of trigger ENTER (and
+ *     start loitering) with {@link GeofencingRequest#INITIAL_TRIGGER_ENTER}, fences it is
+ *     outside of trigger EXIT with {@link GeofencingRequest#INITIAL_TRIGGER_EXIT}, without
+ *     initial trigger the state is only recorded;</li>
+ *     <li>crossing the boundary triggers ENTER or EXIT, if the fence monitors it;</li>
+ *     <li>DWELL triggers once per visit at the first fix the device has been inside for the
+ *     loitering delay;</li>
+ *     <li>the fences triggered by a fix are batched into one event per transition type.</li>
+ * </ul>
+ * Fences are kept in a grid of {@link #CELL_DEGREES} cells, so a fix is only checked against
+ * the fences near it and the ones the device is inside of.
+ */
+public class GeofenceEngine {
+    static final double CELL_DEGREES = 0.01;
+    // Fences spanning more cells are checked against every fix
+    private static final int MAX_CELLS_PER_FENCE = 400;
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private static class State {
+        final Geofence fence;
+        boolean inside;
+        long enteredAt;
+        boolean dwelled;
+
+        State(Geofence fence) {
+            this.fence = fence;
+        }
+
+        boolean monitors(int transition) {
+            return (fence.getTransitionTypes() & transition) != 0;
+        }
+    }
+
+    private final List<State> states = new ArrayList<State>();
+    private final Map<Long, List<State>> grid = new HashMap<Long, List<State>>();
+    private final List<State> large = new ArrayList<State>();
+    private final Set<State> inside = new LinkedHashSet<State>();
+    private final int initialTrigger;
+    private final float[] distance = new float[1];
+    private boolean registered;
+
+    /**
+     * @param initialTrigger {@link GeofencingRequest} INITIAL_TRIGGER_* flags, 0 for none
+     */
+    public GeofenceEngine(List<Geofence> fences, int initialTrigger) {
+        this.initialTrigger = initialTrigger;
+        for (Geofence fence : fences) {
+            State state = new State(fence);
+            states.add(state);
+            index(state);
+        }
+    }
+
+    public int getFenceCount() {
+        return states.size();
+    }
+
+    /**
+     * @return the events triggered by the fix, ENTER, then DWELL, then EXIT
+     */
+    public List<GeofenceTransition> update(TracePoint point) {
+        List<String> entered = new ArrayList<String>();
+        List<String> dwelled = new ArrayList<String>();
+        List<String> exited = new ArrayList<String>();
+        boolean initial = !registered;
+        registered = true;
+
+        Set<State> candidates = new LinkedHashSet<State>(inside);
+        if (initial) {
+            candidates.addAll(states);
+        } else {
+            List<State> cell = grid.get(cell(row(point.latitude), column(point.longitude)));
+            if (cell != null) {
+                candidates.addAll(cell);
+            }
+            candidates.addAll(large);
+        }
+        for (State state : candidates) {
+            Location.distanceBetween(point.latitude, point.longitude,
+                    state.fence.getLatitude(), state.fence.getLongitude(), distance);
+            boolean isInside = distance[0] <= state.fence.getRadius();
+            if (initial) {
+                if (isInside && (initialTrigger & GeofencingRequest.INITIAL_TRIGGER_ENTER) != 0
+                        && state.monitors(Geofence.GEOFENCE_TRANSITION_ENTER)) {
+                    entered.add(state.fence.getRequestId());
+                } else if (!isInside && (initialTrigger & GeofencingRequest.INITIAL_TRIGGER_EXIT) != 0
+                        && state.monitors(Geofence.GEOFENCE_TRANSITION_EXIT)) {
+                    exited.add(state.fence.getRequestId());
+                }
+                if (isInside) {
+                    enter(state, point.time);
+                    // Without the DWELL initial trigger loitering starts at the next visit
+                    state.dwelled = (initialTrigger & GeofencingRequest.INITIAL_TRIGGER_DWELL) == 0;
+                }
+            } else if (isInside && !state.inside) {
+                enter(state, point.time);
+                if (state.monitors(Geofence.GEOFENCE_TRANSITION_ENTER)) {
+                    entered.add(state.fence.getRequestId());
+                }
+            } else if (!isInside && state.inside) {
+                state.inside = false;
+                inside.remove(state);
+                if (state.monitors(Geofence.GEOFENCE_TRANSITION_EXIT)) {
+                    exited.add(state.fence.getRequestId());
+                }
+            }
+            if (state.inside && !state.dwelled && state.monitors(Geofence.GEOFENCE_TRANSITION_DWELL)
+                    && point.time - state.enteredAt >= state.fence.getLoiteringDelay()) {
+                state.dwelled = true;
+                dwelled.add(state.fence.getRequestId());
+            }
+        }
+
+        List<GeofenceTransition> events = new ArrayList<GeofenceTransition>();
+        Location location = new Location("simulator");
+        location.setLatitude(point.latitude);
+        location.setLongitude(point.longitude);
+        location.setTime(point.time);
+        addEvent(events, Geofence.GEOFENCE_TRANSITION_ENTER, entered, location);
+        addEvent(events, Geofence.GEOFENCE_TRANSITION_DWELL, dwelled, location);
+        addEvent(events, Geofence.GEOFENCE_TRANSITION_EXIT, exited, location);
+        return events;
+    }
+
+    private void enter(State state, long time) {
+        state.inside = true;
+        state.enteredAt = time;
+        state.dwelled = false;
+        inside.add(state);
+    }
+
+    private static void addEvent(List<GeofenceTransition> events, int type, List<String> ids, Location location) {
+        if (!ids.isEmpty()) {
+            events.add(new GeofenceTransition(GeofenceTransition.NO_ERROR, type, ids, location));
+        }
+    }
+
+    private void index(State state) {
+        Geofence fence = state.fence;
+        double latitudeSpan = fence.getRadius() / METERS_PER_DEGREE;
+        double longitudeSpan = latitudeSpan / Math.max(0.01, Math.cos(Math.toRadians(fence.getLatitude())));
+        long firstRow = row(fence.getLatitude() - latitudeSpan);
+        long lastRow = row(fence.getLatitude() + latitudeSpan);
+        long firstColumn = column(fence.getLongitude() - longitudeSpan);
+        long lastColumn = column(fence.getLongitude() + longitudeSpan);
+        if ((lastRow - firstRow + 1) * (lastColumn - firstColumn + 1) > MAX_CELLS_PER_FENCE) {
+            large.add(state);
+            return;
+        }
+        for (long row = firstRow; row <= lastRow; row++) {
+            for (long column = firstColumn; column <= lastColumn; column++) {
+                long key = cell(row, column);
+                List<State> cell = grid.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<State>(2);
+                    grid.put(key, cell);
+                }
+                cell.add(state);
+            }
+        }
+    }
+
+    private static long row(double latitude) {
+        return (long) Math.floor(latitude / CELL_DEGREES);
+    }
+
+    private static long column(double longitude) {
+        return (long) Math.floor(longitude / CELL_DEGREES);
+    }
+
+    private static long cell(long row, long column) {
+        return (row << 32) ^ (column & 0xffffffffL);
+    }
+}
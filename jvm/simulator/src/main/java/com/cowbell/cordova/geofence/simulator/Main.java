@@ -0,0 +1,106 @@
+package com.cowbell.cordova.geofence.simulator;
+
+import com.cowbell.cordova.geofence.GeofenceConfig;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry point, run without arguments for the usage.
+ */
+public class Main {
+    private static final String USAGE = "Usage: geofence-simulator --fences FILE --trace FILE [--trace FILE ...]\n"
+            + "                         [--config FILE] [--initial-trigger enter|exit|dwell|none] [--json FILE]\n"
+            + "\n"
+            + "  --fences           fence snapshot: geonotifications.db, a JSON array or NDJSON\n"
+            + "  --trace            GPX or CSV (time,lat,lon) trace, several files are merged by time\n"
+            + "  --config           GeofenceConfig JSON replacing the config of the snapshot\n"
+            + "  --initial-trigger  initial trigger of the registration, enter by default like the plugin\n"
+            + "  --json             also write the report as JSON\n";
+
+    public static void main(String[] args) throws Exception {
+        File fences = null;
+        File config = null;
+        File json = null;
+        List<File> traces = new ArrayList<File>();
+        int initialTrigger = GeofencingRequest.INITIAL_TRIGGER_ENTER;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--fences")) {
+                    fences = new File(args[++i]);
+                } else if (arg.equals("--trace")) {
+                    traces.add(new File(args[++i]));
+                } else if (arg.equals("--config")) {
+                    config = new File(args[++i]);
+                } else if (arg.equals("--json")) {
+                    json = new File(args[++i]);
+                } else if (arg.equals("--initial-trigger")) {
+                    initialTrigger = parseInitialTrigger(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+                }
+            }
+            if (fences == null || traces.isEmpty()) {
+                throw new IllegalArgumentException("--fences and --trace are required");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing value" : e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        File dataDir = Files.createTempDirectory("geofence-simulator").toFile();
+        Simulator simulator = Simulator.create(dataDir, fences);
+        if (config != null) {
+            String configJson = new String(Files.readAllBytes(config.toPath()), StandardCharsets.UTF_8);
+            simulator.setConfig(new Gson().fromJson(configJson, GeofenceConfig.class));
+        }
+        simulator.setInitialTrigger(initialTrigger);
+        Report report = simulator.run(TraceReader.read(traces));
+
+        System.out.print(report.toText());
+        if (json != null) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(json), StandardCharsets.UTF_8)) {
+                writer.write(report.toJson().toString(2));
+            }
+        }
+        delete(dataDir);
+        // The plugin keeps daemon and pool threads alive
+        System.exit(0);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static int parseInitialTrigger(String value) {
+        switch (value) {
+            case "enter":
+                return GeofencingRequest.INITIAL_TRIGGER_ENTER;
+            case "exit":
+                return GeofencingRequest.INITIAL_TRIGGER_EXIT;
+            case "dwell":
+                return GeofencingRequest.INITIAL_TRIGGER_DWELL;
+            case "none":
+                return 0;
+            default:
+                throw new IllegalArgumentException("Unknown initial trigger " + value);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.cowbell.cordova.geofence.simulator;
+
+import com.google.android.gms.location.Geofence;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What a simulated trace made the plugin do, and how long it took.
+ */
+public class Report {
+    public int fences;
+    public int points;
+    public long traceMillis;
+
+    // Every event is a broadcast waking the app up
+    public int wakeUps;
+    public int enterEvents;
+    public int exitEvents;
+    public int dwellEvents;
+    public int fencesTriggered;
+
+    public int notificationsScheduled;
+    public int notificationsPosted;
+    public int jsEvents;
+    public int uploadsScheduled;
+    public long storeWrites;
+
+    public final Stage engine = new Stage();
+    public final Stage process = new Stage();
+    public final Stage delivery = new Stage();
+
+    // Timers of GeofenceMetrics, process wide
+    public JSONObject metrics;
+
+    /**
+     * Wall clock time of one stage, in nanoseconds per call.
+     */
+    public static class Stage {
+        private long[] samples = new long[64];
+        private int count;
+
+        void add(long nanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += samples[i];
+            }
+            return total;
+        }
+
+        /**
+         * @param quantile between 0 and 1
+         */
+        public long getPercentileNanos(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(quantile * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("totalMs", getTotalNanos() / 1e6);
+            json.put("p50Ms", getPercentileNanos(0.5) / 1e6);
+            json.put("p99Ms", getPercentileNanos(0.99) / 1e6);
+            json.put("maxMs", getPercentileNanos(1) / 1e6);
+            return json;
+        }
+
+        String toText() {
+            return String.format(Locale.US, "%d calls, %.1f ms total, p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                    count, getTotalNanos() / 1e6, getPercentileNanos(0.5) / 1e6,
+                    getPercentileNanos(0.99) / 1e6, getPercentileNanos(1) / 1e6);
+        }
+    }
+
+    void countEvent(int transitionType, int triggered) {
+        wakeUps++;
+        fencesTriggered += triggered;
+        if (transitionType == Geofence.GEOFENCE_TRANSITION_ENTER) {
+            enterEvents++;
+        } else if (transitionType == Geofence.GEOFENCE_TRANSITION_EXIT) {
+            exitEvents++;
+        } else if (transitionType == Geofence.GEOFENCE_TRANSITION_DWELL) {
+            dwellEvents++;
+        }
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("fences", fences);
+        json.put("points", points);
+        json.put("traceMinutes", traceMillis / 60000.0);
+        json.put("wakeUps", wakeUps);
+        json.put("enterEvents", enterEvents);
+        json.put("exitEvents", exitEvents);
+        json.put("dwellEvents", dwellEvents);
+        json.put("fencesTriggered", fencesTriggered);
+        json.put("notificationsScheduled", notificationsScheduled);
+        json.put("notificationsPosted", notificationsPosted);
+        json.put("jsEvents", jsEvents);
+        json.put("uploadsScheduled", uploadsScheduled);
+        json.put("storeWrites", storeWrites);
+        JSONObject stages = new JSONObject();
+        stages.put("engine", engine.toJson());
+        stages.put("process", process.toJson());
+        stages.put("delivery", delivery.toJson());
+        json.put("stages", stages);
+        json.put("metrics", metrics);
+        return json;
+    }
+
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "Trace:         %d points over %.1f minutes against %d fences%n",
+                points, traceMillis / 60000.0, fences));
+        if (fences > 100) {
+            text.append("               Play Services accepts at most 100 fences per app, registering the others fails\n");
+        }
+        text.append(String.format(Locale.US, "Wake-ups:      %d (%d enter, %d exit, %d dwell), %d fences triggered%n",
+                wakeUps, enterEvents, exitEvents, dwellEvents, fencesTriggered));
+        text.append(String.format(Locale.US, "Notifications: %d scheduled, %d posted%n",
+                notificationsScheduled, notificationsPosted));
+        text.append(String.format(Locale.US, "JS events:     %d%n", jsEvents));
+        text.append(String.format(Locale.US, "Uploads:       %d scheduled%n", uploadsScheduled));
+        text.append(String.format(Locale.US, "Store writes:  %d%n", storeWrites));
+        text.append("Engine:        ").append(engine.toText()).append('\n');
+        text.append("Process:       ").append(process.toText()).append('\n');
+        text.append("Delivery:      ").append(delivery.toText()).append('\n');
+        return text.toString();
+    }
+}
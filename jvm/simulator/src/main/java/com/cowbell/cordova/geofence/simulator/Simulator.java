@@ -0,0 +1,261 @@
+package com.cowbell.cordova.geofence.simulator;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Context;
+
+import com.cowbell.cordova.geofence.GeoNotification;
+import com.cowbell.cordova.geofence.GeoNotificationDescriptor;
+import com.cowbell.cordova.geofence.GeoNotificationReader;
+import com.cowbell.cordova.geofence.GeoNotificationStore;
+import com.cowbell.cordova.geofence.GeofenceBudgets;
+import com.cowbell.cordova.geofence.GeofenceConfig;
+import com.cowbell.cordova.geofence.GeofenceMetrics;
+import com.cowbell.cordova.geofence.GeofenceResponsiveness;
+import com.cowbell.cordova.geofence.GeofenceServices;
+import com.cowbell.cordova.geofence.GeofenceTransition;
+import com.cowbell.cordova.geofence.GeofenceTransitionProcessor;
+import com.cowbell.cordova.geofence.LocalStorageDBHelper;
+import com.cowbell.cordova.geofence.NotificationDeliveryJob;
+import com.cowbell.cordova.geofence.TransitionJobService;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingRequest;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a location trace on a simulated device holding a fence snapshot. The transitions
+ * {@link GeofenceEngine} derives from the trace go through {@link GeofenceTransitionProcessor},
+ * like GeofenceTransitionsJobIntentService hands them over on a device. Notification delivery
+ * jobs run once their delay passed in trace time, upload jobs are only counted. The budgets
+ * refill in trace time too, through the clock of {@link SimulatorServices}.
+ *
+ * The plugin reads the wall clock for frequency control and time windows, those follow the
+ * time of the simulation, not the time of the trace.
+ */
+public class Simulator {
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+
+    private final Context context;
+    private final GeoNotificationStore store;
+    private final SimulatorServices services = new SimulatorServices();
+    private final GeofenceTransitionProcessor processor;
+    private int initialTrigger = GeofencingRequest.INITIAL_TRIGGER_ENTER;
+
+    private static class PendingJob {
+        final long due;
+        final JobInfo job;
+
+        PendingJob(long due, JobInfo job) {
+            this.due = due;
+            this.job = job;
+        }
+    }
+
+    private Simulator(Context context) {
+        this.context = context;
+        GeofenceServices.setProvider(services);
+        store = new GeoNotificationStore(context);
+        processor = new GeofenceTransitionProcessor(context);
+    }
+
+    /**
+     * Creates the simulated device in the given directory, which must not be in use, and loads
+     * the fences. The database helper of the plugin is a process wide singleton, so there can
+     * only be one simulator per process.
+     *
+     * @param snapshot the fence database of a device (geonotifications.db), a JSON array of
+     *                 fences as returned by getWatched, or NDJSON as imported by importFromFile
+     */
+    public static Simulator create(File dataDir, File snapshot) throws IOException, JSONException {
+        Context.reset(dataDir);
+        Context context = new Context();
+        if (snapshot.getName().endsWith(".db")) {
+            File database = context.getDatabasePath(LocalStorageDBHelper.DATABASE_NAME);
+            database.getParentFile().mkdirs();
+            Files.copy(snapshot.toPath(), database.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            File wal = new File(snapshot.getPath() + "-wal");
+            if (wal.exists()) {
+                Files.copy(wal.toPath(), new File(database.getPath() + "-wal").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return new Simulator(context);
+        }
+        Simulator simulator = new Simulator(context);
+        simulator.importJson(snapshot);
+        return simulator;
+    }
+
+    /**
+     * Replaces the config of the snapshot.
+     */
+    public void setConfig(GeofenceConfig config) {
+        store.setConfig(config);
+    }
+
+    /**
+     * @param initialTrigger {@link GeofencingRequest} INITIAL_TRIGGER_* flags, the plugin
+     *                       registers with INITIAL_TRIGGER_ENTER
+     */
+    public void setInitialTrigger(int initialTrigger) {
+        this.initialTrigger = initialTrigger;
+    }
+
+    public Report run(List<TracePoint> trace) throws JSONException {
+        Report report = new Report();
+        GeofenceConfig config = store.getConfig();
+        GeofenceResponsiveness responsiveness = new GeofenceResponsiveness(config, GeofenceResponsiveness.TIER_NORMAL);
+        List<Geofence> fences = new ArrayList<Geofence>();
+        for (GeoNotificationDescriptor descriptor : store.getRegistrableDescriptors()) {
+            fences.add(descriptor.toGeofence(responsiveness));
+        }
+        GeofenceEngine engine = new GeofenceEngine(fences, initialTrigger);
+        report.fences = engine.getFenceCount();
+        report.points = trace.size();
+        if (!trace.isEmpty()) {
+            report.traceMillis = trace.get(trace.size() - 1).time - trace.get(0).time;
+        }
+
+        PriorityQueue<PendingJob> deliveries = new PriorityQueue<PendingJob>(16, new Comparator<PendingJob>() {
+            public int compare(PendingJob a, PendingJob b) {
+                return Long.compare(a.due, b.due);
+            }
+        });
+        long writesBefore = storageWrites();
+        GeofenceBudgets.reset();
+        if (!trace.isEmpty()) {
+            services.setTime(trace.get(0).time);
+        }
+        for (TracePoint point : trace) {
+            runDeliveries(deliveries, point.time, report);
+            services.setTime(point.time);
+            long startedAt = System.nanoTime();
+            List<GeofenceTransition> events = engine.update(point);
+            report.engine.add(System.nanoTime() - startedAt);
+            for (GeofenceTransition event : events) {
+                report.countEvent(event.transitionType, event.fenceIds.size());
+                startedAt = System.nanoTime();
+                processor.process(services.intentFor(event), GeofenceTransitionProcessor.PATH_JOB);
+                report.process.add(System.nanoTime() - startedAt);
+                collectJobs(deliveries, point.time, report);
+            }
+        }
+        runDeliveries(deliveries, Long.MAX_VALUE, report);
+
+        report.notificationsPosted = services.notificationsPosted;
+        report.jsEvents = services.jsEvents;
+        report.storeWrites = storageWrites() - writesBefore;
+        report.metrics = GeofenceMetrics.toJson().getJSONObject("timers");
+        return report;
+    }
+
+    private void collectJobs(PriorityQueue<PendingJob> deliveries, long now, Report report) {
+        for (JobInfo job : services.takeScheduled()) {
+            String service = job.getService().getClassName();
+            if (service.equals(NotificationDeliveryJob.class.getName())) {
+                report.notificationsScheduled++;
+                deliveries.add(new PendingJob(now + job.getMinLatencyMillis(), job));
+            } else if (service.equals(TransitionJobService.class.getName())) {
+                report.uploadsScheduled++;
+            }
+        }
+    }
+
+    /**
+     * Runs the delivery jobs due by the given trace time, including the ones they schedule.
+     */
+    private void runDeliveries(PriorityQueue<PendingJob> deliveries, long now, Report report) {
+        while (!deliveries.isEmpty() && deliveries.peek().due <= now) {
+            PendingJob pending = deliveries.poll();
+            services.setTime(pending.due);
+            long startedAt = System.nanoTime();
+            runJob(new NotificationDeliveryJob(), pending.job);
+            report.delivery.add(System.nanoTime() - startedAt);
+            // Deliveries over the notification budget are scheduled again
+            collectJobs(deliveries, pending.due, report);
+        }
+    }
+
+    private static void runJob(JobService service, JobInfo job) {
+        final CountDownLatch finished = new CountDownLatch(1);
+        JobService.setFinishListener(new JobService.FinishListener() {
+            public void onJobFinished(JobService service, JobParameters params, boolean wantsReschedule) {
+                finished.countDown();
+            }
+        });
+        try {
+            if (service.onStartJob(new JobParameters(job.getId(), job.getExtras()))
+                    && !finished.await(30, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Job " + job.getId() + " did not finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            JobService.setFinishListener(null);
+        }
+    }
+
+    private void importJson(File snapshot) throws IOException, JSONException {
+        store.clear();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(snapshot), StandardCharsets.UTF_8))) {
+            reader.mark(1);
+            int first = reader.read();
+            while (first == ' ' || first == '\n' || first == '\r' || first == '\t' || first == '﻿') {
+                reader.mark(1);
+                first = reader.read();
+            }
+            reader.reset();
+            if (first == '[') {
+                StringBuilder json = new StringBuilder();
+                char[] buffer = new char[8192];
+                int read;
+                while ((read = reader.read(buffer)) > 0) {
+                    json.append(buffer, 0, read);
+                }
+                List<GeoNotification> all = GeoNotificationReader.readAll(json.toString()).geoNotifications;
+                for (int from = 0; from < all.size(); from += IMPORT_CHUNK_SIZE) {
+                    store.setGeoNotifications(all.subList(from, Math.min(all.size(), from + IMPORT_CHUNK_SIZE)));
+                }
+                return;
+            }
+            List<GeoNotification> chunk = new ArrayList<GeoNotification>();
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                chunk.add(GeoNotificationReader.readOne(line, "Line " + number));
+                if (chunk.size() == IMPORT_CHUNK_SIZE) {
+                    store.setGeoNotifications(chunk);
+                    chunk.clear();
+                }
+            }
+            store.setGeoNotifications(chunk);
+        }
+    }
+
+    private static long storageWrites() throws JSONException {
+        org.json.JSONObject timers = GeofenceMetrics.toJson().getJSONObject("timers");
+        return timers.has("storage.write") ? timers.getJSONObject("storage.write").getLong("count") : 0;
+    }
+}
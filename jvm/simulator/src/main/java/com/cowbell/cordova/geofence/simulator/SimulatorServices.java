@@ -0,0 +1,94 @@
+package com.cowbell.cordova.geofence.simulator;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.Context;
+import android.content.Intent;
+
+import com.cowbell.cordova.geofence.GeofenceServices;
+import com.cowbell.cordova.geofence.GeofenceTransition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands the simulated transitions to the plugin and counts what it produces. Scheduled jobs are
+ * collected for the simulator to run (or count) instead of being left to a scheduler.
+ */
+class SimulatorServices extends GeofenceServices.Provider {
+    private static final String EXTRA_TRANSITION = "simulator.transition";
+
+    final List<JobInfo> scheduled = new ArrayList<JobInfo>();
+    int notificationsPosted;
+    int jsEvents;
+
+    private GeofenceTransition current;
+    // Trace time, the clock of the budgets
+    private volatile long now;
+
+    private final JobScheduler jobScheduler = new JobScheduler() {
+        @Override
+        public int schedule(JobInfo job) {
+            synchronized (scheduled) {
+                scheduled.add(job);
+            }
+            return RESULT_SUCCESS;
+        }
+    };
+
+    private final NotificationManager notificationManager = new NotificationManager() {
+        @Override
+        public void notify(int id, Notification notification) {
+            synchronized (SimulatorServices.this) {
+                notificationsPosted++;
+            }
+        }
+    };
+
+    /**
+     * @return an intent carrying the transition, the simulator processes one at a time
+     */
+    Intent intentFor(GeofenceTransition transition) {
+        current = transition;
+        return new Intent().putExtra(EXTRA_TRANSITION, true);
+    }
+
+    void setTime(long now) {
+        this.now = now;
+    }
+
+    List<JobInfo> takeScheduled() {
+        synchronized (scheduled) {
+            List<JobInfo> jobs = new ArrayList<JobInfo>(scheduled);
+            scheduled.clear();
+            return jobs;
+        }
+    }
+
+    @Override
+    public GeofenceTransition getTransition(Intent intent) {
+        return intent.getBooleanExtra(EXTRA_TRANSITION, false) ? current : super.getTransition(intent);
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return now;
+    }
+
+    @Override
+    public JobScheduler getJobScheduler(Context context) {
+        return jobScheduler;
+    }
+
+    @Override
+    public NotificationManager getNotificationManager(Context context) {
+        return notificationManager;
+    }
+
+    @Override
+    public synchronized void sendJavascript(String js) {
+        jsEvents++;
+    }
+}
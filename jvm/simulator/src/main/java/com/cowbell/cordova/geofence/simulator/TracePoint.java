@@ -0,0 +1,22 @@
+package com.cowbell.cordova.geofence.simulator;
+
+/**
+ * A location fix of a trace.
+ */
+public class TracePoint {
+    // Milliseconds since the epoch
+    public final long time;
+    public final double latitude;
+    public final double longitude;
+
+    public TracePoint(long time, double latitude, double longitude) {
+        this.time = time;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    @Override
+    public String toString() {
+        return time + " " + latitude + "," + longitude;
+    }
+}
@@ -0,0 +1,163 @@
+package com.cowbell.cordova.geofence.simulator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads location traces from GPX (the trkpt, rtept and wpt points with a time) and CSV files.
+ *
+ * CSV files need a header naming the columns: time (or timestamp), lat (or latitude) and lon
+ * (or lng, longitude), other columns are ignored. Times are ISO-8601 instants or epoch
+ * milliseconds, values below 10^11 are taken as epoch seconds.
+ */
+public class TraceReader {
+    private static final Comparator<TracePoint> BY_TIME = new Comparator<TracePoint>() {
+        public int compare(TracePoint a, TracePoint b) {
+            return Long.compare(a.time, b.time);
+        }
+    };
+
+    /**
+     * @return the points of the given files ordered by time, the format is chosen by extension
+     */
+    public static List<TracePoint> read(List<File> files) throws IOException {
+        List<TracePoint> points = new ArrayList<TracePoint>();
+        for (File file : files) {
+            String name = file.getName().toLowerCase(Locale.US);
+            try (InputStream in = new FileInputStream(file)) {
+                if (name.endsWith(".gpx")) {
+                    points.addAll(readGpx(in));
+                } else if (name.endsWith(".csv")) {
+                    points.addAll(readCsv(new InputStreamReader(in, StandardCharsets.UTF_8)));
+                } else {
+                    throw new IOException("Unknown trace format: " + file + ", expected .gpx or .csv");
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + ": " + e.getMessage(), e);
+            }
+        }
+        Collections.sort(points, BY_TIME);
+        return points;
+    }
+
+    public static List<TracePoint> readGpx(InputStream in) throws IOException {
+        List<TracePoint> points = new ArrayList<TracePoint>();
+        try {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            String latitude = null;
+            String longitude = null;
+            StringBuilder time = null;
+            boolean inTime = false;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    String element = xml.getLocalName();
+                    if (isPoint(element)) {
+                        latitude = xml.getAttributeValue(null, "lat");
+                        longitude = xml.getAttributeValue(null, "lon");
+                        time = null;
+                    } else if (latitude != null && element.equals("time")) {
+                        time = new StringBuilder();
+                        inTime = true;
+                    }
+                } else if (event == XMLStreamReader.CHARACTERS && inTime) {
+                    time.append(xml.getText());
+                } else if (event == XMLStreamReader.END_ELEMENT) {
+                    String element = xml.getLocalName();
+                    if (element.equals("time")) {
+                        inTime = false;
+                    } else if (isPoint(element) && latitude != null) {
+                        if (time == null) {
+                            throw new IOException("GPX point without time at line " + xml.getLocation().getLineNumber());
+                        }
+                        points.add(new TracePoint(parseTime(time.toString().trim()),
+                                Double.parseDouble(latitude), Double.parseDouble(longitude)));
+                        latitude = null;
+                        longitude = null;
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed GPX: " + e.getMessage(), e);
+        }
+        return points;
+    }
+
+    public static List<TracePoint> readCsv(Reader reader) throws IOException {
+        List<TracePoint> points = new ArrayList<TracePoint>();
+        BufferedReader lines = new BufferedReader(reader);
+        String header = lines.readLine();
+        if (header == null) {
+            return points;
+        }
+        String[] columns = header.toLowerCase(Locale.US).split(",");
+        int timeColumn = -1;
+        int latitudeColumn = -1;
+        int longitudeColumn = -1;
+        for (int i = 0; i < columns.length; i++) {
+            String column = columns[i].trim();
+            if (column.equals("time") || column.equals("timestamp")) {
+                timeColumn = i;
+            } else if (column.equals("lat") || column.equals("latitude")) {
+                latitudeColumn = i;
+            } else if (column.equals("lon") || column.equals("lng") || column.equals("longitude")) {
+                longitudeColumn = i;
+            }
+        }
+        if (timeColumn < 0 || latitudeColumn < 0 || longitudeColumn < 0) {
+            throw new IOException("CSV header needs time, lat and lon columns: " + header);
+        }
+        String line;
+        int number = 1;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String[] values = line.split(",");
+            try {
+                points.add(new TracePoint(parseTime(values[timeColumn].trim()),
+                        Double.parseDouble(values[latitudeColumn].trim()),
+                        Double.parseDouble(values[longitudeColumn].trim())));
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed CSV line " + number + ": " + line, e);
+            }
+        }
+        return points;
+    }
+
+    static long parseTime(String value) {
+        if (!value.isEmpty() && Character.isDigit(value.charAt(value.length() - 1)) && value.indexOf('-') < 0) {
+            double number = Double.parseDouble(value);
+            return (long) (number < 1e11 ? number * 1000 : number);
+        }
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // With an offset instead of Z
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        }
+    }
+
+    private static boolean isPoint(String element) {
+        return element.equals("trkpt") || element.equals("rtept") || element.equals("wpt");
+    }
+}
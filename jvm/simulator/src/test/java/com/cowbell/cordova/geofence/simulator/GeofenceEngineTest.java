@@ -0,0 +1,94 @@
+package com.cowbell.cordova.geofence.simulator;
+
+import com.cowbell.cordova.geofence.GeofenceTransition;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingRequest;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceEngineTest {
+    // About 111 meters
+    private static final double DEGREE_OFFSET = 0.001;
+
+    @Test
+    public void entersAndExitsWhenCrossingTheRadius() {
+        GeofenceEngine engine = new GeofenceEngine(Collections.singletonList(
+                fence("a", 50.0, 19.0, 150, Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT)),
+                GeofencingRequest.INITIAL_TRIGGER_ENTER);
+
+        assertTrue(engine.update(point(0, 50.0 + 3 * DEGREE_OFFSET, 19.0)).isEmpty());
+        assertEvents(engine.update(point(10, 50.0 + DEGREE_OFFSET, 19.0)), Geofence.GEOFENCE_TRANSITION_ENTER, "a");
+        assertTrue(engine.update(point(20, 50.0, 19.0)).isEmpty());
+        assertEvents(engine.update(point(30, 50.0 - 2 * DEGREE_OFFSET, 19.0)), Geofence.GEOFENCE_TRANSITION_EXIT, "a");
+    }
+
+    @Test
+    public void initialTriggerFiresForFencesTheDeviceIsInside() {
+        List<Geofence> fences = Arrays.asList(
+                fence("inside", 50.0, 19.0, 150, Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT),
+                fence("outside", 50.01, 19.0, 150, Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT));
+
+        assertEvents(new GeofenceEngine(fences, GeofencingRequest.INITIAL_TRIGGER_ENTER).update(point(0, 50.0, 19.0)),
+                Geofence.GEOFENCE_TRANSITION_ENTER, "inside");
+        assertEvents(new GeofenceEngine(fences, GeofencingRequest.INITIAL_TRIGGER_EXIT).update(point(0, 50.0, 19.0)),
+                Geofence.GEOFENCE_TRANSITION_EXIT, "outside");
+        GeofenceEngine silent = new GeofenceEngine(fences, 0);
+        assertTrue(silent.update(point(0, 50.0, 19.0)).isEmpty());
+        // Already inside, leaving triggers the exit
+        assertEvents(silent.update(point(10, 50.0 + 3 * DEGREE_OFFSET, 19.0)), Geofence.GEOFENCE_TRANSITION_EXIT, "inside");
+    }
+
+    @Test
+    public void dwellsOncePerVisitAfterTheLoiteringDelay() {
+        GeofenceEngine engine = new GeofenceEngine(Collections.singletonList(
+                fence("a", 50.0, 19.0, 150, Geofence.GEOFENCE_TRANSITION_DWELL)), 0);
+
+        assertTrue(engine.update(point(0, 50.01, 19.0)).isEmpty());
+        assertTrue(engine.update(point(1000, 50.0, 19.0)).isEmpty());
+        assertTrue(engine.update(point(20000, 50.0, 19.0)).isEmpty());
+        assertEvents(engine.update(point(31000, 50.0, 19.0)), Geofence.GEOFENCE_TRANSITION_DWELL, "a");
+        assertTrue(engine.update(point(90000, 50.0, 19.0)).isEmpty());
+        assertTrue(engine.update(point(100000, 50.01, 19.0)).isEmpty());
+        assertTrue(engine.update(point(101000, 50.0, 19.0)).isEmpty());
+        assertEvents(engine.update(point(131000, 50.0, 19.0)), Geofence.GEOFENCE_TRANSITION_DWELL, "a");
+    }
+
+    @Test
+    public void batchesFencesTriggeredByTheSameFix() {
+        GeofenceEngine engine = new GeofenceEngine(Arrays.asList(
+                fence("a", 50.0, 19.0, 200, Geofence.GEOFENCE_TRANSITION_ENTER),
+                fence("b", 50.0005, 19.0, 200, Geofence.GEOFENCE_TRANSITION_ENTER),
+                // Spans too many grid cells to be indexed
+                fence("large", 50.0, 19.0, 50000, Geofence.GEOFENCE_TRANSITION_ENTER)),
+                GeofencingRequest.INITIAL_TRIGGER_ENTER);
+
+        assertEvents(engine.update(point(0, 49.9, 19.0)), Geofence.GEOFENCE_TRANSITION_ENTER, "large");
+        assertEvents(engine.update(point(10, 50.0002, 19.0)), Geofence.GEOFENCE_TRANSITION_ENTER, "a", "b");
+    }
+
+    private static void assertEvents(List<GeofenceTransition> events, int type, String... ids) {
+        assertEquals(1, events.size());
+        assertEquals(type, events.get(0).transitionType);
+        assertEquals(Arrays.asList(ids), events.get(0).fenceIds);
+    }
+
+    private static Geofence fence(String id, double latitude, double longitude, float radius, int transitions) {
+        return new Geofence.Builder()
+                .setRequestId(id)
+                .setCircularRegion(latitude, longitude, radius)
+                .setTransitionTypes(transitions)
+                .setLoiteringDelay(30000)
+                .build();
+    }
+
+    private static TracePoint point(long time, double latitude, double longitude) {
+        return new TracePoint(time, latitude, longitude);
+    }
+}
@@ -0,0 +1,53 @@
+package com.cowbell.cordova.geofence.simulator;
+
+import com.cowbell.cordova.geofence.GeofenceConfig;
+import com.cowbell.cordova.geofence.GeofenceMetrics;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SimulatorTest {
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void budgetsRefillInTraceTime() throws Exception {
+        File dataDir = Files.createTempDirectory("simulator").toFile();
+        File fences = new File(dataDir, "fences.ndjson");
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            lines.append("{\"id\":\"fence-").append(i).append("\",\"latitude\":").append(50.0 + i * 0.01)
+                    .append(",\"longitude\":19.0,\"radius\":150,\"transitionType\":1")
+                    .append(",\"notification\":{\"id\":").append(i).append(",\"title\":\"Fence ").append(i)
+                    .append("\"}}\n");
+        }
+        Files.write(fences.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+        Simulator simulator = Simulator.create(dataDir, fences);
+        GeofenceConfig config = new GeofenceConfig();
+        config.delay = 0;
+        config.notificationBurst = 1;
+        config.notificationsPerMinute = 1;
+        simulator.setConfig(config);
+
+        // Three fences entered two minutes apart, within milliseconds of replay
+        List<TracePoint> trace = new ArrayList<TracePoint>();
+        trace.add(new TracePoint(0, 49.9, 19.0));
+        for (int i = 0; i < 3; i++) {
+            trace.add(new TracePoint((1 + 2 * i) * MINUTE, 50.0 + i * 0.01, 19.0));
+        }
+        long deferred = GeofenceMetrics.get("budget.notifications.deferred");
+        long admitted = GeofenceMetrics.get("budget.notifications.admitted");
+
+        Report report = simulator.run(trace);
+
+        assertEquals(3, report.notificationsPosted);
+        assertEquals(3, GeofenceMetrics.get("budget.notifications.admitted") - admitted);
+        assertEquals(0, GeofenceMetrics.get("budget.notifications.deferred") - deferred);
+    }
+}
@@ -0,0 +1,53 @@
+package com.cowbell.cordova.geofence.simulator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TraceReaderTest {
+    @Test
+    public void readsGpxTrackPoints() throws IOException {
+        String gpx = "<?xml version=\"1.0\"?>\n"
+                + "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\"><trk><trkseg>\n"
+                + "<trkpt lat=\"50.5\" lon=\"19.25\"><ele>210</ele><time>2024-05-01T08:00:00Z</time></trkpt>\n"
+                + "<trkpt lat=\"50.6\" lon=\"19.35\"><time>2024-05-01T10:00:05+02:00</time></trkpt>\n"
+                + "</trkseg></trk></gpx>";
+
+        List<TracePoint> points = TraceReader.readGpx(new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, points.size());
+        assertEquals(1714550400000L, points.get(0).time);
+        assertEquals(50.5, points.get(0).latitude, 0);
+        assertEquals(19.25, points.get(0).longitude, 0);
+        assertEquals(1714550405000L, points.get(1).time);
+    }
+
+    @Test
+    public void readsCsvByHeaderWithEpochOrIsoTimes() throws IOException {
+        String csv = "accuracy,Longitude,timestamp,Latitude\n"
+                + "5,19.25,1714550400,50.5\n"
+                + "\n"
+                + "5,19.35,1714550405000,50.6\n"
+                + "5,19.45,2024-05-01T08:00:10Z,50.7\n";
+
+        List<TracePoint> points = TraceReader.readCsv(new StringReader(csv));
+
+        assertEquals(3, points.size());
+        assertEquals(1714550400000L, points.get(0).time);
+        assertEquals(1714550405000L, points.get(1).time);
+        assertEquals(1714550410000L, points.get(2).time);
+        assertEquals(50.7, points.get(2).latitude, 0);
+        assertEquals(19.45, points.get(2).longitude, 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCsvWithoutCoordinates() throws IOException {
+        TraceReader.readCsv(new StringReader("time,value\n1,2\n"));
+    }
+}
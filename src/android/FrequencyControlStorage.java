@@ -0,0 +1,74 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last trigger time of each notification id, used for notification frequency control.
+ *
+ * Kept in its own small table so recording a trigger is a single row upsert instead of
+ * rewriting every serialized fence sharing the notification. Values are cached for the
+ * lifetime of the process, so repeated lookups on the transition path do not hit SQLite.
+ */
+public class FrequencyControlStorage {
+    private static final ConcurrentHashMap<Integer, Long> cache = new ConcurrentHashMap<Integer, Long>();
+
+    private LocalStorageDBHelper localStorageDBHelper;
+    private LocalStorageWriter writer;
+
+    public FrequencyControlStorage(Context c) {
+        localStorageDBHelper = LocalStorageDBHelper.getInstance(c);
+        writer = localStorageDBHelper.getWriter();
+    }
+
+    /**
+     * @return the last trigger time in milliseconds, 0 if the notification was never triggered
+     */
+    public long getLastTriggered(int notificationId) {
+        Long cached = cache.get(notificationId);
+        if (cached != null) {
+            return cached;
+        }
+        long lastTriggered = 0;
+        SQLiteDatabase database = localStorageDBHelper.getReadableDatabase();
+        Cursor cursor = database.query(
+                LocalStorageDBHelper.TRIGGERS_TABLE_NAME,
+                new String[] { LocalStorageDBHelper.TRIGGERS_LAST_TRIGGERED },
+                LocalStorageDBHelper.TRIGGERS_NOTIFICATION_ID + " = ?",
+                new String[] { Integer.toString(notificationId) }, null, null, null);
+        if (cursor.moveToFirst()) {
+            lastTriggered = cursor.getLong(0);
+        }
+        cursor.close();
+        Long raced = cache.putIfAbsent(notificationId, lastTriggered);
+        return raced != null ? raced : lastTriggered;
+    }
+
+    /**
+     * Drops the cached values of the given trigger times deleted from the table, unless the
+     * notification was triggered again since.
+     */
+    static void forget(Map<Integer, Long> lastTriggered) {
+        for (Map.Entry<Integer, Long> entry : lastTriggered.entrySet()) {
+            cache.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void setLastTriggered(final int notificationId, final long lastTriggered) {
+        cache.put(notificationId, lastTriggered);
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                ContentValues values = new ContentValues();
+                values.put(LocalStorageDBHelper.TRIGGERS_NOTIFICATION_ID, notificationId);
+                values.put(LocalStorageDBHelper.TRIGGERS_LAST_TRIGGERED, lastTriggered);
+                db.insertWithOnConflict(LocalStorageDBHelper.TRIGGERS_TABLE_NAME,
+                        null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        });
+    }
+}
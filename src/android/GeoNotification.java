@@ -1,103 +1,88 @@
 package com.cowbell.cordova.geofence;
 
-import com.google.android.gms.location.Geofence;
 import com.google.gson.annotations.Expose;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
+import java.util.List;
 
-public class GeoNotification {
+public class GeoNotification extends GeoNotificationDescriptor {
     @Expose public String _id;
-    @Expose public String id;
     @Expose public String name;
     @Expose public String event;
-    @Expose public String user_id;
     @Expose public String w_actions;
-    @Expose public double latitude;
-    @Expose public double longitude;
-    @Expose public int radius;
-    @Expose public int transitionType;
-    @Expose public int loiteringDelay;
 
     @Expose public String url;
     @Expose public String authorization;
-    @Expose public String startTime;
-    @Expose public String endTime;
-    @Expose public boolean isLast;
+    // Higher priorities are served first and deferred instead of shed when over budget
+    @Expose public int priority;
 
     @Expose public Notification notification;
 
-
+    // Serialized form, the stored JSON when loaded from the store. Reset by the setters, code
+    // assigning fields directly has to call invalidateJson().
+    private transient String json;
 
     public GeoNotification() {
     }
 
-    public Geofence toGeofence() {
-        if(transitionType == 1 || transitionType == 2){
-            // Setup geofence for ENTER or EXIT events
-            return new Geofence.Builder()
-                    .setRequestId(id)
-                    .setTransitionTypes(transitionType )
-                    .setLoiteringDelay(10000)
-                    .setCircularRegion(latitude, longitude, radius)
-                    .setExpirationDuration(Long.MAX_VALUE).build();
-        } else {
-            // Setup geofence for ENTER and EXIT events
-            return new Geofence.Builder()
-                    .setRequestId(id)
-                    .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER |Geofence.GEOFENCE_TRANSITION_EXIT )
-                    .setLoiteringDelay(10000)
-                    .setCircularRegion(latitude, longitude, radius)
-                    .setExpirationDuration(Long.MAX_VALUE).build();
+    public void setTransitionType(int transitionType) {
+        if (this.transitionType != transitionType) {
+            this.transitionType = transitionType;
+            invalidateJson();
         }
     }
 
-    public String toJson() {
-        return Gson.get().toJson(this);
+    public void setLast(boolean isLast) {
+        if (this.isLast != isLast) {
+            this.isLast = isLast;
+            invalidateJson();
+        }
     }
 
-    public static GeoNotification fromJson(String json) {
-        if (json == null) return null;
-        return Gson.get().fromJson(json, GeoNotification.class);
+    /**
+     * Uses the given JSON, known to decode to this fence, as serialized form.
+     */
+    void setJson(String json) {
+        this.json = json;
     }
 
-    public Date getStartTime() {
-        return parseDate(this.startTime);
+    public void invalidateJson() {
+        json = null;
     }
 
-    public Date getEndTime() {
-        return parseDate(this.endTime);
+    public String toJson() {
+        if (json == null) {
+            json = Gson.get().toJson(this);
+        }
+        return json;
     }
 
-    public boolean isWithinTimeRange() {
-        Date now = new Date();
-        Date startTime = getStartTime();
-        Date endTime = getEndTime();
-        boolean greaterThanOrEqualToStartTime = true;
-        boolean lessThanEndTime = true;
-        if (startTime != null) {
-            greaterThanOrEqualToStartTime = now.after(startTime) || now.getTime() == startTime.getTime();
+    /**
+     * Joins the serialized forms of the given fences into a JSON array.
+     */
+    public static String toJson(List<GeoNotification> geoNotifications) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < geoNotifications.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(geoNotifications.get(i).toJson());
         }
-        if (endTime != null) {
-            lessThanEndTime = now.before(endTime);
-        }
-        return greaterThanOrEqualToStartTime && lessThanEndTime;
+        return builder.append(']').toString();
     }
 
-    private Date parseDate(String date) {
-        if (date == null) {
-            return null;
-        }
-        try {
-            SimpleDateFormat format = new SimpleDateFormat(
-                    "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
-            format.setTimeZone(TimeZone.getTimeZone("UTC"));
-            return format.parse(date);
-        } catch (ParseException e) {
-            return null;
+    public static GeoNotification fromJson(String json) {
+        if (json == null) return null;
+        return Gson.get().fromJson(json, GeoNotification.class);
+    }
+
+    /**
+     * Decodes a fence written by the store, keeping the JSON as its serialized form.
+     */
+    static GeoNotification fromStoredJson(String json) {
+        GeoNotification geoNotification = fromJson(json);
+        if (geoNotification != null) {
+            geoNotification.json = json;
         }
+        return geoNotification;
     }
 }
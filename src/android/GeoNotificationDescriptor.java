@@ -0,0 +1,114 @@
+package com.cowbell.cordova.geofence;
+
+import com.google.android.gms.location.Geofence;
+import com.google.gson.annotations.Expose;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Identity, geometry and flags of a stored geofence.
+ *
+ * Decoding a stored fence as a descriptor skips the notification payload (and its arbitrary
+ * data object) entirely, so it is the cheap way to walk all fences when only registration or
+ * state information is needed. {@link GeoNotification} extends it with the payload.
+ */
+public class GeoNotificationDescriptor {
+    @Expose public String id;
+    @Expose public String user_id;
+    // Bulk operations (removeGroup, enableGroup, disableGroup) address fences by group
+    @Expose public String group;
+    @Expose public List<String> tags;
+    @Expose public double latitude;
+    @Expose public double longitude;
+    @Expose public int radius;
+    @Expose public int transitionType;
+    @Expose public int loiteringDelay;
+    @Expose public int notificationResponsiveness;
+    @Expose public String startTime;
+    @Expose public String endTime;
+    @Expose public boolean isLast;
+
+    public Geofence toGeofence(GeofenceResponsiveness responsiveness) {
+        int transitionTypes = transitionType & (Geofence.GEOFENCE_TRANSITION_ENTER
+                | Geofence.GEOFENCE_TRANSITION_EXIT | Geofence.GEOFENCE_TRANSITION_DWELL);
+        if (transitionTypes == 0) {
+            // Setup geofence for ENTER and EXIT events
+            transitionTypes = Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT;
+        }
+        return new Geofence.Builder()
+                .setRequestId(id)
+                .setTransitionTypes(transitionTypes)
+                .setLoiteringDelay(responsiveness.getLoiteringDelay(this))
+                .setNotificationResponsiveness(responsiveness.getNotificationResponsiveness(this))
+                .setCircularRegion(latitude, longitude, radius)
+                .setExpirationDuration(getExpirationDuration()).build();
+    }
+
+    /**
+     * @return milliseconds until the end time, so Play Services drops the fence itself, or
+     *         {@link Geofence#NEVER_EXPIRE} for fences without one
+     */
+    public long getExpirationDuration() {
+        Date endTime = getEndTime();
+        if (endTime == null) {
+            return Geofence.NEVER_EXPIRE;
+        }
+        // Expired fences are not registered, keep the duration valid if one slips through
+        return Math.max(1, endTime.getTime() - System.currentTimeMillis());
+    }
+
+    public static GeoNotificationDescriptor fromJson(String json) {
+        if (json == null) return null;
+        return Gson.get().fromJson(json, GeoNotificationDescriptor.class);
+    }
+
+    public Date getStartTime() {
+        return parseDate(this.startTime);
+    }
+
+    public Date getEndTime() {
+        return parseDate(this.endTime);
+    }
+
+    public boolean isWithinTimeRange() {
+        Date now = new Date();
+        Date startTime = getStartTime();
+        Date endTime = getEndTime();
+        boolean greaterThanOrEqualToStartTime = true;
+        boolean lessThanEndTime = true;
+        if (startTime != null) {
+            greaterThanOrEqualToStartTime = now.after(startTime) || now.getTime() == startTime.getTime();
+        }
+        if (endTime != null) {
+            lessThanEndTime = now.before(endTime);
+        }
+        return greaterThanOrEqualToStartTime && lessThanEndTime;
+    }
+
+    /**
+     * @return true once the end time has passed, the fence can not become active any more
+     */
+    public boolean isExpired() {
+        Date endTime = getEndTime();
+        return endTime != null && !new Date().before(endTime);
+    }
+
+    private Date parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat(
+                    "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format.parse(date);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+}
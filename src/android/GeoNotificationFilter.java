@@ -0,0 +1,105 @@
+package com.cowbell.cordova.geofence;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Optional criteria for listing stored fences: owning user, group, tag, bounding box of the
+ * fence center and whether the fence is currently within its time range. The user, group and
+ * tag are indexed, see {@link #getSelection(List)}.
+ */
+public class GeoNotificationFilter {
+    public String userId;
+    public String group;
+    public String tag;
+    public boolean hasBoundingBox;
+    public double minLatitude;
+    public double minLongitude;
+    public double maxLatitude;
+    public double maxLongitude;
+    public boolean activeOnly;
+
+    /**
+     * @param json { userId, group, tag, boundingBox: { minLatitude, minLongitude, maxLatitude, maxLongitude }, activeOnly }
+     */
+    public static GeoNotificationFilter fromJson(JSONObject json) {
+        GeoNotificationFilter filter = new GeoNotificationFilter();
+        if (json == null) {
+            return filter;
+        }
+        filter.userId = json.isNull("userId") ? null : json.optString("userId", null);
+        filter.group = json.isNull("group") ? null : json.optString("group", null);
+        filter.tag = json.isNull("tag") ? null : json.optString("tag", null);
+        JSONObject box = json.optJSONObject("boundingBox");
+        if (box != null) {
+            filter.hasBoundingBox = true;
+            filter.minLatitude = box.optDouble("minLatitude", -90);
+            filter.minLongitude = box.optDouble("minLongitude", -180);
+            filter.maxLatitude = box.optDouble("maxLatitude", 90);
+            filter.maxLongitude = box.optDouble("maxLongitude", 180);
+        }
+        filter.activeOnly = json.optBoolean("activeOnly", false);
+        return filter;
+    }
+
+    public boolean isEmpty() {
+        return userId == null && group == null && tag == null && !hasBoundingBox && !activeOnly;
+    }
+
+    /**
+     * @param args receives the arguments of the returned clause
+     * @return WHERE clause selecting the fences of the user, group and tag, null when none is set
+     */
+    public String getSelection(List<String> args) {
+        StringBuilder selection = new StringBuilder();
+        if (userId != null) {
+            selection.append(LocalStorageDBHelper.LOCALSTORAGE_USER_ID).append(" = ?");
+            args.add(userId);
+        }
+        if (group != null) {
+            selection.append(selection.length() > 0 ? " AND " : "")
+                    .append(LocalStorageDBHelper.LOCALSTORAGE_GROUP).append(" = ?");
+            args.add(group);
+        }
+        if (tag != null) {
+            selection.append(selection.length() > 0 ? " AND " : "")
+                    .append(LocalStorageDBHelper.LOCALSTORAGE_ID).append(" IN (SELECT ")
+                    .append(LocalStorageDBHelper.TAGS_FENCE_ID).append(" FROM ")
+                    .append(LocalStorageDBHelper.TAGS_TABLE_NAME).append(" WHERE ")
+                    .append(LocalStorageDBHelper.TAGS_TAG).append(" = ?)");
+            args.add(tag);
+        }
+        return selection.length() > 0 ? selection.toString() : null;
+    }
+
+    public boolean matches(GeoNotificationDescriptor descriptor) {
+        if (descriptor.id == null) {
+            return false;
+        }
+        if (userId != null && !userId.equals(descriptor.user_id)) {
+            return false;
+        }
+        if (group != null && !group.equals(descriptor.group)) {
+            return false;
+        }
+        if (tag != null && (descriptor.tags == null || !descriptor.tags.contains(tag))) {
+            return false;
+        }
+        if (hasBoundingBox && !isInBoundingBox(descriptor.latitude, descriptor.longitude)) {
+            return false;
+        }
+        return !activeOnly || descriptor.isWithinTimeRange();
+    }
+
+    private boolean isInBoundingBox(double latitude, double longitude) {
+        if (latitude < minLatitude || latitude > maxLatitude) {
+            return false;
+        }
+        if (minLongitude <= maxLongitude) {
+            return longitude >= minLongitude && longitude <= maxLongitude;
+        }
+        // The box crosses the antimeridian
+        return longitude >= minLongitude || longitude <= maxLongitude;
+    }
+}
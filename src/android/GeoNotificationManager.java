@@ -11,35 +11,47 @@ import androidx.core.app.ActivityCompat;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
+import com.google.android.gms.common.api.ApiException;
 import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofenceStatusCodes;
 import com.google.android.gms.location.GeofencingRequest;
 import com.google.android.gms.location.GeofencingClient;
-import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 
-import org.apache.cordova.CallbackContext;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 public class GeoNotificationManager implements OnCompleteListener<Void> {
+    public static final int REGISTRATION_CHUNK_SIZE = 100;
+    private static final long REGISTRATION_TIMEOUT_SECONDS = 30;
+
     private Context context;
     private GeoNotificationStore geoNotificationStore;
+    private GeofenceChangeLog changeLog;
+    private GeofenceHealthMonitor healthMonitor;
     private GeofencingClient mGeofencingClient;
-    private ArrayList<Geofence> mGeofenceList;
     private Logger logger;
-    private List<Geofence> geoFences;
     private PendingIntent mGeofencePendingIntent;
+    // Tier of a full re-registration, null to keep the tier of the registered fences
+    private String fullRegistrationTier;
 
     public GeoNotificationManager(Context context) {
         this.context = context;
-        mGeofenceList = new ArrayList<>();
         geoNotificationStore = new GeoNotificationStore(context);
+        changeLog = new GeofenceChangeLog(context);
+        healthMonitor = new GeofenceHealthMonitor(context);
         logger = Logger.getLogger(context);
-        mGeofencingClient = LocationServices.getGeofencingClient(context);
+        mGeofencingClient = GeofenceServices.get().getGeofencingClient(context);
         if (areGoogleServicesAvailable()) {
             logger.log(Log.DEBUG, "Google play services available");
         }
@@ -48,40 +60,105 @@ public class GeoNotificationManager implements OnCompleteListener<Void> {
         }
     }
 
-    private GeofencingRequest getGeofencingRequest() {
+    private GeofencingRequest getGeofencingRequest(List<Geofence> geofences, int initialTrigger) {
         GeofencingRequest.Builder builder = new GeofencingRequest.Builder();
 
         // The INITIAL_TRIGGER_ENTER flag indicates that geofencing service should trigger a
         // GEOFENCE_TRANSITION_ENTER notification when the geofence is added and if the device
         // is already inside that geofence.
-        builder.setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER);
+        builder.setInitialTrigger(initialTrigger);
 
         // Add the geofences to be monitored by geofencing service.
-        builder.addGeofences(mGeofenceList);
+        builder.addGeofences(geofences);
 
         // Return a GeofencingRequest.
         return builder.build();
     }
 
-    public void loadFromStorageAndInitializeGeofences() {
-        List<GeoNotification> geoNotifications = geoNotificationStore.getAll();
-        geoFences = new ArrayList<Geofence>();
-        for (GeoNotification geo : geoNotifications) {
-            geoFences.add(geo.toGeofence());
+    /**
+     * Outcome of a chunked, blocking registration.
+     */
+    public static class RegistrationResult {
+        public int registered;
+        public List<String> registeredIds = new ArrayList<String>();
+        public int chunks;
+        public int failedChunks;
+        public Exception error;
+
+        public boolean isSuccessful() {
+            return failedChunks == 0;
         }
-        if (!geoFences.isEmpty()) {
-             GeofencingRequest.Builder builder = new GeofencingRequest.Builder();
-             builder.setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER);
-              // Add the geofences to be monitored by geofencing service.
-             builder.addGeofences(geoFences);
-             mGeofencingClient.addGeofences(builder.build(), getGeofencePendingIntent())
-             .addOnSuccessListener(new OnSuccessListener<Void>() {
-                   @Override
-                   public void onSuccess(Void unused) {
-                       logger.log(Log.DEBUG, "Geofences successfully added");
-                   }
-             });
+    }
+
+    /**
+     * Registers the given fences with Play Services in chunks of {@link #REGISTRATION_CHUNK_SIZE},
+     * blocking until every chunk was answered. Must not be called on the main thread.
+     */
+    public RegistrationResult registerGeofences(List<? extends GeoNotificationDescriptor> descriptors,
+                                                int initialTrigger) {
+        RegistrationResult result = new RegistrationResult();
+        GeofenceResponsiveness responsiveness = getResponsiveness();
+        for (int from = 0; from < descriptors.size(); from += REGISTRATION_CHUNK_SIZE) {
+            List<? extends GeoNotificationDescriptor> chunk =
+                    descriptors.subList(from, Math.min(from + REGISTRATION_CHUNK_SIZE, descriptors.size()));
+            List<Geofence> geofences = new ArrayList<Geofence>(chunk.size());
+            List<String> ids = new ArrayList<String>(chunk.size());
+            for (GeoNotificationDescriptor geo : chunk) {
+                geofences.add(geo.toGeofence(responsiveness));
+                ids.add(geo.id);
+            }
+            result.chunks++;
+            try {
+                Tasks.await(
+                        mGeofencingClient.addGeofences(getGeofencingRequest(geofences, initialTrigger), getGeofencePendingIntent()),
+                        REGISTRATION_TIMEOUT_SECONDS, TimeUnit.SECONDS
+                );
+                result.registered += geofences.size();
+                result.registeredIds.addAll(ids);
+                healthMonitor.markArmed(ids);
+            } catch (Exception e) {
+                Exception cause = e instanceof ExecutionException && e.getCause() instanceof Exception
+                        ? (Exception) e.getCause()
+                        : e;
+                logger.log("Registering " + geofences.size() + " geofences failed", cause);
+                result.failedChunks++;
+                result.error = cause;
+                if (isNotAvailable(cause)) {
+                    // Location is off, the remaining chunks would fail the same way. The
+                    // caller decides when to retry.
+                    healthMonitor.markAllDropped();
+                    break;
+                }
+            }
         }
+        return result;
+    }
+
+    /**
+     * Registers the following fences with the tier of the current power state, for a caller
+     * registering every fence again. The caller saves the returned tier once all of them were
+     * registered.
+     */
+    public String useCurrentTier() {
+        fullRegistrationTier = GeofenceResponsiveness.currentTier(context, geoNotificationStore.getConfig());
+        return fullRegistrationTier;
+    }
+
+    /**
+     * Fences added to the registered ones get the tier those were registered with, so all share
+     * one tier until the next full re-registration. The first registration sets the tier.
+     */
+    private GeofenceResponsiveness getResponsiveness() {
+        GeofenceConfig config = geoNotificationStore.getConfig();
+        String tier = fullRegistrationTier;
+        if (tier == null) {
+            tier = geoNotificationStore.getState(GeofenceResponsiveness.STATE_KEY);
+        }
+        if (tier == null) {
+            tier = GeofenceResponsiveness.currentTier(context, config);
+            geoNotificationStore.setState(GeofenceResponsiveness.STATE_KEY, tier);
+        }
+        return new GeofenceResponsiveness(config, tier);
     }
 
     public List<GeoNotification> getWatched() {
@@ -89,6 +166,13 @@ public class GeoNotificationManager implements OnCompleteListener<Void> {
         return geoNotifications;
     }
 
+    /**
+     * Same as {@link #getWatched()} as the JSON array handed to JS, without decoding the fences.
+     */
+    public String getWatchedJson() {
+        return geoNotificationStore.getAllJson();
+    }
+
     private boolean areGoogleServicesAvailable() {
         GoogleApiAvailability api = GoogleApiAvailability.getInstance();
         int resultCode = api.isGooglePlayServicesAvailable(context);
@@ -113,67 +197,218 @@ public class GeoNotificationManager implements OnCompleteListener<Void> {
         return mGeofencePendingIntent;
     }
 
-    public void addGeoNotifications(List<GeoNotification> geoNotifications,
-                                    final CallbackContext callback) {
-        this.addGeoNotifications(geoNotifications, callback, GeofencingRequest.INITIAL_TRIGGER_ENTER);
+    /**
+     * Stores the given geofences in a single transaction and registers them with one request.
+     *
+     * @return task completed once Play Services accepted or rejected the registration
+     */
+    public Task<Void> addGeoNotifications(List<GeoNotification> geoNotifications) {
+        return this.addGeoNotifications(geoNotifications, GeofencingRequest.INITIAL_TRIGGER_ENTER);
     }
 
-    public void addGeoNotifications(List<GeoNotification> geoNotifications,
-                                    final CallbackContext callback,
-                                    int initialTrigger) {
+    public Task<Void> addGeoNotifications(List<GeoNotification> geoNotifications, int initialTrigger) {
+        if (geoNotifications.isEmpty()) {
+            return Tasks.forResult(null);
+        }
+        geoNotificationStore.setGeoNotifications(geoNotifications);
+        GeofenceResponsiveness responsiveness = getResponsiveness();
+        GeoNotificationStore.RegistrableSet registrable = geoNotificationStore.getRegistrableSet();
+        List<Geofence> geofences = new ArrayList<Geofence>();
+        final List<String> ids = new ArrayList<String>();
         for (GeoNotification geo : geoNotifications) {
-            geoNotificationStore.setGeoNotification(geo);
-            mGeofenceList.add(geo.toGeofence());
+            // Fences of other users and disabled groups are only stored, activateUser and
+            // enableGroup register them
+            if (registrable.contains(geo)) {
+                geofences.add(geo.toGeofence(responsiveness));
+                ids.add(geo.id);
+            }
+        }
+        if (geofences.isEmpty()) {
+            return Tasks.forResult(null);
         }
 
         if (ActivityCompat.checkSelfPermission(context, android.Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
             // todo: request permisi
         }
-        mGeofencingClient
-                .addGeofences(getGeofencingRequest(), getGeofencePendingIntent())
+        return mGeofencingClient
+                .addGeofences(getGeofencingRequest(geofences, initialTrigger), getGeofencePendingIntent())
                 .addOnSuccessListener(new OnSuccessListener<Void>() {
                     @Override
                     public void onSuccess(Void unused) {
                         logger.log(Log.DEBUG, "Geofences successfully added");
-                        callback.success();
+                        healthMonitor.markArmed(ids);
                     }
-                });
+                })
+                .addOnCompleteListener(this);
     }
 
-    public void removeGeoNotifications(List<String> ids, final CallbackContext callback) {
-        mGeofencingClient.removeGeofences(ids).addOnCompleteListener(this);
-        for (String id : ids) {
-            geoNotificationStore.remove(id);
+    public Task<Void> removeGeoNotifications(List<String> ids) {
+        if (ids.isEmpty()) {
+            return Tasks.forResult(null);
         }
+        Task<Void> task = mGeofencingClient.removeGeofences(ids).addOnCompleteListener(this);
+        geoNotificationStore.remove(ids);
+        healthMonitor.markDisarmed(ids);
+        changeLog.compact(GeofenceChangeLog.MAX_TOMBSTONES);
+        return task;
     }
 
-    public void removeAllGeoNotifications(final CallbackContext callback) {
-        List<GeoNotification> geoNotifications = geoNotificationStore.getAll();
-        if(geoNotifications.size()>0) {
-            List<String> geoNotificationsIds = new ArrayList<String>();
-            for (GeoNotification geo : geoNotifications) {
-                if (geo != null && geo.id != null) {
-                    geoNotificationsIds.add(geo.id);
-                }
-            }
-            if (geoNotificationsIds.size() > 0) {
-                removeGeoNotifications(geoNotificationsIds, callback);
-            }
-            callback.success();
+    public Task<Void> removeAllGeoNotifications() {
+        return removeGeoNotifications(geoNotificationStore.getAllIds());
+    }
+
+    /**
+     * Outcome of the group operations.
+     */
+    public static class GroupResult {
+        public String group;
+        // Fences of the group removed, unregistered or registered
+        public int fences;
+        public RegistrationResult registration = new RegistrationResult();
+
+        public JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("group", group);
+            json.put("fences", fences);
+            json.put("failedChunks", registration.failedChunks);
+            return json;
+        }
+    }
+
+    /**
+     * Deletes the fences of the group with one statement and unregisters them with one request.
+     * Blocks, must not be called on the main thread.
+     */
+    public GroupResult removeGroup(String group) throws ExecutionException, InterruptedException, TimeoutException {
+        GroupResult result = new GroupResult();
+        result.group = group;
+        List<String> ids = geoNotificationStore.getGroupIds(group);
+        geoNotificationStore.removeGroup(group);
+        changeLog.compact(GeofenceChangeLog.MAX_TOMBSTONES);
+        unregisterGeofences(ids);
+        result.fences = ids.size();
+        GeofenceMetrics.add("group.removed", ids.size());
+        return result;
+    }
+
+    /**
+     * Unregisters the fences of the group with one request, keeping them stored. Fences added
+     * to the group later are not registered either until it is enabled again. Blocks, must not
+     * be called on the main thread.
+     */
+    public GroupResult disableGroup(String group) throws ExecutionException, InterruptedException, TimeoutException {
+        GroupResult result = new GroupResult();
+        result.group = group;
+        geoNotificationStore.setGroupEnabled(group, false);
+        List<String> ids = geoNotificationStore.getGroupIds(group);
+        unregisterGeofences(ids);
+        result.fences = ids.size();
+        GeofenceMetrics.add("group.disabled", ids.size());
+        return result;
+    }
+
+    /**
+     * Registers the fences of the group belonging to the active partitions, in chunks of
+     * {@link #REGISTRATION_CHUNK_SIZE}. Blocks, must not be called on the main thread.
+     */
+    public GroupResult enableGroup(String group) {
+        GroupResult result = new GroupResult();
+        result.group = group;
+        geoNotificationStore.setGroupEnabled(group, true);
+        result.registration = registerGeofences(
+                geoNotificationStore.getRegistrableGroupDescriptors(group), GeofencingRequest.INITIAL_TRIGGER_ENTER);
+        result.fences = result.registration.registered;
+        GeofenceMetrics.add("group.enabled", result.fences);
+        return result;
+    }
+
+    /**
+     * Unregisters the given fences with one request, keeping them stored. Blocks, must not be
+     * called on the main thread.
+     */
+    public void unregisterGeofences(List<String> ids) throws ExecutionException, InterruptedException, TimeoutException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Tasks.await(mGeofencingClient.removeGeofences(ids), REGISTRATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        healthMonitor.markDisarmed(ids);
+    }
+
+    /**
+     * Outcome of {@link #activateUser(String)}.
+     */
+    public static class ActivationResult {
+        public String previousUserId;
+        public String userId;
+        public int unregistered;
+        public RegistrationResult registration = new RegistrationResult();
+
+        public JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("previousUserId", previousUserId != null ? previousUserId : JSONObject.NULL);
+            json.put("userId", userId != null ? userId : JSONObject.NULL);
+            json.put("unregistered", unregistered);
+            json.put("registered", registration.registered);
+            json.put("failedChunks", registration.failedChunks);
+            return json;
+        }
+    }
+
+    /**
+     * Makes the given user's fences the registered partition, along with the fences shared by
+     * all users. Only the fences of the previously active user are unregistered and only the
+     * fences of the new one registered, the store and the other partitions are left untouched.
+     * Blocks, must not be called on the main thread.
+     *
+     * @param userId the user to activate, null to only keep the shared fences registered
+     */
+    public ActivationResult activateUser(String userId) throws ExecutionException, InterruptedException, TimeoutException {
+        ActivationResult result = new ActivationResult();
+        String previous = geoNotificationStore.getActiveUser();
+        result.userId = userId == null || userId.isEmpty() ? null : userId;
+        result.previousUserId = previous == null || previous.isEmpty() ? null : previous;
+        if (previous != null && previous.equals(userId != null ? userId : "")) {
+            return result;
+        }
+
+        List<String> stale;
+        if (previous == null) {
+            // Every partition is registered until the first activation
+            stale = geoNotificationStore.getOtherPartitionIds(result.userId);
+        } else if (result.previousUserId != null) {
+            stale = geoNotificationStore.getPartitionIds(result.previousUserId);
         } else {
-            callback.success();
+            stale = new ArrayList<String>();
+        }
+        // Set first, so transitions of the previous partition are ignored and a failed
+        // registration is repaired by the restore job
+        geoNotificationStore.setActiveUser(result.userId);
+        unregisterGeofences(stale);
+        result.unregistered = stale.size();
+        if (previous != null && result.userId != null) {
+            result.registration = registerGeofences(
+                    geoNotificationStore.getRegistrableDescriptors(result.userId),
+                    GeofencingRequest.INITIAL_TRIGGER_ENTER);
         }
+        GeofenceMetrics.increment("partition.activations");
+        logger.log(Log.INFO, "Activated user {}, {} fences unregistered, {} registered",
+                result.userId, result.unregistered, result.registration.registered);
+        return result;
     }
 
     public void onComplete(@NonNull Task<Void> task) {
-        int mPendingGeofenceTask = 2;
-        if (task.isSuccessful()) {
-            // Toast.makeText(context, "Geofences Added!", Toast.LENGTH_SHORT).show();
-        } else {
-            // Get the status code for the error and log it using a user-friendly message.
-            // String errorMessage = GeofenceErrorMessages.getErrorString(this, task.getException());
-            // Log.w(TAG, errorMessage);
+        if (!task.isSuccessful()) {
+            Exception e = task.getException();
+            logger.log("Geofence request failed", e);
+            if (isNotAvailable(e)) {
+                healthMonitor.onGeofenceNotAvailable(context);
+            }
         }
     }
 
+    private static boolean isNotAvailable(Exception e) {
+        return e instanceof ApiException
+                && ((ApiException) e).getStatusCode() == GeofenceStatusCodes.GEOFENCE_NOT_AVAILABLE;
+    }
+
 }
@@ -17,7 +17,7 @@ public class GeoNotificationNotifier {
     public GeoNotificationNotifier(NotificationManager notificationManager, Context context) {
         this.notificationManager = notificationManager;
         this.context = context;
-        this.logger = Logger.getLogger();
+        this.logger = Logger.getLogger(context);
 
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
             notificationChannel = new NotificationChannel("center", "Center", NotificationManager.IMPORTANCE_DEFAULT);
@@ -63,6 +63,6 @@ public class GeoNotificationNotifier {
             mBuilder.setContentIntent(resultPendingIntent);
         }
         notificationManager.notify(notification.id, mBuilder.build());
-        logger.log(Log.DEBUG, notification.toString());
+        logger.log(Log.DEBUG, "Notified {}", notification);
     }
 }
@@ -0,0 +1,382 @@
+package com.cowbell.cordova.geofence;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes the raw addOrUpdate arguments and imported NDJSON lines straight into
+ * {@link GeoNotification}s.
+ *
+ * Cordova's default path parses the arguments into a JSONArray, which used to be turned back
+ * into a string and parsed again by Gson. Here the raw argument array is only split into its
+ * elements, each element is read once with a streaming {@link JsonReader} and validated while
+ * it is read. Elements already in the serialized form, with every field Gson writes and only
+ * known fields of the expected types, keep their raw JSON, so the store writes them unchanged.
+ * That is the case of fences handed back from getWatched or synced from a server storing them
+ * as such. The others are normalized by serializing them again, which also adds the defaults
+ * (e.g. vibrate and openAppOnClick of the notification) the serialized form always carries.
+ */
+public class GeoNotificationReader {
+    public static class Result {
+        public final List<GeoNotification> geoNotifications = new ArrayList<GeoNotification>();
+        // Fences whose raw JSON could not be stored as is
+        public int normalized;
+    }
+
+    private static final Set<String> NOTIFICATION_FIELDS = new HashSet<String>(Arrays.asList(
+            "id", "title", "text", "vibrate", "icon", "smallIcon", "color", "data", "openAppOnClick",
+            "frequency", "lastTriggered"));
+
+    private final String json;
+    private boolean needsNormalization;
+
+    private GeoNotificationReader(String json) {
+        this.json = json;
+    }
+
+    /**
+     * @param rawArgs JSON array of geofence objects
+     * @throws JSONException naming the offending geofence when the arguments are malformed or
+     *         a geofence is invalid
+     */
+    public static Result readAll(String rawArgs) throws JSONException {
+        Result result = new Result();
+        List<String> elements = splitArray(rawArgs);
+        for (int i = 0; i < elements.size(); i++) {
+            GeoNotificationReader reader = new GeoNotificationReader(elements.get(i));
+            result.geoNotifications.add(reader.readAndValidate("Geofence " + i));
+            if (reader.needsNormalization) {
+                result.normalized++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decodes and validates a single geofence object, keeping its JSON as serialized form
+     * when no normalization is needed.
+     *
+     * @param label names the geofence in error messages
+     */
+    public static GeoNotification readOne(String json, String label) throws JSONException {
+        return new GeoNotificationReader(json).readAndValidate(label);
+    }
+
+    /**
+     * Decodes and validates the next geofence object of a streamed document, for documents
+     * too large to hold as a string. The fence has no raw JSON to keep, it is serialized again
+     * when stored.
+     *
+     * @param label names the geofence in error messages
+     * @throws IOException when the stream fails, malformed JSON is reported as JSONException
+     */
+    public static GeoNotification readNext(JsonReader reader, String label) throws IOException, JSONException {
+        try {
+            return new GeoNotificationReader(null).read(reader);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new JSONException(label + " is malformed: " + e.getMessage());
+        } catch (JSONException e) {
+            throw new JSONException(label + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks the fields {@link #readOne} validates, for fences built by other means.
+     */
+    public static void validate(GeoNotification geo, String label) throws JSONException {
+        try {
+            validate(geo, true, true, true, true);
+        } catch (JSONException e) {
+            throw new JSONException(label + ": " + e.getMessage());
+        }
+    }
+
+    private GeoNotification readAndValidate(String label) throws JSONException {
+        GeoNotification geoNotification;
+        try {
+            geoNotification = read(new JsonReader(new StringReader(json)));
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JSONException(label + " is malformed: " + e.getMessage());
+        } catch (JSONException e) {
+            throw new JSONException(label + ": " + e.getMessage());
+        }
+        if (!needsNormalization) {
+            geoNotification.setJson(json);
+        }
+        return geoNotification;
+    }
+
+    /**
+     * Splits a JSON array of objects into the raw text of its elements. Only tracks nesting and
+     * string literals, the elements themselves are parsed by {@link #read}.
+     */
+    static List<String> splitArray(String json) throws JSONException {
+        List<String> elements = new ArrayList<String>();
+        int length = json.length();
+        int i = skipWhitespace(json, 0);
+        if (i == length || json.charAt(i) != '[') {
+            throw new JSONException("Expected a JSON array of geofences");
+        }
+        i = skipWhitespace(json, i + 1);
+        if (i < length && json.charAt(i) == ']') {
+            return elements;
+        }
+        while (i < length) {
+            if (json.charAt(i) != '{') {
+                throw new JSONException("Geofence " + elements.size() + " is not an object");
+            }
+            int start = i;
+            int depth = 0;
+            boolean inString = false;
+            for (; i < length; i++) {
+                char c = json.charAt(i);
+                if (inString) {
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        break;
+                    }
+                }
+            }
+            if (i == length) {
+                break;
+            }
+            elements.add(json.substring(start, i + 1));
+            i = skipWhitespace(json, i + 1);
+            if (i < length && json.charAt(i) == ']') {
+                return elements;
+            }
+            if (i == length || json.charAt(i) != ',') {
+                break;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        throw new JSONException("Unterminated JSON array of geofences");
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private GeoNotification read(JsonReader reader) throws IOException, JSONException {
+        GeoNotification geo = new GeoNotification();
+        boolean hasLatitude = false;
+        boolean hasLongitude = false;
+        boolean hasRadius = false;
+        boolean hasTransitionType = false;
+        // Gson writes primitive fields even when they were not set
+        int primitiveDefaults = 4;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "id": geo.id = readString(reader); break;
+                case "user_id": geo.user_id = readString(reader); break;
+                case "group": geo.group = readString(reader); break;
+                case "tags": geo.tags = readStrings(reader, name); break;
+                case "latitude": geo.latitude = readDouble(reader, name); hasLatitude = true; break;
+                case "longitude": geo.longitude = readDouble(reader, name); hasLongitude = true; break;
+                case "radius": geo.radius = readInt(reader, name); hasRadius = true; break;
+                case "transitionType": geo.transitionType = readInt(reader, name); hasTransitionType = true; break;
+                case "loiteringDelay": geo.loiteringDelay = readInt(reader, name); primitiveDefaults--; break;
+                case "notificationResponsiveness":
+                    geo.notificationResponsiveness = readInt(reader, name);
+                    primitiveDefaults--;
+                    break;
+                case "startTime": geo.startTime = readString(reader); break;
+                case "endTime": geo.endTime = readString(reader); break;
+                case "isLast": geo.isLast = readBoolean(reader, name); primitiveDefaults--; break;
+                case "_id": geo._id = readString(reader); break;
+                case "name": geo.name = readString(reader); break;
+                case "event": geo.event = readString(reader); break;
+                case "w_actions": geo.w_actions = readString(reader); break;
+                case "url": geo.url = readString(reader); break;
+                case "authorization": geo.authorization = readString(reader); break;
+                case "priority": geo.priority = readInt(reader, name); primitiveDefaults--; break;
+                case "notification": geo.notification = readNotification(reader); break;
+                default:
+                    // Not part of the stored schema, drop it
+                    reader.skipValue();
+                    needsNormalization = true;
+            }
+        }
+        reader.endObject();
+        if (primitiveDefaults > 0) {
+            needsNormalization = true;
+        }
+        validate(geo, hasLatitude, hasLongitude, hasRadius, hasTransitionType);
+        return geo;
+    }
+
+    /**
+     * The notification is small, it is read as a tree to check its fields before decoding it.
+     */
+    private Notification readNotification(JsonReader reader) throws JSONException {
+        JsonElement element;
+        try {
+            element = new JsonParser().parse(reader);
+            if (element.isJsonObject() && !isSerializedNotification(element.getAsJsonObject())) {
+                needsNormalization = true;
+            }
+            return Gson.get().fromJson(element, Notification.class);
+        } catch (JsonParseException e) {
+            throw new JSONException("notification is malformed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return whether the notification only has known fields and every field Gson writes, with
+     *         the types Gson writes them with
+     */
+    private static boolean isSerializedNotification(JsonObject notification) {
+        for (Map.Entry<String, JsonElement> field : notification.entrySet()) {
+            if (!NOTIFICATION_FIELDS.contains(field.getKey())) {
+                return false;
+            }
+        }
+        JsonElement vibrate = notification.get("vibrate");
+        return isNumber(notification.get("id")) && isNumber(notification.get("frequency"))
+                && isNumber(notification.get("lastTriggered"))
+                && isBoolean(notification.get("openAppOnClick"))
+                && vibrate != null && vibrate.isJsonArray()
+                && isString(notification.get("icon")) && isString(notification.get("smallIcon"));
+    }
+
+    private static boolean isNumber(JsonElement element) {
+        return element != null && element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber();
+    }
+
+    private static boolean isBoolean(JsonElement element) {
+        return element != null && element.isJsonPrimitive() && element.getAsJsonPrimitive().isBoolean();
+    }
+
+    private static boolean isString(JsonElement element) {
+        return element != null && element.isJsonPrimitive() && element.getAsJsonPrimitive().isString();
+    }
+
+    private static void validate(GeoNotification geo, boolean hasLatitude, boolean hasLongitude,
+                                 boolean hasRadius, boolean hasTransitionType) throws JSONException {
+        if (geo.id == null || geo.id.isEmpty()) {
+            throw new JSONException("id is not provided");
+        }
+        if (!hasLatitude || geo.latitude < -90 || geo.latitude > 90) {
+            throw new JSONException("latitude is missing or out of range");
+        }
+        if (!hasLongitude || geo.longitude < -180 || geo.longitude > 180) {
+            throw new JSONException("longitude is missing or out of range");
+        }
+        if (!hasRadius || geo.radius <= 0) {
+            throw new JSONException("radius must be positive");
+        }
+        if (!hasTransitionType || geo.transitionType <= 0) {
+            throw new JSONException("transitionType is not provided");
+        }
+        if (geo.loiteringDelay < 0 || geo.notificationResponsiveness < 0) {
+            throw new JSONException("loiteringDelay and notificationResponsiveness must not be negative");
+        }
+    }
+
+    private String readString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (token != JsonToken.STRING) {
+            // Numbers and booleans are read as their text, the stored form has to be a string
+            needsNormalization = true;
+        }
+        return reader.nextString();
+    }
+
+    private List<String> readStrings(JsonReader reader, String name) throws IOException, JSONException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (token != JsonToken.BEGIN_ARRAY) {
+            throw new JSONException(name + " must be an array of strings");
+        }
+        List<String> values = new ArrayList<String>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String value = readString(reader);
+            if (value != null) {
+                values.add(value);
+            } else {
+                needsNormalization = true;
+            }
+        }
+        reader.endArray();
+        return values;
+    }
+
+    private double readDouble(JsonReader reader, String name) throws IOException, JSONException {
+        return number(reader, name) ? reader.nextDouble() : 0;
+    }
+
+    private int readInt(JsonReader reader, String name) throws IOException, JSONException {
+        return number(reader, name) ? reader.nextInt() : 0;
+    }
+
+    private boolean number(JsonReader reader, String name) throws IOException, JSONException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NUMBER) {
+            return true;
+        }
+        if (token == JsonToken.STRING) {
+            // JsonReader parses numeric strings, the stored form has to be a number
+            needsNormalization = true;
+            return true;
+        }
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            needsNormalization = true;
+            return false;
+        }
+        throw new JSONException(name + " must be a number");
+    }
+
+    private boolean readBoolean(JsonReader reader, String name) throws IOException, JSONException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        }
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            needsNormalization = true;
+            return false;
+        }
+        throw new JSONException(name + " must be a boolean");
+    }
+}
@@ -1,49 +1,513 @@
 package com.cowbell.cordova.geofence;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class GeoNotificationStore {
+    public static final String ACTIVE_USER_KEY = "active_user";
+    static final String CONFIG_KEY = "geofence_config";
+    // Active user stored while only the fences without user_id are registered
+    private static final String NO_USER = "";
+
+    // The stored config, read by the broadcast receiver on the main thread without touching
+    // the database. Null until the config was read or written in this process.
+    private static volatile String cachedConfig;
+
+    // Fences outside of the disabled groups
+    private static final String GROUP_ENABLED = "(" + LocalStorageDBHelper.LOCALSTORAGE_GROUP + " IS NULL OR "
+            + LocalStorageDBHelper.LOCALSTORAGE_GROUP + " NOT IN (SELECT " + LocalStorageDBHelper.LOCALSTORAGE_GROUP
+            + " FROM " + LocalStorageDBHelper.DISABLED_GROUPS_TABLE_NAME + "))";
+
     private LocalStorage storage;
+    private LocalStorage state;
+    private LocalStorageDBHelper localStorageDBHelper;
+    private LocalStorageWriter writer;
+    private FrequencyControlStorage frequencyControl;
 
     public GeoNotificationStore(Context context) {
         storage = new LocalStorage(context);
+        localStorageDBHelper = LocalStorageDBHelper.getInstance(context);
+        writer = localStorageDBHelper.getWriter();
+        state = new LocalStorage(context, LocalStorageDBHelper.STATE_TABLE_NAME);
+        frequencyControl = new FrequencyControlStorage(context);
     }
 
     public void setGeoNotification(GeoNotification geoNotification) {
-        storage.setItem(geoNotification.id, Gson.get().toJson(geoNotification));
+        setGeoNotifications(Collections.singletonList(geoNotification));
+    }
+
+    /**
+     * Stores the given fences with their indexed columns and tags in a single transaction.
+     */
+    public void setGeoNotifications(List<GeoNotification> geoNotifications) {
+        final Map<String, GeoNotification> byId = new LinkedHashMap<String, GeoNotification>();
+        for (GeoNotification geoNotification : geoNotifications) {
+            byId.put(geoNotification.id, geoNotification);
+        }
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                for (GeoNotification geoNotification : byId.values()) {
+                    upsert(db, geoNotification);
+                }
+            }
+        });
+    }
+
+    private static void upsert(SQLiteDatabase db, GeoNotification geoNotification) {
+        ContentValues row = new ContentValues();
+        row.put(LocalStorageDBHelper.LOCALSTORAGE_ID, geoNotification.id);
+        row.put(LocalStorageDBHelper.LOCALSTORAGE_VALUE, geoNotification.toJson());
+        row.put(LocalStorageDBHelper.LOCALSTORAGE_USER_ID, getPartition(geoNotification));
+        row.put(LocalStorageDBHelper.LOCALSTORAGE_GROUP, getGroup(geoNotification));
+        row.put(LocalStorageDBHelper.LOCALSTORAGE_IS_LAST, geoNotification.isLast ? 1 : 0);
+        db.insertWithOnConflict(LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME, null, row,
+                SQLiteDatabase.CONFLICT_REPLACE);
+
+        // Replacing the row does not run the delete trigger
+        db.delete(LocalStorageDBHelper.TAGS_TABLE_NAME, LocalStorageDBHelper.TAGS_FENCE_ID + " = ?",
+                new String[] { geoNotification.id });
+        if (geoNotification.tags != null) {
+            for (String tag : geoNotification.tags) {
+                ContentValues tagRow = new ContentValues();
+                tagRow.put(LocalStorageDBHelper.TAGS_TAG, tag);
+                tagRow.put(LocalStorageDBHelper.TAGS_FENCE_ID, geoNotification.id);
+                db.insertWithOnConflict(LocalStorageDBHelper.TAGS_TABLE_NAME, null, tagRow,
+                        SQLiteDatabase.CONFLICT_IGNORE);
+            }
+        }
+    }
+
+    /**
+     * @return the group of the fence, null when it has none
+     */
+    public static String getGroup(GeoNotificationDescriptor descriptor) {
+        return descriptor == null || descriptor.group == null || descriptor.group.isEmpty()
+                ? null
+                : descriptor.group;
+    }
+
+    /**
+     * @return the user the fence belongs to, null for fences shared by all users
+     */
+    public static String getPartition(GeoNotificationDescriptor descriptor) {
+        return descriptor == null || descriptor.user_id == null || descriptor.user_id.isEmpty()
+                ? null
+                : descriptor.user_id;
     }
 
     public GeoNotification getGeoNotification(String id) {
         String objectJson = storage.getItem(id);
-        return GeoNotification.fromJson(objectJson);
+        return GeoNotification.fromStoredJson(objectJson);
+    }
+
+    /**
+     * Loads all the given geofences with a single query.
+     *
+     * @return the found geofences in the order of the given ids, unknown ids are skipped
+     */
+    public List<GeoNotification> getGeoNotifications(Collection<String> ids) {
+        Map<String, String> objectJsonById = storage.getItems(ids);
+        List<GeoNotification> result = new ArrayList<GeoNotification>(objectJsonById.size());
+        for (String id : ids) {
+            String json = objectJsonById.get(id);
+            if (json != null) {
+                result.add(GeoNotification.fromStoredJson(json));
+            }
+        }
+        return result;
     }
 
     public List<GeoNotification> getAll() {
         List<String> objectJsonList = storage.getAllItems();
         List<GeoNotification> result = new ArrayList<GeoNotification>();
         for (String json : objectJsonList) {
-            result.add(GeoNotification.fromJson(json));
+            GeoNotification geoNotification = GeoNotification.fromStoredJson(json);
+            // the config shares the table and decodes to a fence without id
+            if (geoNotification.id != null) {
+                result.add(geoNotification);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the stored JSON of the given fences keyed by id, unknown ids are left out
+     */
+    public Map<String, String> getStoredJson(Collection<String> ids) {
+        return storage.getItems(ids);
+    }
+
+    /**
+     * All fences as a JSON array, joined from the stored JSON without decoding it.
+     */
+    public String getAllJson() {
+        List<String> objectJsonList = storage.getAllItemsExcept(CONFIG_KEY);
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < objectJsonList.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(objectJsonList.get(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * One page of {@link #getPage}.
+     */
+    public static class Page {
+        // JSON array of the fences of the page
+        public String json;
+        public int count;
+        // Id of the last fence scanned, pass it to get the next page
+        public String cursor;
+        public boolean done;
+    }
+
+    /**
+     * Gets the next page of fences in id order, after the given cursor and matching the given
+     * filter. Only the current page is held in memory: rows are read in batches of pageSize,
+     * selected by the indexed criteria of the filter, only decoded as descriptors when the
+     * other criteria are set, and the page is joined from the stored JSON.
+     */
+    public Page getPage(String cursor, int pageSize, GeoNotificationFilter filter) {
+        Page page = new Page();
+        page.cursor = cursor;
+        List<String> args = new ArrayList<String>();
+        String selection = filter.getSelection(args);
+        String[] selectionArgs = args.toArray(new String[args.size()]);
+        boolean decode = filter.hasBoundingBox || filter.activeOnly;
+        StringBuilder builder = new StringBuilder("[");
+        while (page.count < pageSize) {
+            Map<String, String> batch = storage.getItemsAfter(page.cursor, CONFIG_KEY, pageSize,
+                    selection, selectionArgs);
+            int scanned = 0;
+            for (Map.Entry<String, String> item : batch.entrySet()) {
+                if (page.count == pageSize) {
+                    break;
+                }
+                scanned++;
+                page.cursor = item.getKey();
+                if (!decode || filter.matches(GeoNotificationDescriptor.fromJson(item.getValue()))) {
+                    if (page.count > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(item.getValue());
+                    page.count++;
+                }
+            }
+            if (batch.size() < pageSize && scanned == batch.size()) {
+                page.done = true;
+                break;
+            }
+        }
+        page.json = builder.append(']').toString();
+        return page;
+    }
+
+    /**
+     * Same as {@link #getAll()} without decoding the notification payloads.
+     */
+    public List<GeoNotificationDescriptor> getAllDescriptors() {
+        List<String> objectJsonList = storage.getAllItems();
+        List<GeoNotificationDescriptor> result = new ArrayList<GeoNotificationDescriptor>();
+        for (String json : objectJsonList) {
+            GeoNotificationDescriptor descriptor = GeoNotificationDescriptor.fromJson(json);
+            if (descriptor.id != null) {
+                result.add(descriptor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Descriptors of the fences that should be registered with Play Services: the fences of
+     * the active partitions, outside of the disabled groups, which are not expired.
+     */
+    public List<GeoNotificationDescriptor> getRegistrableDescriptors() {
+        List<String> args = new ArrayList<String>();
+        String partition = getPartitionSelection(getActiveUser(), args);
+        return decodeRegistrable(storage.getAllItems(
+                partition != null ? "(" + partition + ") AND " + GROUP_ENABLED : GROUP_ENABLED,
+                args.toArray(new String[args.size()])));
+    }
+
+    /**
+     * Descriptors of the fences of the given user, outside of the disabled groups, which are
+     * not expired.
+     */
+    public List<GeoNotificationDescriptor> getRegistrableDescriptors(String userId) {
+        return decodeRegistrable(storage.getAllItems(
+                LocalStorageDBHelper.LOCALSTORAGE_USER_ID + " = ? AND " + GROUP_ENABLED, new String[] { userId }));
+    }
+
+    /**
+     * Descriptors of the fences of the given group in the active partitions which are not
+     * expired, whether the group is enabled or not.
+     */
+    public List<GeoNotificationDescriptor> getRegistrableGroupDescriptors(String group) {
+        List<String> args = new ArrayList<String>();
+        args.add(group);
+        String partition = getPartitionSelection(getActiveUser(), args);
+        String selection = LocalStorageDBHelper.LOCALSTORAGE_GROUP + " = ?";
+        if (partition != null) {
+            selection += " AND (" + partition + ")";
+        }
+        return decodeRegistrable(storage.getAllItems(selection, args.toArray(new String[args.size()])));
+    }
+
+    /**
+     * @return WHERE clause selecting the fences of the active partitions, null for all fences
+     */
+    private static String getPartitionSelection(String activeUser, List<String> args) {
+        if (activeUser == null) {
+            return null;
+        }
+        if (activeUser.equals(NO_USER)) {
+            return LocalStorageDBHelper.LOCALSTORAGE_USER_ID + " IS NULL";
+        }
+        args.add(activeUser);
+        return LocalStorageDBHelper.LOCALSTORAGE_USER_ID + " IS NULL OR "
+                + LocalStorageDBHelper.LOCALSTORAGE_USER_ID + " = ?";
+    }
+
+    private static List<GeoNotificationDescriptor> decodeRegistrable(List<String> objectJsonList) {
+        List<GeoNotificationDescriptor> result = new ArrayList<GeoNotificationDescriptor>();
+        for (String json : objectJsonList) {
+            GeoNotificationDescriptor descriptor = GeoNotificationDescriptor.fromJson(json);
+            if (descriptor.id != null && !descriptor.isExpired()) {
+                result.add(descriptor);
+            }
         }
         return result;
     }
 
+    /**
+     * Ids of the fences of the given user.
+     */
+    public List<String> getPartitionIds(String userId) {
+        return storage.getAllKeys(LocalStorageDBHelper.LOCALSTORAGE_USER_ID + " = ?", new String[] { userId });
+    }
+
+    /**
+     * Ids of the fences of all users except the given one, which may be null.
+     */
+    public List<String> getOtherPartitionIds(String userId) {
+        if (userId == null) {
+            return storage.getAllKeys(LocalStorageDBHelper.LOCALSTORAGE_USER_ID + " IS NOT NULL", null);
+        }
+        return storage.getAllKeys(LocalStorageDBHelper.LOCALSTORAGE_USER_ID + " != ?", new String[] { userId });
+    }
+
+    /**
+     * The user whose fences are registered along with the shared fences (the fences without
+     * user_id).
+     *
+     * @return the user id, an empty string when only the shared fences are registered, or null
+     *         while no user was activated and the fences of all users are registered
+     */
+    public String getActiveUser() {
+        return getState(ACTIVE_USER_KEY);
+    }
+
+    /**
+     * @param userId the user to activate, null to only keep the shared fences registered
+     */
+    public void setActiveUser(String userId) {
+        setState(ACTIVE_USER_KEY, userId == null || userId.isEmpty() ? NO_USER : userId);
+    }
+
+    /**
+     * Which fences should be registered, to check fences without querying the store for each.
+     */
+    public static class RegistrableSet {
+        private final String activeUser;
+        private final Set<String> disabledGroups;
+
+        RegistrableSet(String activeUser, Set<String> disabledGroups) {
+            this.activeUser = activeUser;
+            this.disabledGroups = disabledGroups;
+        }
+
+        /**
+         * @return whether the fence belongs to the active partitions and is not in a disabled group
+         */
+        public boolean contains(GeoNotificationDescriptor descriptor) {
+            String userId = getPartition(descriptor);
+            String group = getGroup(descriptor);
+            return (activeUser == null || userId == null || userId.equals(activeUser))
+                    && (group == null || !disabledGroups.contains(group));
+        }
+    }
+
+    public RegistrableSet getRegistrableSet() {
+        return new RegistrableSet(getActiveUser(), getDisabledGroups());
+    }
+
+    public Set<String> getDisabledGroups() {
+        Set<String> groups = new HashSet<String>();
+        Cursor cursor = localStorageDBHelper.getReadableDatabase().query(
+                LocalStorageDBHelper.DISABLED_GROUPS_TABLE_NAME,
+                new String[] { LocalStorageDBHelper.LOCALSTORAGE_GROUP }, null, null, null, null, null);
+        while (cursor.moveToNext()) {
+            groups.add(cursor.getString(0));
+        }
+        cursor.close();
+        return groups;
+    }
+
+    /**
+     * Ids of the fences of the given group.
+     */
+    public List<String> getGroupIds(String group) {
+        return storage.getAllKeys(LocalStorageDBHelper.LOCALSTORAGE_GROUP + " = ?", new String[] { group });
+    }
+
+    /**
+     * Deletes the fences of the given group with a single statement, their tags are deleted
+     * by a trigger. A disabled group is forgotten with them, fences added to the group later
+     * are registered.
+     */
+    public void removeGroup(final String group) {
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                String[] args = new String[] { group };
+                db.delete(LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME,
+                        LocalStorageDBHelper.LOCALSTORAGE_GROUP + " = ?", args);
+                db.delete(LocalStorageDBHelper.DISABLED_GROUPS_TABLE_NAME,
+                        LocalStorageDBHelper.LOCALSTORAGE_GROUP + " = ?", args);
+            }
+        });
+    }
+
+    /**
+     * Enables or disables the given group, including the fences added to it later. The fences
+     * themselves are not rewritten.
+     */
+    public void setGroupEnabled(final String group, final boolean enabled) {
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                if (enabled) {
+                    db.delete(LocalStorageDBHelper.DISABLED_GROUPS_TABLE_NAME,
+                            LocalStorageDBHelper.LOCALSTORAGE_GROUP + " = ?", new String[] { group });
+                } else {
+                    ContentValues row = new ContentValues();
+                    row.put(LocalStorageDBHelper.LOCALSTORAGE_GROUP, group);
+                    db.insertWithOnConflict(LocalStorageDBHelper.DISABLED_GROUPS_TABLE_NAME, null, row,
+                            SQLiteDatabase.CONFLICT_IGNORE);
+                }
+            }
+        });
+    }
+
+    public List<String> getAllIds() {
+        List<String> ids = storage.getAllKeys();
+        ids.remove(CONFIG_KEY);
+        return ids;
+    }
+
+    /**
+     * Moves the isLast flag to the given fence. The flagged fences are found through the
+     * indexed is_last column, only they and the given fence are loaded and rewritten. The
+     * stored copies are updated, so fields changed on the in memory instance for the
+     * transition (like transitionType) are not persisted.
+     */
+    public void setIsLast(GeoNotification geoNotification) {
+        List<String> changedIds = getLastIds();
+        changedIds.remove(geoNotification.id);
+        changedIds.add(geoNotification.id);
+        List<GeoNotification> changed = getGeoNotifications(changedIds);
+        for (GeoNotification stored : changed) {
+            stored.setLast(stored.id.equals(geoNotification.id));
+        }
+        geoNotification.setLast(true);
+        setGeoNotifications(changed);
+    }
+
+    /**
+     * Clears the isLast flag of all fences, rewriting only the flagged ones.
+     */
+    public void clearIsLast() {
+        List<GeoNotification> changed = getGeoNotifications(getLastIds());
+        for (GeoNotification previous : changed) {
+            previous.setLast(false);
+        }
+        setGeoNotifications(changed);
+    }
+
+    private List<String> getLastIds() {
+        return storage.getAllKeys(LocalStorageDBHelper.LOCALSTORAGE_IS_LAST + " = 1", null);
+    }
+
     public void remove(String id) {
         storage.removeItem(id);
     }
 
+    public void remove(Collection<String> ids) {
+        storage.removeItems(ids);
+    }
+
     public void clear() {
         storage.clear();
+        cachedConfig = null;
+    }
+
+    /**
+     * Last trigger time of the notification. Falls back to the value serialized with the fence
+     * by versions storing it there.
+     */
+    public long getLastTriggered(Notification notification) {
+        return Math.max(notification.lastTriggered, frequencyControl.getLastTriggered(notification.id));
+    }
+
+    public void setLastTriggered(int notificationId, long lastTriggered) {
+        frequencyControl.setLastTriggered(notificationId, lastTriggered);
+    }
+
+    /**
+     * Plugin bookkeeping (restore results, registration state, ...) kept apart from the fences.
+     */
+    public String getState(String key) {
+        return state.getItem(key);
+    }
+
+    public void setState(String key, String value) {
+        state.setItem(key, value);
     }
 
     public GeofenceConfig getConfig () {
-        String objectJson = storage.getItem("geofence_config");
+        String objectJson = storage.getItem(CONFIG_KEY);
+        if (objectJson == null) {
+            // Transitions can arrive before initialize() stored a config
+            return new GeofenceConfig();
+        }
+        cachedConfig = objectJson;
         return Gson.get().fromJson(objectJson, GeofenceConfig.class);
     }
 
+    /**
+     * @return the config last read or written in this process, null if there was none yet.
+     * Does not touch the database, safe on the main thread.
+     */
+    public static GeofenceConfig getCachedConfig() {
+        String objectJson = cachedConfig;
+        return objectJson != null ? Gson.get().fromJson(objectJson, GeofenceConfig.class) : null;
+    }
+
     public void setConfig (GeofenceConfig config) {
-        storage.setItem("geofence_config", Gson.get().toJson(config));
+        String objectJson = Gson.get().toJson(config);
+        storage.setItem(CONFIG_KEY, objectJson);
+        cachedConfig = objectJson;
     }
 }
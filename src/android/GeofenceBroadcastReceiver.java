@@ -5,6 +5,15 @@ package com.cowbell.cordova.geofence;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.util.Log;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Receiver for geofence transition changes.
@@ -12,8 +21,30 @@ import android.content.Intent;
  * Receives geofence transition events from Location Services in the form of an Intent containing
  * the transition type and geofence id(s) that triggered the transition. Creates a JobIntentService
  * that will handle the intent in the background.
+ * <p>
+ * With {@link GeofenceConfig#fastPath} enabled, small events are handled right away on a
+ * dedicated thread while the broadcast is kept alive with {@link #goAsync()}, skipping the
+ * JobIntentService queue. The broadcast is released after {@link #FAST_PATH_BUDGET_MS} at the
+ * latest. Large events, events arriving while the fast path is busy with another one, and events
+ * arriving before the config was read in this process fall back to the JobIntentService.
  */
 public class GeofenceBroadcastReceiver extends BroadcastReceiver {
+    // Well below the 10 seconds after which a broadcast receiver is considered not responding
+    static final long FAST_PATH_BUDGET_MS = 5000;
+
+    // No queue, a second event while one is handled goes to the JobIntentService
+    private static final ThreadPoolExecutor fastPathExecutor = new ThreadPoolExecutor(
+            1, 1, 30, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>());
+
+    private static final ScheduledThreadPoolExecutor budgetTimer = new ScheduledThreadPoolExecutor(1);
+
+    static {
+        fastPathExecutor.allowCoreThreadTimeOut(true);
+        budgetTimer.setKeepAliveTime(30, TimeUnit.SECONDS);
+        budgetTimer.allowCoreThreadTimeOut(true);
+        budgetTimer.setRemoveOnCancelPolicy(true);
+    }
 
     /**
      * Receives incoming intents.
@@ -23,8 +54,66 @@ public class GeofenceBroadcastReceiver extends BroadcastReceiver {
      *                Services (inside a PendingIntent) when addGeofences() is called.
      */
     @Override
-    public void onReceive(Context context, Intent intent) {
-        // Enqueues a JobIntentService passing the context and intent as parameters
-        GeofenceTransitionsJobIntentService.enqueueWork(context, intent);
+    public void onReceive(final Context context, final Intent intent) {
+        GeofenceTrace.start().stamp(intent);
+        GeofenceMetrics.increment("transitions.received");
+        GeofenceMetrics.mark("wakeups");
+
+        if (!fitsFastPath(intent)) {
+            // Enqueues a JobIntentService passing the context and intent as parameters
+            GeofenceTransitionsJobIntentService.enqueueWork(context, intent);
+            return;
+        }
+
+        final PendingResult pendingResult = goAsync();
+        final AtomicBoolean finished = new AtomicBoolean();
+        final ScheduledFuture<?> budget = budgetTimer.schedule(new Runnable() {
+            public void run() {
+                // The processing goes on, but the broadcast must not time out
+                if (finished.compareAndSet(false, true)) {
+                    GeofenceMetrics.increment("transitions.fastPathOverBudget");
+                    Log.w(GeofencePlugin.TAG, "Fast path over budget, releasing the broadcast");
+                    pendingResult.finish();
+                }
+            }
+        }, FAST_PATH_BUDGET_MS, TimeUnit.MILLISECONDS);
+        try {
+            fastPathExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        GeofenceMetrics.increment("transitions.fastPath");
+                        new GeofenceTransitionProcessor(context.getApplicationContext())
+                                .process(intent, GeofenceTransitionProcessor.PATH_FAST);
+                    } catch (Exception e) {
+                        Log.e(GeofencePlugin.TAG, "Fast path failed", e);
+                    } finally {
+                        budget.cancel(false);
+                        if (finished.compareAndSet(false, true)) {
+                            pendingResult.finish();
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            budget.cancel(false);
+            GeofenceMetrics.increment("transitions.fastPathRejected");
+            GeofenceTransitionsJobIntentService.enqueueWork(context, intent);
+            if (finished.compareAndSet(false, true)) {
+                pendingResult.finish();
+            }
+        }
+    }
+
+    /**
+     * Decided on the main thread before going async, from the config cached in the process.
+     */
+    private static boolean fitsFastPath(Intent intent) {
+        GeofenceConfig config = GeoNotificationStore.getCachedConfig();
+        if (config == null || !config.fastPath) {
+            return false;
+        }
+        GeofenceTransition transition = GeofenceServices.get().getTransition(intent);
+        return transition != null && (transition.hasError()
+                || transition.fenceIds.size() <= config.fastPathMaxFences);
     }
 }
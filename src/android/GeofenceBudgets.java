@@ -0,0 +1,85 @@
+package com.cowbell.cordova.geofence;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide budgets for the work a burst of transitions causes.
+ *
+ * Each kind of work (notifications, uploads, JS events) draws from its own
+ * {@link GeofenceTokenBucket} configured through {@link GeofenceConfig}. Work over budget is
+ * deferred until tokens are available when the fence priority is at least
+ * {@link GeofenceConfig#deferPriority}, and shed otherwise.
+ */
+public class GeofenceBudgets {
+    public static final String NOTIFICATIONS = "notifications";
+    public static final String UPLOADS = "uploads";
+    public static final String JS_EVENTS = "jsEvents";
+
+    public static final long SHED = -1;
+
+    private static final ConcurrentHashMap<String, GeofenceTokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Decides when the given work for the given fence may run, counting the outcome in the
+     * budget.&lt;name&gt;.admitted, deferred and shed metrics.
+     *
+     * @return 0 to run now, milliseconds to defer it by or {@link #SHED}
+     */
+    public static long admit(String name, GeoNotification geoNotification, GeofenceConfig config) {
+        int capacity;
+        int perMinute;
+        if (NOTIFICATIONS.equals(name)) {
+            capacity = config.notificationBurst;
+            perMinute = config.notificationsPerMinute;
+        } else if (UPLOADS.equals(name)) {
+            capacity = config.uploadBurst;
+            perMinute = config.uploadsPerMinute;
+        } else {
+            capacity = config.jsEventBurst;
+            perMinute = config.jsEventsPerMinute;
+        }
+        if (perMinute <= 0) {
+            // No budget configured
+            return 0;
+        }
+
+        GeofenceTokenBucket bucket = bucket(name, capacity, perMinute);
+        if (bucket.tryAcquire()) {
+            GeofenceMetrics.increment("budget." + name + ".admitted");
+            return 0;
+        }
+        if (geoNotification.priority >= config.deferPriority) {
+            long wait = bucket.reserve(config.maxDeferSeconds * 1000L);
+            if (wait >= 0) {
+                GeofenceMetrics.increment("budget." + name + ".deferred");
+                return wait;
+            }
+        }
+        GeofenceMetrics.increment("budget." + name + ".shed");
+        return SHED;
+    }
+
+    /**
+     * Starts every budget over with a full bucket, for simulations replaying another trace.
+     */
+    public static void reset() {
+        buckets.clear();
+    }
+
+    private static GeofenceTokenBucket bucket(String name, int capacity, int perMinute) {
+        GeofenceTokenBucket bucket = buckets.get(name);
+        if (bucket == null || !bucket.hasSettings(capacity, perMinute)) {
+            // First use or the config changed, start over with a full bucket
+            GeofenceTokenBucket created = new GeofenceTokenBucket(capacity, perMinute);
+            if (bucket == null) {
+                bucket = buckets.putIfAbsent(name, created);
+                if (bucket == null) {
+                    bucket = created;
+                }
+            } else {
+                bucket = buckets.replace(name, bucket, created) ? created : buckets.get(name);
+            }
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,179 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import org.json.JSONObject;
+
+/**
+ * Versioned feed of the changes to the stored fences and notification trigger times, so JS
+ * and sync code can catch up with the changes since the version they last saw instead of
+ * listing every fence.
+ *
+ * Triggers of {@link LocalStorageDBHelper} keep one row per fence and per notification id in
+ * {@link LocalStorageDBHelper#CHANGES_TABLE_NAME}, carrying the version of its last change, so
+ * the log never grows beyond the number of keys. Deleted fences leave a tombstone;
+ * {@link #compact(int)} drops the oldest ones and raises the floor version, callers behind the
+ * floor are told to reset.
+ */
+public class GeofenceChangeLog {
+    public static final int KIND_FENCE = 0;
+    public static final int KIND_TRIGGER = 1;
+    public static final String FLOOR_KEY = "changes_floor";
+    public static final int MAX_TOMBSTONES = 5000;
+
+    private LocalStorageDBHelper localStorageDBHelper;
+    private LocalStorageWriter writer;
+    private LocalStorage state;
+
+    public GeofenceChangeLog(Context context) {
+        localStorageDBHelper = LocalStorageDBHelper.getInstance(context);
+        writer = localStorageDBHelper.getWriter();
+        state = new LocalStorage(context, LocalStorageDBHelper.STATE_TABLE_NAME);
+    }
+
+    /**
+     * @return the version of the last change, 0 before the first one
+     */
+    public long getVersion() {
+        return queryVersion(localStorageDBHelper.getReadableDatabase());
+    }
+
+    /**
+     * @return versions up to this one may have lost their tombstones
+     */
+    public long getFloor() {
+        String floor = state.getItem(FLOOR_KEY);
+        return floor != null ? Long.parseLong(floor) : 0;
+    }
+
+    /**
+     * Gets the changes after the given version, oldest first, as a JSON string
+     * { version, reset, more, upserts, deletes, triggered }: the stored JSON of the changed
+     * fences, the ids of the deleted ones and { notificationId, lastTriggered } of the
+     * triggered notifications. Pass version to the next call. When reset is set the changes
+     * before the given version were compacted, list all fences and continue from version.
+     *
+     * @param limit the maximum number of changes, more is set when there are others
+     */
+    public String getChangesSince(long since, int limit) {
+        long startedAt = SystemClock.elapsedRealtime();
+        SQLiteDatabase database = localStorageDBHelper.getReadableDatabase();
+        StringBuilder upserts = new StringBuilder("[");
+        StringBuilder deletes = new StringBuilder("[");
+        StringBuilder triggered = new StringBuilder("[");
+        int count = 0;
+        boolean more = false;
+
+        // Read before the changes: changes committed in between are either returned or have
+        // a later version
+        long version = Math.max(since, getVersion());
+        long last = since;
+        Cursor cursor = database.rawQuery("SELECT c." + LocalStorageDBHelper.CHANGES_VERSION
+                + ", c." + LocalStorageDBHelper.CHANGES_KIND
+                + ", c." + LocalStorageDBHelper.CHANGES_KEY
+                + ", c." + LocalStorageDBHelper.CHANGES_DELETED
+                + ", g." + LocalStorageDBHelper.LOCALSTORAGE_VALUE
+                + ", t." + LocalStorageDBHelper.TRIGGERS_LAST_TRIGGERED
+                + " FROM " + LocalStorageDBHelper.CHANGES_TABLE_NAME + " c"
+                + " LEFT JOIN " + LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME + " g ON c."
+                + LocalStorageDBHelper.CHANGES_KIND + " = " + KIND_FENCE + " AND g."
+                + LocalStorageDBHelper.LOCALSTORAGE_ID + " = c." + LocalStorageDBHelper.CHANGES_KEY
+                + " LEFT JOIN " + LocalStorageDBHelper.TRIGGERS_TABLE_NAME + " t ON c."
+                + LocalStorageDBHelper.CHANGES_KIND + " = " + KIND_TRIGGER + " AND t."
+                + LocalStorageDBHelper.TRIGGERS_NOTIFICATION_ID + " = c." + LocalStorageDBHelper.CHANGES_KEY
+                + " WHERE c." + LocalStorageDBHelper.CHANGES_VERSION + " > ?"
+                + " ORDER BY c." + LocalStorageDBHelper.CHANGES_VERSION + " LIMIT ?",
+                new String[] { Long.toString(since), Integer.toString(limit + 1) });
+        while (cursor.moveToNext()) {
+            if (count == limit) {
+                more = true;
+                break;
+            }
+            count++;
+            last = cursor.getLong(0);
+            String key = cursor.getString(2);
+            if (cursor.getInt(1) == KIND_TRIGGER) {
+                append(triggered, "{\"notificationId\":" + key
+                        + ",\"lastTriggered\":" + cursor.getLong(5) + "}");
+            } else if (cursor.getInt(3) != 0) {
+                append(deletes, JSONObject.quote(key));
+            } else if (!cursor.isNull(4)) {
+                // A fence deleted since the query started has a tombstone with a later version
+                append(upserts, cursor.getString(4));
+            }
+        }
+        cursor.close();
+        version = more ? last : Math.max(version, last);
+
+        // Read after the changes, the floor only rises: tombstones compacted while reading
+        // are caught as well
+        boolean reset = since < getFloor();
+        if (reset) {
+            count = 0;
+            more = false;
+            version = Math.max(version, getVersion());
+            upserts.setLength(1);
+            deletes.setLength(1);
+            triggered.setLength(1);
+        }
+        GeofenceMetrics.record("storage.read.getChangesSince", SystemClock.elapsedRealtime() - startedAt);
+        GeofenceMetrics.add("changes.sent", count);
+        return "{\"version\":" + version + ",\"reset\":" + reset + ",\"more\":" + more
+                + ",\"upserts\":" + upserts.append(']')
+                + ",\"deletes\":" + deletes.append(']')
+                + ",\"triggered\":" + triggered.append(']') + "}";
+    }
+
+    /**
+     * Drops the oldest tombstones beyond the given number and raises the floor to the last
+     * dropped version.
+     *
+     * @return the number of dropped tombstones
+     */
+    public int compact(final int maxTombstones) {
+        final int[] dropped = new int[1];
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                Cursor cursor = db.query(LocalStorageDBHelper.CHANGES_TABLE_NAME,
+                        new String[] { LocalStorageDBHelper.CHANGES_VERSION },
+                        LocalStorageDBHelper.CHANGES_DELETED + " = 1", null, null, null,
+                        LocalStorageDBHelper.CHANGES_VERSION + " DESC", maxTombstones + ",1");
+                long newestDropped = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+                cursor.close();
+                if (newestDropped == 0) {
+                    return;
+                }
+                dropped[0] = db.delete(LocalStorageDBHelper.CHANGES_TABLE_NAME,
+                        LocalStorageDBHelper.CHANGES_DELETED + " = 1 AND "
+                                + LocalStorageDBHelper.CHANGES_VERSION + " <= ?",
+                        new String[] { Long.toString(newestDropped) });
+                ContentValues row = new ContentValues();
+                row.put(LocalStorageDBHelper.LOCALSTORAGE_ID, FLOOR_KEY);
+                row.put(LocalStorageDBHelper.LOCALSTORAGE_VALUE, Long.toString(newestDropped));
+                db.insertWithOnConflict(LocalStorageDBHelper.STATE_TABLE_NAME, null, row,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        });
+        GeofenceMetrics.add("changes.compacted", dropped[0]);
+        return dropped[0];
+    }
+
+    private static long queryVersion(SQLiteDatabase database) {
+        Cursor cursor = database.rawQuery("SELECT seq FROM sqlite_sequence WHERE name = ?",
+                new String[] { LocalStorageDBHelper.CHANGES_TABLE_NAME });
+        long version = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return version;
+    }
+
+    private static void append(StringBuilder array, String element) {
+        if (array.length() > 1) {
+            array.append(',');
+        }
+        array.append(element);
+    }
+}
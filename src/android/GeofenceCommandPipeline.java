@@ -0,0 +1,156 @@
+package com.cowbell.cordova.geofence;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Orders the commands coming from JS.
+ *
+ * Mutations (anything touching the store or the OS registrations) run one at a time on a
+ * dedicated thread in submission order. Consecutive mutations of the same coalescable action
+ * are handed to the handler as a single batch so they can share one store transaction and one
+ * OS registration. Read only queries run concurrently on the supplied executor. Long running
+ * commands waiting on the network or rebuilding the database run one at a time on a thread of
+ * their own, writing through the storage writer, so they do not hold up the mutations.
+ */
+public class GeofenceCommandPipeline {
+    public static class Command {
+        public final int requestId;
+        public final String action;
+        // Either the parsed arguments or, for actions decoding them on their own, the raw JSON
+        public final JSONArray args;
+        public final String rawArgs;
+        public final CallbackContext callbackContext;
+        final long enqueuedAt;
+
+        Command(int requestId, String action, JSONArray args, String rawArgs, CallbackContext callbackContext) {
+            this.requestId = requestId;
+            this.action = action;
+            this.args = args;
+            this.rawArgs = rawArgs;
+            this.callbackContext = callbackContext;
+            this.enqueuedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    public interface Handler {
+        /**
+         * Runs a batch of commands sharing the same action. Batches of more than one command
+         * are only built for coalescable actions.
+         */
+        void handle(String action, List<Command> commands);
+    }
+
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final ConcurrentLinkedQueue<Command> mutations = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final ExecutorService mutationExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService queryExecutor;
+    private final List<String> coalescableActions;
+    private final Handler handler;
+
+    public GeofenceCommandPipeline(ExecutorService queryExecutor, List<String> coalescableActions,
+                                   Handler handler) {
+        this.queryExecutor = queryExecutor;
+        this.coalescableActions = coalescableActions;
+        this.handler = handler;
+    }
+
+    public Command newCommand(String action, JSONArray args, CallbackContext callbackContext) {
+        return new Command(nextRequestId.getAndIncrement(), action, args, null, callbackContext);
+    }
+
+    public Command newRawCommand(String action, String rawArgs, CallbackContext callbackContext) {
+        return new Command(nextRequestId.getAndIncrement(), action, null, rawArgs, callbackContext);
+    }
+
+    public void submitMutation(Command command) {
+        mutations.add(command);
+        int depth = queueDepth.incrementAndGet();
+        GeofenceMetrics.set("pipeline.queueDepth", depth);
+        GeofenceMetrics.max("pipeline.maxQueueDepth", depth);
+        mutationExecutor.execute(new Runnable() {
+            public void run() {
+                drainMutations();
+            }
+        });
+    }
+
+    public void submitQuery(final Command command) {
+        queryExecutor.execute(new Runnable() {
+            public void run() {
+                List<Command> commands = new ArrayList<Command>(1);
+                commands.add(command);
+                runBatch(command.action, commands);
+            }
+        });
+    }
+
+    public void submitBackground(final Command command) {
+        backgroundExecutor.execute(new Runnable() {
+            public void run() {
+                List<Command> commands = new ArrayList<Command>(1);
+                commands.add(command);
+                runBatch(command.action, commands);
+            }
+        });
+    }
+
+    public void shutdown() {
+        mutationExecutor.shutdown();
+        backgroundExecutor.shutdown();
+    }
+
+    /**
+     * Runs on the mutation thread. Every submission schedules a drain, so a drain that finds the
+     * queue empty has had its commands coalesced into an earlier batch.
+     */
+    private void drainMutations() {
+        Command head = mutations.poll();
+        if (head == null) {
+            return;
+        }
+        List<Command> batch = new ArrayList<Command>();
+        batch.add(head);
+        if (coalescableActions.contains(head.action)) {
+            Command next = mutations.peek();
+            while (next != null && next.action.equals(head.action)) {
+                batch.add(mutations.poll());
+                next = mutations.peek();
+            }
+        }
+        GeofenceMetrics.set("pipeline.queueDepth", queueDepth.addAndGet(-batch.size()));
+        if (batch.size() > 1) {
+            GeofenceMetrics.add("pipeline.coalesced", batch.size() - 1);
+        }
+        runBatch(head.action, batch);
+    }
+
+    private void runBatch(String action, List<Command> batch) {
+        long startedAt = SystemClock.elapsedRealtime();
+        for (Command command : batch) {
+            GeofenceMetrics.record("pipeline.wait", startedAt - command.enqueuedAt);
+        }
+        try {
+            handler.handle(action, batch);
+        } catch (Exception e) {
+            Log.e(GeofencePlugin.TAG, "Command " + action + " failed", e);
+            for (Command command : batch) {
+                command.callbackContext.error(e.getMessage());
+            }
+        }
+        GeofenceMetrics.increment("pipeline.commands." + action);
+        GeofenceMetrics.record("pipeline.run." + action, SystemClock.elapsedRealtime() - startedAt);
+    }
+}
@@ -4,4 +4,39 @@ import com.google.gson.annotations.Expose;
 
 public class GeofenceConfig {
     @Expose public int delay = 10;
+    // Handle transitions inside the broadcast receiver instead of queuing a JobIntentService
+    @Expose public boolean fastPath = false;
+    // Events triggering more fences than this are left to the JobIntentService
+    @Expose public int fastPathMaxFences = 10;
+    // Defaults for fences not setting their own, in milliseconds
+    @Expose public int loiteringDelay = 10000;
+    @Expose public int notificationResponsiveness = 0;
+    // "fixed" or "adaptive", see GeofenceResponsiveness
+    @Expose public String responsivenessMode = GeofenceResponsiveness.MODE_FIXED;
+    @Expose public int lowBatteryPercent = 15;
+    // Token bucket budgets for bursts of transitions, a rate of 0 disables the budget
+    @Expose public int notificationBurst = 5;
+    @Expose public int notificationsPerMinute = 6;
+    @Expose public int uploadBurst = 30;
+    @Expose public int uploadsPerMinute = 60;
+    @Expose public int jsEventBurst = 20;
+    @Expose public int jsEventsPerMinute = 60;
+    // Work over budget is deferred for fences with at least this priority and shed for the others
+    @Expose public int deferPriority = 0;
+    @Expose public int maxDeferSeconds = 600;
+    // Send the implicit com.cowbell.cordova.geofence.TRANSITION broadcast on every event
+    @Expose public boolean transitionBroadcast = true;
+    // Write the metrics to files/geofence-metrics.json this often, 0 disables it
+    @Expose public int metricsDumpSeconds = 0;
+    // "debug", "info", "warn" or "error", unset keeps the default (info, or debug when enabled with setprop)
+    @Expose public String logLevel;
+    // Keep the log ring buffer in a memory mapped file so it survives the process
+    @Expose public boolean logToFile = false;
+    // Fence manifest kept in sync by GeofenceSyncJob, unset disables the sync
+    @Expose public String syncUrl;
+    @Expose public String syncAuthorization;
+    @Expose public int syncIntervalMinutes = 60;
+    // Daily maintenance: trigger times kept for frequency control, free pages that start a vacuum
+    @Expose public int triggerRetentionDays = 30;
+    @Expose public int vacuumFreePercent = 20;
 }
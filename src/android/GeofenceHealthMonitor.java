@@ -0,0 +1,229 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.google.gson.annotations.Expose;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Tracks which fences are armed with Play Services and repairs dropped registrations.
+ *
+ * Play Services silently drops every registration when location is switched off, after reboots
+ * and app updates, and reports GEOFENCE_NOT_AVAILABLE (1000) when it did. The fences believed
+ * to be armed are kept one row per fence in {@link LocalStorageDBHelper#ARMED_TABLE_NAME}, so
+ * marking fences costs a row per fence whatever the number of stored ones.
+ * {@link #reconcile(GeoNotificationManager)} registers only the expected fences missing from
+ * that table.
+ */
+public class GeofenceHealthMonitor {
+    // The outcome of the last reconcile
+    public static final String STATE_KEY = "armed";
+
+    private static class ReconcileState {
+        @Expose String lastReconcileDate;
+        @Expose int lastReconcileRegistered;
+        @Expose String lastError;
+    }
+
+    // Versions before the armed table kept the ids in the state, with a CRC32 of the sorted ids
+    private static class LegacyArmedSet extends ReconcileState {
+        @Expose List<String> ids;
+        @Expose long checksum;
+    }
+
+    private GeoNotificationStore store;
+    private LocalStorageDBHelper localStorageDBHelper;
+    private LocalStorageWriter writer;
+
+    public GeofenceHealthMonitor(Context context) {
+        store = new GeoNotificationStore(context);
+        localStorageDBHelper = LocalStorageDBHelper.getInstance(context);
+        writer = localStorageDBHelper.getWriter();
+    }
+
+    public void markArmed(final Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                ContentValues row = new ContentValues();
+                for (String id : ids) {
+                    row.put(LocalStorageDBHelper.ARMED_FENCE_ID, id);
+                    db.insertWithOnConflict(LocalStorageDBHelper.ARMED_TABLE_NAME, null, row,
+                            SQLiteDatabase.CONFLICT_IGNORE);
+                }
+            }
+        });
+    }
+
+    public void markDisarmed(final Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                for (String id : ids) {
+                    db.delete(LocalStorageDBHelper.ARMED_TABLE_NAME,
+                            LocalStorageDBHelper.ARMED_FENCE_ID + " = ?", new String[] { id });
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when Play Services lost all registrations (reboot, update, location switched off).
+     */
+    public void markAllDropped() {
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                db.delete(LocalStorageDBHelper.ARMED_TABLE_NAME, null, null);
+            }
+        });
+        GeofenceMetrics.increment("health.dropped");
+    }
+
+    /**
+     * Handles GEOFENCE_NOT_AVAILABLE reported by a transition or a registration: everything was
+     * dropped, reconcile once location is available again.
+     */
+    public void onGeofenceNotAvailable(Context context) {
+        Log.w(GeofencePlugin.TAG, "Geofences not available, registrations were dropped");
+        markAllDropped();
+        GeofenceRestoreJob.schedule(context, GeofenceRestoreJob.TRIGGER_NOT_AVAILABLE);
+    }
+
+    /**
+     * Registers the expected fences missing from the armed ones and forgets armed fences which
+     * are not expected any more. Blocks, must not be called on the main thread.
+     */
+    public GeoNotificationManager.RegistrationResult reconcile(GeoNotificationManager manager) {
+        final List<GeoNotificationDescriptor> expected = store.getRegistrableDescriptors();
+        final List<GeoNotificationDescriptor> missing = new ArrayList<GeoNotificationDescriptor>();
+        // Read and pruned on the writer thread, so no fence is marked in between
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                missing.clear();
+                Set<String> armedIds = getArmedIds(db);
+                Set<String> expectedIds = new HashSet<String>();
+                for (GeoNotificationDescriptor descriptor : expected) {
+                    expectedIds.add(descriptor.id);
+                    if (!armedIds.contains(descriptor.id)) {
+                        missing.add(descriptor);
+                    }
+                }
+                for (String id : armedIds) {
+                    if (!expectedIds.contains(id)) {
+                        db.delete(LocalStorageDBHelper.ARMED_TABLE_NAME,
+                                LocalStorageDBHelper.ARMED_FENCE_ID + " = ?", new String[] { id });
+                    }
+                }
+            }
+        });
+
+        // No initial trigger, the device was most likely inside the same fences before
+        // and the user was already notified
+        GeoNotificationManager.RegistrationResult result = manager.registerGeofences(missing, 0);
+
+        ReconcileState state = new ReconcileState();
+        state.lastReconcileDate = GeofenceRestoreJob.now();
+        state.lastReconcileRegistered = result.registered;
+        state.lastError = result.error != null ? result.error.getMessage() : null;
+        store.setState(STATE_KEY, Gson.get().toJson(state));
+        GeofenceMetrics.add("health.repaired", result.registered);
+        return result;
+    }
+
+    public JSONObject getHealth() throws JSONException {
+        Set<String> armedIds = getArmedIds(localStorageDBHelper.getReadableDatabase());
+        int expected = 0;
+        int armedExpected = 0;
+        for (GeoNotificationDescriptor descriptor : store.getRegistrableDescriptors()) {
+            expected++;
+            if (armedIds.contains(descriptor.id)) {
+                armedExpected++;
+            }
+        }
+        String json = store.getState(STATE_KEY);
+        ReconcileState state = json != null ? Gson.get().fromJson(json, ReconcileState.class) : new ReconcileState();
+
+        JSONObject health = new JSONObject();
+        health.put("expected", expected);
+        health.put("armed", armedExpected);
+        health.put("missing", expected - armedExpected);
+        health.put("lastReconcileDate", state.lastReconcileDate);
+        health.put("lastReconcileRegistered", state.lastReconcileRegistered);
+        health.put("lastError", state.lastError);
+        return health;
+    }
+
+    private static Set<String> getArmedIds(SQLiteDatabase db) {
+        Set<String> ids = new HashSet<String>();
+        Cursor cursor = db.query(LocalStorageDBHelper.ARMED_TABLE_NAME,
+                new String[] { LocalStorageDBHelper.ARMED_FENCE_ID }, null, null, null, null, null);
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getString(0));
+        }
+        cursor.close();
+        return ids;
+    }
+
+    /**
+     * Moves the armed ids kept in the state by previous versions to the armed table, unless they
+     * fail their checksum, and keeps only the reconcile outcome in the state.
+     */
+    static void migrateArmedSet(SQLiteDatabase db) {
+        Cursor cursor = db.query(LocalStorageDBHelper.STATE_TABLE_NAME,
+                new String[] { LocalStorageDBHelper.LOCALSTORAGE_VALUE },
+                LocalStorageDBHelper.LOCALSTORAGE_ID + " = ?", new String[] { STATE_KEY }, null, null, null);
+        String json = cursor.moveToFirst() ? cursor.getString(0) : null;
+        cursor.close();
+        if (json == null) {
+            return;
+        }
+        LegacyArmedSet legacy = Gson.get().fromJson(json, LegacyArmedSet.class);
+        if (legacy.ids != null && legacy.checksum == checksum(legacy.ids)) {
+            ContentValues row = new ContentValues();
+            for (String id : legacy.ids) {
+                row.put(LocalStorageDBHelper.ARMED_FENCE_ID, id);
+                db.insertWithOnConflict(LocalStorageDBHelper.ARMED_TABLE_NAME, null, row,
+                        SQLiteDatabase.CONFLICT_IGNORE);
+            }
+        }
+        ReconcileState state = new ReconcileState();
+        state.lastReconcileDate = legacy.lastReconcileDate;
+        state.lastReconcileRegistered = legacy.lastReconcileRegistered;
+        state.lastError = legacy.lastError;
+        ContentValues values = new ContentValues();
+        values.put(LocalStorageDBHelper.LOCALSTORAGE_VALUE, Gson.get().toJson(state));
+        db.update(LocalStorageDBHelper.STATE_TABLE_NAME, values,
+                LocalStorageDBHelper.LOCALSTORAGE_ID + " = ?", new String[] { STATE_KEY });
+    }
+
+    private static long checksum(List<String> ids) {
+        List<String> sorted = new ArrayList<String>(ids);
+        Collections.sort(sorted);
+        CRC32 crc = new CRC32();
+        Charset utf8 = Charset.forName("UTF-8");
+        for (String id : sorted) {
+            crc.update(id.getBytes(utf8));
+            crc.update('\n');
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,304 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Context;
+
+import com.google.android.gms.location.GeofencingRequest;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports fences from a local file without sending them over the JS bridge.
+ *
+ * The file is streamed in chunks of {@link #CHUNK_SIZE} fences. Every chunk is stored in a
+ * transaction of its own, releasing the storage writer in between so transitions and other
+ * writes are not held up by a large import, then its changed fences are registered with Play
+ * Services. Fences whose stored JSON did not change are neither written nor registered again.
+ * An import is therefore not atomic: a broken line fails the import but keeps the chunks
+ * before it stored and registered, as reported by the storedChunks of the last progress.
+ * Importing the corrected file again skips them as unchanged and resumes at the broken chunk.
+ *
+ * Formats:
+ * <ul>
+ *     <li>{@link #FORMAT_NDJSON}: one geofence JSON object per line, blank lines are skipped.</li>
+ *     <li>{@link #FORMAT_BINARY}: the magic bytes "GFB1" followed by records of a marker byte
+ *     1, the id (DataOutput.writeUTF), latitude and longitude (double), radius and
+ *     transitionType (int), and the remaining fields as a UTF-8 JSON object prefixed by its
+ *     byte length (int, 0 when there are none, at most {@link #MAX_BINARY_PAYLOAD}).</li>
+ * </ul>
+ */
+public class GeofenceImporter {
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_BINARY = "binary";
+
+    public static final String PHASE_STORING = "storing";
+    public static final String PHASE_REGISTERING = "registering";
+
+    static final int CHUNK_SIZE = 500;
+    private static final byte[] BINARY_MAGIC = { 'G', 'F', 'B', '1' };
+    private static final int BINARY_RECORD = 1;
+    // Larger payloads are taken for a corrupt length rather than allocated
+    static final int MAX_BINARY_PAYLOAD = 1024 * 1024;
+
+    public interface Listener {
+        void onProgress(Result progress);
+    }
+
+    /**
+     * Counts of the chunks stored so far, reported after every phase of a chunk.
+     */
+    public static class Result {
+        public String phase = PHASE_STORING;
+        // Chunks committed to the store, they stay stored when a later chunk fails
+        public int storedChunks;
+        public int read;
+        public int changed;
+        public int unchanged;
+        public int registered;
+        public int failedChunks;
+
+        public JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("phase", phase);
+            json.put("storedChunks", storedChunks);
+            json.put("read", read);
+            json.put("changed", changed);
+            json.put("unchanged", unchanged);
+            json.put("registered", registered);
+            json.put("failedChunks", failedChunks);
+            return json;
+        }
+    }
+
+    private interface FenceSource extends Closeable {
+        /**
+         * @return the next fence, null at the end of the file
+         */
+        GeoNotification next() throws IOException, JSONException;
+    }
+
+    private final Context context;
+    private final GeoNotificationStore store;
+
+    public GeofenceImporter(Context context) {
+        this.context = context;
+        this.store = new GeoNotificationStore(context);
+    }
+
+    /**
+     * Imports the file, blocking until the fences are stored and registered. Must not be
+     * called on the main thread.
+     *
+     * @param path file path or file:// URL
+     * @param format {@link #FORMAT_NDJSON} or {@link #FORMAT_BINARY}
+     */
+    public Result importFile(String path, String format, Listener listener) throws IOException, JSONException {
+        File file = toFile(path);
+        Result result = new Result();
+        GeoNotificationManager manager = new GeoNotificationManager(context);
+        GeoNotificationStore.RegistrableSet registrable = store.getRegistrableSet();
+
+        try (FenceSource source = open(file, format)) {
+            List<GeoNotification> chunk = new ArrayList<GeoNotification>(CHUNK_SIZE);
+            GeoNotification geoNotification;
+            while ((geoNotification = source.next()) != null) {
+                chunk.add(geoNotification);
+                if (chunk.size() == CHUNK_SIZE) {
+                    importChunk(chunk, result, manager, registrable, listener);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, result, manager, registrable, listener);
+            }
+        }
+        GeofenceMetrics.add("import.fences", result.read);
+        GeofenceMetrics.add("import.changed", result.changed);
+        return result;
+    }
+
+    private void importChunk(List<GeoNotification> chunk, Result result, GeoNotificationManager manager,
+                             GeoNotificationStore.RegistrableSet registrable, Listener listener) {
+        result.phase = PHASE_STORING;
+        List<GeoNotification> changed = storeChunk(chunk, result);
+        listener.onProgress(result);
+
+        result.phase = PHASE_REGISTERING;
+        List<GeoNotification> registered = new ArrayList<GeoNotification>(changed.size());
+        for (GeoNotification geoNotification : changed) {
+            // Fences of inactive users and disabled groups are only stored
+            if (registrable.contains(geoNotification)) {
+                registered.add(geoNotification);
+            }
+        }
+        GeoNotificationManager.RegistrationResult registration =
+                manager.registerGeofences(registered, GeofencingRequest.INITIAL_TRIGGER_ENTER);
+        result.registered += registration.registered;
+        result.failedChunks += registration.failedChunks;
+        listener.onProgress(result);
+    }
+
+    /**
+     * Stores the changed fences of the chunk in one transaction.
+     *
+     * @return the changed fences
+     */
+    private List<GeoNotification> storeChunk(List<GeoNotification> chunk, Result result) {
+        List<String> ids = new ArrayList<String>(chunk.size());
+        for (GeoNotification geoNotification : chunk) {
+            ids.add(geoNotification.id);
+        }
+        Map<String, String> stored = store.getStoredJson(ids);
+        List<GeoNotification> changed = new ArrayList<GeoNotification>();
+        for (GeoNotification geoNotification : chunk) {
+            if (geoNotification.toJson().equals(stored.get(geoNotification.id))) {
+                result.unchanged++;
+            } else {
+                changed.add(geoNotification);
+            }
+        }
+        store.setGeoNotifications(changed);
+        result.storedChunks++;
+        result.read += chunk.size();
+        result.changed += changed.size();
+        return changed;
+    }
+
+    private static File toFile(String path) throws IOException {
+        if (path == null || path.isEmpty()) {
+            throw new IOException("No file given");
+        }
+        if (path.startsWith("file:")) {
+            try {
+                path = new URI(path).getPath();
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid file URL " + path);
+            }
+        }
+        File file = new File(path);
+        if (!file.isFile()) {
+            throw new IOException("File not found: " + path);
+        }
+        return file;
+    }
+
+    private static FenceSource open(File file, String format) throws IOException {
+        if (FORMAT_BINARY.equals(format)) {
+            return openBinary(file);
+        }
+        if (format == null || format.isEmpty() || FORMAT_NDJSON.equals(format)) {
+            return openNdjson(file);
+        }
+        throw new IOException("Unknown import format " + format);
+    }
+
+    private static FenceSource openNdjson(File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        return new FenceSource() {
+            private int line;
+
+            public GeoNotification next() throws IOException, JSONException {
+                String json;
+                while ((json = reader.readLine()) != null) {
+                    line++;
+                    if (!json.trim().isEmpty()) {
+                        return GeoNotificationReader.readOne(json, "Line " + line);
+                    }
+                }
+                return null;
+            }
+
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    private static FenceSource openBinary(File file) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        byte[] magic = new byte[BINARY_MAGIC.length];
+        try {
+            in.readFully(magic);
+        } catch (EOFException e) {
+            in.close();
+            throw new IOException("Not a binary geofence file");
+        }
+        if (!Arrays.equals(magic, BINARY_MAGIC)) {
+            in.close();
+            throw new IOException("Not a binary geofence file");
+        }
+        return new FenceSource() {
+            private int record;
+
+            public GeoNotification next() throws IOException, JSONException {
+                int marker = in.read();
+                if (marker == -1) {
+                    return null;
+                }
+                if (marker != BINARY_RECORD) {
+                    throw new IOException("Corrupt record " + record);
+                }
+                String id;
+                double latitude;
+                double longitude;
+                int radius;
+                int transitionType;
+                byte[] payload;
+                try {
+                    id = in.readUTF();
+                    latitude = in.readDouble();
+                    longitude = in.readDouble();
+                    radius = in.readInt();
+                    transitionType = in.readInt();
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_BINARY_PAYLOAD) {
+                        throw new IOException("Corrupt record " + record + ": payload of " + length + " bytes");
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    throw new IOException("Truncated record " + record);
+                }
+
+                GeoNotification geoNotification;
+                try {
+                    geoNotification = payload.length == 0
+                            ? new GeoNotification()
+                            : GeoNotification.fromJson(new String(payload, StandardCharsets.UTF_8));
+                } catch (RuntimeException e) {
+                    throw new JSONException("Record " + record + " is malformed: " + e.getMessage());
+                }
+                geoNotification.id = id;
+                geoNotification.latitude = latitude;
+                geoNotification.longitude = longitude;
+                geoNotification.radius = radius;
+                geoNotification.transitionType = transitionType;
+                GeoNotificationReader.validate(geoNotification, "Record " + record);
+                record++;
+                return geoNotification;
+            }
+
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+}
@@ -13,25 +13,56 @@ public class GeofenceJsEvent {
     public static WeakReference<CordovaWebView> webView = null;
 
     public static void onTransitionReceived(List<GeoNotification> notifications) {
+        onTransitionReceived(notifications, 0);
+    }
+
+    public static void onTransitionReceived(List<GeoNotification> notifications, long delayMillis) {
         Log.d(TAG, "Transition Event Received!");
-        String js = "setTimeout('geofence.onTransitionReceived("
-                + Gson.get().toJson(notifications) + ")',0)";
+        String js = "setTimeout(function () { geofence.onTransitionReceived("
+                + toJavascript(GeoNotification.toJson(notifications)) + "); }, " + delayMillis + ")";
         sendJavascript(js);
     }
 
     public static void onNotificationClicked(String data) {
         if (data != null) {
-            String js = "setTimeout('geofence.onNotificationClicked(" + data + ")', 100)";
+            String js = "setTimeout(function () { geofence.onNotificationClicked("
+                    + toJavascript(data) + "); }, 100)";
             sendJavascript(js);
         }
     }
 
+    /**
+     * Turns JSON, stored as the app sent it, into a JavaScript expression. The JSON is passed as
+     * code, not inside a quoted string, so quotes need no escaping. U+2028 and U+2029 end the line
+     * in older JavaScript engines and javascript: URLs are percent-decoded; JSON only allows all
+     * three inside string literals, where they are replaced by their escape sequence.
+     */
+    static String toJavascript(String json) {
+        StringBuilder js = null;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '\u2028' || c == '\u2029' || c == '%') {
+                if (js == null) {
+                    js = new StringBuilder(json.length() + 16).append(json, 0, i);
+                }
+                js.append(String.format("\\u%04x", (int) c));
+            } else if (js != null) {
+                js.append(c);
+            }
+        }
+        return js != null ? js.toString() : json;
+    }
+
     public static void onPermissionsResult(boolean result){
         String js = "setTimeout('geofence.onPermissions(" + result + ")', 300)";
         sendJavascript(js);
     }
 
-    private static synchronized void sendJavascript(final String js) {
+    private static void sendJavascript(String js) {
+        GeofenceServices.get().sendJavascript(js);
+    }
+
+    static synchronized void loadInWebView(final String js) {
 
         if (webView == null) {
             Log.e(TAG, "Device isn't ready.");
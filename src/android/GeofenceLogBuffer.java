@@ -0,0 +1,130 @@
+package com.cowbell.cordova.geofence;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed size ring of the last log events, kept in memory or in a memory mapped file so the
+ * events survive the process.
+ *
+ * The buffer starts with a header (magic, slot count, next sequence number) followed by slots
+ * of {@link #SLOT_SIZE} bytes: sequence number (long), wall clock time (long), priority (byte),
+ * message length (short) and the UTF-8 message, truncated to fit. Messages are encoded straight
+ * into the slot, appending does not allocate.
+ */
+public class GeofenceLogBuffer {
+    static final int SLOT_SIZE = 256;
+    private static final int MAGIC = 0x47464c31; // "GFL1"
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_HEADER_SIZE = 19;
+    private static final int MAX_MESSAGE_BYTES = SLOT_SIZE - SLOT_HEADER_SIZE;
+    private static final String PRIORITIES = "??VDIWEA";
+
+    private final ByteBuffer buffer;
+    private final int slots;
+    private long next;
+
+    private GeofenceLogBuffer(ByteBuffer buffer, int slots) {
+        this.buffer = buffer;
+        this.slots = slots;
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == slots) {
+            // Continue after the events of a previous process
+            next = buffer.getLong(8);
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, slots);
+            buffer.putLong(8, 0);
+        }
+    }
+
+    public static GeofenceLogBuffer inMemory(int slots) {
+        return new GeofenceLogBuffer(ByteBuffer.allocate(HEADER_SIZE + slots * SLOT_SIZE), slots);
+    }
+
+    /**
+     * Maps the given file, keeping the events it holds when it was written with the same slot
+     * count. The mapping stays valid after the channel is closed.
+     */
+    public static GeofenceLogBuffer mapped(File file, int slots) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+            return new GeofenceLogBuffer(buffer, slots);
+        }
+    }
+
+    public synchronized void append(long time, int priority, CharSequence message) {
+        long seq = next++;
+        int slot = HEADER_SIZE + (int) (seq % slots) * SLOT_SIZE;
+        int position = slot + SLOT_HEADER_SIZE;
+        int limit = position + MAX_MESSAGE_BYTES;
+        int length = message.length();
+        for (int i = 0; i < length; i++) {
+            int c = Character.codePointAt(message, i);
+            int size = c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (position + size > limit) {
+                break;
+            }
+            if (size == 1) {
+                buffer.put(position, (byte) c);
+            } else if (size == 2) {
+                buffer.put(position, (byte) (0xc0 | (c >> 6)));
+                buffer.put(position + 1, (byte) (0x80 | (c & 0x3f)));
+            } else if (size == 3) {
+                buffer.put(position, (byte) (0xe0 | (c >> 12)));
+                buffer.put(position + 1, (byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put(position + 2, (byte) (0x80 | (c & 0x3f)));
+            } else {
+                buffer.put(position, (byte) (0xf0 | (c >> 18)));
+                buffer.put(position + 1, (byte) (0x80 | ((c >> 12) & 0x3f)));
+                buffer.put(position + 2, (byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put(position + 3, (byte) (0x80 | (c & 0x3f)));
+                i++;
+            }
+            position += size;
+        }
+        buffer.putLong(slot, seq);
+        buffer.putLong(slot + 8, time);
+        buffer.put(slot + 16, (byte) priority);
+        buffer.putShort(slot + 17, (short) (position - slot - SLOT_HEADER_SIZE));
+        buffer.putLong(8, next);
+    }
+
+    /**
+     * @param limit the maximum number of events, the most recent ones are returned
+     * @return JSON array of {seq, time, level, message} objects, oldest first
+     */
+    public synchronized String toJson(int limit) {
+        long from = Math.max(0, next - Math.min(limit, slots));
+        StringBuilder builder = new StringBuilder("[");
+        byte[] bytes = new byte[MAX_MESSAGE_BYTES];
+        boolean first = true;
+        for (long seq = from; seq < next; seq++) {
+            int slot = HEADER_SIZE + (int) (seq % slots) * SLOT_SIZE;
+            if (buffer.getLong(slot) != seq) {
+                // Not written, e.g. a file mapped after a crash in the middle of an append
+                continue;
+            }
+            int priority = buffer.get(slot + 16);
+            int length = Math.min(buffer.getShort(slot + 17), MAX_MESSAGE_BYTES);
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(slot + SLOT_HEADER_SIZE + i);
+            }
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            builder.append("{\"seq\":").append(seq)
+                    .append(",\"time\":").append(buffer.getLong(slot + 8))
+                    .append(",\"level\":\"").append(priority >= 0 && priority < PRIORITIES.length() ? PRIORITIES.charAt(priority) : '?')
+                    .append("\",\"message\":").append(JSONObject.quote(new String(bytes, 0, Math.max(length, 0), StandardCharsets.UTF_8)))
+                    .append('}');
+        }
+        return builder.append(']').toString();
+    }
+}
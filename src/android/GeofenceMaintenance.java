@@ -0,0 +1,215 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.annotations.Expose;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store housekeeping, run daily by {@link GeofenceMaintenanceJob} and on demand by the
+ * runMaintenance action:
+ * <ul>
+ *     <li>fences past their endTime are deleted and unregistered,</li>
+ *     <li>trigger times older than triggerRetentionDays are dropped from the frequency control
+ *     table once their frequency has elapsed or their notification is gone, and the change log
+ *     tombstones beyond {@link GeofenceChangeLog#MAX_TOMBSTONES} are
+ *     compacted,</li>
+ *     <li>once the free pages reach vacuumFreePercent of the database they are given back with
+ *     an incremental vacuum, followed by ANALYZE. The first time the database is rebuilt with
+ *     a full VACUUM to switch it to incremental auto vacuum.</li>
+ * </ul>
+ * The outcome is kept under {@link #STATE_KEY} for getMetrics.
+ */
+public class GeofenceMaintenance {
+    public static final String STATE_KEY = "maintenance";
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    // Runs of the job and of the action must not interleave
+    private static final Object lock = new Object();
+
+    public static class Result {
+        @Expose public String date;
+        @Expose public boolean success;
+        @Expose public int expiredFences;
+        @Expose public int triggersTrimmed;
+        @Expose public int tombstonesCompacted;
+        // Free pages in percent of the database before the vacuum
+        @Expose public int freePercent;
+        @Expose public boolean vacuumed;
+        @Expose public long bytesReclaimed;
+        @Expose public long durationMs;
+        @Expose public String error;
+
+        public JSONObject toJson() throws JSONException {
+            return new JSONObject(Gson.get().toJson(this));
+        }
+    }
+
+    private final Context context;
+    private final GeoNotificationStore store;
+    private final LocalStorageDBHelper localStorageDBHelper;
+    private final LocalStorageWriter writer;
+    private final Logger logger;
+
+    public GeofenceMaintenance(Context context) {
+        this.context = context;
+        store = new GeoNotificationStore(context);
+        localStorageDBHelper = LocalStorageDBHelper.getInstance(context);
+        writer = localStorageDBHelper.getWriter();
+        logger = Logger.getLogger(context);
+    }
+
+    /**
+     * Runs every step, blocking until done. Must not be called on the main thread.
+     */
+    public Result run() {
+        synchronized (lock) {
+            Result result = new Result();
+            result.date = GeofenceRestoreJob.now();
+            long startedAt = SystemClock.elapsedRealtime();
+            try {
+                GeofenceConfig config = store.getConfig();
+                purgeExpired(result);
+                result.triggersTrimmed = trimTriggers(TimeUnit.DAYS.toMillis(config.triggerRetentionDays));
+                result.tombstonesCompacted = new GeofenceChangeLog(context).compact(GeofenceChangeLog.MAX_TOMBSTONES);
+                vacuum(config.vacuumFreePercent, result);
+                result.success = true;
+            } catch (RuntimeException e) {
+                logger.log("Store maintenance failed", e);
+                result.error = e.getMessage();
+            }
+            result.durationMs = SystemClock.elapsedRealtime() - startedAt;
+            store.setState(STATE_KEY, Gson.get().toJson(result));
+
+            GeofenceMetrics.record("maintenance.run", result.durationMs);
+            GeofenceMetrics.add("maintenance.expiredFences", result.expiredFences);
+            GeofenceMetrics.add("maintenance.bytesReclaimed", result.bytesReclaimed);
+            logger.log(Log.INFO, "Store maintenance removed {} expired fences and reclaimed {} bytes in {} ms",
+                    result.expiredFences, result.bytesReclaimed, result.durationMs);
+            return result;
+        }
+    }
+
+    private void purgeExpired(Result result) {
+        List<String> expired = new ArrayList<String>();
+        for (GeoNotificationDescriptor descriptor : store.getAllDescriptors()) {
+            if (descriptor.isExpired()) {
+                expired.add(descriptor.id);
+            }
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        store.remove(expired);
+        result.expiredFences = expired.size();
+        try {
+            new GeoNotificationManager(context).unregisterGeofences(expired);
+        } catch (Exception e) {
+            // Fences registered with their end time expire in Play Services anyway
+            logger.log("Unregistering " + expired.size() + " expired geofences failed", e);
+        }
+    }
+
+    /**
+     * Drops the trigger times older than the retention whose notification can be triggered
+     * again or is no longer used by any fence, and forgets their cached values.
+     *
+     * @return the number of dropped trigger times
+     */
+    private int trimTriggers(long retentionMillis) {
+        final long now = System.currentTimeMillis();
+        final long before = now - retentionMillis;
+        // Longest frequency of each notification id still used by a fence
+        final Map<Integer, Long> frequencies = new HashMap<Integer, Long>();
+        for (GeoNotification geoNotification : store.getAll()) {
+            Notification notification = geoNotification.notification;
+            if (notification != null) {
+                long frequency = TimeUnit.SECONDS.toMillis(notification.frequency);
+                Long other = frequencies.get(notification.id);
+                frequencies.put(notification.id, other != null ? Math.max(other, frequency) : frequency);
+            }
+        }
+        final Map<Integer, Long> trimmed = new HashMap<Integer, Long>();
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                Cursor cursor = db.query(LocalStorageDBHelper.TRIGGERS_TABLE_NAME,
+                        new String[] { LocalStorageDBHelper.TRIGGERS_NOTIFICATION_ID,
+                                LocalStorageDBHelper.TRIGGERS_LAST_TRIGGERED },
+                        LocalStorageDBHelper.TRIGGERS_LAST_TRIGGERED + " < ?",
+                        new String[] { Long.toString(before) }, null, null, null);
+                while (cursor.moveToNext()) {
+                    Long frequency = frequencies.get(cursor.getInt(0));
+                    if (frequency == null || cursor.getLong(1) + frequency <= now) {
+                        trimmed.put(cursor.getInt(0), cursor.getLong(1));
+                    }
+                }
+                cursor.close();
+                for (Integer notificationId : trimmed.keySet()) {
+                    db.delete(LocalStorageDBHelper.TRIGGERS_TABLE_NAME,
+                            LocalStorageDBHelper.TRIGGERS_NOTIFICATION_ID + " = ?",
+                            new String[] { notificationId.toString() });
+                }
+            }
+        });
+        FrequencyControlStorage.forget(trimmed);
+        return trimmed.size();
+    }
+
+    private void vacuum(int freePercent, Result result) {
+        SQLiteDatabase database = localStorageDBHelper.getReadableDatabase();
+        long pageSize = pragma(database, "page_size");
+        long pages = pragma(database, "page_count");
+        long freePages = pragma(database, "freelist_count");
+        result.freePercent = pages > 0 ? (int) (freePages * 100 / pages) : 0;
+        if (freePages == 0 || result.freePercent < freePercent) {
+            return;
+        }
+        if (pragma(database, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            // Only a full VACUUM, outside of any transaction, switches the mode of an existing
+            // database
+            writer.writeStandalone(new LocalStorageWriter.Mutation() {
+                public void apply(SQLiteDatabase db) {
+                    db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                    db.execSQL("VACUUM");
+                }
+            });
+        } else {
+            writer.write(new LocalStorageWriter.Mutation() {
+                public void apply(SQLiteDatabase db) {
+                    // Frees one page per step, execSQL would only take the first one
+                    Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+                    while (cursor.moveToNext()) {
+                        // stepping is the work
+                    }
+                    cursor.close();
+                }
+            });
+        }
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                db.execSQL("ANALYZE");
+            }
+        });
+        result.vacuumed = true;
+        result.bytesReclaimed = Math.max(0, pages - pragma(database, "page_count")) * pageSize;
+    }
+
+    private static long pragma(SQLiteDatabase database, String name) {
+        Cursor cursor = database.rawQuery("PRAGMA " + name, null);
+        long value = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return value;
+    }
+}
@@ -0,0 +1,59 @@
+package com.cowbell.cordova.geofence;
+
+import android.annotation.SuppressLint;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link GeofenceMaintenance} once a day while the device is idle and charging.
+ */
+@SuppressLint("SpecifyJobSchedulerIdRange")
+public class GeofenceMaintenanceJob extends JobService {
+    private static final int JOB_ID = 576;
+    private static final long INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Schedules the daily maintenance unless it is pending already, scheduling it again would
+     * restart its period.
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler = GeofenceServices.get().getJobScheduler(context);
+        for (JobInfo pending : jobScheduler.getAllPendingJobs()) {
+            if (pending.getId() == JOB_ID) {
+                return;
+            }
+        }
+        jobScheduler.schedule(
+                new JobInfo.Builder(JOB_ID, new ComponentName(context, GeofenceMaintenanceJob.class))
+                        .setPeriodic(INTERVAL_MILLIS)
+                        .setRequiresDeviceIdle(true)
+                        .setRequiresCharging(true)
+                        .setPersisted(true)
+                        .build()
+        );
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+        final Context context = this;
+
+        Thread thread = new Thread(() -> {
+            new GeofenceMaintenance(context).run();
+            jobFinished(jobParameters, false);
+        });
+        thread.start();
+
+        return true; // Async
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        return true;
+    }
+}
@@ -0,0 +1,287 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process wide counters, gauges, event rates and latency timers.
+ *
+ * Counter and timer updates are lock free so they can be called from the plugin threads, the
+ * job services and the broadcast receivers without coordination. Timers keep a histogram over
+ * {@link #BUCKET_BOUNDS_MS}, from which the reported percentiles are estimated. Exposed to JS by
+ * the getMetrics action and optionally written to {@link #DUMP_FILE} periodically.
+ */
+public class GeofenceMetrics {
+    private static final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Rate> rates = new ConcurrentHashMap<>();
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    // Upper bounds of the timer histogram buckets, the last bucket counts everything above
+    static final long[] BUCKET_BOUNDS_MS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, 300000, 900000
+    };
+    public static final String DUMP_FILE = "geofence-metrics.json";
+
+    private static final ScheduledExecutorService dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "geofence-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ScheduledFuture<?> dumpTask;
+    private static int dumpSeconds;
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long delta) {
+        counter(name).addAndGet(delta);
+    }
+
+    public static void set(String name, long value) {
+        counter(name).set(value);
+    }
+
+    /**
+     * Raises the named gauge to value if it is greater than the current one.
+     */
+    public static void max(String name, long value) {
+        AtomicLong gauge = counter(name);
+        long current;
+        do {
+            current = gauge.get();
+        } while (value > current && !gauge.compareAndSet(current, value));
+    }
+
+    public static long get(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Records a single duration in milliseconds for the named timer.
+     */
+    public static void record(String name, long millis) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            Timer created = new Timer();
+            timer = timers.putIfAbsent(name, created);
+            if (timer == null) {
+                timer = created;
+            }
+        }
+        timer.record(millis);
+    }
+
+    /**
+     * Counts an occurrence of the named event, both in its counter and in its rate over the
+     * last hour.
+     */
+    public static void mark(String name) {
+        increment(name);
+        Rate rate = rates.get(name);
+        if (rate == null) {
+            Rate created = new Rate();
+            rate = rates.putIfAbsent(name, created);
+            if (rate == null) {
+                rate = created;
+            }
+        }
+        rate.mark(SystemClock.elapsedRealtime());
+    }
+
+    public static JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        JSONObject countersJson = new JSONObject();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            countersJson.put(entry.getKey(), entry.getValue().get());
+        }
+        JSONObject timersJson = new JSONObject();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            timersJson.put(entry.getKey(), entry.getValue().toJson());
+        }
+        JSONObject perHourJson = new JSONObject();
+        long now = SystemClock.elapsedRealtime();
+        for (Map.Entry<String, Rate> entry : rates.entrySet()) {
+            perHourJson.put(entry.getKey(), entry.getValue().countSince(now - HOUR_MILLIS));
+        }
+        json.put("counters", countersJson);
+        json.put("timers", timersJson);
+        json.put("perHour", perHourJson);
+        JSONArray boundsJson = new JSONArray();
+        for (long bound : BUCKET_BOUNDS_MS) {
+            boundsJson.put(bound);
+        }
+        json.put("bucketBoundsMs", boundsJson);
+        return json;
+    }
+
+    /**
+     * Starts, reschedules or stops writing the metrics to {@link #DUMP_FILE} in the files
+     * directory every given number of seconds. Does nothing when already dumping at that
+     * interval, so it can be called whenever the config is read.
+     *
+     * @param seconds dump interval, 0 stops dumping
+     */
+    public static synchronized void startPeriodicDump(Context context, int seconds) {
+        if (seconds == dumpSeconds) {
+            return;
+        }
+        if (dumpTask != null) {
+            dumpTask.cancel(false);
+            dumpTask = null;
+        }
+        dumpSeconds = seconds;
+        if (seconds > 0) {
+            final File file = new File(context.getApplicationContext().getFilesDir(), DUMP_FILE);
+            dumpTask = dumpExecutor.scheduleWithFixedDelay(() -> {
+                try {
+                    dump(file);
+                } catch (IOException | JSONException e) {
+                    Log.e(GeofencePlugin.TAG, "Could not write the metrics", e);
+                }
+            }, seconds, seconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Writes the metrics to a temporary file renamed over the given one, so readers never
+     * see a partial dump.
+     */
+    static void dump(File file) throws IOException, JSONException {
+        JSONObject json = toJson();
+        json.put("dumpedAt", System.currentTimeMillis());
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not rename " + tmp);
+        }
+    }
+
+    private static AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    private static class Timer {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+
+        void record(long millis) {
+            count.incrementAndGet();
+            total.addAndGet(millis);
+            buckets.incrementAndGet(bucket(millis));
+            long current;
+            do {
+                current = max.get();
+            } while (millis > current && !max.compareAndSet(current, millis));
+        }
+
+        JSONObject toJson() throws JSONException {
+            long n = count.get();
+            JSONObject json = new JSONObject();
+            json.put("count", n);
+            json.put("avgMs", n == 0 ? 0 : total.get() / n);
+            json.put("maxMs", max.get());
+            long[] counts = new long[buckets.length()];
+            long bucketed = 0;
+            JSONArray histogram = new JSONArray();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                bucketed += counts[i];
+                histogram.put(counts[i]);
+            }
+            json.put("p50Ms", percentile(counts, bucketed, 0.5));
+            json.put("p90Ms", percentile(counts, bucketed, 0.9));
+            json.put("p99Ms", percentile(counts, bucketed, 0.99));
+            json.put("histogram", histogram);
+            return json;
+        }
+
+        private static int bucket(long millis) {
+            for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+                if (millis <= BUCKET_BOUNDS_MS[i]) {
+                    return i;
+                }
+            }
+            return BUCKET_BOUNDS_MS.length;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile, the max for the overflow
+         * bucket.
+         */
+        private long percentile(long[] counts, long total, double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i < BUCKET_BOUNDS_MS.length ? Math.min(BUCKET_BOUNDS_MS[i], max.get()) : max.get();
+                }
+            }
+            return max.get();
+        }
+    }
+
+    /**
+     * Timestamps of the events of the last hour, older ones are pruned as new ones arrive.
+     * Meant for rare events like transitions and wake-ups, so a plain lock is fine here.
+     */
+    private static class Rate {
+        private final ArrayDeque<Long> timestamps = new ArrayDeque<Long>();
+
+        synchronized void mark(long now) {
+            timestamps.addLast(now);
+            while (timestamps.peekFirst() < now - HOUR_MILLIS) {
+                timestamps.pollFirst();
+            }
+        }
+
+        synchronized long countSince(long since) {
+            long count = 0;
+            for (Long timestamp : timestamps) {
+                if (timestamp >= since) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
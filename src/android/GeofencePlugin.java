@@ -3,17 +3,24 @@ package com.cowbell.cordova.geofence;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.location.LocationManager;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 import android.Manifest;
 import com.google.gson.JsonParser;
 import android.app.NotificationManager;
 
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
@@ -27,9 +34,11 @@ import org.json.JSONObject;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class GeofencePlugin extends CordovaPlugin {
     public static final String TAG = "GeofencePlugin";
@@ -42,27 +51,33 @@ public class GeofencePlugin extends CordovaPlugin {
             Manifest.permission.ACCESS_COARSE_LOCATION,
             Manifest.permission.ACCESS_FINE_LOCATION,
     };
-    private static HashMap<String, Long> snoozedFences = new HashMap<>();
+    private static Map<String, Long> snoozedFences = new ConcurrentHashMap<>();
+    private static final List<GeofenceTransitionListener> transitionListeners =
+            new CopyOnWriteArrayList<GeofenceTransitionListener>();
 
     private GeoNotificationManager geoNotificationManager;
     private Context context;
     protected GeoNotificationStore store;
     private String lastNotificationData = null;
 
-    private class Action {
-        public String action;
-        public JSONArray args;
-        public CallbackContext callbackContext;
-
-        public Action(String action, JSONArray args, CallbackContext callbackContext) {
-            this.action = action;
-            this.args = args;
-            this.callbackContext = callbackContext;
-        }
-    }
+    private static final List<String> MUTATIONS = Arrays.asList(
+            "addOrUpdate", "remove", "removeAll", "snooze", "initialize", "importFromFile", "activateUser",
+            "removeGroup", "enableGroup", "disableGroup"
+    );
+    // Blocking on the network or rebuilding the database, run beside the mutations
+    private static final List<String> BACKGROUND_COMMANDS = Arrays.asList("sync", "runMaintenance");
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private static final int MAX_PAGE_SIZE = 5000;
+    private static final int DEFAULT_LOG_EXPORT = 5000;
+    private static final List<String> COALESCABLE_MUTATIONS = Arrays.asList("addOrUpdate", "remove");
 
-    //FIXME: what about many executedActions at once
-    private Action executedAction;
+    private GeofenceCommandPipeline pipeline;
+    private GeofenceHealthMonitor healthMonitor;
+    private final GeofenceProviderChangedReceiver providerChangedReceiver = new GeofenceProviderChangedReceiver();
+    private final GeofencePowerStateReceiver powerStateReceiver = new GeofencePowerStateReceiver();
+    // Commands waiting for a permission dialog, keyed by the request code (the command request id)
+    private final Map<Integer, GeofenceCommandPipeline.Command> pendingPermissionCommands =
+            new ConcurrentHashMap<Integer, GeofenceCommandPipeline.Command>();
 
     /**
      * @param cordova
@@ -75,9 +90,41 @@ public class GeofencePlugin extends CordovaPlugin {
         super.initialize(cordova, webView);
         GeofenceJsEvent.webView = new WeakReference<CordovaWebView>(webView);
         context = this.cordova.getActivity().getApplicationContext();
-        Logger.setLogger(new Logger(TAG, context, false));
+        Logger.getLogger(context);
         geoNotificationManager = new GeoNotificationManager(context);
         store = new GeoNotificationStore(context);
+        pipeline = new GeofenceCommandPipeline(cordova.getThreadPool(), COALESCABLE_MUTATIONS,
+                new GeofenceCommandPipeline.Handler() {
+                    public void handle(String action, List<GeofenceCommandPipeline.Command> commands) {
+                        handleCommands(action, commands);
+                    }
+                });
+        healthMonitor = new GeofenceHealthMonitor(context);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // Below Android 8.0 the manifest receiver gets the broadcast already
+            context.registerReceiver(providerChangedReceiver, new IntentFilter(LocationManager.PROVIDERS_CHANGED_ACTION));
+        }
+        context.registerReceiver(powerStateReceiver, GeofencePowerStateReceiver.getIntentFilter());
+        // Registrations may have been dropped while the app was not running
+        GeofenceRestoreJob.schedule(context, GeofenceRestoreJob.TRIGGER_APP_START);
+        GeofenceMaintenanceJob.schedule(context);
+        cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                GeofenceConfig config = store.getConfig();
+                GeofenceMetrics.startPeriodicDump(context, config.metricsDumpSeconds);
+                Logger.configure(context, config);
+            }
+        });
+    }
+
+    @Override
+    public void onDestroy() {
+        pipeline.shutdown();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.unregisterReceiver(providerChangedReceiver);
+        }
+        context.unregisterReceiver(powerStateReceiver);
+        super.onDestroy();
     }
 
     @Override
@@ -88,86 +135,286 @@ public class GeofencePlugin extends CordovaPlugin {
         }
     }
 
+    /**
+     * addOrUpdate arguments are decoded from the raw JSON by {@link GeoNotificationReader} on
+     * the mutation thread instead of being parsed into a JSONArray first.
+     */
+    @Override
+    public boolean execute(String action, String rawArgs, CallbackContext callbackContext) throws JSONException {
+        if (action.equals("addOrUpdate")) {
+            dispatch(pipeline.newRawCommand(action, rawArgs, callbackContext));
+            return true;
+        }
+        return super.execute(action, rawArgs, callbackContext);
+    }
+
     @Override
     public boolean execute(final String action, final JSONArray args,
                            final CallbackContext callbackContext) throws JSONException {
-        executedAction = new Action(action, args, callbackContext);
-        cordova.getThreadPool().execute(new Runnable() {
-            public void run() {
-                if (action.equals("addOrUpdate")) {
-                    List<GeoNotification> geoNotifications = new ArrayList<GeoNotification>();
-                    for (int i = 0; i < args.length(); i++) {
-                        GeoNotification not = parseFromJSONObject(args.optJSONObject(i));
-                        if (not != null) {
-                            geoNotifications.add(not);
-                        }
-                    }
-                    geoNotificationManager.addGeoNotifications(geoNotifications, callbackContext);
-                } else if (action.equals("remove")) {
-                    List<String> ids = new ArrayList<String>();
-                    for (int i = 0; i < args.length(); i++) {
-                        ids.add(args.optString(i));
-                    }
-                    geoNotificationManager.removeGeoNotifications(ids, callbackContext);
-                } else if (action.equals("removeAll")) {
-                    geoNotificationManager.removeAllGeoNotifications(callbackContext);
-                } else if (action.equals("getWatched")) {
-                    List<GeoNotification> geoNotifications = geoNotificationManager.getWatched();
-                    callbackContext.success(Gson.get().toJson(geoNotifications));
-                } else if (action.equals("dismissNotifications")) {
-                    NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-                    for (int i = 0; i < args.length(); i++) {
-                        manager.cancel(args.optInt(i));
-                    }
-                } else if (action.equals("snooze")) {
-                    snoozedFences.put(args.optString(0), System.currentTimeMillis() + args.optLong(1) * 1000);
-                } else if (action.equals("initialize")) {
-                    GeofenceConfig config = new GeofenceConfig();
-                    config.delay = 10;
-                    JSONObject jsonConfig = args.optJSONObject(0);
-                    if (jsonConfig != null) {
-                        config = parseConfig(jsonConfig);
-                    }
-                    store.setConfig(config);
-                    initialize(callbackContext);
-                } else if (action.equals("permissions")){
-                    permissions(callbackContext);
-                } else if (action.equals("hasPermissions")){
-                    hasPermissions(callbackContext);
-                } else if (action.equals("deviceReady")) {
-                    Intent intent = cordova.getActivity().getIntent();
-                    String data = intent.getStringExtra("geofence.notification.data");
-                    if (data != null) {
-                        lastNotificationData = data;
-                    }
-                } else if (action.equals("appLoaded")) {
-                    if (lastNotificationData != null) {
-                        callbackContext.success(lastNotificationData);
-                        lastNotificationData = null;
+        dispatch(pipeline.newCommand(action, args, callbackContext));
+        return true;
+    }
+
+    private void dispatch(GeofenceCommandPipeline.Command command) {
+        if (MUTATIONS.contains(command.action)) {
+            pipeline.submitMutation(command);
+        } else if (BACKGROUND_COMMANDS.contains(command.action)) {
+            pipeline.submitBackground(command);
+        } else {
+            pipeline.submitQuery(command);
+        }
+    }
+
+    private void handleCommands(String action, List<GeofenceCommandPipeline.Command> commands) {
+        if (action.equals("addOrUpdate")) {
+            List<GeoNotification> geoNotifications = new ArrayList<GeoNotification>();
+            List<GeofenceCommandPipeline.Command> decoded = new ArrayList<GeofenceCommandPipeline.Command>();
+            long startedAt = SystemClock.elapsedRealtime();
+            for (GeofenceCommandPipeline.Command command : commands) {
+                try {
+                    GeoNotificationReader.Result result = GeoNotificationReader.readAll(command.rawArgs);
+                    geoNotifications.addAll(result.geoNotifications);
+                    GeofenceMetrics.add("ingest.normalized", result.normalized);
+                    decoded.add(command);
+                } catch (JSONException e) {
+                    command.callbackContext.error(e.getMessage());
+                }
+            }
+            GeofenceMetrics.add("ingest.fences", geoNotifications.size());
+            GeofenceMetrics.record("ingest.decode", SystemClock.elapsedRealtime() - startedAt);
+            if (!decoded.isEmpty()) {
+                completeWhenDone(geoNotificationManager.addGeoNotifications(geoNotifications), decoded);
+            }
+        } else if (action.equals("remove")) {
+            List<String> ids = new ArrayList<String>();
+            for (GeofenceCommandPipeline.Command command : commands) {
+                for (int i = 0; i < command.args.length(); i++) {
+                    ids.add(command.args.optString(i));
+                }
+            }
+            completeWhenDone(geoNotificationManager.removeGeoNotifications(ids), commands);
+        } else {
+            for (GeofenceCommandPipeline.Command command : commands) {
+                handleCommand(command);
+            }
+        }
+    }
+
+    private void handleCommand(GeofenceCommandPipeline.Command command) {
+        String action = command.action;
+        JSONArray args = command.args;
+        CallbackContext callbackContext = command.callbackContext;
+
+        if (action.equals("removeAll")) {
+            List<GeofenceCommandPipeline.Command> commands = new ArrayList<GeofenceCommandPipeline.Command>();
+            commands.add(command);
+            completeWhenDone(geoNotificationManager.removeAllGeoNotifications(), commands);
+        } else if (action.equals("getWatched")) {
+            callbackContext.success(geoNotificationManager.getWatchedJson());
+        } else if (action.equals("exportLogs")) {
+            callbackContext.success(Logger.export(args.optInt(0, DEFAULT_LOG_EXPORT)));
+        } else if (action.equals("getMetrics")) {
+            try {
+                JSONObject metrics = GeofenceMetrics.toJson();
+                String restore = store.getState(GeofenceRestoreJob.STATE_KEY);
+                if (restore != null) {
+                    metrics.put("restore", new JSONObject(restore));
+                }
+                String sync = store.getState(GeofenceSync.STATE_KEY);
+                if (sync != null) {
+                    metrics.put("sync", new JSONObject(sync));
+                }
+                String maintenance = store.getState(GeofenceMaintenance.STATE_KEY);
+                if (maintenance != null) {
+                    metrics.put("maintenance", new JSONObject(maintenance));
+                }
+                GeofenceConfig config = store.getConfig();
+                JSONObject responsiveness = new JSONObject();
+                responsiveness.put("mode", config.responsivenessMode);
+                responsiveness.put("tier", GeofenceResponsiveness.currentTier(context, config));
+                responsiveness.put("registeredTier", store.getState(GeofenceResponsiveness.STATE_KEY));
+                metrics.put("responsiveness", responsiveness);
+                callbackContext.success(metrics);
+            } catch (JSONException e) {
+                callbackContext.error(e.getMessage());
+            }
+        } else if (action.equals("importFromFile")) {
+            importFromFile(args.optString(0), args.optString(1, GeofenceImporter.FORMAT_NDJSON), callbackContext);
+        } else if (action.equals("activateUser")) {
+            try {
+                String userId = args.isNull(0) ? null : args.optString(0);
+                callbackContext.success(geoNotificationManager.activateUser(userId).toJson());
+            } catch (Exception e) {
+                Log.e(TAG, "Activating the user partition failed", e);
+                callbackContext.error(e.getMessage() != null ? e.getMessage() : ERROR_UNKNOWN);
+            }
+        } else if (action.equals("removeGroup") || action.equals("enableGroup") || action.equals("disableGroup")) {
+            String group = args.optString(0);
+            if (args.isNull(0) || group.isEmpty()) {
+                callbackContext.error("group is not provided");
+                return;
+            }
+            try {
+                GeoNotificationManager.GroupResult result;
+                if (action.equals("removeGroup")) {
+                    result = geoNotificationManager.removeGroup(group);
+                } else if (action.equals("enableGroup")) {
+                    result = geoNotificationManager.enableGroup(group);
+                } else {
+                    result = geoNotificationManager.disableGroup(group);
+                }
+                callbackContext.success(result.toJson());
+            } catch (Exception e) {
+                Log.e(TAG, action + " " + group + " failed", e);
+                callbackContext.error(e.getMessage() != null ? e.getMessage() : ERROR_UNKNOWN);
+            }
+        } else if (action.equals("sync")) {
+            GeofenceSync.Result result = new GeofenceSync(context).sync();
+            try {
+                if (result.success) {
+                    callbackContext.success(result.toJson());
+                } else {
+                    callbackContext.error(result.error != null ? result.error : ERROR_UNKNOWN);
+                }
+            } catch (JSONException e) {
+                callbackContext.error(e.getMessage());
+            }
+        } else if (action.equals("runMaintenance")) {
+            GeofenceMaintenance.Result result = new GeofenceMaintenance(context).run();
+            try {
+                if (result.success) {
+                    callbackContext.success(result.toJson());
+                } else {
+                    callbackContext.error(result.error != null ? result.error : ERROR_UNKNOWN);
+                }
+            } catch (JSONException e) {
+                callbackContext.error(e.getMessage());
+            }
+        } else if (action.equals("getChangesSince")) {
+            int limit = Math.max(1, Math.min(args.optInt(1, DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE));
+            callbackContext.success(new GeofenceChangeLog(context).getChangesSince(args.optLong(0), limit));
+        } else if (action.equals("getWatchedPaged")) {
+            getWatchedPaged(args.optJSONObject(0), callbackContext);
+        } else if (action.equals("getHealth")) {
+            try {
+                callbackContext.success(healthMonitor.getHealth());
+            } catch (JSONException e) {
+                callbackContext.error(e.getMessage());
+            }
+        } else if (action.equals("dismissNotifications")) {
+            NotificationManager manager = GeofenceServices.get().getNotificationManager(context);
+            for (int i = 0; i < args.length(); i++) {
+                manager.cancel(args.optInt(i));
+            }
+        } else if (action.equals("snooze")) {
+            snoozedFences.put(args.optString(0), System.currentTimeMillis() + args.optLong(1) * 1000);
+        } else if (action.equals("initialize")) {
+            GeofenceConfig config = new GeofenceConfig();
+            config.delay = 10;
+            JSONObject jsonConfig = args.optJSONObject(0);
+            if (jsonConfig != null) {
+                config = parseConfig(jsonConfig);
+            }
+            store.setConfig(config);
+            GeofenceMetrics.startPeriodicDump(context, config.metricsDumpSeconds);
+            Logger.configure(context, config);
+            GeofenceSyncJob.schedule(context, config);
+            initialize(command);
+        } else if (action.equals("permissions")){
+            permissions(command);
+        } else if (action.equals("hasPermissions")){
+            hasPermissions(callbackContext);
+        } else if (action.equals("deviceReady")) {
+            Intent intent = cordova.getActivity().getIntent();
+            String data = intent.getStringExtra("geofence.notification.data");
+            if (data != null) {
+                lastNotificationData = data;
+            }
+        } else if (action.equals("appLoaded")) {
+            if (lastNotificationData != null) {
+                callbackContext.success(lastNotificationData);
+                lastNotificationData = null;
+            } else {
+                callbackContext.success();
+            }
+        }
+    }
+
+    /**
+     * Resolves every command of a batch with the outcome of the shared OS registration task.
+     */
+    private void completeWhenDone(Task<Void> task, final List<GeofenceCommandPipeline.Command> commands) {
+        task.addOnCompleteListener(new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+                for (GeofenceCommandPipeline.Command command : commands) {
+                    if (task.isSuccessful()) {
+                        command.callbackContext.success();
                     } else {
-                        callbackContext.success();
+                        Exception e = task.getException();
+                        command.callbackContext.error(e != null ? e.getMessage() : ERROR_UNKNOWN);
                     }
                 }
             }
         });
-
-        return true;
     }
 
-    public boolean execute(Action action) throws JSONException {
-        return execute(action.action, action.args, action.callbackContext);
+    /**
+     * Imports fences from a local file, reporting progress through a kept callback. Every
+     * message is { phase, read, changed, unchanged, registered, failedChunks, done }.
+     */
+    private void importFromFile(String path, String format, final CallbackContext callbackContext) {
+        try {
+            GeofenceImporter.Result result = new GeofenceImporter(context).importFile(path, format,
+                    new GeofenceImporter.Listener() {
+                        public void onProgress(GeofenceImporter.Result progress) {
+                            try {
+                                JSONObject json = progress.toJson();
+                                json.put("done", false);
+                                PluginResult result = new PluginResult(PluginResult.Status.OK, json);
+                                result.setKeepCallback(true);
+                                callbackContext.sendPluginResult(result);
+                            } catch (JSONException e) {
+                                Log.e(TAG, "Failed to report import progress", e);
+                            }
+                        }
+                    });
+            JSONObject json = result.toJson();
+            json.put("done", true);
+            callbackContext.success(json);
+        } catch (Exception e) {
+            Log.e(TAG, "Importing " + path + " failed", e);
+            callbackContext.error(e.getMessage());
+        }
     }
 
-    private GeoNotification parseFromJSONObject(JSONObject object) {
-        GeoNotification geo = GeoNotification.fromJson(object.toString());
-        return geo;
+    /**
+     * Answers one page of the stored fences as the JSON string { fences, cursor, done }. JS asks
+     * for the next page with the returned cursor once it handled this one, so only the page being
+     * sent is held in memory and a slow consumer is never flooded.
+     *
+     * @param options { pageSize, cursor, filter } all optional, see {@link GeoNotificationFilter}
+     */
+    private void getWatchedPaged(JSONObject options, CallbackContext callbackContext) {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        int pageSize = Math.max(1, Math.min(options.optInt("pageSize", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE));
+        String cursor = options.isNull("cursor") ? null : options.optString("cursor", null);
+        GeoNotificationFilter filter = GeoNotificationFilter.fromJson(options.optJSONObject("filter"));
+
+        GeoNotificationStore.Page page = store.getPage(cursor, pageSize, filter);
+        callbackContext.success("{\"fences\":" + page.json
+                + ",\"cursor\":" + (page.cursor == null ? "null" : JSONObject.quote(page.cursor))
+                + ",\"done\":" + page.done + "}");
+        GeofenceMetrics.increment("getWatchedPaged.pages");
     }
 
     private GeofenceConfig parseConfig (JSONObject json) {
         return Gson.get().fromJson(json.toString(), GeofenceConfig.class);
     }
 
-    private void initialize(CallbackContext callbackContext) {
+    private void initialize(GeofenceCommandPipeline.Command command) {
         List<String> permissions = new ArrayList<String>(Arrays.asList(allPermissions));
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
             permissions.add(Manifest.permission.ACCESS_BACKGROUND_LOCATION);
@@ -175,9 +422,10 @@ public class GeofencePlugin extends CordovaPlugin {
         String[] stringPermissions = new String[permissions.size()];
         permissions.toArray(stringPermissions);
         if (!permissionsGranted(stringPermissions)) {
-            PermissionHelper.requestPermissions(this, 0, stringPermissions);
+            pendingPermissionCommands.put(command.requestId, command);
+            PermissionHelper.requestPermissions(this, command.requestId, stringPermissions);
         } else {
-            callbackContext.error("Permission not granted");
+            command.callbackContext.error("Permission not granted");
         }
     }
 
@@ -190,15 +438,32 @@ public class GeofencePlugin extends CordovaPlugin {
     }
 
 
-    private void permissions(CallbackContext callbackContext) {
+    private void permissions(GeofenceCommandPipeline.Command command) {
         List<String> permissions = new ArrayList<String>(Arrays.asList(allPermissions));
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
             permissions.add(Manifest.permission.ACCESS_BACKGROUND_LOCATION);
         }
         String[] stringPermissions = new String[permissions.size()];
         permissions.toArray(stringPermissions);
-        PermissionHelper.requestPermissions(this, 0, stringPermissions);
-        callbackContext.success();
+        pendingPermissionCommands.put(command.requestId, command);
+        PermissionHelper.requestPermissions(this, command.requestId, stringPermissions);
+        command.callbackContext.success();
+    }
+
+    /**
+     * Registers a native listener called for every geofence transition, see
+     * {@link GeofenceTransitionListener}.
+     */
+    public static void addTransitionListener(GeofenceTransitionListener listener) {
+        transitionListeners.add(listener);
+    }
+
+    public static void removeTransitionListener(GeofenceTransitionListener listener) {
+        transitionListeners.remove(listener);
+    }
+
+    static List<GeofenceTransitionListener> getTransitionListeners() {
+        return transitionListeners;
     }
 
     public static boolean isSnoozed(String id) {
@@ -219,22 +484,21 @@ public class GeofencePlugin extends CordovaPlugin {
     public void onRequestPermissionResult(int requestCode, String[] permissions,
                                           int[] grantResults) throws JSONException {
         PluginResult result;
+        GeofenceCommandPipeline.Command command = pendingPermissionCommands.remove(requestCode);
 
-        if (executedAction != null) {
-            if (Objects.equals(executedAction.action, "permissions")) {
+        if (command != null) {
+            if (Objects.equals(command.action, "permissions")) {
                 boolean permissionsResult = permissionsGranted(allPermissions);
                 GeofenceJsEvent.onPermissionsResult(permissionsResult);
                 result = new PluginResult(PluginResult.Status.OK);
-                executedAction.callbackContext.sendPluginResult(result);
-                executedAction = null;
+                command.callbackContext.sendPluginResult(result);
                 return;
             }
             for (int r:grantResults) {
                 if (r == PackageManager.PERMISSION_DENIED) {
                     Log.d(TAG, "Permission Denied!");
                     result = new PluginResult(PluginResult.Status.ILLEGAL_ACCESS_EXCEPTION);
-                    executedAction.callbackContext.sendPluginResult(result);
-                    executedAction = null;
+                    command.callbackContext.sendPluginResult(result);
                     return;
                 }
             }
@@ -243,8 +507,7 @@ public class GeofencePlugin extends CordovaPlugin {
                 // Most likely ACCESS_BACKGROUND_LOCATION is missing, request again
                 PermissionHelper.requestPermissions(this, 0, allPermissions);
             }
-            execute(executedAction);
-            executedAction = null;
+            dispatch(command);
         }
     }
 }
@@ -0,0 +1,46 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.PowerManager;
+
+/**
+ * Receiver for charging, battery level and battery saver changes.
+ * <p>
+ * With the adaptive responsiveness mode the fences are registered with a responsiveness
+ * depending on the power state, see {@link GeofenceResponsiveness}. Schedules a re-registration
+ * whenever the tier changes. Registered at runtime by the plugin, none of these broadcasts are
+ * delivered to manifest receivers since Android 8.0; the tier is evaluated again on every
+ * registration anyway.
+ */
+public class GeofencePowerStateReceiver extends BroadcastReceiver {
+
+    public static IntentFilter getIntentFilter() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        filter.addAction(Intent.ACTION_BATTERY_LOW);
+        filter.addAction(Intent.ACTION_BATTERY_OKAY);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        return filter;
+    }
+
+    @Override
+    public void onReceive(final Context context, Intent intent) {
+        GeofenceMetrics.mark("wakeups");
+        final PendingResult pendingResult = goAsync();
+        new Thread(() -> {
+            GeoNotificationStore store = new GeoNotificationStore(context);
+            GeofenceConfig config = store.getConfig();
+            String tier = GeofenceResponsiveness.currentTier(context, config);
+            String registeredTier = store.getState(GeofenceResponsiveness.STATE_KEY);
+            if (registeredTier != null && !tier.equals(registeredTier)) {
+                GeofenceMetrics.increment("responsiveness.tierChanges");
+                GeofenceRestoreJob.schedule(context, GeofenceRestoreJob.TRIGGER_POWER_CHANGED);
+            }
+            pendingResult.finish();
+        }).start();
+    }
+}
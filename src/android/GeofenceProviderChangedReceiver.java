@@ -0,0 +1,35 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.location.LocationManager;
+
+/**
+ * Receiver for location provider changes.
+ * <p>
+ * Play Services drops all geofences when location is switched off. Marks them dropped when that
+ * happens and schedules a reconcile once location is back. Declared in the manifest for
+ * devices below Android 8.0 and registered at runtime by the plugin for newer ones, which no
+ * longer deliver this implicit broadcast to manifest receivers.
+ */
+public class GeofenceProviderChangedReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(final Context context, Intent intent) {
+        GeofenceMetrics.mark("wakeups");
+        LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        boolean enabled = locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)
+                || locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER);
+
+        if (enabled) {
+            GeofenceRestoreJob.schedule(context, GeofenceRestoreJob.TRIGGER_PROVIDERS_CHANGED);
+        } else {
+            final PendingResult pendingResult = goAsync();
+            new Thread(() -> {
+                new GeofenceHealthMonitor(context).markAllDropped();
+                pendingResult.finish();
+            }).start();
+        }
+    }
+}
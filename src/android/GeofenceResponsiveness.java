@@ -0,0 +1,92 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+
+/**
+ * Resolves the loitering delay and notification responsiveness fences are registered with.
+ *
+ * Fences may set their own values, otherwise the defaults of {@link GeofenceConfig} apply. In
+ * the adaptive mode the notification responsiveness is additionally scaled by the power state:
+ * tightened while charging, relaxed while battery saver is on or the battery is low.
+ */
+public class GeofenceResponsiveness {
+    public static final String MODE_FIXED = "fixed";
+    public static final String MODE_ADAPTIVE = "adaptive";
+
+    public static final String TIER_TIGHT = "tight";
+    public static final String TIER_NORMAL = "normal";
+    public static final String TIER_RELAXED = "relaxed";
+
+    // State key of the tier the fences were last registered with
+    public static final String STATE_KEY = "responsivenessTier";
+
+    private static final int TIGHT_DIVISOR = 4;
+    private static final int RELAXED_FACTOR = 4;
+    // Relaxed fences are reported no faster than every five minutes
+    private static final int RELAXED_MIN_RESPONSIVENESS = 5 * 60 * 1000;
+
+    private final GeofenceConfig config;
+    private final String tier;
+
+    public GeofenceResponsiveness(GeofenceConfig config, String tier) {
+        this.config = config;
+        this.tier = tier;
+    }
+
+    public static GeofenceResponsiveness current(Context context, GeofenceConfig config) {
+        return new GeofenceResponsiveness(config, currentTier(context, config));
+    }
+
+    /**
+     * @return the tier matching the current power state, always {@link #TIER_NORMAL} unless
+     *         the adaptive mode is configured
+     */
+    public static String currentTier(Context context, GeofenceConfig config) {
+        if (!MODE_ADAPTIVE.equals(config.responsivenessMode)) {
+            return TIER_NORMAL;
+        }
+        // ACTION_BATTERY_CHANGED is sticky, registering without a receiver returns the last value
+        Intent battery = context.getApplicationContext()
+                .registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+            return TIER_TIGHT;
+        }
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null && powerManager.isPowerSaveMode()) {
+            return TIER_RELAXED;
+        }
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0 && level * 100 / scale <= config.lowBatteryPercent) {
+                return TIER_RELAXED;
+            }
+        }
+        return TIER_NORMAL;
+    }
+
+    public String getTier() {
+        return tier;
+    }
+
+    public int getLoiteringDelay(GeoNotificationDescriptor fence) {
+        return fence.loiteringDelay > 0 ? fence.loiteringDelay : config.loiteringDelay;
+    }
+
+    public int getNotificationResponsiveness(GeoNotificationDescriptor fence) {
+        int responsiveness = fence.notificationResponsiveness > 0
+                ? fence.notificationResponsiveness
+                : config.notificationResponsiveness;
+        if (TIER_TIGHT.equals(tier)) {
+            return responsiveness / TIGHT_DIVISOR;
+        }
+        if (TIER_RELAXED.equals(tier)) {
+            return Math.max(responsiveness * RELAXED_FACTOR, RELAXED_MIN_RESPONSIVENESS);
+        }
+        return responsiveness;
+    }
+}
@@ -0,0 +1,192 @@
+package com.cowbell.cordova.geofence;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.PersistableBundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import com.google.gson.annotations.Expose;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Registers the stored fences again after a reboot, an app update or whenever Play Services
+ * dropped them, see {@link GeofenceHealthMonitor}. Also re-registers them when the adaptive
+ * responsiveness tier changed, see {@link GeofencePowerStateReceiver}.
+ *
+ * Failed registrations (Play Services not ready yet right after boot, location still off) are
+ * retried by JobScheduler with exponential backoff. The outcome of every attempt is stored under
+ * {@link #STATE_KEY} so the time to armed after boot can be inspected through getMetrics.
+ *
+ * A reboot, an update or a tier change needs every fence registered again. That is recorded
+ * when the job is scheduled rather than carried by the job, since scheduling the job again
+ * replaces a pending one: the fences are marked dropped and {@link #FULL_RESTORE_KEY} is kept
+ * until a restore succeeded, whatever its trigger.
+ */
+@SuppressLint("SpecifyJobSchedulerIdRange")
+public class GeofenceRestoreJob extends JobService {
+    public static final String STATE_KEY = "restore";
+    // Trigger of the full restore still to be done
+    static final String FULL_RESTORE_KEY = "restore_full";
+    public static final String TRIGGER_BOOT = "boot";
+    public static final String TRIGGER_PACKAGE_REPLACED = "packageReplaced";
+    public static final String TRIGGER_NOT_AVAILABLE = "notAvailable";
+    public static final String TRIGGER_PROVIDERS_CHANGED = "providersChanged";
+    public static final String TRIGGER_APP_START = "appStart";
+    public static final String TRIGGER_POWER_CHANGED = "powerChanged";
+
+    private static final int JOB_ID = 574;
+    private static final long INITIAL_BACKOFF_MILLIS = 30000;
+
+    public static class Stats {
+        @Expose public String trigger;
+        @Expose public String date;
+        @Expose public int attempt;
+        @Expose public boolean success;
+        @Expose public int fences;
+        @Expose public int chunks;
+        @Expose public int failedChunks;
+        @Expose public long durationMs;
+        // Milliseconds since boot when the fences were armed, only set for boot restores
+        @Expose public long timeToArmedMs;
+        @Expose public String error;
+    }
+
+    /**
+     * Schedules a restore. A full restore (boot, update, tier change) writes to the store first
+     * and then must not be called on the main thread. An app start restore leaves a pending
+     * restore alone, replacing it would reset its backoff.
+     */
+    public static void schedule(Context context, String trigger) {
+        JobScheduler jobScheduler = GeofenceServices.get().getJobScheduler(context);
+        if (isFull(trigger)) {
+            new GeofenceHealthMonitor(context).markAllDropped();
+            new GeoNotificationStore(context).setState(FULL_RESTORE_KEY, trigger);
+        } else if (TRIGGER_APP_START.equals(trigger)) {
+            for (JobInfo pending : jobScheduler.getAllPendingJobs()) {
+                if (pending.getId() == JOB_ID) {
+                    return;
+                }
+            }
+        }
+
+        PersistableBundle bundle = new PersistableBundle();
+        bundle.putString("trigger", trigger);
+        jobScheduler.schedule(
+                new JobInfo.Builder(JOB_ID, new ComponentName(context, GeofenceRestoreJob.class))
+                        .setExtras(bundle)
+                        .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                        .build()
+        );
+    }
+
+    private static boolean isFull(String trigger) {
+        return TRIGGER_BOOT.equals(trigger) || TRIGGER_PACKAGE_REPLACED.equals(trigger)
+                || TRIGGER_POWER_CHANGED.equals(trigger);
+    }
+
+    /**
+     * Forgets the full restore once done, unless another one was requested meanwhile.
+     */
+    private static void clearFullRestore(Context context, final String fullRestore) {
+        LocalStorageDBHelper.getInstance(context).getWriter().write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                db.delete(LocalStorageDBHelper.STATE_TABLE_NAME, LocalStorageDBHelper.LOCALSTORAGE_ID + " = ? AND "
+                        + LocalStorageDBHelper.LOCALSTORAGE_VALUE + " = ?", new String[] { FULL_RESTORE_KEY, fullRestore });
+            }
+        });
+    }
+
+    public static String now() {
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        df.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return df.format(new Date());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+        final String trigger = jobParameters.getExtras().getString("trigger");
+        final Context context = this;
+
+        Thread thread = new Thread(() -> {
+            GeoNotificationStore store = new GeoNotificationStore(context);
+            Stats stats = new Stats();
+            Stats previous = Gson.get().fromJson(store.getState(STATE_KEY), Stats.class);
+            stats.trigger = trigger;
+            stats.attempt = previous != null && !previous.success && trigger.equals(previous.trigger)
+                    ? previous.attempt + 1
+                    : 1;
+            stats.date = now();
+
+            boolean retry = false;
+            long startedAt = SystemClock.elapsedRealtime();
+            if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+                // Retrying will not help until the app asks for the permission again
+                stats.error = "Permission not granted";
+            } else {
+                try {
+                    GeofenceHealthMonitor healthMonitor = new GeofenceHealthMonitor(context);
+                    GeoNotificationManager manager = new GeoNotificationManager(context);
+                    String fullRestore = store.getState(FULL_RESTORE_KEY);
+                    String tier = null;
+                    if (fullRestore != null) {
+                        // Every fence was marked dropped, it is registered again with the tier
+                        // of the power state
+                        tier = manager.useCurrentTier();
+                    }
+                    GeoNotificationManager.RegistrationResult result = healthMonitor.reconcile(manager);
+                    if (tier != null && result.isSuccessful()) {
+                        store.setState(GeofenceResponsiveness.STATE_KEY, tier);
+                        clearFullRestore(context, fullRestore);
+                    }
+                    stats.success = result.isSuccessful();
+                    stats.fences = result.registered;
+                    stats.chunks = result.chunks;
+                    stats.failedChunks = result.failedChunks;
+                    if (result.error != null) {
+                        stats.error = result.error.getMessage();
+                    }
+                    retry = !result.isSuccessful();
+                } catch (Exception e) {
+                    Log.e(GeofencePlugin.TAG, "Restoring geofences failed", e);
+                    stats.error = e.getMessage();
+                    retry = true;
+                }
+            }
+            long finishedAt = SystemClock.elapsedRealtime();
+            stats.durationMs = finishedAt - startedAt;
+            if (stats.success && TRIGGER_BOOT.equals(trigger)) {
+                stats.timeToArmedMs = finishedAt;
+            }
+            store.setState(STATE_KEY, Gson.get().toJson(stats));
+
+            GeofenceMetrics.increment(stats.success ? "restore.succeeded" : "restore.failed");
+            GeofenceMetrics.record("restore.run", stats.durationMs);
+            Logger.getLogger(this).log(Log.INFO, "Geofence restore ({}) armed {} fences in {} ms",
+                    trigger, stats.fences, stats.durationMs);
+            jobFinished(jobParameters, retry);
+        });
+        thread.start();
+
+        return true; // Async
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Receiver for device reboots and app updates.
+ * <p>
+ * Play Services drops all geofence registrations in both cases. Schedules a
+ * {@link GeofenceRestoreJob} that registers the stored fences again, off the main thread as
+ * the fences are marked dropped in the store first.
+ */
+public class GeofenceRestoreReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(final Context context, Intent intent) {
+        GeofenceMetrics.mark("wakeups");
+        String action = intent.getAction();
+        final String trigger;
+        if (Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+            trigger = GeofenceRestoreJob.TRIGGER_BOOT;
+        } else if (Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            trigger = GeofenceRestoreJob.TRIGGER_PACKAGE_REPLACED;
+        } else {
+            return;
+        }
+        // Scheduling a full restore marks the fences dropped in the store first
+        final PendingResult pendingResult = goAsync();
+        new Thread(() -> {
+            GeofenceRestoreJob.schedule(context, trigger);
+            pendingResult.finish();
+        }).start();
+    }
+}
@@ -0,0 +1,71 @@
+package com.cowbell.cordova.geofence;
+
+import android.app.NotificationManager;
+import android.app.job.JobScheduler;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+import com.google.android.gms.location.GeofencingClient;
+import com.google.android.gms.location.LocationServices;
+
+/**
+ * Where the plugin gets the Play Services client, transition events, system services, the
+ * clock of its budgets and the JavaScript bridge from. Tests replace the {@link Provider} to run the real pipeline against
+ * in-memory fakes.
+ */
+public class GeofenceServices {
+    /**
+     * The default implementation uses Play Services, the system services of the context and
+     * the Cordova web view. Override the methods to fake.
+     */
+    public static class Provider {
+        public GeofencingClient getGeofencingClient(Context context) {
+            return LocationServices.getGeofencingClient(context);
+        }
+
+        /**
+         * @return the transition delivered by Play Services with the intent, null if there is none
+         */
+        public GeofenceTransition getTransition(Intent intent) {
+            return GeofenceTransition.fromIntent(intent);
+        }
+
+        public JobScheduler getJobScheduler(Context context) {
+            return (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        }
+
+        public NotificationManager getNotificationManager(Context context) {
+            return (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        }
+
+        /**
+         * The monotonic clock the budgets of {@link GeofenceBudgets} refill with, in
+         * milliseconds. Simulations advance it with the time of their trace.
+         */
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * Evaluates the script in the Cordova web view, see {@link GeofenceJsEvent}.
+         */
+        public void sendJavascript(String js) {
+            GeofenceJsEvent.loadInWebView(js);
+        }
+    }
+
+    private static final Provider DEFAULT = new Provider();
+    private static volatile Provider provider = DEFAULT;
+
+    public static Provider get() {
+        return provider;
+    }
+
+    /**
+     * @param provider null restores the default
+     */
+    public static void setProvider(Provider provider) {
+        GeofenceServices.provider = provider != null ? provider : DEFAULT;
+    }
+}
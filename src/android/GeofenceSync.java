@@ -0,0 +1,358 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.gson.annotations.Expose;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the stored fences in line with the manifest served at the configured syncUrl, run
+ * periodically by {@link GeofenceSyncJob} and on demand by the sync action.
+ *
+ * The manifest is requested with the ETag of the last applied one, so an unchanged manifest
+ * costs a 304 and nothing else. A changed one is streamed fence by fence and each fence is
+ * compared by the content hash of its serialized form against the hash stored in
+ * {@link LocalStorageDBHelper#SYNC_TABLE_NAME} when it was last applied, only the changed
+ * fences are held in memory. Inserts, updates and deletes are applied in a single transaction,
+ * then only the changed fences are registered or unregistered. The hash of a changed fence is
+ * kept once it is registered and the new ETag once all of them are, so fences whose
+ * registration failed are applied again by the next sync.
+ *
+ * The manifest is either a JSON array of geofences or an object with a "fences" array. Fences
+ * added by the app are left alone, only the fences of earlier manifests are deleted. A manifest
+ * listing an id twice is rejected.
+ */
+public class GeofenceSync {
+    public static final String STATE_KEY = "sync";
+    static final String ETAG_KEY = "sync_etag";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    // Syncs of the job and of the sync action must not interleave
+    private static final Object lock = new Object();
+
+    public static class Result {
+        @Expose public String date;
+        @Expose public boolean success;
+        // HTTP status of the manifest request, 0 when it was not answered
+        @Expose public int status;
+        @Expose public boolean notModified;
+        // Fences in the manifest
+        @Expose public int fences;
+        @Expose public int inserted;
+        @Expose public int updated;
+        @Expose public int deleted;
+        @Expose public int unchanged;
+        @Expose public int registered;
+        @Expose public int unregistered;
+        @Expose public int failedChunks;
+        @Expose public long durationMs;
+        @Expose public String error;
+        // Network failures are retried, a malformed manifest waits for the next period
+        public boolean retry;
+
+        public JSONObject toJson() throws JSONException {
+            return new JSONObject(Gson.get().toJson(this));
+        }
+    }
+
+    /**
+     * What a changed manifest changes in the store.
+     */
+    private static class Diff {
+        // Inserted and updated fences with their content hash
+        final Map<String, GeoNotification> changed = new LinkedHashMap<String, GeoNotification>();
+        final Map<String, String> hashes = new HashMap<String, String>();
+        // Ids of the manifest, to reject the ones listed twice
+        final Set<String> ids = new HashSet<String>();
+        // Fences of the previous manifest missing from this one
+        final List<String> deleted = new ArrayList<String>();
+    }
+
+    private final Context context;
+    private final GeoNotificationStore store;
+    private final LocalStorageDBHelper localStorageDBHelper;
+    private final Logger logger;
+
+    public GeofenceSync(Context context) {
+        this.context = context;
+        store = new GeoNotificationStore(context);
+        localStorageDBHelper = LocalStorageDBHelper.getInstance(context);
+        logger = Logger.getLogger(context);
+    }
+
+    /**
+     * Fetches the manifest and applies its changes, blocking until the changed fences are
+     * registered. Must not be called on the main thread. The result is also kept under
+     * {@link #STATE_KEY} for getMetrics.
+     */
+    public Result sync() {
+        synchronized (lock) {
+            Result result = new Result();
+            result.date = GeofenceRestoreJob.now();
+            long startedAt = SystemClock.elapsedRealtime();
+            try {
+                fetch(store.getConfig(), result);
+                result.success = true;
+            } catch (IOException e) {
+                logger.log("Fence sync failed", e);
+                result.error = e.getMessage();
+                result.retry = true;
+            } catch (JSONException e) {
+                logger.log("Fence manifest rejected", e);
+                result.error = e.getMessage();
+            }
+            result.durationMs = SystemClock.elapsedRealtime() - startedAt;
+            store.setState(STATE_KEY, Gson.get().toJson(result));
+
+            GeofenceMetrics.record("sync.run", result.durationMs);
+            if (!result.success) {
+                GeofenceMetrics.increment("sync.failed");
+            } else if (result.notModified) {
+                GeofenceMetrics.increment("sync.notModified");
+            } else {
+                GeofenceMetrics.add("sync.changed", result.inserted + result.updated + result.deleted);
+            }
+            logger.log(Log.INFO, "Fence sync {} in {} ms: {}", result.success ? "done" : "failed",
+                    result.durationMs, result.notModified ? "not modified"
+                            : result.inserted + " inserted, " + result.updated + " updated, " + result.deleted + " deleted");
+            return result;
+        }
+    }
+
+    private void fetch(GeofenceConfig config, Result result) throws IOException, JSONException {
+        if (config.syncUrl == null || config.syncUrl.isEmpty()) {
+            throw new IOException("syncUrl is not configured");
+        }
+        HttpURLConnection conn = (HttpURLConnection) new URL(config.syncUrl).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+        conn.setRequestProperty("Accept", "application/json");
+        if (config.syncAuthorization != null) {
+            conn.setRequestProperty("Authorization", config.syncAuthorization);
+        }
+        String etag = store.getState(ETAG_KEY);
+        // Without synced fences (e.g. after removeAll) the manifest has to be applied again
+        if (etag != null && hasSyncedFences()) {
+            conn.setRequestProperty("If-None-Match", etag);
+        }
+        try {
+            result.status = conn.getResponseCode();
+            if (result.status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                result.notModified = true;
+                return;
+            }
+            if (result.status / 100 != 2) {
+                throw new IOException("Fence manifest request failed with HTTP " + result.status);
+            }
+            Diff diff;
+            try (InputStream in = conn.getInputStream()) {
+                diff = read(in, result);
+            }
+            apply(diff);
+            List<String> applied = register(diff, result);
+            keep(diff, applied, result.failedChunks == 0 ? conn.getHeaderField("ETag") : null);
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private Diff read(InputStream in, Result result) throws IOException, JSONException {
+        Map<String, String> synced = getSyncedHashes();
+        Set<String> missing = new HashSet<String>(synced.keySet());
+        Diff diff = new Diff();
+        JsonReader reader = new JsonReader(new InputStreamReader(new BufferedInputStream(in), StandardCharsets.UTF_8));
+        try {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                boolean hasFences = false;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("fences".equals(reader.nextName())) {
+                        readFences(reader, synced, missing, diff, result);
+                        hasFences = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (!hasFences) {
+                    throw new JSONException("The manifest has no fences");
+                }
+            } else {
+                readFences(reader, synced, missing, diff, result);
+            }
+        } catch (MalformedJsonException | IllegalStateException e) {
+            throw new JSONException("The manifest is malformed: " + e.getMessage());
+        }
+        diff.deleted.addAll(missing);
+        for (String id : diff.changed.keySet()) {
+            if (synced.containsKey(id)) {
+                result.updated++;
+            } else {
+                result.inserted++;
+            }
+        }
+        result.deleted = diff.deleted.size();
+        return diff;
+    }
+
+    private static void readFences(JsonReader reader, Map<String, String> synced, Set<String> missing,
+                                   Diff diff, Result result) throws IOException, JSONException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            GeoNotification geoNotification = GeoNotificationReader.readNext(reader, "Geofence " + result.fences);
+            String hash = hash(geoNotification.toJson());
+            if (!diff.ids.add(geoNotification.id)) {
+                throw new JSONException("Geofence " + geoNotification.id + " is listed twice in the manifest");
+            }
+            result.fences++;
+            missing.remove(geoNotification.id);
+            if (hash.equals(synced.get(geoNotification.id))) {
+                result.unchanged++;
+            } else {
+                diff.changed.put(geoNotification.id, geoNotification);
+                diff.hashes.put(geoNotification.id, hash);
+            }
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Stores the changed fences, deletes the missing ones and forgets the ETag, all in one
+     * transaction: an interrupted sync fetches the manifest again and applies it again.
+     */
+    private void apply(final Diff diff) {
+        localStorageDBHelper.getWriter().write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                // Run inline, we are already on the writer thread inside the sync transaction
+                store.setGeoNotifications(new ArrayList<GeoNotification>(diff.changed.values()));
+                store.remove(diff.deleted);
+                db.delete(LocalStorageDBHelper.STATE_TABLE_NAME, LocalStorageDBHelper.LOCALSTORAGE_ID + " = ?",
+                        new String[] { ETAG_KEY });
+            }
+        });
+        if (!diff.deleted.isEmpty()) {
+            new GeofenceChangeLog(context).compact(GeofenceChangeLog.MAX_TOMBSTONES);
+        }
+    }
+
+    /**
+     * Keeps the hashes of the applied fences and the ETag, when given, in one transaction. The
+     * changed fences left out keep their previous hash and count as changed on the next sync.
+     */
+    private void keep(final Diff diff, final List<String> applied, final String etag) {
+        localStorageDBHelper.getWriter().write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                ContentValues row = new ContentValues();
+                for (String id : applied) {
+                    row.put(LocalStorageDBHelper.SYNC_FENCE_ID, id);
+                    row.put(LocalStorageDBHelper.SYNC_HASH, diff.hashes.get(id));
+                    db.insertWithOnConflict(LocalStorageDBHelper.SYNC_TABLE_NAME, null, row,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                if (etag != null) {
+                    store.setState(ETAG_KEY, etag);
+                }
+            }
+        });
+    }
+
+    /**
+     * Registers the changed fences that should be registered and unregisters the deleted ones
+     * and the changed ones that should not, see {@link GeoNotificationStore.RegistrableSet}.
+     * Returns the ids of the changed fences now registered or left unregistered on purpose.
+     */
+    private List<String> register(Diff diff, Result result) {
+        GeoNotificationStore.RegistrableSet registrable = store.getRegistrableSet();
+        List<GeoNotification> registered = new ArrayList<GeoNotification>();
+        List<String> unregistered = new ArrayList<String>(diff.deleted);
+        List<String> applied = new ArrayList<String>();
+        for (GeoNotification geoNotification : diff.changed.values()) {
+            if (registrable.contains(geoNotification) && !geoNotification.isExpired()) {
+                registered.add(geoNotification);
+            } else {
+                unregistered.add(geoNotification.id);
+                applied.add(geoNotification.id);
+            }
+        }
+        GeoNotificationManager manager = new GeoNotificationManager(context);
+        try {
+            manager.unregisterGeofences(unregistered);
+            result.unregistered = unregistered.size();
+        } catch (Exception e) {
+            // The fences are gone from the store, their transitions are ignored
+            logger.log("Unregistering " + unregistered.size() + " synced geofences failed", e);
+            result.error = e.getMessage();
+        }
+        GeoNotificationManager.RegistrationResult registration =
+                manager.registerGeofences(registered, GeofencingRequest.INITIAL_TRIGGER_ENTER);
+        result.registered = registration.registered;
+        result.failedChunks = registration.failedChunks;
+        if (registration.error != null) {
+            result.error = registration.error.getMessage();
+        }
+        applied.addAll(registration.registeredIds);
+        return applied;
+    }
+
+    private boolean hasSyncedFences() {
+        Cursor cursor = localStorageDBHelper.getReadableDatabase().query(LocalStorageDBHelper.SYNC_TABLE_NAME,
+                new String[] { LocalStorageDBHelper.SYNC_FENCE_ID }, null, null, null, null, null, "1");
+        boolean found = cursor.moveToFirst();
+        cursor.close();
+        return found;
+    }
+
+    private Map<String, String> getSyncedHashes() {
+        Map<String, String> hashes = new HashMap<String, String>();
+        Cursor cursor = localStorageDBHelper.getReadableDatabase().query(LocalStorageDBHelper.SYNC_TABLE_NAME,
+                new String[] { LocalStorageDBHelper.SYNC_FENCE_ID, LocalStorageDBHelper.SYNC_HASH },
+                null, null, null, null, null);
+        while (cursor.moveToNext()) {
+            hashes.put(cursor.getString(0), cursor.getString(1));
+        }
+        cursor.close();
+        return hashes;
+    }
+
+    static String hash(String json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(json.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.cowbell.cordova.geofence;
+
+import android.annotation.SuppressLint;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.PersistableBundle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link GeofenceSync} every syncIntervalMinutes while a network is available. Failed
+ * requests are retried by JobScheduler with exponential backoff.
+ */
+@SuppressLint("SpecifyJobSchedulerIdRange")
+public class GeofenceSyncJob extends JobService {
+    private static final int JOB_ID = 575;
+    // JobScheduler does not run periodic jobs more often
+    private static final int MIN_INTERVAL_MINUTES = 15;
+    private static final long INITIAL_BACKOFF_MILLIS = 30000;
+
+    /**
+     * Schedules the sync of the given config, or cancels it when no syncUrl is set. A pending
+     * job for the same url and interval is kept, scheduling it again would restart its period.
+     */
+    public static void schedule(Context context, GeofenceConfig config) {
+        JobScheduler jobScheduler = GeofenceServices.get().getJobScheduler(context);
+        if (config.syncUrl == null || config.syncUrl.isEmpty()) {
+            jobScheduler.cancel(JOB_ID);
+            return;
+        }
+        long intervalMillis = TimeUnit.MINUTES.toMillis(Math.max(MIN_INTERVAL_MINUTES, config.syncIntervalMinutes));
+        for (JobInfo pending : jobScheduler.getAllPendingJobs()) {
+            if (pending.getId() == JOB_ID && pending.getIntervalMillis() == intervalMillis
+                    && config.syncUrl.equals(pending.getExtras().getString("url"))) {
+                return;
+            }
+        }
+
+        PersistableBundle bundle = new PersistableBundle();
+        bundle.putString("url", config.syncUrl);
+        jobScheduler.schedule(
+                new JobInfo.Builder(JOB_ID, new ComponentName(context, GeofenceSyncJob.class))
+                        .setExtras(bundle)
+                        .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                        .setPeriodic(intervalMillis)
+                        .setPersisted(true)
+                        .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                        .build()
+        );
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+        final Context context = this;
+
+        Thread thread = new Thread(() -> {
+            GeofenceSync.Result result = new GeofenceSync(context).sync();
+            jobFinished(jobParameters, result.retry);
+        });
+        thread.start();
+
+        return true; // Async
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        return true;
+    }
+}
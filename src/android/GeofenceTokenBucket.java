@@ -0,0 +1,63 @@
+package com.cowbell.cordova.geofence;
+
+/**
+ * Token bucket holding up to capacity tokens, refilled continuously at a fixed rate per minute,
+ * on the clock of {@link GeofenceServices}.
+ */
+public class GeofenceTokenBucket {
+    private static final double MINUTE_MILLIS = 60 * 1000;
+
+    private final int capacity;
+    private final int perMinute;
+    private double tokens;
+    private long updatedAt;
+
+    public GeofenceTokenBucket(int capacity, int perMinute) {
+        this.capacity = capacity;
+        this.perMinute = perMinute;
+        this.tokens = capacity;
+        this.updatedAt = GeofenceServices.get().elapsedRealtime();
+    }
+
+    public boolean hasSettings(int capacity, int perMinute) {
+        return this.capacity == capacity && this.perMinute == perMinute;
+    }
+
+    /**
+     * Takes a token if one is available.
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes a token ahead of time, leaving the bucket in debt, unless the token would only be
+     * covered after maxWaitMillis.
+     *
+     * @return milliseconds until the reserved token is covered, -1 if nothing was reserved
+     */
+    public synchronized long reserve(long maxWaitMillis) {
+        refill();
+        if (perMinute <= 0) {
+            return -1;
+        }
+        long wait = (long) Math.ceil((1 - tokens) * MINUTE_MILLIS / perMinute);
+        if (wait > maxWaitMillis) {
+            return -1;
+        }
+        tokens -= 1;
+        return Math.max(wait, 0);
+    }
+
+    private void refill() {
+        long now = GeofenceServices.get().elapsedRealtime();
+        // A clock going back (another simulation) refills nothing
+        tokens = Math.min(capacity, tokens + Math.max(0, now - updatedAt) * perMinute / MINUTE_MILLIS);
+        updatedAt = now;
+    }
+}
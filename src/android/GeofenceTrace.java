@@ -0,0 +1,100 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Intent;
+import android.os.PersistableBundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifies one transition on its way from {@link GeofenceBroadcastReceiver} through the
+ * transition handling, {@link NotificationDeliveryJob} and {@link TransitionJobService}.
+ *
+ * Stamped on the intent by the receiver and carried in the job extras, so every stage can
+ * record its latency since the transition was received. The timestamp is elapsed realtime,
+ * which keeps counting in deep sleep and is not affected by wall clock changes, but restarts
+ * with every boot. Job extras outlive the boot they were written in, so they also carry the
+ * wall clock time of that boot; a trace read back after a reboot keeps its id but records no
+ * latency.
+ */
+public class GeofenceTrace {
+    private static final String EXTRA_TRACE_ID = "geofence.traceId";
+    private static final String EXTRA_RECEIVED_AT = "geofence.receivedAt";
+    // The boot time derived from the wall clock moves with clock adjustments
+    private static final long BOOT_TIME_TOLERANCE_MS = 60 * 1000;
+    // receivedAt of traces from another boot
+    private static final long UNKNOWN = -1;
+
+    private static final String PROCESS_PREFIX = Long.toString(System.currentTimeMillis(), 36);
+    private static final AtomicLong sequence = new AtomicLong();
+
+    public final String id;
+    public final long receivedAt;
+
+    private GeofenceTrace(String id, long receivedAt) {
+        this.id = id;
+        this.receivedAt = receivedAt;
+    }
+
+    public static GeofenceTrace start() {
+        return new GeofenceTrace(PROCESS_PREFIX + "-" + sequence.incrementAndGet(), SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @return the trace stamped on the intent, a new one if it was not stamped
+     */
+    public static GeofenceTrace fromIntent(Intent intent) {
+        String id = intent.getStringExtra(EXTRA_TRACE_ID);
+        if (id == null) {
+            return start();
+        }
+        return new GeofenceTrace(id, intent.getLongExtra(EXTRA_RECEIVED_AT, SystemClock.elapsedRealtime()));
+    }
+
+    public static GeofenceTrace fromBundle(PersistableBundle bundle) {
+        String id = bundle.getString("traceId");
+        if (id == null) {
+            return start();
+        }
+        long receivedAt = bundle.getLong("receivedAt", UNKNOWN);
+        long bootTime = bundle.getLong("bootTime", UNKNOWN);
+        // Extras written before the boot time was stored are only checked against the clock
+        if (receivedAt > SystemClock.elapsedRealtime()
+                || bootTime != UNKNOWN && Math.abs(bootTime - bootTime()) > BOOT_TIME_TOLERANCE_MS) {
+            receivedAt = UNKNOWN;
+        }
+        return new GeofenceTrace(id, receivedAt);
+    }
+
+    public void stamp(Intent intent) {
+        intent.putExtra(EXTRA_TRACE_ID, id);
+        intent.putExtra(EXTRA_RECEIVED_AT, receivedAt);
+    }
+
+    public void putInto(PersistableBundle bundle) {
+        bundle.putString("traceId", id);
+        bundle.putLong("receivedAt", receivedAt);
+        bundle.putLong("bootTime", bootTime());
+    }
+
+    private static long bootTime() {
+        return System.currentTimeMillis() - SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Records the time since the transition was received in the latency.&lt;stage&gt; histogram.
+     */
+    public void record(String stage) {
+        if (receivedAt == UNKNOWN) {
+            GeofenceMetrics.increment("latency.dropped");
+            return;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - receivedAt;
+        GeofenceMetrics.record("latency." + stage, elapsed);
+        Logger logger = Logger.getLogger();
+        if (logger != null && logger.isDebugEnabled()) {
+            logger.log(Log.DEBUG, "Trace {} {} after {} ms", id, stage, elapsed);
+        }
+    }
+}
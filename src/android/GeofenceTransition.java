@@ -0,0 +1,57 @@
+package com.cowbell.cordova.geofence;
+
+import android.content.Intent;
+import android.location.Location;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a Play Services {@link GeofencingEvent} the transition pipeline uses. Unlike
+ * the event it can be created directly, so tests can feed transitions through the pipeline
+ * with a {@link GeofenceServices.Provider}.
+ */
+public class GeofenceTransition {
+    public static final int NO_ERROR = -1;
+
+    public final int errorCode;
+    public final int transitionType;
+    public final List<String> fenceIds;
+    // May be null
+    public final Location location;
+
+    public GeofenceTransition(int errorCode, int transitionType, List<String> fenceIds, Location location) {
+        this.errorCode = errorCode;
+        this.transitionType = transitionType;
+        this.fenceIds = Collections.unmodifiableList(fenceIds);
+        this.location = location;
+    }
+
+    /**
+     * @return the transition of the event carried by the intent, null if there is none
+     */
+    public static GeofenceTransition fromIntent(Intent intent) {
+        GeofencingEvent event = GeofencingEvent.fromIntent(intent);
+        if (event == null) {
+            return null;
+        }
+        if (event.hasError()) {
+            return new GeofenceTransition(event.getErrorCode(), 0, Collections.<String>emptyList(), null);
+        }
+        List<Geofence> geofences = event.getTriggeringGeofences();
+        List<String> fenceIds = new ArrayList<String>(geofences.size());
+        for (Geofence geofence : geofences) {
+            fenceIds.add(geofence.getRequestId());
+        }
+        return new GeofenceTransition(NO_ERROR, event.getGeofenceTransition(), fenceIds,
+                event.getTriggeringLocation());
+    }
+
+    public boolean hasError() {
+        return errorCode != NO_ERROR;
+    }
+}
@@ -0,0 +1,22 @@
+package com.cowbell.cordova.geofence;
+
+import android.location.Location;
+
+import java.util.List;
+
+/**
+ * In-process listener for geofence transitions, for native code of the host application.
+ *
+ * Register it with {@link GeofencePlugin#addTransitionListener}, e.g. in
+ * Application.onCreate() so it is in place when a transition wakes the app up. Listeners are
+ * called synchronously on the thread handling the transition, before notifications are
+ * displayed, and should return quickly.
+ */
+public interface GeofenceTransitionListener {
+    /**
+     * @param transitionType Geofence.GEOFENCE_TRANSITION_ENTER, _EXIT or _DWELL
+     * @param geoNotifications the triggered fences, snoozed and inactive ones left out
+     * @param triggeringLocation the location that triggered the transition, may be null
+     */
+    void onTransition(int transitionType, List<GeoNotification> geoNotifications, Location triggeringLocation);
+}
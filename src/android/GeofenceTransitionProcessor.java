@@ -0,0 +1,388 @@
+package com.cowbell.cordova.geofence;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.os.PersistableBundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofenceStatusCodes;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Turns a geofencing event into native listener calls, notifications, JS events, uploads and
+ * the optional implicit broadcast.
+ *
+ * Runs either in {@link GeofenceTransitionsJobIntentService} or, on the fast path, directly on
+ * the {@link GeofenceBroadcastReceiver}'s executor. On the fast path notifications without a
+ * configured delay are displayed inline instead of through a {@link NotificationDeliveryJob};
+ * uploads always go through {@link TransitionJobService}.
+ *
+ * Fences are handled by descending priority and every notification, upload and JS event is
+ * admitted by {@link GeofenceBudgets}, so a burst of transitions is spread out or shed.
+ */
+public class GeofenceTransitionProcessor {
+    public static final String PATH_FAST = "fast";
+    public static final String PATH_JOB = "job";
+
+    private static final Comparator<GeoNotification> BY_PRIORITY = new Comparator<GeoNotification>() {
+        public int compare(GeoNotification a, GeoNotification b) {
+            return Integer.compare(b.priority, a.priority);
+        }
+    };
+
+    private final Context context;
+    private final GeoNotificationStore store;
+
+    public GeofenceTransitionProcessor(Context context) {
+        this.context = context;
+        this.store = new GeoNotificationStore(context);
+    }
+
+    /**
+     * Handles incoming intents.
+     * @param intent sent by Location Services. This Intent is provided to Location
+     *               Services (inside a PendingIntent) when addGeofences() is called.
+     * @param path {@link #PATH_FAST} when running inside the broadcast receiver,
+     *             {@link #PATH_JOB} otherwise.
+     */
+    public void process(Intent intent, String path) {
+        GeofenceTrace trace = GeofenceTrace.fromIntent(intent);
+        trace.record("receiveToHandle." + path);
+        long startedAt = SystemClock.elapsedRealtime();
+
+        Intent broadcastIntent = new Intent(GeofenceTransitionsJobIntentService.GeofenceTransitionIntent);
+        GeofenceConfig config = store.getConfig();
+        if (!Logger.isConfigured()) {
+            // Woken up by the transition, the plugin did not configure the logger
+            Logger.configure(context, config);
+        }
+        Logger logger = Logger.getLogger(context);
+
+        // Required for implicit BroadcastReceiver to work for SDK 26+
+        String packageName = context.getPackageName();
+        broadcastIntent.setPackage(packageName);
+
+        try {
+            // First check for errors
+            GeofenceTransition transition = GeofenceServices.get().getTransition(intent);
+            if (transition.hasError()) {
+                int errorCode = transition.errorCode;
+                String error = "Location Services error: " + Integer.toString(errorCode);
+                // Log the error
+                logger.log(Log.ERROR, error);
+                broadcastIntent.putExtra("error", error);
+                if (errorCode == GeofenceStatusCodes.GEOFENCE_NOT_AVAILABLE) {
+                    new GeofenceHealthMonitor(context).onGeofenceNotAvailable(context);
+                }
+            }
+            else {
+                processNotifications(transition, broadcastIntent, config, trace, path);
+            }
+        }
+        catch (Exception e) {
+            logger.log(e.getMessage(), e);
+
+            String errMsg = e.getMessage();
+            if (e.getStackTrace().length > 0) {
+                StackTraceElement stackTrace_line1 = e.getStackTrace()[0];
+                String stackStr = String.format("Class: %s, Line: %s", stackTrace_line1.getClassName(), stackTrace_line1.getLineNumber());
+                errMsg = String.format("%s\nStack - %s", errMsg, stackStr);
+            }
+
+            broadcastIntent.putExtra("error", errMsg);
+        }
+
+        if (config.transitionBroadcast) {
+            broadcastIntent.putExtra("traceId", trace.id);
+            context.sendBroadcast(broadcastIntent);
+        }
+        GeofenceMetrics.record("stage.process." + path, SystemClock.elapsedRealtime() - startedAt);
+        GeofenceMetrics.startPeriodicDump(context, config.metricsDumpSeconds);
+    }
+
+    /**
+     * Displays the notification of the given fence if it is still the last one triggered.
+     * Used by {@link NotificationDeliveryJob} once the configured delay passed.
+     *
+     * @param trace the transition the notification belongs to
+     * @param admitted whether the notification budget was already drawn from
+     */
+    public void deliver(String id, boolean isEnter, GeofenceTrace trace, String path, boolean admitted) {
+        // Get the notification:
+        GeoNotification geoNotification = store.getGeoNotification(id);
+        // Display:
+        if (geoNotification != null && geoNotification.isLast && isEnter) {
+            display(geoNotification, "enter", trace, path, admitted);
+        }
+    }
+
+    /**
+     * For building the notifications.
+     *
+     * @param transition The geofencing event.
+     * @param broadcastIntent The intent.
+     */
+    private void processNotifications(GeofenceTransition transition, Intent broadcastIntent,
+                                      GeofenceConfig config, GeofenceTrace trace, String path) {
+        Logger logger = Logger.getLogger(context);
+
+        // Get the type of transition (entry or exit)
+        int transitionType = transition.transitionType;
+        GeofenceMetrics.mark("transitions");
+
+        List<GeoNotification> geoNotifications = new ArrayList<>();
+        GeoNotificationStore.RegistrableSet registrable = store.getRegistrableSet();
+        for (GeoNotification geoNotification : store.getGeoNotifications(transition.fenceIds)) {
+            // Late events of fences being unregistered are dropped
+            if (registrable.contains(geoNotification)
+                    && !GeofencePlugin.isSnoozed(geoNotification.id) && geoNotification.isWithinTimeRange()) {
+                geoNotification.setTransitionType(transitionType);
+                geoNotifications.add(geoNotification);
+            }
+        }
+        Collections.sort(geoNotifications, BY_PRIORITY);
+
+        if (transition.location != null) {
+            broadcastIntent.putExtra("triggerLocation", transition.location);
+        }
+
+        if (geoNotifications.size() > 0) {
+            notifyListeners(transitionType, geoNotifications, transition.location, logger);
+        }
+
+        if ((transitionType == Geofence.GEOFENCE_TRANSITION_ENTER
+                || transitionType == Geofence.GEOFENCE_TRANSITION_EXIT) && geoNotifications.size() > 0) {
+            this.onEnterExit(geoNotifications, transitionType, config, trace, path, logger);
+        }
+
+        else if (transitionType == Geofence.GEOFENCE_TRANSITION_DWELL) {
+            this.onDwell(geoNotifications, broadcastIntent, config, logger);
+        }
+        else {
+            String error = "Geofence transition error: " + transitionType;
+            logger.log(Log.ERROR, error);
+            broadcastIntent.putExtra("error", error);
+        }
+
+        broadcastIntent.putExtra("trigger_listSize", transition.fenceIds.size());
+        broadcastIntent.putExtra("trigger_transitionType", transitionType);
+        this.scheduleSendingToServer(geoNotifications, transitionType, config, trace);
+    }
+
+    /**
+     * Handles on enter/exit geofence event.
+     *
+     * @param geoNotifications The notifications.
+     * @param transitionType The transition type.
+     * @param config The config.
+     * @param logger The logger.
+     */
+    private void onEnterExit(List<GeoNotification> geoNotifications, int transitionType, GeofenceConfig config,
+                             GeofenceTrace trace, String path, Logger logger) {
+        logger.log(Log.DEBUG, "Geofence transition detected");
+        boolean displayInline = PATH_FAST.equals(path) && config.delay == 0;
+        GeoNotification last = null;
+        for (GeoNotification geoNotification : geoNotifications) {
+            Notification notification = geoNotification.notification;
+            if (notification != null && notification.canBeTriggered(store.getLastTriggered(notification))) {
+                store.setIsLast(geoNotification);
+                store.setLastTriggered(notification.id, System.currentTimeMillis());
+                if (displayInline) {
+                    last = geoNotification;
+                } else {
+                    // Schedule displaying:
+                    this.scheduleDisplaying(geoNotification, transitionType, 1000L * config.delay, false, trace);
+                }
+            }
+            else {
+                logger.log(Log.DEBUG, "Frequency control. Skip notification");
+            }
+        }
+        // Like the delivery jobs, only the fence flagged last is displayed
+        if (last != null && transitionType == Geofence.GEOFENCE_TRANSITION_ENTER) {
+            display(last, "enter", trace, path, false);
+        }
+    }
+
+    /**
+     * Handles on dwell geofence event.
+     *
+     * @param geoNotifications The notifications.
+     * @param broadcastIntent The intent.
+     * @param config The config.
+     * @param logger The logger.
+     */
+    private void onDwell(List<GeoNotification> geoNotifications, Intent broadcastIntent,
+                         GeofenceConfig config, Logger logger) {
+        logger.log(Log.DEBUG, "Geofence transition dwell detected");
+
+        if (geoNotifications.size() > 0) {
+            if (config.transitionBroadcast) {
+                broadcastIntent.putExtra("transitionData", GeoNotification.toJson(geoNotifications));
+            }
+            List<GeoNotification> admitted = new ArrayList<GeoNotification>();
+            for (GeoNotification geoNotification : geoNotifications) {
+                long wait = GeofenceBudgets.admit(GeofenceBudgets.JS_EVENTS, geoNotification, config);
+                if (wait == 0) {
+                    admitted.add(geoNotification);
+                } else if (wait > 0) {
+                    GeofenceJsEvent.onTransitionReceived(Collections.singletonList(geoNotification), wait);
+                }
+            }
+            if (!admitted.isEmpty()) {
+                GeofenceJsEvent.onTransitionReceived(admitted);
+            }
+        }
+    }
+
+    private void notifyListeners(int transitionType, List<GeoNotification> geoNotifications,
+                                 Location triggeringLocation, Logger logger) {
+        List<GeoNotification> batch = Collections.unmodifiableList(geoNotifications);
+        for (GeofenceTransitionListener listener : GeofencePlugin.getTransitionListeners()) {
+            try {
+                listener.onTransition(transitionType, batch, triggeringLocation);
+            } catch (RuntimeException e) {
+                logger.log("Transition listener failed", e);
+            }
+        }
+    }
+
+    private void display(GeoNotification geoNotification, String transition, GeofenceTrace trace, String path,
+                         boolean admitted) {
+        GeofenceConfig config = store.getConfig();
+        if (!admitted) {
+            long wait = GeofenceBudgets.admit(GeofenceBudgets.NOTIFICATIONS, geoNotification, config);
+            if (wait == GeofenceBudgets.SHED) {
+                store.clearIsLast();
+                return;
+            }
+            if (wait > 0) {
+                scheduleDisplaying(geoNotification, Geofence.GEOFENCE_TRANSITION_ENTER, wait, true, trace);
+                return;
+            }
+        }
+        GeoNotificationNotifier notifier = new GeoNotificationNotifier(
+                GeofenceServices.get().getNotificationManager(context),
+                context
+        );
+        notifier.notify(geoNotification.notification, transition);
+        trace.record("receiveToNotify." + path);
+        long wait = GeofenceBudgets.admit(GeofenceBudgets.JS_EVENTS, geoNotification, config);
+        if (wait != GeofenceBudgets.SHED) {
+            ArrayList<GeoNotification> geoNotifications = new ArrayList<GeoNotification>();
+            geoNotifications.add(geoNotification);
+            GeofenceJsEvent.onTransitionReceived(geoNotifications, wait);
+        }
+        store.clearIsLast();
+    }
+
+    /**
+     * Private method for scheduling notifying the server about the transitions.
+     *
+     * @param geoNotifications the notifications.
+     * @param transitionType the transition type
+     * @param trace the transition, carried to the upload to measure its latency
+     */
+    private void scheduleSendingToServer(List<GeoNotification> geoNotifications, int transitionType,
+                                         GeofenceConfig config, GeofenceTrace trace) {
+        for (GeoNotification geoNotification : geoNotifications) {
+            if (geoNotification.url != null) {
+                long wait = GeofenceBudgets.admit(GeofenceBudgets.UPLOADS, geoNotification, config);
+                if (wait == GeofenceBudgets.SHED) {
+                    continue;
+                }
+
+                String transition = null;
+                if (transitionType == Geofence.GEOFENCE_TRANSITION_ENTER)
+                    transition = "ENTER";
+                if (transitionType == Geofence.GEOFENCE_TRANSITION_DWELL)
+                    transition = "DWELL";
+                if (transitionType == Geofence.GEOFENCE_TRANSITION_EXIT)
+                    transition = "EXIT";
+
+                PersistableBundle bundle = new PersistableBundle();
+                bundle.putString("id", geoNotification.id);
+                bundle.putString("url", geoNotification.url);
+                bundle.putString("authorization", geoNotification.authorization);
+                bundle.putString("transition", transition);
+                trace.putInto(bundle);
+
+                TimeZone tz = TimeZone.getTimeZone("UTC");
+                DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+                df.setTimeZone(tz);
+                bundle.putString("date", df.format(new Date()));
+
+                Logger.getLogger(context).log(Log.DEBUG, "Scheduling upload of {} for {}", transition, geoNotification.id);
+
+                int jobId = randomInt(1000, 20000);
+                JobScheduler jobScheduler = GeofenceServices.get().getJobScheduler(context);
+                jobScheduler.schedule(
+                        new JobInfo.Builder(jobId, new ComponentName(context, TransitionJobService.class))
+                                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                                .setMinimumLatency(wait)
+                                .setExtras(bundle)
+                                .build()
+                );
+            }
+        }
+    }
+
+
+    /**
+     * Adds the notification to the displaying queue.
+     *
+     * @param geoNotification The notification.
+     * @param transitionType The transition type
+     */
+    private void scheduleDisplaying(GeoNotification geoNotification, int transitionType, long delayMillis,
+                                    boolean admitted, GeofenceTrace trace) {
+        String transition = null;
+        if (transitionType == Geofence.GEOFENCE_TRANSITION_ENTER)
+            transition = "ENTER";
+        if (transitionType == Geofence.GEOFENCE_TRANSITION_DWELL)
+            transition = "DWELL";
+        if (transitionType == Geofence.GEOFENCE_TRANSITION_EXIT)
+            transition = "EXIT";
+
+        PersistableBundle bundle = new PersistableBundle();
+        bundle.putString("id", geoNotification.id);
+        bundle.putString("transition", transition);
+        trace.putInto(bundle);
+        bundle.putBoolean("admitted", admitted);
+
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        TimeZone tz = TimeZone.getTimeZone("UTC");
+        df.setTimeZone(tz);
+        bundle.putString("date", df.format(new Date()));
+
+        Logger.getLogger(context).log(Log.DEBUG, "Scheduling notification of {} in {} ms", geoNotification.id, delayMillis);
+
+        JobScheduler jobScheduler = GeofenceServices.get().getJobScheduler(context);
+        int jobId = randomInt(1000, 20000);
+        jobScheduler.schedule(
+                new JobInfo.Builder(jobId, new ComponentName(context, NotificationDeliveryJob.class))
+                        .setExtras(bundle)
+                        .setMinimumLatency(delayMillis)
+                        .build()
+        );
+    }
+
+    private int randomInt(int min, int max){
+        return ThreadLocalRandom.current().nextInt(min, max + 1);
+    }
+}
@@ -4,53 +4,186 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class is used as a substitution of the local storage in Android webviews
  *
+ * Reads run on the calling thread against a WAL snapshot, writes are handed to the
+ * {@link LocalStorageWriter} shared by all components. Reads are timed as storage.read.&lt;method&gt;.
+ *
  * @author Diane taken from
  *         https://github.com/didimoo/AndroidLocalStorage/blob/master
  *         /src/com/example/androidlocalstorage/MainFragment.java
  */
 public class LocalStorage {
+    // SQLite's default SQLITE_MAX_VARIABLE_NUMBER is 999
+    private static final int MAX_QUERY_VARIABLES = 500;
+
     private Context mContext;
     private LocalStorageDBHelper localStorageDBHelper;
-    private SQLiteDatabase database;
+    private LocalStorageWriter writer;
+    private final String tableName;
 
     public LocalStorage(Context c) {
+        this(c, LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME);
+    }
+
+    /**
+     * @param tableName
+     *            : a key/value table created by {@link LocalStorageDBHelper}
+     */
+    public LocalStorage(Context c, String tableName) {
         mContext = c;
+        this.tableName = tableName;
         localStorageDBHelper = LocalStorageDBHelper.getInstance(mContext);
+        writer = localStorageDBHelper.getWriter();
     }
 
     public List<String> getAllItems() {
+        return getAllItems(null, null);
+    }
+
+    /**
+     * @param selection
+     *            : WHERE clause on the columns of the table, null for all the items
+     * @return the items matching the selection
+     */
+    public List<String> getAllItems(String selection, String[] selectionArgs) {
+        long startedAt = SystemClock.elapsedRealtime();
+        ArrayList<String> results = new ArrayList<String>();
+        SQLiteDatabase database = localStorageDBHelper.getReadableDatabase();
+        Cursor cursor = database.query(
+                tableName, new String[] { LocalStorageDBHelper.LOCALSTORAGE_VALUE },
+                selection, selectionArgs, null, null, null);
+        while (cursor.moveToNext()) {
+            results.add(cursor.getString(0));
+        }
+        cursor.close();
+        GeofenceMetrics.record("storage.read.getAllItems", SystemClock.elapsedRealtime() - startedAt);
+        return results;
+    }
+
+    /**
+     * @param excludedKey
+     *            : key of the item to leave out
+     * @return all the items except the one having the given key
+     */
+    public List<String> getAllItemsExcept(String excludedKey) {
+        long startedAt = SystemClock.elapsedRealtime();
         ArrayList<String> results = new ArrayList<String>();
-        database = localStorageDBHelper.getReadableDatabase();
+        SQLiteDatabase database = localStorageDBHelper.getReadableDatabase();
         Cursor cursor = database.query(
-                LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME, null, null, null,
+                tableName, new String[] { LocalStorageDBHelper.LOCALSTORAGE_VALUE },
+                LocalStorageDBHelper.LOCALSTORAGE_ID + " != ?", new String[] { excludedKey },
                 null, null, null);
         while (cursor.moveToNext()) {
-            results.add(cursor.getString(1));
+            results.add(cursor.getString(0));
         }
         cursor.close();
+        GeofenceMetrics.record("storage.read.getAllItemsExcept", SystemClock.elapsedRealtime() - startedAt);
+        return results;
+    }
+
+    /**
+     * Gets the next items in key order, starting after the given key (keyset pagination).
+     *
+     * @param afterKey
+     *            : the last key of the previous page, null to start at the beginning
+     * @param excludedKey
+     *            : key of the item to leave out
+     * @param limit
+     *            : the maximum number of items
+     * @return the items keyed by their key, in key order
+     */
+    public LinkedHashMap<String, String> getItemsAfter(String afterKey, String excludedKey, int limit) {
+        return getItemsAfter(afterKey, excludedKey, limit, null, null);
+    }
+
+    /**
+     * Same as {@link #getItemsAfter(String, String, int)} for the items matching the given
+     * selection.
+     *
+     * @param where
+     *            : WHERE clause on the columns of the table, null for all the items
+     */
+    public LinkedHashMap<String, String> getItemsAfter(String afterKey, String excludedKey, int limit,
+                                                       String where, String[] whereArgs) {
+        long startedAt = SystemClock.elapsedRealtime();
+        LinkedHashMap<String, String> results = new LinkedHashMap<String, String>();
+        SQLiteDatabase database = localStorageDBHelper.getReadableDatabase();
+        List<String> args = new ArrayList<String>();
+        String selection = LocalStorageDBHelper.LOCALSTORAGE_ID + " != ?";
+        args.add(excludedKey);
+        if (afterKey != null) {
+            selection += " AND " + LocalStorageDBHelper.LOCALSTORAGE_ID + " > ?";
+            args.add(afterKey);
+        }
+        if (where != null) {
+            selection += " AND (" + where + ")";
+            if (whereArgs != null) {
+                args.addAll(Arrays.asList(whereArgs));
+            }
+        }
+        Cursor cursor = database.query(
+                tableName, new String[] { LocalStorageDBHelper.LOCALSTORAGE_ID, LocalStorageDBHelper.LOCALSTORAGE_VALUE },
+                selection, args.toArray(new String[args.size()]),
+                null, null, LocalStorageDBHelper.LOCALSTORAGE_ID, Integer.toString(limit));
+        while (cursor.moveToNext()) {
+            results.put(cursor.getString(0), cursor.getString(1));
+        }
+        cursor.close();
+        GeofenceMetrics.record("storage.read.getItemsAfter", SystemClock.elapsedRealtime() - startedAt);
+        return results;
+    }
+
+    public List<String> getAllKeys() {
+        return getAllKeys(null, null);
+    }
+
+    /**
+     * @param selection
+     *            : WHERE clause on the columns of the table, null for all the keys
+     * @return the keys of the items matching the selection
+     */
+    public List<String> getAllKeys(String selection, String[] selectionArgs) {
+        long startedAt = SystemClock.elapsedRealtime();
+        ArrayList<String> results = new ArrayList<String>();
+        SQLiteDatabase database = localStorageDBHelper.getReadableDatabase();
+        Cursor cursor = database.query(
+                tableName,
+                new String[] { LocalStorageDBHelper.LOCALSTORAGE_ID }, selection, selectionArgs,
+                null, null, null);
+        while (cursor.moveToNext()) {
+            results.add(cursor.getString(0));
+        }
+        cursor.close();
+        GeofenceMetrics.record("storage.read.getAllKeys", SystemClock.elapsedRealtime() - startedAt);
         return results;
     }
 
     /**
      * This method allows to get an item for the given key
-     * 
+     *
      * @param key
      *            : the key to look for in the local storage
      * @return the item having the given key
      */
     public String getItem(String key) {
+        long startedAt = SystemClock.elapsedRealtime();
         String value = null;
         if (key != null) {
-            database = localStorageDBHelper.getReadableDatabase();
+            SQLiteDatabase database = localStorageDBHelper.getReadableDatabase();
             Cursor cursor = database.query(
-                    LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME, null,
+                    tableName, null,
                     LocalStorageDBHelper.LOCALSTORAGE_ID + " = ?",
                     new String[] { key }, null, null, null);
             if (cursor.moveToFirst()) {
@@ -58,54 +191,154 @@ public class LocalStorage {
             }
             cursor.close();
         }
+        GeofenceMetrics.record("storage.read.getItem", SystemClock.elapsedRealtime() - startedAt);
         return value;
     }
 
+    /**
+     * Gets the items for all the given keys with one IN (...) query per
+     * {@link #MAX_QUERY_VARIABLES} keys.
+     *
+     * @param keys
+     *            : the keys to look for in the local storage
+     * @return the found items keyed by their key, missing keys are left out
+     */
+    public Map<String, String> getItems(Collection<String> keys) {
+        long startedAt = SystemClock.elapsedRealtime();
+        Map<String, String> results = new HashMap<String, String>();
+        SQLiteDatabase database = localStorageDBHelper.getReadableDatabase();
+        for (List<String> chunk : chunks(keys)) {
+            Cursor cursor = database.query(
+                    tableName, null,
+                    LocalStorageDBHelper.LOCALSTORAGE_ID + " IN (" + placeholders(chunk.size()) + ")",
+                    chunk.toArray(new String[chunk.size()]), null, null, null);
+            while (cursor.moveToNext()) {
+                results.put(cursor.getString(0), cursor.getString(1));
+            }
+            cursor.close();
+        }
+        GeofenceMetrics.record("storage.read.getItems", SystemClock.elapsedRealtime() - startedAt);
+        return results;
+    }
+
     /**
      * set the value for the given key, or create the set of datas if the key
      * does not exist already.
-     * 
+     *
      * @param key
      * @param value
      */
-    public void setItem(String key, String value) {
+    public void setItem(final String key, final String value) {
         if (key != null && value != null) {
-            String oldValue = getItem(key);
-            database = localStorageDBHelper.getWritableDatabase();
-            ContentValues values = new ContentValues();
-            values.put(LocalStorageDBHelper.LOCALSTORAGE_ID, key);
-            values.put(LocalStorageDBHelper.LOCALSTORAGE_VALUE, value);
-            if (oldValue != null) {
-                database.update(LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME,
-                        values, LocalStorageDBHelper.LOCALSTORAGE_ID + "='"
-                                + key + "'", null);
-            } else {
-                database.insert(LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME,
-                        null, values);
-            }
+            writer.write(new LocalStorageWriter.Mutation() {
+                public void apply(SQLiteDatabase db) {
+                    upsert(db, key, value);
+                }
+            });
         }
     }
 
+    /**
+     * set the values for all the given keys in a single transaction.
+     *
+     * @param items
+     */
+    public void setItems(final Map<String, String> items) {
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                for (Map.Entry<String, String> item : items.entrySet()) {
+                    if (item.getKey() != null && item.getValue() != null) {
+                        upsert(db, item.getKey(), item.getValue());
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * removes the item corresponding to the given key
-     * 
+     *
      * @param key
      */
-    public void removeItem(String key) {
+    public void removeItem(final String key) {
         if (key != null) {
-            database = localStorageDBHelper.getWritableDatabase();
-            database.delete(LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME,
-                    LocalStorageDBHelper.LOCALSTORAGE_ID + "='" + key + "'",
-                    null);
+            writer.write(new LocalStorageWriter.Mutation() {
+                public void apply(SQLiteDatabase db) {
+                    delete(db, key);
+                }
+            });
         }
     }
 
+    /**
+     * removes the items corresponding to the given keys in a single transaction.
+     *
+     * @param keys
+     */
+    public void removeItems(final Collection<String> keys) {
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                for (List<String> chunk : chunks(keys)) {
+                    db.delete(tableName,
+                            LocalStorageDBHelper.LOCALSTORAGE_ID + " IN (" + placeholders(chunk.size()) + ")",
+                            chunk.toArray(new String[chunk.size()]));
+                }
+            }
+        });
+    }
+
     /**
      * clears all the local storage.
      */
     public void clear() {
-        database = localStorageDBHelper.getWritableDatabase();
-        database.delete(LocalStorageDBHelper.LOCALSTORAGE_TABLE_NAME, null,
-                null);
+        writer.write(new LocalStorageWriter.Mutation() {
+            public void apply(SQLiteDatabase db) {
+                db.delete(tableName, null, null);
+            }
+        });
+    }
+
+    /**
+     * Splits the non null keys into chunks fitting SQLite's bound variables limit.
+     */
+    private static List<List<String>> chunks(Collection<String> keys) {
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        List<String> chunk = new ArrayList<String>();
+        for (String key : keys) {
+            if (key == null) {
+                continue;
+            }
+            if (chunk.size() == MAX_QUERY_VARIABLES) {
+                chunks.add(chunk);
+                chunk = new ArrayList<String>();
+            }
+            chunk.add(key);
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "?" : ",?");
+        }
+        return builder.toString();
+    }
+
+    private void upsert(SQLiteDatabase db, String key, String value) {
+        ContentValues values = new ContentValues();
+        values.put(LocalStorageDBHelper.LOCALSTORAGE_ID, key);
+        values.put(LocalStorageDBHelper.LOCALSTORAGE_VALUE, value);
+        db.insertWithOnConflict(tableName,
+                null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private void delete(SQLiteDatabase db, String key) {
+        db.delete(tableName,
+                LocalStorageDBHelper.LOCALSTORAGE_ID + " = ?",
+                new String[] { key });
     }
-}
\ No newline at end of file
+}
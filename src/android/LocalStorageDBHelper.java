@@ -1,10 +1,14 @@
 package com.cowbell.cordova.geofence;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import java.util.Locale;
+
 /**
  * {@link SQLiteOpenHelper} that is used as replacement of the localStorage of
  * the webviews.
@@ -19,6 +23,7 @@ import android.util.Log;
 public class LocalStorageDBHelper extends SQLiteOpenHelper {
 
     private static LocalStorageDBHelper mInstance;
+    private LocalStorageWriter writer;
 
     /**
      * the name of the table
@@ -35,10 +40,138 @@ public class LocalStorageDBHelper extends SQLiteOpenHelper {
      */
     public static final String LOCALSTORAGE_VALUE = "value";
 
-    private static final int DATABASE_VERSION = 2;
-    private static final String DATABASE_NAME = "geonotifications.db";
+    /**
+     * the indexed user_id of the fences of LOCALSTORAGE_TABLE_NAME, null for
+     * fences shared by all users
+     */
+    public static final String LOCALSTORAGE_USER_ID = "user_id";
+
+    /**
+     * the indexed group of the fences of LOCALSTORAGE_TABLE_NAME
+     */
+    public static final String LOCALSTORAGE_GROUP = "group_id";
+
+    /**
+     * the indexed isLast flag of the fences of LOCALSTORAGE_TABLE_NAME, 1 for
+     * the fence triggered last
+     */
+    public static final String LOCALSTORAGE_IS_LAST = "is_last";
+
+    /**
+     * the tags of the fences, one row per fence and tag
+     */
+    public static final String TAGS_TABLE_NAME = "geonotification_tags";
+
+    public static final String TAGS_TAG = "tag";
+
+    public static final String TAGS_FENCE_ID = "fence_id";
+
+    /**
+     * the groups whose fences are not registered, see disableGroup
+     */
+    public static final String DISABLED_GROUPS_TABLE_NAME = "disabled_groups";
+
+    /**
+     * the change log of the fences and trigger times, one row per changed key, see
+     * {@link GeofenceChangeLog}
+     */
+    public static final String CHANGES_TABLE_NAME = "geonotification_changes";
+
+    public static final String CHANGES_VERSION = "version";
+
+    public static final String CHANGES_KIND = "kind";
+
+    public static final String CHANGES_KEY = "change_key";
+
+    public static final String CHANGES_DELETED = "deleted";
+
+    /**
+     * the content hash of the fences last applied from the sync manifest, see
+     * {@link GeofenceSync}
+     */
+    public static final String SYNC_TABLE_NAME = "synced_fences";
+
+    public static final String SYNC_FENCE_ID = "fence_id";
+
+    public static final String SYNC_HASH = "hash";
+
+    /**
+     * the fences believed to be armed with Play Services, one row per fence, see
+     * {@link GeofenceHealthMonitor}
+     */
+    public static final String ARMED_TABLE_NAME = "armed_geofences";
+
+    public static final String ARMED_FENCE_ID = "fence_id";
+
+    /**
+     * the frequency control table, last trigger time per notification id
+     */
+    public static final String TRIGGERS_TABLE_NAME = "notification_triggers";
+
+    public static final String TRIGGERS_NOTIFICATION_ID = "notification_id";
+
+    public static final String TRIGGERS_LAST_TRIGGERED = "last_triggered";
+
+    /**
+     * key/value table for the plugin's own bookkeeping, same columns as
+     * LOCALSTORAGE_TABLE_NAME
+     */
+    public static final String STATE_TABLE_NAME = "geofence_state";
+
+    private static final int DATABASE_VERSION = 10;
+    public static final String DATABASE_NAME = "geonotifications.db";
     private static final String DICTIONARY_TABLE_CREATE = "CREATE TABLE "
             + LOCALSTORAGE_TABLE_NAME + " (" + LOCALSTORAGE_ID
+            + " TEXT PRIMARY KEY, " + LOCALSTORAGE_VALUE + " TEXT NOT NULL, "
+            + LOCALSTORAGE_USER_ID + " TEXT, " + LOCALSTORAGE_GROUP + " TEXT, "
+            + LOCALSTORAGE_IS_LAST + " INTEGER NOT NULL DEFAULT 0);";
+    private static final String USER_ID_INDEX_CREATE = "CREATE INDEX "
+            + LOCALSTORAGE_TABLE_NAME + "_" + LOCALSTORAGE_USER_ID + " ON "
+            + LOCALSTORAGE_TABLE_NAME + " (" + LOCALSTORAGE_USER_ID + ");";
+    private static final String GROUP_INDEX_CREATE = "CREATE INDEX "
+            + LOCALSTORAGE_TABLE_NAME + "_" + LOCALSTORAGE_GROUP + " ON "
+            + LOCALSTORAGE_TABLE_NAME + " (" + LOCALSTORAGE_GROUP + ");";
+    private static final String IS_LAST_INDEX_CREATE = "CREATE INDEX "
+            + LOCALSTORAGE_TABLE_NAME + "_" + LOCALSTORAGE_IS_LAST + " ON "
+            + LOCALSTORAGE_TABLE_NAME + " (" + LOCALSTORAGE_IS_LAST + ");";
+    private static final String TAGS_TABLE_CREATE = "CREATE TABLE "
+            + TAGS_TABLE_NAME + " (" + TAGS_TAG + " TEXT NOT NULL, " + TAGS_FENCE_ID
+            + " TEXT NOT NULL, PRIMARY KEY (" + TAGS_TAG + ", " + TAGS_FENCE_ID + "));";
+    private static final String TAGS_FENCE_INDEX_CREATE = "CREATE INDEX "
+            + TAGS_TABLE_NAME + "_" + TAGS_FENCE_ID + " ON "
+            + TAGS_TABLE_NAME + " (" + TAGS_FENCE_ID + ");";
+    // Deleting fences, one by one, by group or all at once, drops their tags. Fences replaced
+    // by an upsert get their tags rewritten by the store.
+    private static final String TAGS_DELETE_TRIGGER_CREATE = "CREATE TRIGGER "
+            + TAGS_TABLE_NAME + "_delete AFTER DELETE ON " + LOCALSTORAGE_TABLE_NAME
+            + " BEGIN DELETE FROM " + TAGS_TABLE_NAME + " WHERE " + TAGS_FENCE_ID
+            + " = OLD." + LOCALSTORAGE_ID + "; END;";
+    private static final String DISABLED_GROUPS_TABLE_CREATE = "CREATE TABLE "
+            + DISABLED_GROUPS_TABLE_NAME + " (" + LOCALSTORAGE_GROUP + " TEXT PRIMARY KEY);";
+    // AUTOINCREMENT keeps versions increasing when the latest rows are compacted away
+    private static final String CHANGES_TABLE_CREATE = "CREATE TABLE "
+            + CHANGES_TABLE_NAME + " (" + CHANGES_VERSION + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + CHANGES_KIND + " INTEGER NOT NULL, " + CHANGES_KEY + " TEXT NOT NULL, "
+            + CHANGES_DELETED + " INTEGER NOT NULL, UNIQUE (" + CHANGES_KIND + ", " + CHANGES_KEY + "));";
+    private static final String CHANGES_TOMBSTONES_INDEX_CREATE = "CREATE INDEX "
+            + CHANGES_TABLE_NAME + "_tombstones ON " + CHANGES_TABLE_NAME
+            + " (" + CHANGES_DELETED + ", " + CHANGES_VERSION + ");";
+    private static final String SYNC_TABLE_CREATE = "CREATE TABLE "
+            + SYNC_TABLE_NAME + " (" + SYNC_FENCE_ID + " TEXT PRIMARY KEY, " + SYNC_HASH + " TEXT NOT NULL);";
+    // A fence removed locally is no longer the synced one, the next changed manifest adds it again
+    private static final String SYNC_DELETE_TRIGGER_CREATE = "CREATE TRIGGER "
+            + SYNC_TABLE_NAME + "_delete AFTER DELETE ON " + LOCALSTORAGE_TABLE_NAME
+            + " BEGIN DELETE FROM " + SYNC_TABLE_NAME + " WHERE " + SYNC_FENCE_ID
+            + " = OLD." + LOCALSTORAGE_ID + "; END;";
+    private static final String ARMED_TABLE_CREATE = "CREATE TABLE "
+            + ARMED_TABLE_NAME + " (" + ARMED_FENCE_ID + " TEXT PRIMARY KEY);";
+    private static final String NOT_CONFIG = " != '" + GeoNotificationStore.CONFIG_KEY + "'";
+
+    private static final String TRIGGERS_TABLE_CREATE = "CREATE TABLE "
+            + TRIGGERS_TABLE_NAME + " (" + TRIGGERS_NOTIFICATION_ID
+            + " INTEGER PRIMARY KEY, " + TRIGGERS_LAST_TRIGGERED + " INTEGER NOT NULL);";
+    private static final String STATE_TABLE_CREATE = "CREATE TABLE "
+            + STATE_TABLE_NAME + " (" + LOCALSTORAGE_ID
             + " TEXT PRIMARY KEY, " + LOCALSTORAGE_VALUE + " TEXT NOT NULL);";
 
     /**
@@ -49,28 +182,180 @@ public class LocalStorageDBHelper extends SQLiteOpenHelper {
      * @return the instance of LocalStorage of the application or a new one if
      *         it has not been created before.
      */
-    public static LocalStorageDBHelper getInstance(Context ctx) {
+    public static synchronized LocalStorageDBHelper getInstance(Context ctx) {
         if (mInstance == null) {
-            mInstance = new LocalStorageDBHelper(ctx);
+            mInstance = new LocalStorageDBHelper(ctx.getApplicationContext());
         }
         return mInstance;
     }
 
     private LocalStorageDBHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * A helper of its own on the given database file, for the migration tests.
+     */
+    LocalStorageDBHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // WAL lets readers on other threads see the last committed snapshot while the
+        // writer thread holds a transaction open
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Returns the writer thread all modifications of this database have to go through.
+     */
+    public synchronized LocalStorageWriter getWriter() {
+        if (writer == null) {
+            writer = new LocalStorageWriter(this);
+        }
+        return writer;
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(DICTIONARY_TABLE_CREATE);
+        db.execSQL(USER_ID_INDEX_CREATE);
+        db.execSQL(IS_LAST_INDEX_CREATE);
+        db.execSQL(TRIGGERS_TABLE_CREATE);
+        db.execSQL(STATE_TABLE_CREATE);
+        createGroupsAndTags(db);
+        createChangeLog(db);
+        createSyncTable(db);
+        db.execSQL(ARMED_TABLE_CREATE);
+    }
+
+    private static void createSyncTable(SQLiteDatabase db) {
+        db.execSQL(SYNC_TABLE_CREATE);
+        db.execSQL(SYNC_DELETE_TRIGGER_CREATE);
+    }
+
+    /**
+     * Every write of a fence or trigger time replaces the change row of its key with a new
+     * version, so the log holds one row per key.
+     */
+    private static void createChangeLog(SQLiteDatabase db) {
+        db.execSQL(CHANGES_TABLE_CREATE);
+        db.execSQL(CHANGES_TOMBSTONES_INDEX_CREATE);
+        for (String event : new String[] { "INSERT", "UPDATE" }) {
+            db.execSQL("CREATE TRIGGER " + CHANGES_TABLE_NAME + "_fence_" + event.toLowerCase(Locale.US)
+                    + " AFTER " + event + " ON " + LOCALSTORAGE_TABLE_NAME
+                    + " WHEN NEW." + LOCALSTORAGE_ID + NOT_CONFIG
+                    + " BEGIN " + changeRow(GeofenceChangeLog.KIND_FENCE, "NEW." + LOCALSTORAGE_ID, false) + " END;");
+            db.execSQL("CREATE TRIGGER " + CHANGES_TABLE_NAME + "_trigger_" + event.toLowerCase(Locale.US)
+                    + " AFTER " + event + " ON " + TRIGGERS_TABLE_NAME
+                    + " BEGIN " + changeRow(GeofenceChangeLog.KIND_TRIGGER, "NEW." + TRIGGERS_NOTIFICATION_ID, false) + " END;");
+        }
+        db.execSQL("CREATE TRIGGER " + CHANGES_TABLE_NAME + "_fence_delete"
+                + " AFTER DELETE ON " + LOCALSTORAGE_TABLE_NAME
+                + " WHEN OLD." + LOCALSTORAGE_ID + NOT_CONFIG
+                + " BEGIN " + changeRow(GeofenceChangeLog.KIND_FENCE, "OLD." + LOCALSTORAGE_ID, true) + " END;");
+    }
+
+    private static String changeRow(int kind, String key, boolean deleted) {
+        return "INSERT OR REPLACE INTO " + CHANGES_TABLE_NAME + " (" + CHANGES_KIND + ", " + CHANGES_KEY
+                + ", " + CHANGES_DELETED + ") VALUES (" + kind + ", " + key + ", " + (deleted ? 1 : 0) + ");";
+    }
+
+    private static void createGroupsAndTags(SQLiteDatabase db) {
+        db.execSQL(GROUP_INDEX_CREATE);
+        db.execSQL(TAGS_TABLE_CREATE);
+        db.execSQL(TAGS_FENCE_INDEX_CREATE);
+        db.execSQL(TAGS_DELETE_TRIGGER_CREATE);
+        db.execSQL(DISABLED_GROUPS_TABLE_CREATE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.w(LocalStorageDBHelper.class.getName(),
-                "Upgrading database from version " + oldVersion + " to "
-                        + newVersion + ", which will destroy all old data");
-        db.execSQL("DROP TABLE IF EXISTS " + LOCALSTORAGE_TABLE_NAME);
-        onCreate(db);
+        if (oldVersion < 2) {
+            Log.w(LocalStorageDBHelper.class.getName(),
+                    "Upgrading database from version " + oldVersion + " to "
+                            + newVersion + ", which will destroy all old data");
+            db.execSQL("DROP TABLE IF EXISTS " + LOCALSTORAGE_TABLE_NAME);
+            db.execSQL(DICTIONARY_TABLE_CREATE);
+            db.execSQL(USER_ID_INDEX_CREATE);
+            createGroupsAndTags(db);
+        }
+        if (oldVersion < 3) {
+            db.execSQL(TRIGGERS_TABLE_CREATE);
+        }
+        if (oldVersion < 4) {
+            db.execSQL(STATE_TABLE_CREATE);
+        }
+        if (oldVersion >= 2 && oldVersion < 5) {
+            db.execSQL("ALTER TABLE " + LOCALSTORAGE_TABLE_NAME + " ADD COLUMN "
+                    + LOCALSTORAGE_USER_ID + " TEXT");
+            db.execSQL(USER_ID_INDEX_CREATE);
+            backfillUserIds(db);
+        }
+        if (oldVersion >= 2 && oldVersion < 6) {
+            // Versions storing no group or tags dropped them from the fences
+            db.execSQL("ALTER TABLE " + LOCALSTORAGE_TABLE_NAME + " ADD COLUMN "
+                    + LOCALSTORAGE_GROUP + " TEXT");
+            createGroupsAndTags(db);
+        }
+        if (oldVersion < 7) {
+            createChangeLog(db);
+            // The stored fences and trigger times are the changes since version 0
+            db.execSQL("INSERT INTO " + CHANGES_TABLE_NAME + " (" + CHANGES_KIND + ", " + CHANGES_KEY + ", "
+                    + CHANGES_DELETED + ") SELECT " + GeofenceChangeLog.KIND_FENCE + ", " + LOCALSTORAGE_ID
+                    + ", 0 FROM " + LOCALSTORAGE_TABLE_NAME + " WHERE " + LOCALSTORAGE_ID + NOT_CONFIG);
+            db.execSQL("INSERT INTO " + CHANGES_TABLE_NAME + " (" + CHANGES_KIND + ", " + CHANGES_KEY + ", "
+                    + CHANGES_DELETED + ") SELECT " + GeofenceChangeLog.KIND_TRIGGER + ", "
+                    + TRIGGERS_NOTIFICATION_ID + ", 0 FROM " + TRIGGERS_TABLE_NAME);
+        }
+        if (oldVersion < 8) {
+            createSyncTable(db);
+        }
+        if (oldVersion < 9) {
+            if (oldVersion >= 2) {
+                db.execSQL("ALTER TABLE " + LOCALSTORAGE_TABLE_NAME + " ADD COLUMN "
+                        + LOCALSTORAGE_IS_LAST + " INTEGER NOT NULL DEFAULT 0");
+                backfillIsLast(db);
+            }
+            db.execSQL(IS_LAST_INDEX_CREATE);
+        }
+        if (oldVersion < 10) {
+            db.execSQL(ARMED_TABLE_CREATE);
+            GeofenceHealthMonitor.migrateArmedSet(db);
+        }
+    }
+
+    /**
+     * Copies the user_id of the stored fences to the new column.
+     */
+    private static void backfillUserIds(SQLiteDatabase db) {
+        Cursor cursor = db.query(LOCALSTORAGE_TABLE_NAME,
+                new String[] { LOCALSTORAGE_ID, LOCALSTORAGE_VALUE }, null, null, null, null, null);
+        ContentValues values = new ContentValues();
+        while (cursor.moveToNext()) {
+            GeoNotificationDescriptor descriptor = GeoNotificationDescriptor.fromJson(cursor.getString(1));
+            String userId = GeoNotificationStore.getPartition(descriptor);
+            if (userId != null) {
+                values.put(LOCALSTORAGE_USER_ID, userId);
+                db.update(LOCALSTORAGE_TABLE_NAME, values, LOCALSTORAGE_ID + " = ?",
+                        new String[] { cursor.getString(0) });
+            }
+        }
+        cursor.close();
+    }
+
+    /**
+     * Copies the isLast flag of the stored fences to the new column.
+     */
+    private static void backfillIsLast(SQLiteDatabase db) {
+        Cursor cursor = db.query(LOCALSTORAGE_TABLE_NAME,
+                new String[] { LOCALSTORAGE_ID, LOCALSTORAGE_VALUE }, null, null, null, null, null);
+        ContentValues values = new ContentValues();
+        values.put(LOCALSTORAGE_IS_LAST, 1);
+        while (cursor.moveToNext()) {
+            GeoNotificationDescriptor descriptor = GeoNotificationDescriptor.fromJson(cursor.getString(1));
+            if (descriptor != null && descriptor.isLast) {
+                db.update(LOCALSTORAGE_TABLE_NAME, values, LOCALSTORAGE_ID + " = ?",
+                        new String[] { cursor.getString(0) });
+            }
+        }
+        cursor.close();
     }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package com.cowbell.cordova.geofence;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Single writer thread for the geonotifications database.
+ *
+ * Every component (plugin, transition service, job services) submits its writes here. The
+ * thread takes whatever is queued and commits it in one transaction, so concurrent writers
+ * share a commit instead of contending for the database lock. Readers are not involved and
+ * read concurrently from WAL snapshots.
+ *
+ * Every mutation runs in its own savepoint, a mutation throwing is rolled back without
+ * affecting the others committed with it.
+ */
+public class LocalStorageWriter {
+    private static final int MAX_BATCH_SIZE = 256;
+
+    public interface Mutation {
+        void apply(SQLiteDatabase db);
+    }
+
+    private static class PendingMutation {
+        final Mutation mutation;
+        // Runs on its own, outside of a transaction
+        final boolean standalone;
+        final CountDownLatch done = new CountDownLatch(1);
+        RuntimeException error;
+
+        PendingMutation(Mutation mutation, boolean standalone) {
+            this.mutation = mutation;
+            this.standalone = standalone;
+        }
+    }
+
+    private final LocalStorageDBHelper helper;
+    private final LinkedBlockingQueue<PendingMutation> queue = new LinkedBlockingQueue<PendingMutation>();
+    private final Thread thread;
+
+    LocalStorageWriter(LocalStorageDBHelper helper) {
+        this.helper = helper;
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, "GeofenceStorageWriter");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues the mutation and blocks until the transaction containing it has been committed.
+     * Mutations submitted from the writer thread itself (nested writes) are applied inline.
+     */
+    public void write(Mutation mutation) {
+        if (Thread.currentThread() == thread) {
+            mutation.apply(helper.getWritableDatabase());
+            return;
+        }
+        await(new PendingMutation(mutation, false));
+    }
+
+    /**
+     * Queues the mutation to run alone and outside of a transaction, for statements SQLite
+     * refuses inside one like VACUUM, and blocks until it ran. Must not be called from the
+     * writer thread.
+     */
+    public void writeStandalone(Mutation mutation) {
+        if (Thread.currentThread() == thread) {
+            throw new IllegalStateException("Standalone writes cannot be nested");
+        }
+        await(new PendingMutation(mutation, true));
+    }
+
+    private void await(PendingMutation pending) {
+        long startedAt = SystemClock.elapsedRealtime();
+        queue.add(pending);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                pending.done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        // Queueing and group commit included, as seen by the caller
+        GeofenceMetrics.record("storage.write", SystemClock.elapsedRealtime() - startedAt);
+        if (pending.error != null) {
+            throw pending.error;
+        }
+    }
+
+    private void loop() {
+        List<PendingMutation> batch = new ArrayList<PendingMutation>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            // Standalone mutations run between the transactions of the others, in queue order
+            int from = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.get(i).standalone) {
+                    if (i > from) {
+                        commit(batch.subList(from, i));
+                    }
+                    run(batch.get(i));
+                    from = i + 1;
+                }
+            }
+            if (from < batch.size()) {
+                commit(batch.subList(from, batch.size()));
+            }
+            for (PendingMutation pending : batch) {
+                pending.done.countDown();
+            }
+            batch.clear();
+        }
+    }
+
+    private void run(PendingMutation pending) {
+        try {
+            pending.mutation.apply(helper.getWritableDatabase());
+        } catch (RuntimeException e) {
+            Log.e(GeofencePlugin.TAG, "Storage write failed", e);
+            pending.error = e;
+        }
+    }
+
+    private void commit(List<PendingMutation> batch) {
+        long startedAt = SystemClock.elapsedRealtime();
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (PendingMutation pending : batch) {
+                    db.execSQL("SAVEPOINT mutation");
+                    try {
+                        pending.mutation.apply(db);
+                    } catch (RuntimeException e) {
+                        Log.e(GeofencePlugin.TAG, "Storage write failed", e);
+                        pending.error = e;
+                        db.execSQL("ROLLBACK TO mutation");
+                    }
+                    db.execSQL("RELEASE mutation");
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            Log.e(GeofencePlugin.TAG, "Storage commit failed", e);
+            for (PendingMutation pending : batch) {
+                if (pending.error == null) {
+                    pending.error = e;
+                }
+            }
+        }
+        GeofenceMetrics.increment("storage.commits");
+        GeofenceMetrics.add("storage.mutations", batch.size());
+        GeofenceMetrics.max("storage.maxCommitSize", batch.size());
+        GeofenceMetrics.record("storage.commit", SystemClock.elapsedRealtime() - startedAt);
+    }
+}
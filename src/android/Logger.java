@@ -4,7 +4,37 @@ import android.content.Context;
 import android.util.Log;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Process wide logger writing to logcat and to a {@link GeofenceLogBuffer} that can be
+ * exported with the exportLogs action.
+ *
+ * Messages below the static level are dropped before they are built. Use the parameterized
+ * overloads, where each {} of the message is replaced by the next argument, so arguments are
+ * only turned into strings for messages that are kept. Kept messages go to the buffer as they
+ * are built; a string is only made of them for logcat, which shows debug messages only when
+ * enabled with adb shell setprop log.tag.GeofencePlugin DEBUG, and for toasts.
+ */
 public class Logger {
+    public static final String LOG_FILE = "geofence-log.bin";
+    static final int BUFFER_SLOTS = 8192;
+
+    private static final int LOGCAT_LEVEL =
+            Log.isLoggable(GeofencePlugin.TAG, Log.DEBUG) ? Log.DEBUG : Log.INFO;
+
+    private static volatile int level = LOGCAT_LEVEL;
+    private static volatile boolean configured;
+    private static volatile GeofenceLogBuffer buffer = GeofenceLogBuffer.inMemory(BUFFER_SLOTS);
+    private static boolean fileBuffer;
+    private static final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(128);
+        }
+    };
+
     protected String TAG;
     protected Context context;
     protected boolean isToastEnabled;
@@ -15,13 +45,67 @@ public class Logger {
         this.isToastEnabled = isToastEnabled;
     }
 
+    public static boolean isLoggable(int priority) {
+        return priority >= level;
+    }
+
+    /**
+     * Lets callers skip building expensive debug messages, enable with the logLevel config or
+     * adb shell setprop log.tag.GeofencePlugin DEBUG before the app starts
+     */
+    public boolean isDebugEnabled() {
+        return isLoggable(Log.DEBUG);
+    }
+
     public void log(int priority, String message) {
-        Log.println(priority, TAG, message);
-        showOnToastIfEnabled(message);
+        if (priority < level) {
+            return;
+        }
+        write(priority, message, message);
+    }
+
+    public void log(int priority, String message, Object arg) {
+        if (priority < level) {
+            return;
+        }
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+        int from = appendArg(builder, message, 0, arg);
+        builder.append(message, from, message.length());
+        write(priority, builder, null);
+    }
+
+    public void log(int priority, String message, Object arg1, Object arg2) {
+        if (priority < level) {
+            return;
+        }
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+        int from = appendArg(builder, message, 0, arg1);
+        from = appendArg(builder, message, from, arg2);
+        builder.append(message, from, message.length());
+        write(priority, builder, null);
+    }
+
+    public void log(int priority, String message, Object arg1, Object arg2, Object arg3) {
+        if (priority < level) {
+            return;
+        }
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+        int from = appendArg(builder, message, 0, arg1);
+        from = appendArg(builder, message, from, arg2);
+        from = appendArg(builder, message, from, arg3);
+        builder.append(message, from, message.length());
+        write(priority, builder, null);
     }
 
     public void log(String message, Throwable exception) {
         Log.e(TAG, message, exception);
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+        builder.append(message).append(": ").append(exception);
+        buffer.append(System.currentTimeMillis(), Log.ERROR, builder);
         showOnToastIfEnabled(message);
     }
 
@@ -31,7 +115,94 @@ public class Logger {
         }
     }
 
-    private static Logger logger = null;
+    /**
+     * Copies the text up to the next {} placeholder and the argument replacing it.
+     *
+     * @return where the rest of the message starts
+     */
+    private static int appendArg(StringBuilder builder, String message, int from, Object arg) {
+        int placeholder = message.indexOf("{}", from);
+        if (placeholder < 0) {
+            return from;
+        }
+        builder.append(message, from, placeholder).append(arg);
+        return placeholder + 2;
+    }
+
+    /**
+     * @param text the message
+     * @param message the same message if it is already a string
+     */
+    private void write(int priority, CharSequence text, String message) {
+        buffer.append(System.currentTimeMillis(), priority, text);
+        boolean logcat = priority >= LOGCAT_LEVEL;
+        if (!logcat && !isToastEnabled) {
+            return;
+        }
+        if (message == null) {
+            message = text.toString();
+        }
+        if (logcat) {
+            Log.println(priority, TAG, message);
+        }
+        showOnToastIfEnabled(message);
+    }
+
+    /**
+     * @return whether {@link #configure} was called in this process
+     */
+    public static boolean isConfigured() {
+        return configured;
+    }
+
+    /**
+     * Applies the logLevel and logToFile settings, called when the config changes. Switching to
+     * the file keeps the events of the file, not the ones of the in memory buffer.
+     */
+    public static void configure(Context context, GeofenceConfig config) {
+        setLevel(config.logLevel);
+        configured = true;
+        synchronized (Logger.class) {
+            if (config.logToFile == fileBuffer) {
+                return;
+            }
+            fileBuffer = config.logToFile;
+            if (!config.logToFile) {
+                buffer = GeofenceLogBuffer.inMemory(BUFFER_SLOTS);
+                return;
+            }
+            try {
+                File file = new File(context.getApplicationContext().getFilesDir(), LOG_FILE);
+                buffer = GeofenceLogBuffer.mapped(file, BUFFER_SLOTS);
+            } catch (IOException e) {
+                Log.e(GeofencePlugin.TAG, "Could not map the log file, keeping the logs in memory", e);
+            }
+        }
+    }
+
+    /**
+     * @param name "debug", "info", "warn" or "error", anything else keeps the current level
+     */
+    public static void setLevel(String name) {
+        if ("debug".equals(name)) {
+            level = Log.DEBUG;
+        } else if ("info".equals(name)) {
+            level = Log.INFO;
+        } else if ("warn".equals(name)) {
+            level = Log.WARN;
+        } else if ("error".equals(name)) {
+            level = Log.ERROR;
+        }
+    }
+
+    /**
+     * @return the last events as a JSON array, see {@link GeofenceLogBuffer#toJson}
+     */
+    public static String export(int limit) {
+        return buffer.toJson(limit);
+    }
+
+    private static volatile Logger logger = null;
     private static Object mutex = new Object();
 
     public static Logger getLogger() {
@@ -39,12 +210,16 @@ public class Logger {
     }
 
     public static Logger getLogger(Context appContext) {
-        if(logger == null) {
-            Logger defaultLogger = new Logger(GeofencePlugin.TAG, appContext, false);
-            setLogger(defaultLogger);
+        Logger current = logger;
+        if (current != null) {
+            return current;
+        }
+        synchronized (mutex) {
+            if (logger == null) {
+                logger = new Logger(GeofencePlugin.TAG, appContext.getApplicationContext(), false);
+            }
+            return logger;
         }
-
-        return logger;
     }
 
     public static void setLogger(Logger logger) {
@@ -109,8 +109,12 @@ public class Notification {
     }
 
     public boolean canBeTriggered() {
+        return canBeTriggered(this.lastTriggered);
+    }
+
+    public boolean canBeTriggered(long lastTriggered) {
         Date now = new Date();
-        return now.getTime() >= this.lastTriggered + TimeUnit.SECONDS.toMillis(this.frequency);
+        return now.getTime() >= lastTriggered + TimeUnit.SECONDS.toMillis(this.frequency);
     }
 
     public String toString() {
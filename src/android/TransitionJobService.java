@@ -3,6 +3,7 @@ package com.cowbell.cordova.geofence;
 import android.app.job.JobParameters;
 import android.app.job.JobService;
 import android.os.PersistableBundle;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.google.android.gms.location.Geofence;
@@ -27,14 +28,19 @@ public class TransitionJobService extends JobService {
         final String id = params.getString("id");
         final String transition = params.getString("transition");
         final String date = params.getString("date");
+        final GeofenceTrace trace = GeofenceTrace.fromBundle(params);
 
         Thread thread = new Thread(() -> {
+            long startedAt = SystemClock.elapsedRealtime();
             try {
                 sendTransitionToServer(url, authorization, id, transition, date);
+                GeofenceMetrics.record("stage.upload", SystemClock.elapsedRealtime() - startedAt);
+                trace.record("receiveToUpload");
                 jobFinished(jobParameters, false);
             } catch (Exception exception) {
+                GeofenceMetrics.increment("upload.failed");
                 // It is possible to have no network during transition from Cellular to Wifi
-                Log.e(GeofencePlugin.TAG, "Error while sending geofence transition, rescheduling", exception);
+                Logger.getLogger(this).log("Error while sending geofence transition, rescheduling", exception);
                 jobFinished(jobParameters, true);
             }
         });
@@ -66,7 +72,8 @@ public class TransitionJobService extends JobService {
         BufferedWriter writer = new BufferedWriter(
                 new OutputStreamWriter(os, "UTF-8"));
         String json = "{ \"geofenceId\": \"" + id + "\",  \"transition\": \"" + transition + "\", \"date\": \"" + date +"\" }";
-        Log.i(GeofencePlugin.TAG, "Sending Geofence transition to server: " + json);
+        Logger logger = Logger.getLogger(this);
+        logger.log(Log.DEBUG, "Sending Geofence transition to server: {}", json);
         writer.write(json);
         writer.flush();
         writer.close();
@@ -74,6 +81,6 @@ public class TransitionJobService extends JobService {
 
         conn.connect();
         int responseCode = conn.getResponseCode();
-        Log.i(GeofencePlugin.TAG, "Send Geofence transition to server: " + responseCode);
+        logger.log(Log.INFO, "Sent Geofence transition {} of {} to server: {}", transition, id, responseCode);
     }
 }
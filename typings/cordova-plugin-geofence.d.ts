@@ -2,6 +2,7 @@ interface TransitionType {
   ENTER: number;
   EXIT: number;
   BOTH: number;
+  DWELL: number;
 }
 
 interface Window {
@@ -10,6 +11,29 @@ interface Window {
 }
 interface GeofenceConfig {
   delay?: number // Delay in seconds before triggering enter notification default 10
+  fastPath?: boolean // Android only, handle transitions in the broadcast receiver default false
+  fastPathMaxFences?: number // Android only, larger events are queued as before default 10
+  loiteringDelay?: number // Android only, default dwell time in milliseconds default 10000
+  notificationResponsiveness?: number // Android only, default responsiveness in milliseconds default 0
+  responsivenessMode?: "fixed" | "adaptive" // Android only, scale responsiveness with the power state default "fixed"
+  lowBatteryPercent?: number // Android only, battery level relaxing adaptive responsiveness default 15
+  notificationBurst?: number // Android only, notifications allowed at once default 5
+  notificationsPerMinute?: number // Android only, notification budget refill, 0 disables default 6
+  uploadBurst?: number // Android only, uploads allowed at once default 30
+  uploadsPerMinute?: number // Android only, upload budget refill, 0 disables default 60
+  jsEventBurst?: number // Android only, transition events allowed at once default 20
+  jsEventsPerMinute?: number // Android only, transition event budget refill, 0 disables default 60
+  deferPriority?: number // Android only, over budget work of lower priority fences is shed default 0
+  maxDeferSeconds?: number // Android only, work deferred longer than this is shed default 600
+  transitionBroadcast?: boolean // Android only, send the native transition broadcast default true
+  logLevel?: "debug" | "info" | "warn" | "error" // Android only, default info
+  logToFile?: boolean // Android only, keep the exported logs in a file surviving the process default false
+  metricsDumpSeconds?: number // Android only, write the metrics to files/geofence-metrics.json this often, default 0 (off)
+  syncUrl?: string // Android only, geofence manifest kept in sync periodically, default unset (off)
+  syncAuthorization?: string // Android only, Authorization header of the manifest requests
+  syncIntervalMinutes?: number // Android only, at least 15, default 60
+  triggerRetentionDays?: number // Android only, days trigger times are kept for frequency control, default 30
+  vacuumFreePercent?: number // Android only, free database pages starting a vacuum in the daily maintenance, default 20
 }
 interface GeofencePlugin {
   initialize(
@@ -40,6 +64,76 @@ interface GeofencePlugin {
     errorCallback?: (error: string) => void
   ): Promise<string>;
 
+  importFromFile(
+    path: string,
+    format?: "ndjson" | "binary",
+    onProgress?: (progress: GeofenceImportResult) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceImportResult>;
+
+  getWatchedPaged(
+    options?: GeofencePageOptions,
+    onPage?: (page: GeofencePage) => void | Promise<void>,
+    errorCallback?: (error: string) => void
+  ): Promise<string | null>;
+
+  activateUser(
+    userId: string | null,
+    successCallback?: (result: GeofenceActivation) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceActivation>;
+
+  removeGroup(
+    group: string,
+    successCallback?: (result: GeofenceGroupResult) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceGroupResult>;
+
+  enableGroup(
+    group: string,
+    successCallback?: (result: GeofenceGroupResult) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceGroupResult>;
+
+  disableGroup(
+    group: string,
+    successCallback?: (result: GeofenceGroupResult) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceGroupResult>;
+
+  getChangesSince(
+    version: number,
+    limit?: number,
+    successCallback?: (changes: GeofenceChanges) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceChanges>;
+
+  sync(
+    successCallback?: (result: GeofenceSyncResult) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceSyncResult>;
+
+  runMaintenance(
+    successCallback?: (result: GeofenceMaintenanceResult) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceMaintenanceResult>;
+
+  getMetrics(
+    successCallback?: (result: GeofenceMetrics) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceMetrics>;
+
+  exportLogs(
+    limit?: number,
+    successCallback?: (events: GeofenceLogEvent[]) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceLogEvent[]>;
+
+  getHealth(
+    successCallback?: (result: GeofenceHealth) => void,
+    errorCallback?: (error: string) => void
+  ): Promise<GeofenceHealth>;
+
   appLoaded(
     successCallback?: (result: any) => void,
     errorCallback?: (error: string) => void
@@ -50,12 +144,149 @@ interface GeofencePlugin {
   onNotificationClicked: (notificationData: Object) => void;
 }
 
+interface GeofenceLogEvent {
+  seq: number;
+  time: number; // milliseconds since the epoch
+  level: "V" | "D" | "I" | "W" | "E" | "A";
+  message: string;
+}
+
+interface GeofenceImportResult {
+  phase: "storing" | "registering";
+  /** Chunks of 500 geofences committed so far, kept when a later chunk fails */
+  storedChunks: number;
+  read: number;
+  changed: number;
+  unchanged: number;
+  registered: number;
+  failedChunks: number;
+  done: boolean;
+}
+
+interface GeofenceActivation {
+  previousUserId: string | null;
+  userId: string | null;
+  unregistered: number;
+  registered: number;
+  failedChunks: number;
+}
+
+interface GeofenceGroupResult {
+  group: string;
+  fences: number; // removed, registered or unregistered
+  failedChunks: number;
+}
+
+interface GeofenceChanges {
+  version: number; // pass to the next call
+  reset: boolean; // changes before the given version were compacted, list all geofences
+  more: boolean; // more changes follow, call again right away
+  upserts: Geofence[];
+  deletes: string[];
+  triggered: { notificationId: number; lastTriggered: number }[];
+}
+
+interface GeofenceSyncResult {
+  date: string;
+  success: boolean;
+  status: number; // HTTP status of the manifest request
+  notModified: boolean;
+  fences: number; // geofences in the manifest
+  inserted: number;
+  updated: number;
+  deleted: number;
+  unchanged: number;
+  registered: number;
+  unregistered: number;
+  failedChunks: number;
+  durationMs: number;
+  error?: string;
+}
+
+interface GeofenceMaintenanceResult {
+  date: string;
+  success: boolean;
+  expiredFences: number;
+  triggersTrimmed: number;
+  tombstonesCompacted: number;
+  freePercent: number; // free database pages before the vacuum
+  vacuumed: boolean;
+  bytesReclaimed: number;
+  durationMs: number;
+  error?: string;
+}
+
+interface GeofencePageOptions {
+  pageSize?: number; // default 500, at most 5000
+  cursor?: string; // cursor of the last page received, to resume
+  filter?: {
+    userId?: string;
+    group?: string;
+    tag?: string;
+    boundingBox?: { minLatitude: number; minLongitude: number; maxLatitude: number; maxLongitude: number };
+    activeOnly?: boolean;
+  };
+}
+
+interface GeofencePage {
+  fences: Geofence[];
+  cursor: string | null;
+  done: boolean;
+}
+
+interface GeofenceMetrics {
+  counters: { [name: string]: number };
+  timers: {
+    [name: string]: {
+      count: number;
+      avgMs: number;
+      maxMs: number;
+      p50Ms: number;
+      p90Ms: number;
+      p99Ms: number;
+      histogram: number[]; // counts per bucket of bucketBoundsMs, the last one counts everything above
+    };
+  };
+  bucketBoundsMs: number[];
+  perHour: { [name: string]: number };
+  responsiveness: { mode: string; tier: string; registeredTier?: string };
+  restore?: {
+    trigger: string;
+    date: string;
+    attempt: number;
+    success: boolean;
+    fences: number;
+    chunks: number;
+    failedChunks: number;
+    durationMs: number;
+    timeToArmedMs: number;
+    error?: string;
+  };
+  sync?: GeofenceSyncResult;
+  maintenance?: GeofenceMaintenanceResult;
+}
+
+interface GeofenceHealth {
+  expected: number;
+  armed: number;
+  missing: number;
+  lastReconcileDate?: string;
+  lastReconcileRegistered: number;
+  lastError?: string;
+}
+
 interface Geofence {
   id: string;
   latitude: number;
   longitude: number;
   radius: number;
   transitionType: number;
+  user_id?: string; // Android only, see activateUser
+  group?: string; // Android only, see removeGroup, enableGroup and disableGroup
+  tags?: string[]; // Android only, see getWatchedPaged
+  loiteringDelay?: number;
+  notificationResponsiveness?: number;
+  priority?: number;
   notification?: Notification;
 }
 
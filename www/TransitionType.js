@@ -2,6 +2,7 @@ var TransitionType = {
     ENTER: 1,
     EXIT: 2,
     BOTH: 3,
+    DWELL: 4,
 };
 
 module.exports = TransitionType;
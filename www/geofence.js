@@ -99,6 +99,218 @@ module.exports = {
     getWatched: function (success, error) {
         return execPromise(success, error, "GeofencePlugin", "getWatched", []);
     },
+    /**
+     * Importing geofences from a local NDJSON or binary file (Android only)
+     *
+     * Not atomic: every chunk is committed on its own, the storedChunks of the last progress
+     * tell how many stay stored when the import fails.
+     *
+     * @name  importFromFile
+     * @param  {String} path file path or file:// URL
+     * @param  {String} format "ndjson" (default) or "binary"
+     * @param  {Function} onProgress called with the counts after every chunk
+     * @param  {Function} error callback
+     * @return {Promise} resolved with the final counts
+     */
+    importFromFile: function (path, format, onProgress, error) {
+        return new Promise(function (resolve, reject) {
+            exec(function (result) {
+                    if (result.done) {
+                        resolve(result);
+                    } else if (typeof onProgress === "function") {
+                        onProgress(result);
+                    }
+                },
+                function (reason) {
+                    reject(reason);
+                    if (typeof error === "function") {
+                        error(reason);
+                    }
+                },
+                "GeofencePlugin",
+                "importFromFile",
+                [path, format || "ndjson"]);
+        });
+    },
+    /**
+     * Streaming watched geofences page by page (Android only)
+     *
+     * The next page is only requested once onPage returned, or once the promise it returned
+     * resolved.
+     *
+     * @name  getWatchedPaged
+     * @param  {Object} options pageSize, cursor and filter (userId, group, tag, boundingBox, activeOnly), all optional
+     * @param  {Function} onPage called with { fences, cursor, done } for every page, may return a Promise
+     * @param  {Function} error callback
+     * @return {Promise} resolved with the cursor of the last page once all pages were delivered
+     */
+    getWatchedPaged: function (options, onPage, error) {
+        options = options || {};
+        function fail(reason) {
+            if (typeof error === "function") {
+                error(reason);
+            }
+            throw reason;
+        }
+        function next(cursor) {
+            var pageOptions = {
+                pageSize: options.pageSize,
+                cursor: cursor,
+                filter: options.filter
+            };
+            return new Promise(function (resolve, reject) {
+                exec(resolve, reject, "GeofencePlugin", "getWatchedPaged", [pageOptions]);
+            }).then(function (result) {
+                var page = JSON.parse(result);
+                return Promise.resolve(typeof onPage === "function" ? onPage(page) : undefined)
+                    .then(function () {
+                        return page.done ? page.cursor : next(page.cursor);
+                    });
+            });
+        }
+        return next(options.cursor === undefined ? null : options.cursor).catch(fail);
+    },
+    /**
+     * Switching the registered geofences to the ones of the given user (Android only)
+     *
+     * @name  activateUser
+     * @param  {String} userId user_id of the geofences to register, null to only keep the geofences without user_id
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns object with unregistered and registered counts
+     */
+    activateUser: function (userId, success, error) {
+        return execPromise(success, error, "GeofencePlugin", "activateUser", [userId === undefined ? null : userId]);
+    },
+    /**
+     * Removing all geofences of a group (Android only)
+     *
+     * @name  removeGroup
+     * @param  {String} group
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns object with the group and the number of removed geofences
+     */
+    removeGroup: function (group, success, error) {
+        return execPromise(success, error, "GeofencePlugin", "removeGroup", [group]);
+    },
+    /**
+     * Registering the stored geofences of a disabled group again (Android only)
+     *
+     * @name  enableGroup
+     * @param  {String} group
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns object with the group and the number of registered geofences
+     */
+    enableGroup: function (group, success, error) {
+        return execPromise(success, error, "GeofencePlugin", "enableGroup", [group]);
+    },
+    /**
+     * Unregistering the geofences of a group, keeping them stored (Android only)
+     *
+     * @name  disableGroup
+     * @param  {String} group
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns object with the group and the number of unregistered geofences
+     */
+    disableGroup: function (group, success, error) {
+        return execPromise(success, error, "GeofencePlugin", "disableGroup", [group]);
+    },
+    /**
+     * Getting the changes to the stored geofences since a version (Android only)
+     *
+     * @name  getChangesSince
+     * @param  {Number} version version returned by the previous call, 0 the first time
+     * @param  {Number} limit maximum number of changes, default 500
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns object with version, reset, more, upserts, deletes and triggered
+     */
+    getChangesSince: function (version, limit, success, error) {
+        return execPromise(null, null, "GeofencePlugin", "getChangesSince", [version || 0, limit || 500])
+            .then(function (result) {
+                var changes = JSON.parse(result);
+                if (typeof success === "function") {
+                    success(changes);
+                }
+                return changes;
+            }, function (reason) {
+                if (typeof error === "function") {
+                    error(reason);
+                }
+                throw reason;
+            });
+    },
+    /**
+     * Applying the changes of the geofence manifest at syncUrl now (Android only)
+     *
+     * @name  sync
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns object with the inserted, updated, deleted and unchanged counts
+     */
+    sync: function (success, error) {
+        return execPromise(success, error, "GeofencePlugin", "sync", []);
+    },
+    /**
+     * Running the daily store maintenance now (Android only)
+     *
+     * @name  runMaintenance
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns object with the removed expired geofences and the reclaimed bytes
+     */
+    runMaintenance: function (success, error) {
+        return execPromise(success, error, "GeofencePlugin", "runMaintenance", []);
+    },
+    /**
+     * Getting plugin counters and latency timers (Android only)
+     *
+     * @name  getMetrics
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns object with counters and timers
+     */
+    getMetrics: function (success, error) {
+        return execPromise(success, error, "GeofencePlugin", "getMetrics", []);
+    },
+    /**
+     * Exporting the last native log events (Android only)
+     *
+     * @name  exportLogs
+     * @param  {Number} limit maximum number of events, default 5000
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns array of events, oldest first
+     */
+    exportLogs: function (limit, success, error) {
+        return execPromise(null, null, "GeofencePlugin", "exportLogs", limit ? [limit] : [])
+            .then(function (result) {
+                var events = JSON.parse(result);
+                if (typeof success === "function") {
+                    success(events);
+                }
+                return events;
+            }, function (reason) {
+                if (typeof error === "function") {
+                    error(reason);
+                }
+                throw reason;
+            });
+    },
+    /**
+     * Getting how many of the stored geofences are currently armed with the OS (Android only)
+     *
+     * @name  getHealth
+     * @param  {Function} success callback
+     * @param  {Function} error callback
+     * @return {Promise} if successful returns object with expected, armed and missing counts
+     */
+    getHealth: function (success, error) {
+        return execPromise(success, error, "GeofencePlugin", "getHealth", []);
+    },
     /**
      * Called when app is opened via Notification bar
      *
@@ -194,6 +406,18 @@ function coerceProperties(geofence) {
         throw new Error("Geofence transitionType is not provided");
     }
 
+    if (geofence.loiteringDelay) {
+        geofence.loiteringDelay = coerceNumber("Geofence loiteringDelay", geofence.loiteringDelay);
+    }
+
+    if (geofence.priority) {
+        geofence.priority = coerceNumber("Geofence priority", geofence.priority);
+    }
+
+    if (geofence.notificationResponsiveness) {
+        geofence.notificationResponsiveness = coerceNumber("Geofence notificationResponsiveness", geofence.notificationResponsiveness);
+    }
+
     if (geofence.notification) {
         if (geofence.notification.id) {
             geofence.notification.id = coerceNumber("Geofence notification.id", geofence.notification.id);